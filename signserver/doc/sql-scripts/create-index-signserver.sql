@@ -7,12 +7,24 @@ CREATE UNIQUE INDEX auditrecorddata_idx2 ON AuditRecordData (nodeId,sequenceNumb
 -- ordered by time stamp.
 CREATE INDEX auditrecorddata_idx3 ON AuditRecordData (timeStamp);
 
--- Selecting archivables from the archive in the AdminGUI is usually
--- ordered by time stamp.
-CREATE INDEX archivedata_idx3 ON ArchiveData (time);
+-- Selecting archivables from the archive in the AdminGUI is ordered by time
+-- stamp and unique ID, and paging continues from the time and unique ID of the
+-- last entry of the previous page. This index replaces archivedata_idx3 on
+-- (time) only, which can be dropped from existing databases.
+CREATE INDEX archivedata_idx4 ON ArchiveData (time,uniqueId);
+
+-- Searching the archive by worker, archive ID, request IP or client
+-- certificate serial number.
+CREATE INDEX archivedata_idx5 ON ArchiveData (signerid,time);
+CREATE INDEX archivedata_idx6 ON ArchiveData (archiveid);
+CREATE INDEX archivedata_idx7 ON ArchiveData (requestIP);
+CREATE INDEX archivedata_idx8 ON ArchiveData (requestCertSerialnumber);
 
 -- Selecting by signerType is done by the services loader
 CREATE INDEX signerconfigdata_idx2 ON signerconfigdata (signerType);
 
 -- Selecting by signerName could be done when loading a worker
 CREATE UNIQUE INDEX signerconfigdata_idx3 ON signerconfigdata (signerName);
+
+-- Finding the workers changed since the last check
+CREATE INDEX configchangedata_idx1 ON ConfigChangeData (version);
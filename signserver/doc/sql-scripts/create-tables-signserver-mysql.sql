@@ -70,6 +70,7 @@ CREATE TABLE `ArchiveData` (
   `requestIP` varchar(255) DEFAULT NULL,
   `archiveData` mediumtext,
   `dataEncoding` int(11) DEFAULT NULL,
+  `archiveDirectory` varchar(255) DEFAULT NULL,
   PRIMARY KEY (`uniqueId`)
 ) ENGINE=INNODB DEFAULT CHARSET=utf8;
 
@@ -97,4 +98,29 @@ CREATE TABLE `KeyData` (
 ) ENGINE=INNODB DEFAULT CHARSET=utf8;
 
 
+--
+-- Table structure for table `ConfigChangeData`
+--
+CREATE TABLE `ConfigChangeData` (
+  `workerId` int(11) NOT NULL,
+  `version` bigint(20) NOT NULL,
+  `changeTime` bigint(20) NOT NULL,
+  PRIMARY KEY (`workerId`)
+) ENGINE=INNODB DEFAULT CHARSET=utf8;
+
+-- Row holding the latest version, created here so that nodes starting at the same time do not both insert it
+INSERT INTO `ConfigChangeData` (`workerId`, `version`, `changeTime`) VALUES (-1, 0, 0);
+
+
+--
+-- Table structure for table `AccountBalance`
+--
+CREATE TABLE `AccountBalance` (
+  `accountId` varchar(255) NOT NULL,
+  `balance` bigint(20) NOT NULL,
+  `lastUpdated` bigint(20) NOT NULL,
+  PRIMARY KEY (`accountId`)
+) ENGINE=INNODB DEFAULT CHARSET=utf8;
+
+
 -- End
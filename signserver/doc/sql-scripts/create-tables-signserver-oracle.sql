@@ -65,6 +65,7 @@ CREATE TABLE "KEYUSAGECOUNTER" (
 CREATE TABLE "ARCHIVEDATA" (
 	"UNIQUEID" VARCHAR2(255 CHAR) NOT NULL, 
 	"ARCHIVEDATA" CLOB, 
+	"ARCHIVEDIRECTORY" VARCHAR2(255 CHAR), 
 	"ARCHIVEID" VARCHAR2(255 CHAR), 
 	"REQUESTCERTSERIALNUMBER" VARCHAR2(255 CHAR), 
 	"REQUESTIP" VARCHAR2(255 CHAR), 
@@ -90,6 +91,31 @@ CREATE TABLE "KeyData" (
 ); 
 
 
+--
+-- Table structure for table `ConfigChangeData`
+--
+CREATE TABLE "CONFIGCHANGEDATA" (
+	"WORKERID" NUMBER(10,0) NOT NULL,
+	"VERSION" NUMBER(19,0) NOT NULL,
+	"CHANGETIME" NUMBER(19,0) NOT NULL,
+	PRIMARY KEY ("WORKERID")
+);
+
+-- Row holding the latest version, created here so that nodes starting at the same time do not both insert it
+INSERT INTO "CONFIGCHANGEDATA" ("WORKERID", "VERSION", "CHANGETIME") VALUES (-1, 0, 0);
+
+
+--
+-- Table structure for table `AccountBalance`
+--
+CREATE TABLE "ACCOUNTBALANCE" (
+	"ACCOUNTID" VARCHAR2(255 CHAR) NOT NULL,
+	"BALANCE" NUMBER(19,0) NOT NULL,
+	"LASTUPDATED" NUMBER(19,0) NOT NULL,
+	PRIMARY KEY ("ACCOUNTID")
+);
+
+
 --
 -- Table structure for table `SEQUENCE`
 --
@@ -62,6 +62,7 @@ CREATE TABLE keyusagecounter (
 CREATE TABLE archivedata (
     uniqueid character varying(255) NOT NULL,
     archivedata text,
+    archivedirectory character varying(255),
     archiveid character varying(255),
     dataencoding integer,
     requestcertserialnumber character varying(255),
@@ -85,6 +86,26 @@ CREATE TABLE KeyData (
 ); 
 
 
+--
+-- Table structure for table `ConfigChangeData`
+--
+CREATE TABLE configchangedata (
+  workerid integer NOT NULL,
+  version bigint NOT NULL,
+  changetime bigint NOT NULL
+);
+
+
+--
+-- Table structure for table `AccountBalance`
+--
+CREATE TABLE accountbalance (
+  accountid character varying(255) NOT NULL,
+  balance bigint NOT NULL,
+  lastupdated bigint NOT NULL
+);
+
+
 --
 -- Name: hibernate_sequence; Type: SEQUENCE; Schema: public; Owner: signserver
 --
@@ -141,3 +162,21 @@ ALTER TABLE ONLY signerconfigdata
 ALTER TABLE ONLY KeyData
     ADD CONSTRAINT keydata_pkey PRIMARY KEY (keyAlias);
 
+--
+-- Name: configchangedata_pkey; Type: CONSTRAINT; Schema: public; Owner: signserver; Tablespace: 
+--
+
+ALTER TABLE ONLY configchangedata
+    ADD CONSTRAINT configchangedata_pkey PRIMARY KEY (workerid);
+
+-- Row holding the latest version, created here so that nodes starting at the same time do not both insert it
+INSERT INTO configchangedata (workerid, version, changetime) VALUES (-1, 0, 0);
+
+
+--
+-- Name: accountbalance_pkey; Type: CONSTRAINT; Schema: public; Owner: signserver; Tablespace: 
+--
+
+ALTER TABLE ONLY accountbalance
+    ADD CONSTRAINT accountbalance_pkey PRIMARY KEY (accountid);
+
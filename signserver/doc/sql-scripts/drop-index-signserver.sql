@@ -3,7 +3,13 @@
 DROP INDEX auditrecorddata_idx2 ON AuditRecordData;
 DROP INDEX auditrecorddata_idx3 ON AuditRecordData;
 
-DROP INDEX archivedata_idx3 ON ArchiveData;
+DROP INDEX archivedata_idx4 ON ArchiveData;
+DROP INDEX archivedata_idx5 ON ArchiveData;
+DROP INDEX archivedata_idx6 ON ArchiveData;
+DROP INDEX archivedata_idx7 ON ArchiveData;
+DROP INDEX archivedata_idx8 ON ArchiveData;
 
 DROP INDEX signerconfigdata_idx2 ON signerconfigdata;
 DROP INDEX signerconfigdata_idx3 ON signerconfigdata;
+
+DROP INDEX configchangedata_idx1 ON ConfigChangeData;
@@ -38,6 +38,17 @@ DROP TABLE IF EXISTS `ArchiveData`;
 --
 DROP TABLE IF EXISTS `KeyData`;
 
+--
+-- Drop table `ConfigChangeData`
+--
+DROP TABLE IF EXISTS `ConfigChangeData`;
+
+
+--
+-- Drop table `AccountBalance`
+--
+DROP TABLE IF EXISTS `AccountBalance`;
+
 
 --
 -- Drop table `SEQUENCE`
@@ -39,6 +39,17 @@ DROP TABLE "ARCHIVEDATA";
 --
 DROP TABLE "KeyData";
 
+--
+-- Drop table `ConfigChangeData`
+--
+DROP TABLE "CONFIGCHANGEDATA";
+
+
+--
+-- Drop table `AccountBalance`
+--
+DROP TABLE "ACCOUNTBALANCE";
+
 
 --
 -- Drop sequence `HIBERNATE_SEQUENCE`
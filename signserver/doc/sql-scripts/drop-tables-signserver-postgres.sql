@@ -33,6 +33,17 @@ DROP TABLE IF EXISTS archivedata;
 --
 DROP TABLE IF EXISTS KeyData;
 
+--
+-- Drop table `ConfigChangeData`
+--
+DROP TABLE IF EXISTS configchangedata;
+
+
+--
+-- Drop table `AccountBalance`
+--
+DROP TABLE IF EXISTS accountbalance;
+
 
 --
 -- Drop table `SEQUENCE`
@@ -18,7 +18,9 @@ import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -80,6 +82,18 @@ public class ArchiveBean {
     private String conditionColumn;
 
     private String requestedSelected;
+
+    /** Cursor of the entry to continue after (older entries). */
+    private String after;
+
+    /** Cursor of the entry to continue before (newer entries). */
+    private String before;
+
+    /** Index the page given by the cursor starts at. */
+    private Integer cursorFromIndex;
+
+    /** Results of the current page, in the order displayed. */
+    private List<ArchiveMetadata> results;
     private Map<String, Boolean> selectedIds;
     private static final List<SelectItem> COLUMN_FROM_NAME = new ArrayList<>();
 
@@ -126,28 +140,79 @@ public class ArchiveBean {
         pagination.setFromIndex(fromIndex - 1);
     }
 
+    public String getAfter() {
+        return after;
+    }
+
+    public void setAfter(String after) {
+        this.after = after;
+    }
+
+    public String getBefore() {
+        return before;
+    }
+
+    public void setBefore(String before) {
+        this.before = before;
+    }
+
     public void reloadAction() throws IOException {
+        // Keep the cursor unless another start index was entered
+        final String cursor;
+        if (cursorFromIndex != null && cursorFromIndex == pagination.getFromIndex()) {
+            cursor = createCursorParam(after != null ? "after" : "before", after != null ? after : before);
+        } else {
+            cursor = "";
+        }
+        reload(cursor);
+    }
+
+    private void reload(final String cursor) throws IOException {
         entries = null;
-        FacesContext.getCurrentInstance().getExternalContext().redirect("archive.xhtml?q=" + StringUtils.join(createQueryStrings(conditions), "&q=") + "&fromIndex=" + (pagination.getFromIndex() + 1) + "&maxEntries=" + pagination.getMaxEntries());
+        FacesContext.getCurrentInstance().getExternalContext().redirect("archive.xhtml?q=" + StringUtils.join(createQueryStrings(conditions), "&q=") + "&fromIndex=" + (pagination.getFromIndex() + 1) + "&maxEntries=" + pagination.getMaxEntries() + cursor);
     }
 
     public void firstAction() throws IOException {
         pagination.goToFirst();
-        reloadAction();
+        reload("");
     }
 
     public void previousAction() throws IOException {
         pagination.goBackwards();
 
-        // Reload
-        reloadAction();
+        // Continue before the first entry unless going back to the first page
+        if (pagination.getFromIndex() > 0 && results != null && !results.isEmpty()) {
+            reload(createCursorParam("before", createCursor(results.get(0))));
+        } else {
+            reload("");
+        }
     }
 
     public void nextAction() throws IOException {
         pagination.goForward();
 
-        // Reload
-        reloadAction();
+        // Continue after the last entry instead of skipping all the previous
+        if (results != null && !results.isEmpty()) {
+            reload(createCursorParam("after", createCursor(results.get(results.size() - 1))));
+        } else {
+            reload("");
+        }
+    }
+
+    public void downloadAllAction() throws IOException {
+        FacesContext.getCurrentInstance().getExternalContext().redirect("archive-download.xhtml?all=true&q=" + StringUtils.join(createQueryStrings(conditions), "&q="));
+    }
+
+    private static String createCursor(final ArchiveMetadata entry) {
+        return entry.getTime().getTime() + ":" + entry.getUniqueId();
+    }
+
+    private static String createCursorParam(final String name, final String cursor) {
+        try {
+            return "&" + name + "=" + URLEncoder.encode(cursor, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
     }
 
     public Integer getMaxEntries() {
@@ -177,17 +242,51 @@ public class ArchiveBean {
     public List<WebArchiveEntry> getEntries() throws AdminNotAuthorizedException {
         if (entries == null) {
             queryError = null;
+            // Same total order as used when seeking from a cursor
             final QueryOrdering ordering = new QueryOrdering();
             ordering.setOrder(QueryOrdering.Order.DESC);
             ordering.setColumn(ArchiveMetadata.TIME);
+            final QueryOrdering uniqueIdOrdering = new QueryOrdering();
+            uniqueIdOrdering.setOrder(QueryOrdering.Order.DESC);
+            uniqueIdOrdering.setColumn(ArchiveMetadata.UNIQUE_ID);
+            final List<QueryOrdering> orderings = Arrays.asList(ordering, uniqueIdOrdering);
 
             Boolean moreAvailable = null;
             try {
+                final String cursor = after != null ? after : before;
+                final int separator = cursor == null ? -1 : cursor.indexOf(':');
+                Date cursorTime = null;
+                if (separator > 0) {
+                    try {
+                        cursorTime = new Date(Long.parseLong(cursor.substring(0, separator)));
+                    } catch (NumberFormatException ex) {
+                        LOG.debug("Ignoring malformed cursor: " + cursor);
+                    }
+                }
 
-                List<ArchiveMetadata> results = workerSessionBean.queryArchive(authBean.getAdminCertificate(),
-                        pagination.getFromIndex(), pagination.getMaxEntries(),
-                        getConditions(),
-                        Collections.singletonList(ordering), false);
+                if (cursorTime == null) {
+                    results = workerSessionBean.queryArchive(authBean.getAdminCertificate(),
+                            pagination.getFromIndex(), pagination.getMaxEntries(),
+                            getConditions(),
+                            orderings, false);
+                    cursorFromIndex = null;
+                } else if (after != null) {
+                    // Seek to the entry instead of skipping all entries before
+                    results = workerSessionBean.queryArchiveAfter(authBean.getAdminCertificate(),
+                            cursorTime, cursor.substring(separator + 1),
+                            pagination.getMaxEntries(), getConditions(), true, false);
+                    cursorFromIndex = pagination.getFromIndex();
+                } else {
+                    // The newer entries closest to the cursor, newest first
+                    results = workerSessionBean.queryArchiveAfter(authBean.getAdminCertificate(),
+                            cursorTime, cursor.substring(separator + 1),
+                            pagination.getMaxEntries(), getConditions(), false, false);
+                    if (results != null) {
+                        results = new ArrayList<>(results);
+                        Collections.reverse(results);
+                    }
+                    cursorFromIndex = pagination.getFromIndex();
+                }
                 if (results == null) {
                     entries = Collections.emptyList();
                 } else {
@@ -348,6 +447,7 @@ public class ArchiveBean {
         }
 
         conditions.add(conditionToAdd);
+        cursorFromIndex = null; // The cursor is for the old conditions
         conditionToAdd = null;
         conditionColumn = null;
         conditionToAddError = null;
@@ -372,6 +472,7 @@ public class ArchiveBean {
 
     public void removeConditionAction(QueryCondition condition) {
         conditions.remove(condition);
+        cursorFromIndex = null; // The cursor is for the old conditions
     }
 
     public String downloadSelectedAction() {
@@ -14,6 +14,7 @@ package org.signserver.admin.web;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -26,6 +27,10 @@ import javax.faces.bean.ViewScoped;
 import javax.faces.context.ExternalContext;
 import javax.faces.context.FacesContext;
 import org.apache.log4j.Logger;
+import org.cesecore.util.query.elems.Term;
+import org.signserver.admin.common.query.ArchiveFields;
+import org.signserver.admin.common.query.QueryCondition;
+import org.signserver.admin.common.query.QueryUtil;
 import org.signserver.common.ArchiveMetadata;
 import org.signserver.common.SignServerException;
 import org.signserver.admin.common.auth.AdminNotAuthorizedException;
@@ -53,6 +58,7 @@ public class ArchiveDownloadBean {
 
     private String uniqueId;
     private String uniqueIds;
+    private boolean all;
     private String errorMessage;
 
     /**
@@ -85,6 +91,14 @@ public class ArchiveDownloadBean {
         this.uniqueIds = uniqueIds;
     }
 
+    public boolean isAll() {
+        return all;
+    }
+
+    public void setAll(boolean all) {
+        this.all = all;
+    }
+
     public String getErrorMessage() {
         return errorMessage;
     }
@@ -92,8 +106,37 @@ public class ArchiveDownloadBean {
     public void init() throws AdminNotAuthorizedException, IOException { // preRenderView in archive-download.xhtml
 
         try {
-            // Multiple entries ZIP:ed or one uncompressed?
-            if (uniqueIds != null && !uniqueIds.trim().isEmpty()) {
+            // All matching entries, multiple entries ZIP:ed or one uncompressed?
+            if (all) {
+                final List<QueryCondition> conditions = parseConditions();
+                if (conditions != null) {
+                    final FacesContext context = FacesContext.getCurrentInstance();
+                    final ExternalContext externalContext = context.getExternalContext();
+
+                    externalContext.responseReset();
+
+                    // No content-length as we will be streaming
+                    externalContext.setResponseContentType("application/zip");
+                    externalContext.setResponseHeader("Content-Disposition", "attachment; filename=\"archives.zip");
+
+                    try (ZipOutputStream out = new ZipOutputStream(externalContext.getResponseOutputStream())) {
+                        // Entries are given one at the time, with the data, so all never have to be in memory
+                        workerSessionBean.exportArchive(authBean.getAdminCertificate(), conditions, true, data -> {
+                            try {
+                                out.putNextEntry(new ZipEntry(data.getUniqueId() + "-" + ArchiveMetadata.suggestedFilename(data.getArchiveId(), data.getType())));
+                                if (data.getArchiveData() != null) {
+                                    out.write(data.getArchiveData());
+                                }
+                                out.closeEntry();
+                            } catch (IOException ex) {
+                                throw new IllegalStateException("Writing archive entry failed: " + ex.getMessage(), ex);
+                            }
+                        });
+                    }
+
+                    context.responseComplete();
+                }
+            } else if (uniqueIds != null && !uniqueIds.trim().isEmpty()) {
                 List<String> ids = new ArrayList<>();
                 for (String id : uniqueIds.split(",")) {
                     id = id.trim();
@@ -102,7 +145,8 @@ public class ArchiveDownloadBean {
                     }
                 }
 
-                List<ArchiveMetadata> results = workerSessionBean.queryArchiveWithIds(authBean.getAdminCertificate(), ids, true);
+                // Only the metadata, the data is streamed entry by entry
+                List<ArchiveMetadata> results = workerSessionBean.queryArchiveWithIds(authBean.getAdminCertificate(), ids, false);
 
                 if (results == null || results.isEmpty()) {
                     errorMessage = "No such archive entries";
@@ -120,7 +164,7 @@ public class ArchiveDownloadBean {
                         for (ArchiveMetadata data : results) {
                             ZipEntry entry = new ZipEntry(ArchiveMetadata.suggestedFilename(data.getArchiveId(), data.getType()));
                             out.putNextEntry(entry);
-                            out.write(data.getArchiveData());
+                            workerSessionBean.writeArchivedData(authBean.getAdminCertificate(), data.getUniqueId(), out);
                             out.closeEntry();
                         }
                     }
@@ -130,31 +174,51 @@ public class ArchiveDownloadBean {
 
             } else {
 
-                List<ArchiveMetadata> results = workerSessionBean.queryArchiveWithIds(authBean.getAdminCertificate(), Collections.singletonList(uniqueId), true);
+                List<ArchiveMetadata> results = workerSessionBean.queryArchiveWithIds(authBean.getAdminCertificate(), Collections.singletonList(uniqueId), false);
 
                 if (results == null || results.isEmpty()) {
                     errorMessage = "No such archive entry";
                 } else {
                     final FacesContext context = FacesContext.getCurrentInstance();
                     final ExternalContext externalContext = context.getExternalContext();
-                    final byte[] body = results.get(0).getArchiveData();
 
                     externalContext.responseReset();
+
+                    // No content-length as we will be streaming
                     externalContext.setResponseContentType("application/octet-stream");
-                    externalContext.setResponseContentLength(body.length);
                     externalContext.setResponseHeader("Content-Disposition", "attachment; filename=\"" + ArchiveMetadata.suggestedFilename(results.get(0).getArchiveId(), results.get(0).getType()));
 
                     try (OutputStream out = externalContext.getResponseOutputStream()) {
-                        out.write(body);
+                        workerSessionBean.writeArchivedData(authBean.getAdminCertificate(), results.get(0).getUniqueId(), out);
                     }
 
                     context.responseComplete();
                 }
             }
-        } catch (SignServerException ex) {
+        } catch (SignServerException | IllegalStateException ex) {
             errorMessage = ex.getMessage();
             LOG.error("Reload failed within the selected interval: " + ex.getMessage(), ex);
         }
     }
 
+    private List<QueryCondition> parseConditions() {
+        final String[] queryStrings = FacesContext.getCurrentInstance().getExternalContext().getRequestParameterValuesMap().get("q");
+        final List<QueryCondition> results = new ArrayList<>();
+        if (queryStrings != null) {
+            for (String queryString : queryStrings) {
+                if (!queryString.trim().isEmpty()) {
+                    try {
+                        Term t = QueryUtil.parseCriteria(queryString, ArchiveFields.ALLOWED_FIELDS, ArchiveFields.NO_ARG_OPS, Collections.<String>emptySet(), ArchiveFields.INT_FIELDS, ArchiveFields.DATE_FIELDS);
+                        results.add(new QueryCondition(t.getName(), t.getOperator(), t.getValue() == null ? null : String.valueOf(t.getValue())));
+                    } catch (IllegalArgumentException | ParseException ex) {
+                        // Do not download more than asked for
+                        errorMessage = "Incorrect query condition: " + ex.getMessage();
+                        return null;
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
 }
@@ -15,6 +15,7 @@ package org.signserver.admin.web.ejb;
 import org.signserver.admin.common.auth.AdminNotAuthorizedException;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyStoreException;
 import java.security.cert.Certificate;
@@ -27,9 +28,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.function.Consumer;
 import javax.annotation.PostConstruct;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
 import org.apache.commons.fileupload.FileUploadBase;
 import org.apache.commons.fileupload.FileUploadException;
 import org.apache.log4j.Logger;
@@ -703,6 +707,66 @@ public class AdminWebSessionBean {
         }
     }
 
+    public List<ArchiveMetadata> queryArchiveAfter(
+            final X509Certificate adminCertificate,
+            final Date afterTime,
+            final String afterUniqueId,
+            final int max,
+            final List<QueryCondition> conditions,
+            final boolean descending,
+            final boolean includeData)
+                    throws SignServerException, AdminNotAuthorizedException {
+        final AdminInfo adminInfo = auth.requireArchiveAuditorAuthorization(adminCertificate, "queryArchiveAfter", String.valueOf(afterUniqueId), String.valueOf(max));
+
+        try {
+            return worker.searchArchiveAfter(adminInfo, afterTime,
+                    afterUniqueId, max, toCriteria(conditions), descending,
+                    includeData);
+        } catch (AuthorizationDeniedException ex) {
+            throw new AdminNotAuthorizedException(ex.getMessage());
+        }
+    }
+
+    /**
+     * Gives all entries matching the conditions, including the archived data,
+     * to the consumer one at the time. The entries are read in batches, each
+     * batch in a query of its own, so that no transaction is kept open while
+     * the entries are consumed.
+     *
+     * @param adminCertificate of the administrator
+     * @param conditions to match
+     * @param descending true to give the newest entries first
+     * @param consumer to give the entries to
+     * @return number of entries
+     * @throws SignServerException in case of error
+     * @throws AdminNotAuthorizedException if not authorized
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public long exportArchive(
+            final X509Certificate adminCertificate,
+            final List<QueryCondition> conditions,
+            final boolean descending,
+            final Consumer<ArchiveMetadata> consumer)
+                    throws SignServerException, AdminNotAuthorizedException {
+        final AdminInfo adminInfo = auth.requireArchiveAuditorAuthorization(adminCertificate, "exportArchive");
+
+        try {
+            return worker.exportArchive(adminInfo, toCriteria(conditions),
+                    descending, true, consumer);
+        } catch (AuthorizationDeniedException ex) {
+            throw new AdminNotAuthorizedException(ex.getMessage());
+        }
+    }
+
+    private static QueryCriteria toCriteria(final List<QueryCondition> conditions) {
+        final List<Elem> elements = QueryUtil.toElements(conditions);
+        final QueryCriteria qc = QueryCriteria.create();
+        if (!elements.isEmpty()) {
+            qc.add(QueryUtil.andAll(elements, 0));
+        }
+        return qc;
+    }
+
     public List<ArchiveMetadata> queryArchiveWithIds(
             final X509Certificate adminCertificate,
             List<String> uniqueIds,
@@ -718,6 +782,17 @@ public class AdminWebSessionBean {
         }
     }
 
+    public boolean writeArchivedData(
+            final X509Certificate adminCertificate,
+            final String uniqueId,
+            final OutputStream out)
+            throws AdminNotAuthorizedException, IOException {
+        final AdminInfo adminInfo =
+                auth.requireArchiveAuditorAuthorization(adminCertificate, "writeArchivedData", uniqueId);
+
+        return worker.writeArchivedData(adminInfo, uniqueId, out);
+    }
+
     // Add all method calls needed from WorkerSessionLocal here and
     // make sure to call auth.requireAdminAuthorization() first (see AdminWS)
     // ...
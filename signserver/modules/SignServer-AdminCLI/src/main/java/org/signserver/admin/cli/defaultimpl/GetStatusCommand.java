@@ -76,9 +76,13 @@ public class GetStatusCommand extends AbstractCommand {
 
             boolean complete = mode.equalsIgnoreCase("complete");
 
-            out.println("Current version of server is : " + helper.getGlobalConfigurationSession().getGlobalConfiguration().getAppVersion() + "\n\n");
+            final GlobalConfiguration gc = helper.getGlobalConfigurationSession().getGlobalConfiguration();
+            out.println("Current version of server is : " + gc.getAppVersion() + "\n\n");
 
             if (allSigners) {
+                if (gc.getConfigChanges() != null) {
+                    out.println("Configuration changes from other nodes : " + gc.getConfigChanges() + "\n\n");
+                }
                 if (complete) {
                     displayGlobalConfiguration();
                 }
@@ -0,0 +1,146 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.benchmarks;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Paragraph;
+import com.lowagie.text.pdf.PdfWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TimeStampRequestGenerator;
+
+/**
+ * Generates the documents to sign in the benchmarks.
+ *
+ * The same seed is used every time so that all forks and runs sign the same
+ * data.
+ *
+ * @version $Id$
+ */
+public final class BenchmarkData {
+
+    private static final long SEED = 4711;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @param size number of bytes
+     * @return random bytes
+     */
+    public static byte[] randomBytes(final int size) {
+        final byte[] result = new byte[size];
+        new Random(SEED).nextBytes(result);
+        return result;
+    }
+
+    /**
+     * @param size approximate size of the document in bytes
+     * @return an XML document with the size mostly in one text node
+     */
+    public static byte[] xml(final int size) {
+        final StringBuilder sb = new StringBuilder(size + 100);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<document><data>");
+        sb.append(Base64.getEncoder().encodeToString(randomBytes(size * 3 / 4)));
+        sb.append("</data></document>");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param size approximate amount of text in the document in bytes
+     * @return a PDF document
+     * @throws DocumentException in case the document could not be created
+     */
+    public static byte[] pdf(final int size) throws DocumentException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(size + 4096);
+        final Document document = new Document();
+        PdfWriter.getInstance(document, out);
+        document.open();
+        final String text = Base64.getEncoder().encodeToString(randomBytes(size * 3 / 4));
+        for (int i = 0; i < text.length(); i += 1000) {
+            document.add(new Paragraph(text.substring(i, Math.min(text.length(), i + 1000))));
+        }
+        if (text.isEmpty()) {
+            document.add(new Paragraph("Empty"));
+        }
+        document.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * @param size approximate size of the content in bytes
+     * @return a JAR file with a manifest and one entry with the content
+     * @throws IOException in case the archive could not be written
+     */
+    public static byte[] jar(final int size) throws IOException {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream(size + 1024);
+        try (JarOutputStream out = new JarOutputStream(bout, manifest)) {
+            out.putNextEntry(new ZipEntry("org/signserver/benchmarks/data.bin"));
+            out.write(randomBytes(size));
+            out.closeEntry();
+        }
+        return bout.toByteArray();
+    }
+
+    /**
+     * @param entries number of entries
+     * @param entrySize size of each uncompressed entry in bytes
+     * @return a JAR file with a manifest and the given number of compressible
+     * text entries, deflated with the fastest compression level
+     * @throws IOException in case the archive could not be written
+     */
+    public static byte[] compressedJar(final int entries, final int entrySize) throws IOException {
+        final String[] words = {"sign", "server", "archive", "entry", "deflate", "manifest", "digest"};
+        final Random random = new Random(SEED);
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (JarOutputStream out = new JarOutputStream(bout, manifest)) {
+            out.setLevel(Deflater.BEST_SPEED);
+            for (int i = 0; i < entries; i++) {
+                final StringBuilder sb = new StringBuilder(entrySize + 16);
+                while (sb.length() < entrySize) {
+                    sb.append(words[random.nextInt(words.length)]).append(random.nextInt(1000)).append(i % 7 == 0 ? '\n' : ' ');
+                }
+                out.putNextEntry(new ZipEntry("org/signserver/benchmarks/dir" + (i % 10) + "/file" + i + ".txt"));
+                out.write(sb.substring(0, entrySize).getBytes(StandardCharsets.US_ASCII));
+                out.closeEntry();
+            }
+        }
+        return bout.toByteArray();
+    }
+
+    /**
+     * @return an encoded time-stamp request for a SHA-256 hash, asking for
+     * the certificate
+     * @throws IOException in case of encoding error
+     */
+    public static byte[] timeStampRequest() throws IOException {
+        final TimeStampRequestGenerator generator = new TimeStampRequestGenerator();
+        generator.setCertReq(true);
+        return generator.generate(TSPAlgorithms.SHA256, randomBytes(32), BigInteger.valueOf(SEED)).getEncoded();
+    }
+}
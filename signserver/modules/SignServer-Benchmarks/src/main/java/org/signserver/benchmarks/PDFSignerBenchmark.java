@@ -0,0 +1,70 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.signserver.module.pdfsigner.PDFSigner;
+
+/**
+ * Benchmarks signing of a PDF document with the PDFSigner.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class PDFSignerBenchmark {
+
+    /** No EC as the PDF signatures can only be created with RSA or DSA keys. */
+    @Param({"RSA2048", "RSA4096"})
+    public String keyType;
+
+    @Param({"1024", "65536", "1048576"})
+    public int size;
+
+    private SignerFixture fixture;
+    private byte[] data;
+
+    @Setup
+    public void setUp() throws Exception {
+        fixture = new SignerFixture(keyType, false);
+        data = BenchmarkData.pdf(size);
+        fixture.init(1, new PDFSigner(), fixture.createConfig("PDFSigner"), data);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    @Benchmark
+    public byte[] sign() throws Exception {
+        return fixture.process(data);
+    }
+}
@@ -0,0 +1,97 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.signserver.server.log.EjbcaPatternLogger;
+import org.signserver.server.log.PatternLogTemplate;
+
+/**
+ * Benchmarks rendering a log line with the pattern log template, as done by
+ * the pattern worker loggers for every request, compared to creating an
+ * EjbcaPatternLogger for each line as they did before.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class PatternLogTemplateBenchmark {
+
+    private static final Pattern PATTERN = Pattern.compile("\\$\\{(.+?)\\}");
+
+    private static final String ORDER = "AUDIT; LOG_ID: ${LOG_ID}; CLIENT_IP: ${CLIENT_IP}; "
+            + "RequestTime: ${LOG_TIME}; ResponseTime: ${REPLY_TIME}; CERT: ${CERT}; EXCEPTION: ${EXCEPTION}";
+
+    private static final String DATE_FORMAT = "yyyy-MM-dd:HH:mm:ss:z";
+
+    private static final String TIME_ZONE = "GMT";
+
+    private PatternLogTemplate template;
+    private Logger offLogger;
+    private Map<String, Object> fields;
+
+    @Setup
+    public void setUp() {
+        template = new PatternLogTemplate(PATTERN, ORDER, DATE_FORMAT, TIME_ZONE);
+        offLogger = Logger.getLogger(PatternLogTemplateBenchmark.class.getName() + ".off");
+        offLogger.setLevel(Level.OFF);
+        fields = new HashMap<>();
+        fields.put("LOG_ID", "4711");
+        fields.put("CLIENT_IP", "10.0.0.1");
+        for (int i = 0; i < 20; i++) {
+            fields.put("FIELD" + i, "value of field " + i);
+        }
+        fields.put("CERT", "MIIB...");
+    }
+
+    @Benchmark
+    public String render() {
+        return template.render(fields);
+    }
+
+    /**
+     * Renders the line like the pattern worker loggers did before the
+     * template was kept, with a logger that is off so that only the
+     * rendering is measured.
+     */
+    @Benchmark
+    public void renderWithPatternLogger() {
+        final EjbcaPatternLogger pl = new EjbcaPatternLogger(PATTERN.matcher(ORDER), ORDER, offLogger, DATE_FORMAT, TIME_ZONE, Level.INFO);
+        final Map<String, String> map = new HashMap<>();
+        for (final Map.Entry<String, Object> entry : fields.entrySet()) {
+            map.put(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        pl.putAll(map);
+        pl.writeln();
+        pl.flush();
+    }
+}
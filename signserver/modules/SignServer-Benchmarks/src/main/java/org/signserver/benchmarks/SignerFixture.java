@@ -0,0 +1,229 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.benchmarks;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.signserver.common.RequestContext;
+import org.signserver.common.WorkerConfig;
+import org.signserver.common.data.SignatureRequest;
+import org.signserver.common.data.SignatureResponse;
+import org.signserver.ejb.interfaces.GlobalConfigurationSessionLocal;
+import org.signserver.server.IProcessable;
+import org.signserver.server.IServices;
+import org.signserver.server.SignServerContext;
+import org.signserver.server.data.impl.CloseableReadableData;
+import org.signserver.server.data.impl.CloseableWritableData;
+import org.signserver.test.utils.builders.CertBuilder;
+import org.signserver.test.utils.builders.CertExt;
+import org.signserver.test.utils.builders.CryptoUtils;
+import org.signserver.test.utils.mock.GlobalConfigurationSessionMock;
+import org.signserver.test.utils.mock.KeyUsageCounterServiceMock;
+import org.signserver.test.utils.mock.MockedRequestContext;
+import org.signserver.test.utils.mock.MockedServicesImpl;
+import org.signserver.testutils.ModulesTestCase;
+
+/**
+ * Sets up a signer with a KeystoreCryptoToken using a newly generated key
+ * and self-signed certificate in a temporary PKCS#12 keystore, for use by
+ * the benchmarks.
+ *
+ * The key types are given as in the key type parameter of the benchmarks:
+ * RSA2048, RSA4096 or EC256.
+ *
+ * @version $Id$
+ */
+public class SignerFixture implements Closeable {
+
+    public static final String KEY_ALIAS = "signer00001";
+
+    private static final String KEYSTORE_PASSWORD = "foo123";
+
+    /** Not referenced as a class to not depend on the crypto token module. */
+    private static final String CRYPTOTOKEN_CLASSNAME =
+            "org.signserver.server.cryptotokens.KeystoreCryptoToken";
+
+    private final String keyType;
+    private final File directory;
+    private final File keystore;
+    private final KeyPair keyPair;
+    private final X509Certificate certificate;
+    private final IServices services;
+
+    private IProcessable signer;
+    private int workerId;
+
+    /**
+     * Generates the key and the keystore.
+     *
+     * @param keyType RSA2048, RSA4096 or EC256
+     * @param timeStamping if the certificate should have the critical
+     * extended key usage for time-stamping
+     * @throws Exception in case of failure
+     */
+    public SignerFixture(final String keyType, final boolean timeStamping) throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        this.keyType = keyType;
+        this.keyPair = generateKeyPair(keyType);
+
+        final CertBuilder builder = new CertBuilder()
+                .setSelfSignKeyPair(keyPair)
+                .setSignatureAlgorithm(getSignatureAlgorithm(keyType))
+                .setSubject("CN=Benchmark Signer " + keyType)
+                .setIssuer("CN=Benchmark Signer " + keyType)
+                .addExtension(new CertExt(Extension.keyUsage, true,
+                        new KeyUsage(KeyUsage.digitalSignature | KeyUsage.nonRepudiation)));
+        if (timeStamping) {
+            builder.addExtension(new CertExt(Extension.extendedKeyUsage, true,
+                    new ExtendedKeyUsage(KeyPurposeId.id_kp_timeStamping)));
+        }
+        this.certificate = new JcaX509CertificateConverter().getCertificate(builder.build());
+
+        this.directory = Files.createTempDirectory("signserver-benchmark").toFile();
+        this.keystore = new File(directory, "keystore.p12");
+        final KeyStore ks = KeyStore.getInstance("PKCS12", "BC");
+        ks.load(null, null);
+        ks.setKeyEntry(KEY_ALIAS, keyPair.getPrivate(), KEYSTORE_PASSWORD.toCharArray(),
+                new Certificate[] {certificate});
+        try (OutputStream out = new FileOutputStream(keystore)) {
+            ks.store(out, KEYSTORE_PASSWORD.toCharArray());
+        }
+
+        this.services = new MockedServicesImpl().with(GlobalConfigurationSessionLocal.class,
+                new GlobalConfigurationSessionMock());
+    }
+
+    private static KeyPair generateKeyPair(final String keyType) throws Exception {
+        switch (keyType) {
+            case "RSA2048":
+                return CryptoUtils.generateRSA(2048);
+            case "RSA4096":
+                return CryptoUtils.generateRSA(4096);
+            case "EC256":
+                return CryptoUtils.generateEcCurve("prime256v1");
+            default:
+                throw new IllegalArgumentException("Unsupported key type: " + keyType);
+        }
+    }
+
+    /**
+     * @param keyType RSA2048, RSA4096 or EC256
+     * @return signature algorithm to use with the key type
+     */
+    public static String getSignatureAlgorithm(final String keyType) {
+        return keyType.startsWith("EC") ? "SHA256withECDSA" : "SHA256withRSA";
+    }
+
+    /**
+     * Creates a worker configuration using the keystore and the signature
+     * algorithm matching the key.
+     *
+     * @param name of the worker
+     * @return the new configuration
+     */
+    public WorkerConfig createConfig(final String name) {
+        final WorkerConfig config = new WorkerConfig();
+        config.setProperty("NAME", name);
+        config.setProperty(WorkerConfig.TYPE, "PROCESSABLE");
+        config.setProperty("AUTHTYPE", "NOAUTH");
+        config.setProperty(WorkerConfig.CRYPTOTOKEN_IMPLEMENTATION_CLASS, CRYPTOTOKEN_CLASSNAME);
+        config.setProperty("KEYSTORETYPE", "PKCS12");
+        config.setProperty("KEYSTOREPATH", keystore.getAbsolutePath());
+        config.setProperty("KEYSTOREPASSWORD", KEYSTORE_PASSWORD);
+        config.setProperty("DEFAULTKEY", KEY_ALIAS);
+        config.setProperty("SIGNATUREALGORITHM", getSignatureAlgorithm(keyType));
+        return config;
+    }
+
+    /**
+     * Initializes the signer, checks that it has no fatal errors and
+     * processes one request to fail early in case of a misconfiguration.
+     *
+     * @param workerId ID of the worker
+     * @param signer to initialize
+     * @param config of the worker
+     * @param sample data to process once
+     * @throws Exception in case the request failed
+     */
+    public void init(final int workerId, final IProcessable signer, final WorkerConfig config,
+            final byte[] sample) throws Exception {
+        this.workerId = workerId;
+        this.signer = signer;
+        signer.init(workerId, config, new SignServerContext(null, new KeyUsageCounterServiceMock()), null);
+        final List<String> fatalErrors = signer.getStatus(Collections.<String>emptyList(), services).getFatalErrors();
+        if (!fatalErrors.isEmpty()) {
+            throw new IllegalStateException("Worker is misconfigured: " + fatalErrors);
+        }
+        if (process(sample).length == 0) {
+            throw new IllegalStateException("Empty response from " + signer);
+        }
+    }
+
+    /**
+     * Lets the signer process the data like the worker session would.
+     *
+     * @param data to process
+     * @return the response data
+     * @throws Exception in case the request failed
+     */
+    public byte[] process(final byte[] data) throws Exception {
+        final RequestContext requestContext = new MockedRequestContext(services);
+        requestContext.put(RequestContext.TRANSACTION_ID, "benchmark");
+        try (
+                CloseableReadableData requestData = ModulesTestCase.createRequestData(data);
+                CloseableWritableData responseData = ModulesTestCase.createResponseData(false)
+            ) {
+            final SignatureResponse response = (SignatureResponse) signer.processData(
+                    new SignatureRequest(workerId, requestData, responseData), requestContext);
+            if (response.getSignerCertificate() == null) {
+                throw new IllegalStateException("No signer certificate in response");
+            }
+            return responseData.toReadableData().getAsByteArray();
+        }
+    }
+
+    public X509Certificate getCertificate() {
+        return certificate;
+    }
+
+    public KeyPair getKeyPair() {
+        return keyPair;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void close() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+}
@@ -0,0 +1,77 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.signserver.common.WorkerConfig;
+import org.signserver.module.tsa.TimeStampSigner;
+
+/**
+ * Benchmarks time-stamping with the TimeStampSigner.
+ *
+ * The requests are always of the same size so there is only the key type
+ * and whether the token signature is verified to choose.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class TimeStampSignerBenchmark {
+
+    @Param({"RSA2048", "RSA4096", "EC256"})
+    public String keyType;
+
+    @Param({"true", "false"})
+    public boolean verifyTokenSignature;
+
+    private SignerFixture fixture;
+    private byte[] request;
+
+    @Setup
+    public void setUp() throws Exception {
+        fixture = new SignerFixture(keyType, true);
+        request = BenchmarkData.timeStampRequest();
+        final WorkerConfig config = fixture.createConfig("TimeStampSigner");
+        config.setProperty(TimeStampSigner.DEFAULTTSAPOLICYOID, "1.2.3");
+        config.setProperty(TimeStampSigner.ACCEPTANYPOLICY, "true");
+        config.setProperty(TimeStampSigner.VERIFY_TOKEN_SIGNATURE, String.valueOf(verifyTokenSignature));
+        fixture.init(1, new TimeStampSigner(), config, request);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    @Benchmark
+    public byte[] timeStamp() throws Exception {
+        return fixture.process(request);
+    }
+}
@@ -0,0 +1,117 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.security.KeyPair;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.cesecore.util.CertTools;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.signserver.common.GlobalConfiguration;
+import org.signserver.common.WorkerConfig;
+import org.signserver.test.utils.builders.CertBuilder;
+import org.signserver.test.utils.builders.CertExt;
+import org.signserver.test.utils.builders.CryptoUtils;
+
+/**
+ * Benchmarks getting the signer certificate and chain from the worker
+ * configuration, as done by the signers for every request, compared to
+ * parsing the PEM of the configuration each time.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class WorkerConfigBenchmark {
+
+    /** Number of certificates in the chain, including the signer certificate. */
+    @Param({"1", "3"})
+    public int chainLength;
+
+    private WorkerConfig config;
+    private String chainPEM;
+
+    @Setup
+    public void setUp() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        final List<Certificate> chain = new ArrayList<>();
+        KeyPair issuerKeyPair = CryptoUtils.generateRSA(2048);
+        String issuer = "CN=Benchmark CA 1";
+        for (int i = 1; i <= chainLength; i++) {
+            final boolean signer = i == chainLength;
+            final KeyPair keyPair = i == 1 ? issuerKeyPair : CryptoUtils.generateRSA(2048);
+            final String subject = signer ? "CN=Benchmark Signer" : "CN=Benchmark CA " + i;
+            final X509Certificate cert = new JcaX509CertificateConverter().getCertificate(new CertBuilder()
+                    .setIssuerPrivateKey(issuerKeyPair.getPrivate())
+                    .setSubjectPublicKey(keyPair.getPublic())
+                    .setIssuer(issuer)
+                    .setSubject(subject)
+                    .addExtension(new CertExt(Extension.basicConstraints, true,
+                            signer ? new BasicConstraints(false) : new BasicConstraints(true)))
+                    .build());
+            chain.add(0, cert);
+            issuerKeyPair = keyPair;
+            issuer = subject;
+        }
+
+        config = new WorkerConfig();
+        config.setSignerCertificate((X509Certificate) chain.get(0), GlobalConfiguration.SCOPE_GLOBAL);
+        config.setSignerCertificateChain(chain, GlobalConfiguration.SCOPE_GLOBAL);
+        chainPEM = new String(CertTools.getPEMFromCerts(chain));
+    }
+
+    @Benchmark
+    public X509Certificate getSignerCertificate() {
+        return config.getSignerCertificate();
+    }
+
+    @Benchmark
+    public List<Certificate> getSignerCertificateChain() {
+        return config.getSignerCertificateChain();
+    }
+
+    /**
+     * Parses the chain like the configuration did for every call before the
+     * parsed certificates were kept.
+     *
+     * @return the parsed chain
+     * @throws Exception in case of parse failure
+     */
+    @Benchmark
+    public List<Certificate> parseSignerCertificateChain() throws Exception {
+        return CertTools.getCertsFromPEM(new ByteArrayInputStream(chainPEM.getBytes()));
+    }
+}
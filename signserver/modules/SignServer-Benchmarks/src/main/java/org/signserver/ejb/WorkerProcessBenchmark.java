@@ -0,0 +1,158 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.signserver.benchmarks.BenchmarkData;
+import org.signserver.benchmarks.SignerFixture;
+import org.signserver.common.CertificateMatchingRule;
+import org.signserver.common.MatchIssuerWithType;
+import org.signserver.common.MatchSubjectWithType;
+import org.signserver.common.RequestContext;
+import org.signserver.common.SignServerConstants;
+import org.signserver.common.WorkerConfig;
+import org.signserver.common.WorkerIdentifier;
+import org.signserver.common.data.SignatureRequest;
+import org.signserver.ejb.interfaces.GlobalConfigurationSessionLocal;
+import org.signserver.ejb.worker.impl.FileBasedWorkerManager;
+import org.signserver.module.cmssigner.CMSSigner;
+import org.signserver.server.IServices;
+import org.signserver.server.KeyUsageCounterHash;
+import org.signserver.server.cesecore.util.CertTools;
+import org.signserver.server.data.impl.CloseableReadableData;
+import org.signserver.server.data.impl.CloseableWritableData;
+import org.signserver.server.entities.FileBasedKeyUsageCounterDataService;
+import org.signserver.server.entities.IKeyUsageCounterDataService;
+import org.signserver.server.log.AdminInfo;
+import org.signserver.server.nodb.FileBasedDatabaseManager;
+import org.signserver.test.utils.builders.CertBuilder;
+import org.signserver.test.utils.builders.CryptoUtils;
+import org.signserver.test.utils.mock.GlobalConfigurationSessionMock;
+import org.signserver.test.utils.mock.MockedRequestContext;
+import org.signserver.test.utils.mock.MockedServicesImpl;
+import org.signserver.testutils.ModulesTestCase;
+
+/**
+ * Benchmarks the overhead of the worker processing around the signer, i.e.
+ * authorization, worker logging and key usage counting, using the file based
+ * database.
+ *
+ * A CMSSigner with an RSA 2048 key signs 1 KiB so the results can be
+ * compared with the same case in the CMSSignerBenchmark.
+ *
+ * @version $Id$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class WorkerProcessBenchmark {
+
+    private static final int WORKER_ID = 1;
+    private static final WorkerIdentifier WORKER = new WorkerIdentifier(WORKER_ID);
+    private static final AdminInfo ADMIN_INFO = new AdminInfo("Client user", null, null);
+
+    @Param({"NOAUTH", "CLIENTCERT"})
+    public String authType;
+
+    /** Simple name of a worker logger in the org.signserver.server.log package. */
+    @Param({"NullWorkerLogger", "AllFieldsWorkerLogger", "PatternWorkerLogger"})
+    public String workerLogger;
+
+    @Param({"true", "false"})
+    public boolean disableKeyUsageCounter;
+
+    private SignerFixture fixture;
+    private WorkerProcessImpl processImpl;
+    private IServices services;
+    private X509Certificate clientCertificate;
+    private byte[] data;
+
+    @Setup
+    public void setUp() throws Exception {
+        fixture = new SignerFixture("RSA2048", false);
+        data = BenchmarkData.randomBytes(1024);
+
+        final File folder = new File(fixture.getDirectory(), "nodb");
+        if (!folder.mkdir()) {
+            throw new IOException("Unable to create " + folder);
+        }
+        final FileBasedDatabaseManager manager = new FileBasedDatabaseManager(folder);
+        manager.initialize();
+        final IKeyUsageCounterDataService keyUsageCounterDataService = new FileBasedKeyUsageCounterDataService(manager);
+        keyUsageCounterDataService.create(KeyUsageCounterHash.create(fixture.getCertificate().getPublicKey()));
+        final FileBasedWorkerManager workerManager = new FileBasedWorkerManager(manager, keyUsageCounterDataService);
+
+        final KeyPair clientKeyPair = CryptoUtils.generateRSA(2048);
+        clientCertificate = new JcaX509CertificateConverter().getCertificate(new CertBuilder()
+                .setSelfSignKeyPair(clientKeyPair)
+                .setSerialNumber(new BigInteger("4711"))
+                .setSubject("CN=Benchmark Client")
+                .setIssuer("CN=Benchmark Client")
+                .build());
+
+        final WorkerConfig config = fixture.createConfig("CMSSigner");
+        config.setProperty(WorkerConfig.IMPLEMENTATION_CLASS, CMSSigner.class.getName());
+        config.setProperty("AUTHTYPE", authType);
+        config.setProperty("WORKERLOGGER", "org.signserver.server.log." + workerLogger);
+        config.setProperty(SignServerConstants.DISABLEKEYUSAGECOUNTER, String.valueOf(disableKeyUsageCounter));
+        config.addAuthorizedClientGen2(new CertificateMatchingRule(MatchSubjectWithType.CERTIFICATE_SERIALNO,
+                MatchIssuerWithType.ISSUER_DN_BCSTYLE, clientCertificate.getSerialNumber().toString(16),
+                CertTools.stringToBCDNString(clientCertificate.getIssuerX500Principal().getName()), "Benchmark client"));
+        workerManager.getWorkerConfigService().setWorkerConfig(WORKER_ID, config);
+
+        processImpl = new WorkerProcessImpl(null, keyUsageCounterDataService, workerManager, null, null);
+        services = new MockedServicesImpl().with(GlobalConfigurationSessionLocal.class, new GlobalConfigurationSessionMock());
+
+        // Fail early in case of misconfiguration
+        process();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        fixture.close();
+    }
+
+    @Benchmark
+    public byte[] process() throws Exception {
+        final RequestContext requestContext = new MockedRequestContext(services);
+        requestContext.put(RequestContext.CLIENT_CERTIFICATE, clientCertificate);
+        try (
+                CloseableReadableData requestData = ModulesTestCase.createRequestData(data);
+                CloseableWritableData responseData = ModulesTestCase.createResponseData(false)
+            ) {
+            processImpl.process(ADMIN_INFO, WORKER, new SignatureRequest(WORKER_ID, requestData, responseData), requestContext);
+            return responseData.toReadableData().getAsByteArray();
+        }
+    }
+}
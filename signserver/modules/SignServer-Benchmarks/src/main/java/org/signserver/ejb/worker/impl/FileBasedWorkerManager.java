@@ -0,0 +1,97 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb.worker.impl;
+
+import java.util.List;
+import org.signserver.common.NoSuchWorkerException;
+import org.signserver.common.WorkerIdentifier;
+import org.signserver.common.WorkerType;
+import org.signserver.server.IWorker;
+import org.signserver.server.SignServerContext;
+import org.signserver.server.config.entities.FileBasedWorkerConfigDataService;
+import org.signserver.server.entities.IKeyUsageCounterDataService;
+import org.signserver.server.nodb.FileBasedDatabaseManager;
+
+/**
+ * Worker manager using a given file based database instead of the one
+ * configured at build time, for running the worker processing without an
+ * application server.
+ *
+ * @version $Id$
+ */
+public class FileBasedWorkerManager extends WorkerManagerSingletonBean {
+
+    private final FileBasedWorkerConfigDataService workerConfigService;
+    private final SignServerContext workerContext;
+    private final WorkerFactory workerFactory;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param manager of the initialized database
+     * @param keyUsageCounterDataService the key usage counters
+     */
+    public FileBasedWorkerManager(final FileBasedDatabaseManager manager,
+            final IKeyUsageCounterDataService keyUsageCounterDataService) {
+        this.workerConfigService = new FileBasedWorkerConfigDataService(manager);
+        this.workerContext = new SignServerContext(null, keyUsageCounterDataService);
+        this.workerFactory = new WorkerFactory(workerConfigService, workerContext);
+    }
+
+    /**
+     * @return the service for storing the worker configurations
+     */
+    public FileBasedWorkerConfigDataService getWorkerConfigService() {
+        return workerConfigService;
+    }
+
+    @Override
+    public IWorker getWorker(final WorkerIdentifier wi) throws NoSuchWorkerException {
+        return workerFactory.getWorker(wi);
+    }
+
+    @Override
+    public WorkerWithComponents getWorkerWithComponents(final WorkerIdentifier wi) throws NoSuchWorkerException {
+        return workerFactory.getWorkerWithComponents(wi, workerContext);
+    }
+
+    @Override
+    public void reloadWorker(final WorkerIdentifier wi) {
+        workerFactory.reloadWorker(wi);
+    }
+
+    @Override
+    public void flush() {
+        workerFactory.flush();
+    }
+
+    @Override
+    public List<Integer> getAllWorkerIDs() {
+        return workerConfigService.findAllIds();
+    }
+
+    @Override
+    public List<String> getAllWorkerNames() {
+        return workerConfigService.findAllNames();
+    }
+
+    @Override
+    public List<Integer> getAllWorkerIDs(final WorkerType workerType) {
+        return workerConfigService.findAllIds(workerType);
+    }
+
+    @Override
+    public void upgradeWorkerNames() {
+        workerConfigService.populateNameColumn();
+    }
+}
@@ -22,6 +22,8 @@ import java.util.LinkedList;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
 import javax.net.ssl.SSLSocketFactory;
 import javax.xml.namespace.QName;
 import javax.xml.ws.BindingProvider;
@@ -39,6 +41,7 @@ import org.signserver.client.clientws.DataResponse;
 import org.signserver.client.clientws.InternalServerException_Exception;
 import org.signserver.client.clientws.Metadata;
 import org.signserver.client.clientws.RequestFailedException_Exception;
+import org.signserver.client.clientws.StreamedDataResponse;
 import org.signserver.common.*;
 
 
@@ -56,6 +59,7 @@ public class ClientWSDocumentSigner extends AbstractDocumentSigner {
     private String workerName;
     private String pdfPassword;
     private Map<String, String> metadata;
+    private final boolean streaming;
 
     private final ClientWS signServer;
 
@@ -66,6 +70,22 @@ public class ClientWSDocumentSigner extends AbstractDocumentSigner {
             final String username, final String password, final String pdfPassword,
             final SSLSocketFactory socketFactory,
             final Map<String, String> metadata) {
+        this(host, port, servlet, workerName, useHTTPS, username, password,
+                pdfPassword, socketFactory, metadata, false);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param streaming true if the processDataStream operation should be
+     * used so that the data is sent and received as MTOM attachments without
+     * holding it all in memory
+     */
+    public ClientWSDocumentSigner(final String host, final int port,
+            final String servlet, final String workerName, final boolean useHTTPS,
+            final String username, final String password, final String pdfPassword,
+            final SSLSocketFactory socketFactory,
+            final Map<String, String> metadata, final boolean streaming) {
         final String url = (useHTTPS ? "https://" : "http://")
                 + host + ":" + port
                 + servlet;
@@ -92,6 +112,7 @@ public class ClientWSDocumentSigner extends AbstractDocumentSigner {
         this.workerName = workerName;
         this.pdfPassword = pdfPassword;
         this.metadata = metadata;
+        this.streaming = streaming;
         
         final BindingProvider bp = (BindingProvider) signServer;
         final Map<String, Object> requestContext = bp.getRequestContext();
@@ -162,24 +183,43 @@ public class ClientWSDocumentSigner extends AbstractDocumentSigner {
                 requestMetadata.add(fileNameMetadata);
             }
             
-            final DataResponse response = getWSPort().processData(workerName,
-                    requestMetadata, IOUtils.toByteArray(data));
+            if (streaming) {
+                final StreamedDataResponse response = getWSPort().processDataStream(workerName,
+                        requestMetadata, new DataHandler(new InputStreamDataSource(data)));
 
-            // Take stop time
-            final long estimatedTime = System.nanoTime() - startTime;
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(String.format("Got sign response with ID %d, "
+                            + "archive ID %s, "
+                            + "signed by signer with certificate:\n%s.",
+                            response.getRequestId(),
+                            response.getArchiveId(),
+                            response.getSignerCertificate() == null ? "(null)" : Base64.toBase64String(response.getSignerCertificate())));
+                }
 
-            if (LOG.isDebugEnabled()) {
-                LOG.debug(String.format("Got sign response with ID %d, "
-                        + "archive ID %s, signed data of length %d bytes "
-                        + "signed by signer with certificate:\n%s.",
-                        response.getRequestId(),
-                        response.getArchiveId(),
-                        response.getData().length,
-                        response.getSignerCertificate() == null ? "(null)" : Base64.toBase64String(response.getSignerCertificate())));
+                // Write the signed data
+                try (InputStream in = response.getData().getInputStream()) {
+                    IOUtils.copyLarge(in, out);
+                }
+            } else {
+                final DataResponse response = getWSPort().processData(workerName,
+                        requestMetadata, IOUtils.toByteArray(data));
+
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(String.format("Got sign response with ID %d, "
+                            + "archive ID %s, signed data of length %d bytes "
+                            + "signed by signer with certificate:\n%s.",
+                            response.getRequestId(),
+                            response.getArchiveId(),
+                            response.getData().length,
+                            response.getSignerCertificate() == null ? "(null)" : Base64.toBase64String(response.getSignerCertificate())));
+                }
+
+                // Write the signed data
+                out.write(response.getData());
             }
 
-            // Write the signed data
-            out.write(response.getData());
+            // Take stop time
+            final long estimatedTime = System.nanoTime() - startTime;
 
             LOG.info("Processing took "
                     + TimeUnit.NANOSECONDS.toMillis(estimatedTime) + " ms");
@@ -195,4 +235,34 @@ public class ClientWSDocumentSigner extends AbstractDocumentSigner {
     protected ClientWS getWSPort() {
         return signServer;
     }
+
+    /** Data source sending the request data from the input stream. */
+    private static class InputStreamDataSource implements DataSource {
+
+        private final InputStream in;
+
+        InputStreamDataSource(final InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return in;
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            throw new IOException("Not supported");
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/octet-stream";
+        }
+
+        @Override
+        public String getName() {
+            return "data";
+        }
+    }
 }
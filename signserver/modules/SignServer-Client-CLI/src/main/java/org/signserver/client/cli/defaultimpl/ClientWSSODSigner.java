@@ -15,6 +15,7 @@ package org.signserver.client.cli.defaultimpl;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.LinkedList;
 import java.util.Map;
@@ -35,6 +36,7 @@ import org.signserver.client.clientws.InternalServerException_Exception;
 import org.signserver.client.clientws.Metadata;
 import org.signserver.client.clientws.RequestFailedException_Exception;
 import org.signserver.client.clientws.SodRequest;
+import org.signserver.client.clientws.SodResponse;
 import org.signserver.common.CryptoTokenOfflineException;
 import org.signserver.common.IllegalRequestException;
 import org.signserver.common.SignServerException;
@@ -111,28 +113,8 @@ public class ClientWSSODSigner extends AbstractSODSigner {
             // Take start time
             final long startTime = System.nanoTime();
             
-            final SodRequest sodRequest = new SodRequest();
-            for (Map.Entry<Integer, byte[]> entry : dataGroups.entrySet()) {
-                DataGroup dg = new DataGroup();
-                dg.setId(entry.getKey());
-                dg.setValue(entry.getValue());
-                sodRequest.getDataGroup().add(dg);
-            }
-            
-            List<Metadata> requestMetadata = new LinkedList<>();
-            
-            if (metadata != null) {
-                for (final String key : metadata.keySet()) {
-                    final Metadata md = new Metadata();
-                    
-                    md.setName(key);
-                    md.setValue(metadata.get(key));
-                    requestMetadata.add(md);
-                }
-            }
-
             final DataResponse response = signServer.processSOD(workerName,
-                        requestMetadata, sodRequest);
+                        createRequestMetadata(), createSodRequest(dataGroups));
 
             // Take stop time
             final long estimatedTime = System.nanoTime() - startTime;
@@ -157,4 +139,81 @@ public class ClientWSSODSigner extends AbstractSODSigner {
         }
     }
 
+    /**
+     * Signs a batch of SODs in one request.
+     *
+     * @param batch data groups of each SOD
+     * @return the SODs in the same order as the data groups
+     */
+    public List<byte[]> signBatch(final List<Map<Integer, byte[]>> batch)
+            throws IllegalRequestException, CryptoTokenOfflineException,
+                SignServerException, IOException {
+        try {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Sending batch sign request "
+                        + " containing " + batch.size() + " SODs"
+                        + " to worker " + workerName);
+            }
+
+            // Take start time
+            final long startTime = System.nanoTime();
+
+            final List<SodRequest> sodRequests = new ArrayList<>(batch.size());
+            for (final Map<Integer, byte[]> dataGroups : batch) {
+                sodRequests.add(createSodRequest(dataGroups));
+            }
+
+            final List<SodResponse> responses = signServer.processSODBatch(workerName,
+                        createRequestMetadata(), sodRequests);
+            if (responses.size() != batch.size()) {
+                throw new SignServerException("Got " + responses.size()
+                        + " SODs for a batch of " + batch.size());
+            }
+
+            // Take stop time
+            final long estimatedTime = System.nanoTime() - startTime;
+
+            final List<byte[]> result = new ArrayList<>(responses.size());
+            for (final SodResponse response : responses) {
+                result.add(response.getData());
+            }
+
+            if (LOG.isInfoEnabled()) {
+                LOG.info("Processing of " + batch.size() + " SODs took "
+                    + TimeUnit.NANOSECONDS.toMillis(estimatedTime) + " ms");
+            }
+            return result;
+        } catch (InternalServerException_Exception ex) {
+            throw new SignServerException("Exception at server side: " + ex.getLocalizedMessage(), ex);
+        } catch (RequestFailedException_Exception ex) {
+            throw new IllegalRequestException("Client request failed: " + ex.getLocalizedMessage(), ex);
+        }
+    }
+
+    private static SodRequest createSodRequest(final Map<Integer, byte[]> dataGroups) {
+        final SodRequest sodRequest = new SodRequest();
+        for (Map.Entry<Integer, byte[]> entry : dataGroups.entrySet()) {
+            DataGroup dg = new DataGroup();
+            dg.setId(entry.getKey());
+            dg.setValue(entry.getValue());
+            sodRequest.getDataGroup().add(dg);
+        }
+        return sodRequest;
+    }
+
+    private List<Metadata> createRequestMetadata() {
+        List<Metadata> requestMetadata = new LinkedList<>();
+        
+        if (metadata != null) {
+            for (final String key : metadata.keySet()) {
+                final Metadata md = new Metadata();
+                
+                md.setName(key);
+                md.setValue(metadata.get(key));
+                requestMetadata.add(md);
+            }
+        }
+        return requestMetadata;
+    }
+
 }
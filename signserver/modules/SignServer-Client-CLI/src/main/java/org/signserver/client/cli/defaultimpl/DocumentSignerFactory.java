@@ -48,7 +48,7 @@ public class DocumentSignerFactory {
     /**
      * Create a signer factory given command invocation parameters.
      * 
-     * @param protocol Request protococl (HTTP, CLIENTWS, or WEBSERVICES)
+     * @param protocol Request protococl (HTTP, CLIENTWS, CLIENTWS_STREAMING or WEBSERVICES)
      * @param keyStoreOptions Options for client certificate keystore
      * @param host Servlet host
      * @param servlet Servlet enpoint
@@ -197,6 +197,26 @@ public class DocumentSignerFactory {
                     pdfPassword, sf, metadata);
                 break;
             }
+            case CLIENTWS_STREAMING: {
+                LOG.debug("Using ClientWS with streaming as procotol");
+
+                final String workerIdOrName;
+                if (workerId == 0) {
+                    workerIdOrName = workerName;
+                } else {
+                    workerIdOrName = String.valueOf(workerId);
+                }
+
+                signer = new ClientWSDocumentSigner(
+                    host,
+                    port,
+                    servlet,
+                    workerIdOrName,
+                    keyStoreOptions.isUseHTTPS(),
+                    username, currentPassword,
+                    pdfPassword, sf, metadata, true);
+                break;
+            }
             case HTTP:
             default: {
                 LOG.debug("Using HTTP as procotol");
@@ -0,0 +1,129 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.client.cli.defaultimpl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.log4j.Logger;
+
+/**
+ * Walks the input directory and hands each file to the TransferManager as it
+ * is found, instead of listing all files up front.
+ *
+ * The walk is done in the thread calling walk() and blocks whenever the work
+ * queue of the TransferManager is full. Files completed according to the
+ * journal of an earlier run are skipped.
+ *
+ * @version $Id$
+ */
+public class InputDirectoryWalker {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(InputDirectoryWalker.class);
+
+    private final File inDir;
+    private final boolean recursive;
+    private final Set<Path> excluded = new HashSet<>();
+    private final TransferJournal journal;
+
+    /**
+     * Constructs a new instance of InputDirectoryWalker.
+     *
+     * @param inDir directory to walk
+     * @param recursive if sub directories should be walked as well
+     * @param excluded files or directories to never give out, for instance
+     * the output directory and the journal
+     * @param journal of completed files to skip or null
+     */
+    public InputDirectoryWalker(final File inDir, final boolean recursive,
+            final Collection<File> excluded, final TransferJournal journal) {
+        this.inDir = inDir;
+        this.recursive = recursive;
+        for (final File file : excluded) {
+            if (file != null) {
+                this.excluded.add(file.getAbsoluteFile().toPath().normalize());
+            }
+        }
+        this.journal = journal;
+    }
+
+    /**
+     * Walks the directory, giving the files to the manager.
+     *
+     * @param manager to give the files to
+     * @throws IOException in case the input directory could not be read
+     */
+    public void walk(final TransferManager manager) throws IOException {
+        final Path start = inDir.getAbsoluteFile().toPath().normalize();
+        Files.walkFileTree(start, EnumSet.noneOf(FileVisitOption.class), recursive ? Integer.MAX_VALUE : 1, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                if (excluded.contains(dir)) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Skipping excluded directory: " + dir);
+                    }
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return manager.isAborted() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path path, final BasicFileAttributes attrs) {
+                if (attrs.isDirectory()) {
+                    // Only at the maximum depth, ie when not recursive
+                    LOG.warn("Skipping directory: " + path.getFileName());
+                    return FileVisitResult.CONTINUE;
+                }
+                if (excluded.contains(path)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                final File file = path.toFile();
+                if (journal != null && journal.isCompleted(file)) {
+                    manager.registerSkipped();
+                    return FileVisitResult.CONTINUE;
+                }
+                return manager.addFile(file) ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path path, final IOException ex) throws IOException {
+                if (path.equals(start)) {
+                    // Can not read the input directory at all
+                    throw ex;
+                }
+                LOG.error("Unable to read " + path + ": " + ex.getMessage());
+                manager.registerUnreadable();
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException ex) {
+                if (ex != null) {
+                    LOG.error("Unable to read all of directory " + dir + ": " + ex.getMessage());
+                    manager.registerUnreadable();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
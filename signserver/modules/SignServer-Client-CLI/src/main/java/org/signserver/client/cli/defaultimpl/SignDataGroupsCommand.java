@@ -17,8 +17,11 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.nio.charset.StandardCharsets;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
 import javax.net.ssl.HttpsURLConnection;
@@ -90,6 +93,12 @@ public class SignDataGroupsCommand extends AbstractCommand {
     /** Option METADATA. */
     public static final String METADATA = "metadata";
 
+    /** Option BATCHFILE. */
+    public static final String BATCHFILE = "batchfile";
+
+    /** Option OUTDIR. */
+    public static final String OUTDIR = "outdir";
+
     /** The command line options. */
     private static final Options OPTIONS;
     
@@ -129,6 +138,10 @@ public class SignDataGroupsCommand extends AbstractCommand {
         OPTIONS.addOption(REPEAT, true, TEXTS.getString("REPEAT_DESCRIPTION"));
         OPTIONS.addOption(METADATA, true,
                 TEXTS.getString("METADATA_DESCRIPTION"));
+        OPTIONS.addOption(BATCHFILE, true,
+                TEXTS.getString("BATCHFILE_SOD_DESCRIPTION"));
+        OPTIONS.addOption(OUTDIR, true,
+                TEXTS.getString("OUTDIR_SOD_DESCRIPTION"));
         for (Option option : KeyStoreOptions.getKeyStoreOptions()) {
             OPTIONS.addOption(option);
         }
@@ -174,6 +187,15 @@ public class SignDataGroupsCommand extends AbstractCommand {
 
     private Map<String, String> metadata;
 
+    /** File with the data groups of one SOD per line to sign as a batch. */
+    private File batchFile;
+
+    /** Directory to write the SODs of the batch to. */
+    private File outDir;
+
+    /** Data groups of each SOD in the batch. */
+    private List<Map<Integer, byte[]>> batchDataGroups;
+
     @Override
     public String getDescription() {
         return "Request MRTD data groups to be signed";
@@ -186,7 +208,8 @@ public class SignDataGroupsCommand extends AbstractCommand {
                 .append("Sample usages:").append(NL)
                 .append("a) ").append(COMMAND).append(" -workername MRTDSODSigner -data \"1=value1&2=value2&3=value3\"").append(NL)
                 .append("b) ").append(COMMAND).append(" -workername MRTDSODSigner -data \"1=PJaDAX+eS/M9D77dJr8UP9ct6bndFFRBt18GBAR+oo4=&2=BTfUgfc6dXM0MoBS2jr5YmztlwKOILhJ9hFcIs12UZc=&3=idxq5/Bqn0a1Za8D6rDs4L9gJNNlm346HQNXPP6wtZ0=\"").append(NL)
-                .append("c) ").append(COMMAND).append(" -workername MRTDSODSigner -data \"1=value1&2=value2&3=value3\" -metadata param1=value1 -metadata param2=value2").append(NL);
+                .append("c) ").append(COMMAND).append(" -workername MRTDSODSigner -data \"1=value1&2=value2&3=value3\" -metadata param1=value1 -metadata param2=value2").append(NL)
+                .append("d) ").append(COMMAND).append(" -workername MRTDSODSigner -protocol CLIENTWS -batchfile /tmp/datagroups.txt -outdir /tmp/sods").append(NL);
         ByteArrayOutputStream bout = new ByteArrayOutputStream();
         final HelpFormatter formatter = new HelpFormatter();
         try (PrintWriter pw = new PrintWriter(bout)) {
@@ -221,18 +244,25 @@ public class SignDataGroupsCommand extends AbstractCommand {
         }
         if (line.hasOption(DATA)) {
             data = line.getOptionValue(DATA, "");
-
-            dataGroups = new HashMap<>();
-
-            final String[] groups = data.split("\\&");
-            for(final String group : groups) {
-                final String[] entry = group.split("=", 2);
-                if (entry.length != 2) {
-                    throw new IllegalCommandArgumentsException("Malformed data group argument: " + group);
+            dataGroups = parseDataGroups(data);
+        }
+        if (line.hasOption(BATCHFILE)) {
+            batchFile = new File(line.getOptionValue(BATCHFILE, null));
+            batchDataGroups = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(batchFile), StandardCharsets.UTF_8))) {
+                String batchLine;
+                while ((batchLine = reader.readLine()) != null) {
+                    if (!batchLine.trim().isEmpty()) {
+                        batchDataGroups.add(parseDataGroups(batchLine.trim()));
+                    }
                 }
-                dataGroups.put(new Integer(entry[0]), entry[1].getBytes());
+            } catch (IOException ex) {
+                throw new IllegalCommandArgumentsException("Failed to read batch file: " + ex.getLocalizedMessage());
             }
         }
+        if (line.hasOption(OUTDIR)) {
+            outDir = new File(line.getOptionValue(OUTDIR, null));
+        }
         if (line.hasOption(PROTOCOL)) {
             protocol = Protocol.valueOf(line.getOptionValue(
                     PROTOCOL, null));
@@ -274,6 +304,23 @@ public class SignDataGroupsCommand extends AbstractCommand {
         }
     }
     
+    /**
+     * Parses data groups given in the form "1=value1&2=value2".
+     */
+    private static Map<Integer, byte[]> parseDataGroups(final String data) throws IllegalCommandArgumentsException {
+        final Map<Integer, byte[]> result = new HashMap<>();
+
+        final String[] groups = data.split("\\&");
+        for(final String group : groups) {
+            final String[] entry = group.split("=", 2);
+            if (entry.length != 2) {
+                throw new IllegalCommandArgumentsException("Malformed data group argument: " + group);
+            }
+            result.put(new Integer(entry[0]), entry[1].getBytes());
+        }
+        return result;
+    }
+
     /**
      * @return a ConsolePasswordReader that can be used to read passwords
      */
@@ -288,8 +335,26 @@ public class SignDataGroupsCommand extends AbstractCommand {
         if (workerName == null && workerId == 0) {
             throw new ParseException(
                     "Missing -workername or -workerid");
-        } else if (data == null) {
-            throw new ParseException("Missing -data");
+        } else if (data == null && batchFile == null) {
+            throw new ParseException("Missing -data or -batchfile");
+        } else if (data != null && batchFile != null) {
+            throw new ParseException("Can not specify both -data and -batchfile");
+        }
+        if (batchFile != null) {
+            if (outDir == null) {
+                throw new ParseException("Missing -outdir");
+            }
+            if (!Protocol.CLIENTWS.equals(protocol)) {
+                throw new ParseException("Option -batchfile is only supported with protocol CLIENTWS");
+            }
+            if (batchDataGroups.isEmpty()) {
+                throw new ParseException("No data groups in batch file");
+            }
+            if (repeat != 1) {
+                throw new ParseException("Option -repeat can not be combined with -batchfile");
+            }
+        } else if (outDir != null) {
+            throw new ParseException("Option -outdir requires -batchfile");
         }
         keyStoreOptions.validateOptions();
     }
@@ -373,6 +438,11 @@ public class SignDataGroupsCommand extends AbstractCommand {
         } catch (MalformedURLException ex) {
             throw new IllegalCommandArgumentsException("Malformed URL: " + ex.getMessage());
         }
+
+        if (batchDataGroups != null) {
+            runBatch((ClientWSSODSigner) signer);
+            return;
+        }
         
         for(int i = 0; i < NUM_WORKERS; i++) {
             workers[i] = new Worker("Worker " + i, signer,
@@ -417,6 +487,28 @@ public class SignDataGroupsCommand extends AbstractCommand {
         System.err.println("Done");
     }
 
+    /**
+     * Signs all SODs of the batch file in one request and writes them to the
+     * output directory, named after their position in the batch.
+     */
+    private void runBatch(final ClientWSSODSigner signer) throws CommandFailureException {
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            throw new CommandFailureException("Unable to create output directory: " + outDir.getAbsolutePath());
+        }
+        try {
+            final List<byte[]> sods = signer.signBatch(batchDataGroups);
+            for (int i = 0; i < sods.size(); i++) {
+                try (OutputStream fileOut = new FileOutputStream(new File(outDir, (i + 1) + ".sod"))) {
+                    fileOut.write(sods.get(i));
+                }
+            }
+            System.err.println("Wrote " + sods.size() + " SODs to " + outDir.getAbsolutePath());
+        } catch (IOException | IllegalRequestException | CryptoTokenOfflineException | SignServerException ex) {
+            LOG.error("Failed", ex);
+            throw new CommandFailureException(ex.getMessage(), ClientCLI.RETURN_ERROR);
+        }
+    }
+
     @Override
     public int execute(String... args) throws IllegalCommandArgumentsException, CommandFailureException {
         try {
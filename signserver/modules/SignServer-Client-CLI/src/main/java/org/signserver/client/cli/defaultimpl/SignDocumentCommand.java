@@ -70,6 +70,7 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
             "org/signserver/client/cli/defaultimpl/ResourceBundle");
 
     private static final String DEFAULT_CLIENTWS_WSDL_URL = "/signserver/ClientWSService/ClientWS?wsdl";
+    private static final String DEFAULT_CLIENTWS_STREAMING_WSDL_URL = "/signserver/ClientWSService/MTOMClientWS?wsdl";
     
     /** System-specific new line characters. **/
     private static final String NL = System.getProperty("line.separator");
@@ -116,6 +117,15 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
     /** Option STARTALL. */
     public static final String STARTALL = "startall";
 
+    /** Option RECURSIVE. */
+    public static final String RECURSIVE = "recursive";
+
+    /** Option JOURNAL. */
+    public static final String JOURNAL = "journal";
+
+    /** Option PROGRESS. */
+    public static final String PROGRESS = "progress";
+
     /** Option PORT. */
     public static final String PORT = "port";
 
@@ -162,6 +172,9 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
 
     private static final int DEFAULT_THREADS = 1;
 
+    /** Number of files queued ahead of each thread in batch mode. */
+    private static final int QUEUED_FILES_PER_THREAD = 10;
+
     /**
      * Protocols that can be used for accessing SignServer.
      */
@@ -172,6 +185,9 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
         /** The ClientWS interface. */
         CLIENTWS,
 
+        /** The ClientWS interface with the data streamed as MTOM attachments. */
+        CLIENTWS_STREAMING,
+
         /** The HTTP interface. */
         HTTP
     }
@@ -220,6 +236,12 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
                 TEXTS.getString("ONEFIRST_DESCRIPTION"));
         OPTIONS.addOption(STARTALL, false,
                 TEXTS.getString("STARTALL_DESCRIPTION"));
+        OPTIONS.addOption(RECURSIVE, false,
+                TEXTS.getString("RECURSIVE_DESCRIPTION"));
+        OPTIONS.addOption(JOURNAL, true,
+                TEXTS.getString("JOURNAL_DESCRIPTION"));
+        OPTIONS.addOption(PROGRESS, true,
+                TEXTS.getString("PROGRESS_DESCRIPTION"));
         OPTIONS.addOption(CLIENTSIDE, false,
                 TEXTS.getString("CLIENTSIDE_DESCRIPTION"));
         OPTIONS.addOption(DIGESTALGORITHM, true,
@@ -283,6 +305,15 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
     /** If all should be started directly (ie not oneFirst). */
     private boolean startAll;
 
+    /** If files in sub directories of indir should be processed as well. */
+    private boolean recursive;
+
+    /** File to record completed files in, for resuming batch mode. */
+    private File journalFile;
+
+    /** Seconds between progress reports in batch mode or null. */
+    private Integer progressInterval;
+
     /** Protocol to use for contacting SignServer. */
     private Protocol protocol = Protocol.HTTP;
 
@@ -333,6 +364,7 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
             .append("g) ").append(COMMAND).append(" -workerid 3 -indir ./input/ -outdir ./output/ -threads 5 -hosts primaryhost,secondaryhost").append(NL)
             .append("h) ").append(COMMAND).append(" -workerid 3 -indir ./input/ -outdir ./output/ -threads 5 -hosts primaryhost,secondaryhost,otherhost -timeout 5000").append(NL)
             .append("i) ").append(COMMAND).append(" -workerid 3 -indir ./input/ -outdir ./output/ -threads 5 -hosts host1,host2,host3 -loadbalancing ROUND_ROBIN -timeout 5000").append(NL)
+            .append("j) ").append(COMMAND).append(" -workerid 3 -indir ./input/ -outdir ./output/ -threads 10 -recursive -journal ./signed.journal -progress 30").append(NL)
             .append("j) ").append(COMMAND).append(" -workerid 2 -data \"<root/>\" -keystoretype PKCS11 -keystore libcryptoki.so").append(NL)
             .append("k) ").append(COMMAND).append(" -workerid 2 -data \"<root/>\" -keystoretype PKCS11 -keystore libcryptoki.so -keyaliasprompt").append(NL)
             .append("l) ").append(COMMAND).append(" -workerid 2 -data \"<root/>\" -keystoretype PKCS11 -keystore libcryptoki.so -keyalias admin3").append(NL)
@@ -410,6 +442,15 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
         if (line.hasOption(STARTALL)) {
             startAll = true;
         }
+        if (line.hasOption(RECURSIVE)) {
+            recursive = true;
+        }
+        if (line.hasOption(JOURNAL)) {
+            journalFile = new File(line.getOptionValue(JOURNAL, null));
+        }
+        if (line.hasOption(PROGRESS)) {
+            progressInterval = Integer.parseInt(line.getOptionValue(PROGRESS, null));
+        }
         if (line.hasOption(PROTOCOL)) {
             protocol = Protocol.valueOf(line.getOptionValue(
                     PROTOCOL, null));
@@ -424,6 +465,10 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
             	!line.hasOption(SERVLET)) {
             	servlet = DEFAULT_CLIENTWS_WSDL_URL;
             }
+            if (Protocol.CLIENTWS_STREAMING.equals(protocol) &&
+            	!line.hasOption(SERVLET)) {
+            	servlet = DEFAULT_CLIENTWS_STREAMING_WSDL_URL;
+            }
         }
         if (line.hasOption(USERNAME)) {
             username = line.getOptionValue(USERNAME, null);
@@ -569,6 +614,14 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
         if ((startAll || oneFirst) && (inDir == null)) {
             throw new IllegalCommandArgumentsException("The options -onefirst and -startall only supported in batch mode. Specify -indir.");
         }
+
+        if ((recursive || journalFile != null || progressInterval != null) && (inDir == null)) {
+            throw new IllegalCommandArgumentsException("The options -recursive, -journal and -progress only supported in batch mode. Specify -indir.");
+        }
+
+        if (progressInterval != null && progressInterval < 1) {
+            throw new IllegalCommandArgumentsException("Progress interval must be > 0");
+        }
         
         // Default to use oneFirst if username is specified and not startall
         if(!startAll && username != null) {
@@ -857,6 +910,9 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
             }
             if (manager != null) {
                 manager.registerSuccess(); // Login must have worked
+                if (success) {
+                    manager.registerCompleted(inFile);
+                }
             }
         } catch (FileNotFoundException ex) {
             LOG.error("Failure for " + (inFile == null ? "" : inFile.getName()) + ": " + MessageFormat.format(TEXTS.getString("FILE_NOT_FOUND:"),
@@ -1070,72 +1126,12 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
                 }
             } else if(inDir != null) {
                 LOG.debug("Will request for each file in directory " + inDir);
-                File[] inFiles = inDir.listFiles(new FileFilter() {
-                    @Override
-                    public boolean accept(File file) {
-                        if (file.isDirectory()) {
-                            LOG.warn("Skipping directory: " + file.getName());
-                            return false;
-                        }
-                        return true;
-                    }
-                });
-                if (inFiles == null || inFiles.length == 0) {
-                    LOG.error("No input files");
-                    return 1;
-                }
-                final TransferManager producer = new TransferManager(inFiles, username, password, this, out, oneFirst);
-                
                 if (threads == null) {
                     threads = DEFAULT_THREADS;
                 }
-                final int threadCount = threads > inFiles.length ? inFiles.length : threads;
-                final ArrayList<TransferThread> consumers = new ArrayList<>();
-                
-                final Thread.UncaughtExceptionHandler handler = new Thread.UncaughtExceptionHandler() {
-                    @Override
-                    public void uncaughtException(Thread t, Throwable e) {                        
-                        LOG.error("Unexpected failure in thread " + t.getName() + ". Aborting.", e);
-                        producer.abort();
-                    }
-                };
-                
-                for (int i = 0; i < threadCount; i++) {
-                    final TransferThread t = new TransferThread(i, producer, hostsManager);
-                    t.setUncaughtExceptionHandler(handler);
-                    consumers.add(t);
-                }
-                
-                // Start the threads
-                for (TransferThread consumer : consumers) {
-                    consumer.start();
-                }
-                
-                // Wait for the threads to finish
-                try {
-                    for (TransferThread w : consumers) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Waiting for thread " + w.getName());
-                        }
-                        w.join();
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Thread " + w.getName() + " stopped");
-                        }
-                    }
-                } catch (InterruptedException ex) {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Interupted when waiting for thread: " + ex.getMessage());
-                    }
-                }
-                
-                if (producer.isAborted()) {
-                    throw new CommandFailureException("Aborted due to failure.");
-                }
-                
-                if (producer.hasFailures()) {
-                    throw new CommandFailureException("At least one file failed.");
+                if (!runDirectory()) {
+                    return 1;
                 }
-                
             } else {
                 LOG.debug("Will requst for the specified data");
                 if (!runBatch(null, null, outFile)) {
@@ -1149,6 +1145,115 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
         }
     }
     
+    /**
+     * Signs the files in the input directory using the configured number of
+     * threads, while the directory is walked in a separate thread.
+     *
+     * @return false if there were no input files
+     */
+    private boolean runDirectory() throws IllegalCommandArgumentsException, CommandFailureException {
+        if (!inDir.isDirectory()) {
+            throw new IllegalCommandArgumentsException("No such directory: " + inDir);
+        }
+
+        TransferJournal journal = null;
+        try {
+            if (journalFile != null) {
+                journal = TransferJournal.open(journalFile, inDir);
+            }
+            final TransferManager producer = new TransferManager(threads * QUEUED_FILES_PER_THREAD, journal, username, password, this, out, oneFirst);
+            producer.startWalker(new InputDirectoryWalker(inDir, recursive, Arrays.asList(outDir, journalFile), journal));
+
+            final ArrayList<TransferThread> consumers = new ArrayList<>();
+
+            final Thread.UncaughtExceptionHandler handler = new Thread.UncaughtExceptionHandler() {
+                @Override
+                public void uncaughtException(Thread t, Throwable e) {                        
+                    LOG.error("Unexpected failure in thread " + t.getName() + ". Aborting.", e);
+                    producer.abort();
+                }
+            };
+
+            for (int i = 0; i < threads; i++) {
+                final TransferThread t = new TransferThread(i, producer, hostsManager);
+                t.setUncaughtExceptionHandler(handler);
+                consumers.add(t);
+            }
+
+            // Start the threads
+            for (TransferThread consumer : consumers) {
+                consumer.start();
+            }
+
+            // Wait for the threads to finish, reporting the progress meanwhile
+            try {
+                for (TransferThread w : consumers) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Waiting for thread " + w.getName());
+                    }
+                    if (progressInterval == null) {
+                        w.join();
+                    } else {
+                        while (w.isAlive()) {
+                            w.join(TimeUnit.SECONDS.toMillis(progressInterval));
+                            if (w.isAlive()) {
+                                LOG.info("Progress: " + producer.getSummary(System.currentTimeMillis()));
+                            }
+                        }
+                    }
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Thread " + w.getName() + " stopped");
+                    }
+                }
+            } catch (InterruptedException ex) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Interupted when waiting for thread: " + ex.getMessage());
+                }
+            }
+
+            LOG.info("Done: " + producer.getSummary(System.currentTimeMillis()));
+
+            if (producer.isAborted()) {
+                throw new CommandFailureException("Aborted due to failure.");
+            }
+
+            if (producer.hasFailures()) {
+                throw new CommandFailureException("At least one file failed.");
+            }
+
+            if (producer.getFoundCount() == 0 && producer.getSkippedCount() == 0) {
+                LOG.error("No input files");
+                return false;
+            }
+            return true;
+        } catch (IOException ex) {
+            throw new CommandFailureException("Unable to use journal " + journalFile + ": " + ex.getMessage());
+        } finally {
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException ex) {
+                    LOG.error("Unable to close journal " + journalFile + ": " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @param inFile file in the input directory
+     * @return the file to write the result to, at the same relative path in
+     * the output directory
+     */
+    private File getOutputFile(final File inFile) {
+        final String relative = inDir.getAbsoluteFile().toPath().relativize(inFile.getAbsoluteFile().toPath()).toString();
+        final File result = new File(outDir, relative);
+        final File parent = result.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            LOG.error("Could not create directory " + parent);
+        }
+        return result;
+    }
+
     /**
      * Thread for running the upload/download of the data.
      */
@@ -1175,7 +1280,7 @@ public class SignDocumentCommand extends AbstractCommand implements ConsolePassw
                 if (LOG.isInfoEnabled()) {
                     LOG.info("Sending " + file + "...");
                 }
-                runBatch(producer, file, new File(outDir, file.getName()));
+                runBatch(producer, file, getOutputFile(file));
             }
             if (LOG.isTraceEnabled()) {
                 LOG.trace(id + ": No more work.");
@@ -0,0 +1,153 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.client.cli.defaultimpl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.log4j.Logger;
+
+/**
+ * Journal of the input files successfully processed in batch mode, used for
+ * resuming an interrupted run by skipping the files already signed.
+ *
+ * The journal is a text file with the path of each completed file, relative
+ * to the input directory, on its own line. Entries are flushed as they are
+ * written so that at most the last line is lost if the process is killed.
+ * An incomplete last line is removed when the journal is opened.
+ *
+ * @version $Id$
+ */
+public class TransferJournal implements Closeable {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(TransferJournal.class);
+
+    private final File file;
+    private final Path baseDirectory;
+    private final Set<String> completed;
+    private final BufferedWriter writer;
+
+    private TransferJournal(final File file, final Path baseDirectory,
+            final Set<String> completed, final BufferedWriter writer) {
+        this.file = file;
+        this.baseDirectory = baseDirectory;
+        this.completed = completed;
+        this.writer = writer;
+    }
+
+    /**
+     * Opens the journal file, reading the entries of any earlier run.
+     *
+     * @param file journal file, created if it does not exist
+     * @param baseDirectory input directory the entries are relative to
+     * @return the journal
+     * @throws IOException in case the journal could not be read or opened for writing
+     */
+    public static TransferJournal open(final File file, final File baseDirectory) throws IOException {
+        final Set<String> completed = new HashSet<>();
+
+        if (file.exists()) {
+            removeIncompleteEntry(file);
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        completed.add(line);
+                    }
+                }
+            }
+            LOG.info("Journal " + file + " contains " + completed.size() + " completed files");
+        }
+
+        final BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return new TransferJournal(file, baseDirectory.getAbsoluteFile().toPath(), completed, writer);
+    }
+
+    /**
+     * Truncates the journal after the last complete line.
+     */
+    private static void removeIncompleteEntry(final File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long position = raf.length();
+            while (position > 0) {
+                raf.seek(position - 1);
+                if (raf.read() == '\n') {
+                    break;
+                }
+                position--;
+            }
+            if (position < raf.length()) {
+                LOG.warn("Ignoring incomplete last entry in journal " + file);
+                raf.setLength(position);
+            }
+        }
+    }
+
+    /**
+     * @param file input file
+     * @return the name of the file in the journal
+     */
+    private String entryOf(final File file) {
+        return baseDirectory.relativize(file.getAbsoluteFile().toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * @param file input file
+     * @return true if the file was completed in an earlier run
+     */
+    public boolean isCompleted(final File file) {
+        return completed.contains(entryOf(file));
+    }
+
+    /**
+     * Records that the file has been successfully processed.
+     *
+     * @param file input file
+     * @throws IOException in case the journal could not be written
+     */
+    public synchronized void completed(final File file) throws IOException {
+        writer.write(entryOf(file));
+        writer.newLine();
+        writer.flush();
+    }
+
+    /**
+     * @return the journal file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return number of files completed in earlier runs
+     */
+    public int getPreviouslyCompletedCount() {
+        return completed.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -15,8 +15,11 @@ package org.signserver.client.cli.defaultimpl;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.log4j.Logger;
 import org.signserver.cli.spi.CommandFailureException;
 
@@ -25,6 +28,10 @@ import org.signserver.cli.spi.CommandFailureException;
  * 
  * All accessible methods in this file handles concurrency and are thread-safe.
  *
+ * The files are produced by an InputDirectoryWalker running in its own thread
+ * and handed to the transfer threads through a bounded queue, so the walker
+ * never gets more than the size of the queue ahead of the transfer threads.
+ *
  * @author Markus Kilås
  * @version $Id$
  */
@@ -32,8 +39,20 @@ public class TransferManager {
     /** Logger for this class. */
     private static final Logger LOG = Logger.getLogger(TransferManager.class);
 
+    /** Time to wait for the queue before checking if the walk is done. */
+    private static final long POLL_INTERVAL = 100;
+
     /** Queue of files to process. */
-    private final LinkedList<File> files = new LinkedList<>();
+    private final BlockingQueue<File> files;
+
+    /** Files to process again, taken before the ones in the queue. */
+    private final LinkedList<File> retries = new LinkedList<>();
+
+    /** Journal to record the completed files in or null. */
+    private final TransferJournal journal;
+
+    /** Flag if all files have been added to the queue. */
+    private volatile boolean walkDone;
     
     /** The username (if password auth). */
     private final String username;
@@ -71,17 +90,34 @@ public class TransferManager {
     /** Number of successful files. */
     private int success;
 
+    /** Number of files found by the walker. */
+    private final AtomicLong found = new AtomicLong();
+
+    /** Number of files skipped as completed in an earlier run. */
+    private final AtomicLong skipped = new AtomicLong();
+
+    /** Number of completed files. */
+    private final AtomicLong completed = new AtomicLong();
+
+    /** Number of failures. */
+    private final AtomicLong failures = new AtomicLong();
+
+    /** Time the processing started. */
+    private final long startTime = System.currentTimeMillis();
+
     /**
      * Constructs a new instance of TransferManager.
-     * @param inFiles to work on.
+     * @param queueSize maximum number of files queued ahead of the threads
+     * @param journal to record completed files in or null
      * @param username if password auth is used
      * @param password to try to use
      * @param passwordProvider for creating a console password reader if the password auth fails
      * @param out output stream to use when asking for correct password
      * @param oneFirst if the first attempt should be done from a single thread
      */
-    public TransferManager(File[] inFiles, String username, String password, ConsolePasswordProvider passwordProvider, PrintStream out, boolean oneFirst) {
-        files.addAll(Arrays.asList(inFiles));
+    public TransferManager(int queueSize, TransferJournal journal, String username, String password, ConsolePasswordProvider passwordProvider, PrintStream out, boolean oneFirst) {
+        this.files = new ArrayBlockingQueue<>(queueSize);
+        this.journal = journal;
         this.username = username;
         this.password = password;
         this.passwordProvider = passwordProvider;
@@ -89,6 +125,98 @@ public class TransferManager {
         this.oneFirst = oneFirst;
     }
 
+    /**
+     * Starts walking the input directory in a new thread.
+     * @param walker to produce the files
+     * @return the started thread
+     */
+    public Thread startWalker(final InputDirectoryWalker walker) {
+        final Thread thread = new Thread(() -> {
+            try {
+                walker.walk(this);
+            } catch (IOException ex) {
+                LOG.error("Unable to read input directory: " + ex.getMessage());
+                registerUnreadable();
+            } finally {
+                walkDone = true;
+            }
+        }, "walker");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Called by the walker to add a file to work on. Blocks until there is
+     * room in the queue.
+     * @param file to add
+     * @return false if the processing was aborted and no more files are wanted
+     */
+    boolean addFile(final File file) {
+        found.incrementAndGet();
+        try {
+            while (!isAborted()) {
+                if (files.offer(file, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException ex) {
+            LOG.error("Interrupted: " + ex.getLocalizedMessage());
+            Thread.currentThread().interrupt();
+            abort();
+        }
+        return false;
+    }
+
+    /**
+     * Called by the walker for a file completed in an earlier run.
+     */
+    void registerSkipped() {
+        skipped.incrementAndGet();
+    }
+
+    /**
+     * Called by the walker for a file or directory that could not be read.
+     */
+    synchronized void registerUnreadable() {
+        failed = true;
+        failures.incrementAndGet();
+    }
+
+    /**
+     * Takes the next file to retry or otherwise the next file from the
+     * queue, waiting for the walker if needed.
+     * @return the next file or null if there are no more files
+     */
+    private File takeFile() {
+        try {
+            while (true) {
+                // Check if all files have been added before polling so no file added after the poll is missed
+                final boolean done = walkDone;
+                synchronized (this) {
+                    if (aborted) {
+                        return null;
+                    }
+                    if (!retries.isEmpty()) {
+                        return retries.remove();
+                    }
+                }
+                final File file = files.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (file != null) {
+                    return file;
+                }
+                if (done) {
+                    return null;
+                }
+            }
+        } catch (InterruptedException ex) {
+            LOG.error("Interrupted: " + ex.getLocalizedMessage());
+            Thread.currentThread().interrupt();
+            abort();
+            return null;
+        }
+    }
+
     /**
      * Called by a thread to get the next file to work on.
      * Returns null if there are no more files to work on or if the the process
@@ -98,30 +226,42 @@ public class TransferManager {
      * an other thread has already started processing the first file.
      * @return The next file or null if no more work is available
      */
-    public synchronized File nextFile() {
-        // No more work to do if we should abort
-        if (aborted) {
-            return null;
-        }
-        if (oneFirst && firstAlreadyServed) { // If a other thread is already working on the first file
-            while (oneFirst && !aborted) { // Wait until the oneFirst is done, or it got aborted
-                try {
-                    wait();
-                } catch (InterruptedException ex) {
-                    aborted = true;
-                    LOG.error("Interrupted: " + ex.getLocalizedMessage());
-                    Thread.currentThread().interrupt();
+    public File nextFile() {
+        final boolean servingFirst;
+        synchronized (this) {
+            // No more work to do if we should abort
+            if (aborted) {
+                return null;
+            }
+            if (oneFirst && firstAlreadyServed) { // If a other thread is already working on the first file
+                while (oneFirst && !aborted) { // Wait until the oneFirst is done, or it got aborted
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        aborted = true;
+                        LOG.error("Interrupted: " + ex.getLocalizedMessage());
+                        Thread.currentThread().interrupt();
+                    }
                 }
+                if (aborted) { // Check if it got aborted while waiting
+                    return null;
+                }
+                servingFirst = false;
+            } else if (oneFirst) { // Otherwise if we are the first
+                firstAlreadyServed = true; // Signal that we are serving it
+                servingFirst = true;
+            } else {
+                servingFirst = false;
             }
-            if (aborted) { // Check if it got aborted while waiting
-                return null;
+        }
+        // Get the file without holding the lock as it might have to wait for the walker
+        final File file = takeFile();
+        if (servingFirst) {
+            synchronized (this) {
+                first = file;
             }
-        } else if (oneFirst) { // Otherwise if we are the first
-            firstAlreadyServed = true; // Signal that we are serving it
-            first = files.isEmpty() ? null : files.remove(); // Get the file
-            return first;
         }
-        return files.isEmpty() ? null : files.remove(); // Else just return the next file
+        return file;
     }
 
     /**
@@ -147,6 +287,7 @@ public class TransferManager {
      */
     public synchronized void registerFailure() {
         failed = true;
+        failures.incrementAndGet();
         if (oneFirst) {
             // If the first one did not succeed in onefirst mode we will abort
             abort();
@@ -174,6 +315,73 @@ public class TransferManager {
         }
     }
 
+    /**
+     * Register that a file was completely processed, recording it in the
+     * journal if one is used.
+     * @param inFile the input file
+     */
+    public void registerCompleted(final File inFile) {
+        completed.incrementAndGet();
+        if (journal != null) {
+            try {
+                journal.completed(inFile);
+            } catch (IOException ex) {
+                LOG.error("Unable to write to journal " + journal.getFile() + ": " + ex.getMessage());
+                abort();
+            }
+        }
+    }
+
+    /**
+     * @return number of files found, not including the skipped ones
+     */
+    public long getFoundCount() {
+        return found.get();
+    }
+
+    /**
+     * @return number of files skipped as completed in an earlier run
+     */
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    /**
+     * Gets a summary of the progress with throughput and, once all files
+     * have been found, the estimated time left.
+     * @param now current time in milliseconds
+     * @return the summary
+     */
+    public String getSummary(final long now) {
+        final long completedCount = completed.get();
+        final long failedCount = failures.get();
+        final long foundCount = found.get();
+        final double seconds = Math.max(now - startTime, 1) / 1000.0;
+        final double throughput = completedCount / seconds;
+
+        final StringBuilder sb = new StringBuilder();
+        sb.append("completed=").append(completedCount)
+                .append(", failed=").append(failedCount)
+                .append(", skipped=").append(skipped.get())
+                .append(", found=").append(foundCount).append(walkDone ? "" : "+")
+                .append(", throughput=").append(String.format("%.1f", throughput)).append(" files/s");
+        final long remaining = foundCount - completedCount - failedCount;
+        if (walkDone && throughput > 0 && remaining > 0) {
+            sb.append(", eta=").append(formatDuration((long) (remaining / throughput)));
+        }
+        return sb.toString();
+    }
+
+    private static String formatDuration(final long seconds) {
+        if (seconds >= 3600) {
+            return String.format("%dh%02dm", seconds / 3600, (seconds % 3600) / 60);
+        } else if (seconds >= 60) {
+            return String.format("%dm%02ds", seconds / 60, seconds % 60);
+        } else {
+            return seconds + "s";
+        }
+    }
+
     /**
      * @return True if there has been at least one successfully process filed.
      */
@@ -218,7 +426,7 @@ public class TransferManager {
             }
         }
         // Put back the file to be tested again
-        files.addFirst(inFile);
+        retries.addFirst(inFile);
         notifyAll();
     }
 
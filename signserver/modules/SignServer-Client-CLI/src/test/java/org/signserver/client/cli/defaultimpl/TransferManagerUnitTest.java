@@ -0,0 +1,156 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.client.cli.defaultimpl;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the TransferManager together with the InputDirectoryWalker
+ * and the TransferJournal.
+ *
+ * @version $Id$
+ */
+public class TransferManagerUnitTest {
+
+    private File inDir;
+    private File journalFile;
+
+    @Before
+    public void setUp() throws Exception {
+        inDir = File.createTempFile("indir", null);
+        inDir.delete();
+        inDir.mkdirs();
+        journalFile = File.createTempFile("journal", null);
+        journalFile.delete();
+
+        write("a.txt");
+        write("b.txt");
+        write("sub/c.txt");
+        write("sub/deeper/d.txt");
+        write("out/e.txt");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteQuietly(inDir);
+        FileUtils.deleteQuietly(journalFile);
+    }
+
+    private void write(final String name) throws Exception {
+        FileUtils.writeStringToFile(new File(inDir, name), name, StandardCharsets.UTF_8);
+    }
+
+    private List<String> drain(final TransferManager manager, final boolean complete) {
+        final List<String> result = new ArrayList<>();
+        File file;
+        while ((file = manager.nextFile()) != null) {
+            result.add(inDir.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/'));
+            if (complete) {
+                manager.registerSuccess();
+                manager.registerCompleted(file);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Tests that only the files directly in the directory are given out when
+     * not recursive, even if the queue is smaller than the number of files.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testWalkNonRecursive() throws Exception {
+        final TransferManager instance = new TransferManager(1, null, null, null, null, null, false);
+        instance.startWalker(new InputDirectoryWalker(inDir, false, Collections.<File>emptyList(), null));
+
+        assertEquals(Arrays.asList("a.txt", "b.txt"), drain(instance, true));
+        assertEquals("found", 2, instance.getFoundCount());
+        assertFalse("failures", instance.hasFailures());
+    }
+
+    /**
+     * Tests that sub directories are walked when recursive, except for the
+     * excluded output directory.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testWalkRecursiveExcluded() throws Exception {
+        final TransferManager instance = new TransferManager(2, null, null, null, null, null, false);
+        instance.startWalker(new InputDirectoryWalker(inDir, true, Arrays.asList(new File(inDir, "out"), null), null));
+
+        assertEquals(Arrays.asList("a.txt", "b.txt", "sub/c.txt", "sub/deeper/d.txt"), drain(instance, true));
+        assertTrue("summary: " + instance.getSummary(System.currentTimeMillis()),
+                instance.getSummary(System.currentTimeMillis()).startsWith("completed=4, failed=0, skipped=0, found=4,"));
+    }
+
+    /**
+     * Tests that a run using the same journal skips the files completed by
+     * an earlier interrupted run, ignoring an incompletely written entry.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testResumeWithJournal() throws Exception {
+        // First run completes two files and is then interrupted
+        try (TransferJournal journal = TransferJournal.open(journalFile, inDir)) {
+            final TransferManager instance = new TransferManager(10, journal, null, null, null, null, false);
+            instance.registerCompleted(new File(inDir, "a.txt"));
+            instance.registerCompleted(new File(inDir, "sub/c.txt"));
+        }
+        // Simulate being killed while writing an entry
+        FileUtils.writeStringToFile(journalFile, "b.t", StandardCharsets.UTF_8, true);
+
+        try (TransferJournal journal = TransferJournal.open(journalFile, inDir)) {
+            assertEquals("previously completed", 2, journal.getPreviouslyCompletedCount());
+            final TransferManager instance = new TransferManager(10, journal, null, null, null, null, false);
+            instance.startWalker(new InputDirectoryWalker(inDir, true, Arrays.asList(new File(inDir, "out")), journal));
+
+            assertEquals(Arrays.asList("b.txt", "sub/deeper/d.txt"), drain(instance, true));
+            assertEquals("skipped", 2, instance.getSkippedCount());
+        }
+
+        // Everything is completed now
+        try (TransferJournal journal = TransferJournal.open(journalFile, inDir)) {
+            assertEquals("completed", 4, journal.getPreviouslyCompletedCount());
+            assertTrue("c completed", journal.isCompleted(new File(new File(inDir, "sub"), "c.txt")));
+        }
+    }
+
+    /**
+     * Tests that no more files are given out after an abort and that the
+     * walker stops.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testAbort() throws Exception {
+        final TransferManager instance = new TransferManager(1, null, null, null, null, null, false);
+        final Thread walker = instance.startWalker(new InputDirectoryWalker(inDir, true, Collections.<File>emptyList(), null));
+
+        assertNotNull("first", instance.nextFile());
+        instance.abort();
+        assertNull("after abort", instance.nextFile());
+        walker.join(10000);
+        assertFalse("walker stopped", walker.isAlive());
+        assertTrue("not all found", instance.getFoundCount() < 5);
+    }
+}
@@ -13,14 +13,19 @@
 package org.signserver.clientws;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import javax.ejb.EJB;
@@ -28,6 +33,7 @@ import javax.jws.WebMethod;
 import javax.jws.WebParam;
 import javax.jws.WebService;
 import javax.servlet.http.HttpServletRequest;
+import javax.xml.bind.annotation.XmlMimeType;
 import javax.xml.ws.WebServiceContext;
 import javax.xml.ws.handler.MessageContext;
 
@@ -44,12 +50,16 @@ import org.signserver.common.RequestContext;
 import org.signserver.common.RequestMetadata;
 import org.signserver.common.SignServerException;
 import org.signserver.common.WorkerIdentifier;
+import org.signserver.common.data.ReadableData;
 import org.signserver.common.data.Request;
 import org.signserver.common.data.Response;
+import org.signserver.common.data.SODBatchRequest;
+import org.signserver.common.data.SODBatchResponse;
 import org.signserver.common.data.SODRequest;
 import org.signserver.common.data.SODResponse;
 import org.signserver.common.data.SignatureRequest;
 import org.signserver.common.data.SignatureResponse;
+import org.signserver.common.data.WritableData;
 import org.signserver.ejb.interfaces.GlobalConfigurationSessionLocal;
 import org.signserver.ejb.interfaces.ProcessSessionLocal;
 import org.signserver.ejb.interfaces.WorkerSessionLocal;
@@ -69,6 +79,8 @@ import org.signserver.server.log.Loggable;
  * Client Web Services implementation containing operations:
  * <ul>
  *     <li>requesting signing;</li>
+ *     <li>requesting signing of data streamed as an attachment;</li>
+ *     <li>requesting signing of a batch of MRTD SODs;</li>
  *
  * </ul>
  * for  etc.
@@ -131,52 +143,92 @@ public class ClientWS {
             ) {
             final RequestContext requestContext = handleRequestContext(requestMetadata);
             final int requestId = ThreadLocalRandom.current().nextInt();
+            final SignatureResponse signResponse = process(workerIdOrName, requestContext, requestId, requestData, responseData);
+
+            result = new DataResponse(
+                    requestId,
+                    signResponse.getResponseData().toReadableData().getAsByteArray(),
+                    signResponse.getArchiveId(),
+                    signResponse.getSignerCertificate() == null ? null : signResponse.getSignerCertificate().getEncoded(),
+                    getResponseMetadata(requestContext)
+            );
+        } catch (CertificateEncodingException ex) {
+            LOG.error("Signer certificate could not be encoded", ex);
+            throw new InternalServerException("Signer certificate could not be encoded");
+        } catch (IllegalRequestException | AuthorizationRequiredException | AccessDeniedException ex) {
+            LOG.info("Request failed: " + ex.getMessage());
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Request failed: " + ex.getMessage(), ex);
+            }
+            throw new RequestFailedException(ex.getMessage());
+        } catch (CryptoTokenOfflineException ex) {
+            LOG.debug("Service unavailable", ex);
+            throw new InternalServerException("Service unavailable: " + ex.getMessage());
+        } catch (SignServerException ex) {
+            LOG.debug("Internal server error", ex);
+            throw new InternalServerException("Internal server error: " + ex.getMessage());
+        } catch (FileUploadBase.SizeLimitExceededException ex) {
+            LOG.error("Maximum content length exceeded: " + ex.getLocalizedMessage());
+            throw new RequestFailedException("Maximum content length exceeded");
+        } catch (FileUploadException ex) {
+            LOG.debug("Upload failed", ex);
+            throw new RequestFailedException("Upload failed: " + ex.getLocalizedMessage());
+        } catch (IOException ex) {
+            LOG.debug("Internal IO error", ex);
+            throw new InternalServerException("Internal IO error: " + ex.getMessage());
+        }
+        return result;
+    }
 
-            // Upload handling (Note: UploadUtil.cleanUp() in finally clause)
-
-            final Request req = new SignatureRequest(requestId, requestData, responseData);
-            
-            WorkerIdentifier workerIdentifier = WorkerIdentifier.createFromIdOrName(workerIdOrName);
-
-            // Check if this came in as a high priority request
-            Set<Integer> highPriorityWorkers = (Set<Integer>) getServletRequest().getAttribute(RequestContext.QOS_PRIORITY_WORKER_ID_LIST);
-            if (highPriorityWorkers == null) {
-                LOG.debug("Not highest priority request");
-            } else {
-                if (!workerIdentifier.hasId()) {
-                    try {
-                        workerIdentifier = new WorkerIdentifier(workerSession.getWorkerId(workerIdentifier.getName()), workerIdentifier.getName());
-                    } catch (InvalidWorkerIdException ex) {
-                        LOG.debug("No such worker: " + ex.getMessage());
-                    }
-                }
+    /**
+     * Generic operation for request signing of data sent as an attachment.
+     *
+     * The request data is read into the repository while received, instead
+     * of being kept in memory, and the response data is streamed back to the
+     * client. Using the MTOMClientWS endpoint the data is sent as MTOM
+     * attachments, otherwise it is sent inline in the same way as for
+     * processData.
+     *
+     * @param workerIdOrName Name or ID of worker to send the request to
+     * @param requestMetadata Additional request meta data
+     * @param data The data in some format understood by the worker
+     * @return The response data
+     * @throws RequestFailedException In case the request could not be processed typically because some error in the request data.
+     * @throws InternalServerException In case the request could not be processed by some error at the server side.
+     */
+    @WebMethod(operationName="processDataStream")
+    public StreamedDataResponse processDataStream(
+            @WebParam(name = "worker") final String workerIdOrName,
+            @WebParam(name = "metadata") List<Metadata> requestMetadata,
+            @WebParam(name = "data") @XmlMimeType("application/octet-stream") DataHandler data
+    ) throws RequestFailedException, InternalServerException {
+        if (data == null) {
+            throw new RequestFailedException("Missing data in request");
+        }
 
-                if (!highPriorityWorkers.contains(workerIdentifier.getId())) {
-                    LOG.error("Worker with id " + workerIdentifier.getId() + " not one of the highest priority workers: " + highPriorityWorkers);
-                    throw new RequestFailedException("Requests to the high priority endpoint not allowed for this worker");
-                }
-            }
-            
+        final StreamedDataResponse result;
 
-            final Response resp = getProcessSession().process(new AdminInfo("CLI user", null, null), workerIdentifier, req, requestContext);
+        final HttpServletRequest servletRequest = getServletRequest();
+        final UploadConfig uploadConfig = UploadConfig.create(globalSession);
+        try (InputStream in = data.getInputStream()) {
+            // Closed when the request is completed, as the response data is
+            // streamed to the client after this method has returned
+            final CloseableReadableData requestData = RequestResourcesListener.register(servletRequest,
+                    dataFactory.createReadableData(in, uploadConfig.getMaxUploadSize(), uploadConfig.getSizeThreshold(), uploadConfig.getRepository()));
+            final CloseableWritableData responseData = RequestResourcesListener.register(servletRequest,
+                    dataFactory.createWritableData(requestData, uploadConfig.getRepository()));
 
-            if (resp instanceof SignatureResponse) {
-                final SignatureResponse signResponse = (SignatureResponse) resp;
-                if (signResponse.getRequestID() != requestId) {
-                    LOG.error("Response ID " + signResponse.getRequestID() + " not matching request ID " + requestId);
-                    throw new InternalServerException("Error in process operation, response id didn't match request id");
-                }
-                result = new DataResponse(
-                        requestId,
-                        signResponse.getResponseData().toReadableData().getAsByteArray(),
-                        signResponse.getArchiveId(),
-                        signResponse.getSignerCertificate() == null ? null : signResponse.getSignerCertificate().getEncoded(),
-                        getResponseMetadata(requestContext)
-                );
-            } else {
-                LOG.error("Unexpected return type: " + resp.getClass().getName());
-                throw new InternalServerException("Unexpected return type");
-            }
+            final RequestContext requestContext = handleRequestContext(requestMetadata);
+            final int requestId = ThreadLocalRandom.current().nextInt();
+            final SignatureResponse signResponse = process(workerIdOrName, requestContext, requestId, requestData, responseData);
+
+            result = new StreamedDataResponse(
+                    requestId,
+                    new DataHandler(new ReadableDataSource(responseData.toReadableData())),
+                    signResponse.getArchiveId(),
+                    signResponse.getSignerCertificate() == null ? null : signResponse.getSignerCertificate().getEncoded(),
+                    getResponseMetadata(requestContext)
+            );
         } catch (CertificateEncodingException ex) {
             LOG.error("Signer certificate could not be encoded", ex);
             throw new InternalServerException("Signer certificate could not be encoded");
@@ -205,6 +257,49 @@ public class ClientWS {
         return result;
     }
 
+    private SignatureResponse process(final String workerIdOrName, final RequestContext requestContext,
+            final int requestId, final CloseableReadableData requestData, final CloseableWritableData responseData)
+            throws RequestFailedException, InternalServerException, IllegalRequestException,
+                CryptoTokenOfflineException, SignServerException {
+        final Request req = new SignatureRequest(requestId, requestData, responseData);
+        
+        WorkerIdentifier workerIdentifier = WorkerIdentifier.createFromIdOrName(workerIdOrName);
+
+        // Check if this came in as a high priority request
+        Set<Integer> highPriorityWorkers = (Set<Integer>) getServletRequest().getAttribute(RequestContext.QOS_PRIORITY_WORKER_ID_LIST);
+        if (highPriorityWorkers == null) {
+            LOG.debug("Not highest priority request");
+        } else {
+            if (!workerIdentifier.hasId()) {
+                try {
+                    workerIdentifier = new WorkerIdentifier(workerSession.getWorkerId(workerIdentifier.getName()), workerIdentifier.getName());
+                } catch (InvalidWorkerIdException ex) {
+                    LOG.debug("No such worker: " + ex.getMessage());
+                }
+            }
+
+            if (!highPriorityWorkers.contains(workerIdentifier.getId())) {
+                LOG.error("Worker with id " + workerIdentifier.getId() + " not one of the highest priority workers: " + highPriorityWorkers);
+                throw new RequestFailedException("Requests to the high priority endpoint not allowed for this worker");
+            }
+        }
+        
+
+        final Response resp = getProcessSession().process(new AdminInfo("CLI user", null, null), workerIdentifier, req, requestContext);
+
+        if (resp instanceof SignatureResponse) {
+            final SignatureResponse signResponse = (SignatureResponse) resp;
+            if (signResponse.getRequestID() != requestId) {
+                LOG.error("Response ID " + signResponse.getRequestID() + " not matching request ID " + requestId);
+                throw new InternalServerException("Error in process operation, response id didn't match request id");
+            }
+            return signResponse;
+        } else {
+            LOG.error("Unexpected return type: " + resp.getClass().getName());
+            throw new InternalServerException("Unexpected return type");
+        }
+    }
+
     /**
      * Operation for requesting signing and production of an MRTD SOD based on the supplied data groups / data group
      * hashes.
@@ -226,48 +321,8 @@ public class ClientWS {
             final RequestContext requestContext = handleRequestContext(requestMetadata);
             final int requestId = ThreadLocalRandom.current().nextInt();
 
-            // Collect all [dataGroup1, dataGroup2, ..., dataGroupN]
-            final List<DataGroup> dataGroups = data.getDataGroups();
-            final HashMap<Integer,byte[]> dataGroupsMap = new HashMap<>();
-            for (DataGroup dataGroup : dataGroups) {
-                final int dataGroupId = dataGroup.getId();
-                if ((dataGroupId > -1) && (dataGroupId < 17)) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Adding data group " + dataGroupId);
-                            if (LOG.isTraceEnabled()) {
-                                LOG.trace("with value " + Arrays.toString(dataGroup.getValue()));
-                            }
-                        }
-                        dataGroupsMap.put(dataGroup.getId(), dataGroup.getValue());
-                } else {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Ignoring data group " + dataGroupId);
-                    }
-                }
-            }
-            if (data.getDataGroups().isEmpty()) {
-                throw new RequestFailedException("Missing dataGroup fields in request");
-            }
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Received number of dataGroups: " + dataGroups.size());
-            }
-
-            // LDS versioning
-            String ldsVersion = data.getLdsVersion();
-            String unicodeVersion = data.getUnicodeVersion();
-            if (ldsVersion != null && ldsVersion.trim().isEmpty()) {
-                ldsVersion = null;
-            }
-            if (unicodeVersion != null && unicodeVersion.trim().isEmpty()) {
-                unicodeVersion = null;
-            }
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Requested versions: LDS=" + ldsVersion
-                        + ", Unicode=" + unicodeVersion);
-            }
-
             // Use special SOD sign request type
-            final SODRequest req = new SODRequest(requestId, dataGroupsMap, ldsVersion, unicodeVersion, responseData);
+            final SODRequest req = createSODRequest(requestId, data, responseData);
             final Response resp = getProcessSession().process(
                     new AdminInfo("CLI user", null, null),
                     WorkerIdentifier.createFromIdOrName(workerIdOrName), req, requestContext
@@ -321,6 +376,148 @@ public class ClientWS {
         return result;
     }
 
+    /**
+     * Operation for requesting signing and production of a batch of MRTD SODs
+     * in one request. All the SODs are signed using the same signer key and
+     * if any of them fails the whole batch fails.
+     * @param workerIdOrName Name or ID of worker to send the request to
+     * @param requestMetadata Additional request meta data
+     * @param data SODRequests containing the data-groups/data-groups hashes
+     * @return The responses in the same order as the requests
+     * @throws RequestFailedException In case the request could not be processed typically because some error in the request data.
+     * @throws InternalServerException In case the request could not be processed by some error at the server side.
+     */
+    @WebMethod(operationName = "processSODBatch")
+    public List<org.signserver.clientws.SODResponse> processSODBatch(
+            @WebParam(name = "worker") final String workerIdOrName,
+            @WebParam(name = "metadata") final List<Metadata> requestMetadata,
+            @WebParam(name = "sodData") final List<org.signserver.clientws.SODRequest> data
+    ) throws RequestFailedException, InternalServerException {
+        if (data == null || data.isEmpty()) {
+            throw new RequestFailedException("Missing sodData in request");
+        }
+        final List<CloseableWritableData> responseDatas = new ArrayList<>(data.size());
+        try {
+            final RequestContext requestContext = handleRequestContext(requestMetadata);
+            final int requestId = ThreadLocalRandom.current().nextInt();
+
+            final List<SODRequest> reqs = new ArrayList<>(data.size());
+            for (final org.signserver.clientws.SODRequest sodData : data) {
+                final CloseableWritableData responseData = new TemporarlyWritableData(false, new UploadConfig().getRepository());
+                responseDatas.add(responseData);
+                reqs.add(createSODRequest(requestId, sodData, responseData));
+            }
+
+            final Response resp = getProcessSession().process(
+                    new AdminInfo("CLI user", null, null),
+                    WorkerIdentifier.createFromIdOrName(workerIdOrName), new SODBatchRequest(requestId, reqs), requestContext
+            );
+
+            if (resp instanceof SODBatchResponse) {
+                final SODBatchResponse batchResponse = (SODBatchResponse) resp;
+                if (batchResponse.getRequestID() != requestId) {
+                    LOG.error("Response ID " + batchResponse.getRequestID() + " not matching request ID " + requestId);
+                    throw new SignServerException("Error in process operation, response id didn't match request id");
+                }
+
+                final List<Metadata> responseMetadata = getResponseMetadata(requestContext);
+                final List<org.signserver.clientws.SODResponse> result = new ArrayList<>(data.size());
+                for (int i = 0; i < batchResponse.getResponses().size(); i++) {
+                    final SODResponse signResponse = batchResponse.getResponses().get(i);
+                    result.add(new org.signserver.clientws.SODResponse(
+                            requestId,
+                            responseDatas.get(i).toReadableData().getAsByteArray(),
+                            signResponse.getArchiveId(),
+                            signResponse.getSignerCertificate() == null ? null : signResponse.getSignerCertificate().getEncoded(),
+                            responseMetadata
+                    ));
+                }
+                return result;
+            } else {
+                LOG.error("Unexpected return type: " + resp.getClass().getName());
+                throw new SignServerException("Unexpected return type");
+            }
+        } catch (CertificateEncodingException ex) {
+            LOG.error("Certificate encoding error", ex);
+            throw new InternalServerException("Internal server error");
+        } catch (NoSuchWorkerException ex) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Worker Not Found: " + ex.getWorkerIdOrName());
+            }
+            throw new RequestFailedException("Worker Not Found");
+        } catch (CryptoTokenOfflineException ex) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Service unavailable", ex);
+            }
+            throw new InternalServerException("Service unavailable: " + ex.getMessage());
+        } catch (IllegalRequestException | AuthorizationRequiredException | AccessDeniedException ex) {
+            LOG.info("Request failed: " + ex.getMessage());
+            throw new RequestFailedException(ex.getMessage());
+        } catch (SignServerException ex) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Internal server error", ex);
+            }
+            throw new InternalServerException("Internal server error: " + ex.getMessage());
+        } catch (IOException ex) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Internal IO error", ex);
+            }
+            throw new InternalServerException("Internal IO error: " + ex.getMessage());
+        } finally {
+            for (final CloseableWritableData responseData : responseDatas) {
+                try {
+                    responseData.close();
+                } catch (IOException ex) {
+                    LOG.warn("Unable to remove temporary response data: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private SODRequest createSODRequest(final int requestId, final org.signserver.clientws.SODRequest data, final WritableData responseData) throws RequestFailedException {
+        // Collect all [dataGroup1, dataGroup2, ..., dataGroupN]
+        final List<DataGroup> dataGroups = data.getDataGroups();
+        final HashMap<Integer,byte[]> dataGroupsMap = new HashMap<>();
+        for (DataGroup dataGroup : dataGroups) {
+            final int dataGroupId = dataGroup.getId();
+            if ((dataGroupId > -1) && (dataGroupId < 17)) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Adding data group " + dataGroupId);
+                        if (LOG.isTraceEnabled()) {
+                            LOG.trace("with value " + Arrays.toString(dataGroup.getValue()));
+                        }
+                    }
+                    dataGroupsMap.put(dataGroup.getId(), dataGroup.getValue());
+            } else {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Ignoring data group " + dataGroupId);
+                }
+            }
+        }
+        if (data.getDataGroups().isEmpty()) {
+            throw new RequestFailedException("Missing dataGroup fields in request");
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Received number of dataGroups: " + dataGroups.size());
+        }
+
+        // LDS versioning
+        String ldsVersion = data.getLdsVersion();
+        String unicodeVersion = data.getUnicodeVersion();
+        if (ldsVersion != null && ldsVersion.trim().isEmpty()) {
+            ldsVersion = null;
+        }
+        if (unicodeVersion != null && unicodeVersion.trim().isEmpty()) {
+            unicodeVersion = null;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Requested versions: LDS=" + ldsVersion
+                    + ", Unicode=" + unicodeVersion);
+        }
+
+        return new SODRequest(requestId, dataGroupsMap, ldsVersion, unicodeVersion, responseData);
+    }
+
     private HttpServletRequest getServletRequest() {
         MessageContext msgContext = wsContext.getMessageContext();
         return (HttpServletRequest) msgContext.get(MessageContext.SERVLET_REQUEST);
@@ -424,4 +621,34 @@ public class ClientWS {
         //}
         return new LinkedList<>();
     }
+
+    /** Data source reading the response data when it is sent. */
+    private static class ReadableDataSource implements DataSource {
+
+        private final ReadableData data;
+
+        ReadableDataSource(final ReadableData data) {
+            this.data = data;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return data.getAsInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            throw new IOException("Not supported");
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/octet-stream";
+        }
+
+        @Override
+        public String getName() {
+            return "data";
+        }
+    }
 }
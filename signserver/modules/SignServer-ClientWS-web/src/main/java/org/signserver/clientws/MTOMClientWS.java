@@ -0,0 +1,32 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.clientws;
+
+import javax.jws.WebService;
+import javax.xml.ws.soap.MTOM;
+
+/**
+ * ClientWS endpoint with MTOM enabled, so that binary data, such as the
+ * data of processDataStream, is sent as attachments instead of inline in
+ * the SOAP envelope.
+ *
+ * This is a separate endpoint as enabling MTOM also changes the format of
+ * the responses, which existing clients of the ClientWS endpoint might not
+ * support.
+ *
+ * @version $Id$
+ */
+@MTOM
+@WebService(serviceName = "ClientWSService", name = "ClientWS", portName = "ClientWSPort")
+public class MTOMClientWS extends ClientWS {
+}
@@ -0,0 +1,74 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.clientws;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletRequestEvent;
+import javax.servlet.ServletRequestListener;
+import org.apache.log4j.Logger;
+
+/**
+ * Closes the resources registered for a request when the request has been
+ * completed, that is after the response has been written. Used for data
+ * that is streamed to the client after the web service operation returned.
+ *
+ * @version $Id$
+ */
+public class RequestResourcesListener implements ServletRequestListener {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(RequestResourcesListener.class);
+
+    private static final String ATTRIBUTE = RequestResourcesListener.class.getName();
+
+    /**
+     * Registers a resource to be closed when the request has been completed.
+     *
+     * @param request to close the resource after
+     * @param resource to close
+     * @param <T> type of resource
+     * @return the resource
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends AutoCloseable> T register(final ServletRequest request, final T resource) {
+        List<AutoCloseable> resources = (List<AutoCloseable>) request.getAttribute(ATTRIBUTE);
+        if (resources == null) {
+            resources = new ArrayList<>();
+            request.setAttribute(ATTRIBUTE, resources);
+        }
+        resources.add(resource);
+        return resource;
+    }
+
+    @Override
+    public void requestInitialized(final ServletRequestEvent sre) {
+        // Nothing to do
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void requestDestroyed(final ServletRequestEvent sre) {
+        final List<AutoCloseable> resources = (List<AutoCloseable>) sre.getServletRequest().getAttribute(ATTRIBUTE);
+        if (resources != null) {
+            for (final AutoCloseable resource : resources) {
+                try {
+                    resource.close();
+                } catch (Exception ex) {
+                    LOG.warn("Unable to close resource: " + ex.getLocalizedMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.clientws;
+
+import java.util.List;
+import javax.activation.DataHandler;
+import javax.xml.bind.annotation.XmlMimeType;
+
+/**
+ * Represents the response (result) of requesting some data to be processed
+ * where the data is sent as an attachment that can be streamed when MTOM is
+ * used.
+ *
+ * @version $Id$
+ */
+public class StreamedDataResponse {
+
+    private int requestId;
+    private DataHandler data;
+    private String archiveId;
+    private byte[] signerCertificate;
+    private List<Metadata> metadata;
+
+    public StreamedDataResponse() {
+    }
+
+    /**
+     * Constructs a new instance of StreamedDataResponse.
+     * @param requestId Id of the worker that processed the request.
+     * @param data The result (for instance signed document).
+     * @param archiveId The ID assigned to the archivable item(s).
+     * @param signerCertificate Certificate of the signer signing the data (if any).
+     * @param metadata Response metadata.
+     */
+    public StreamedDataResponse(int requestId, DataHandler data, String archiveId, byte[] signerCertificate, List<Metadata> metadata) {
+        this.requestId = requestId;
+        this.data = data;
+        this.archiveId = archiveId;
+        this.signerCertificate = signerCertificate;
+        this.metadata = metadata;
+    }
+
+    /**
+     * Get the archive ID for the response.
+     *
+     * @return The archive ID
+     */
+    public String getArchiveId() {
+        return archiveId;
+    }
+
+    /**
+     * @param archiveId The archive id
+     */
+    public void setArchiveId(String archiveId) {
+        this.archiveId = archiveId;
+    }
+
+    /**
+     * Get the response output (i.e. the signature).
+     *
+     * @return The signed data
+     */
+    @XmlMimeType("application/octet-stream")
+    public DataHandler getData() {
+        return data;
+    }
+
+    /**
+     * @param data The signed data
+     */
+    public void setData(DataHandler data) {
+        this.data = data;
+    }
+
+    /**
+     * Get the ID of the request.
+     *
+     * @return The id of the request
+     */
+    public int getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * @param requestId The id of the request
+     */
+    public void setRequestId(int requestId) {
+        this.requestId = requestId;
+    }
+
+    /**
+     * Get the signer certificate used.
+     *
+     * @return The signer certificate (if any)
+     */
+    public byte[] getSignerCertificate() {
+        return signerCertificate;
+    }
+
+    /**
+     * @param signerCertificate The signer certificate
+     */
+    public void setSignerCertificate(byte[] signerCertificate) {
+        this.signerCertificate = signerCertificate;
+    }
+
+    /**
+     * Get the response metadata.
+     *
+     * @return The response metadata (if any)
+     */
+    public List<Metadata> getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * @param metadata The response metadata
+     */
+    public void setMetadata(List<Metadata> metadata) {
+        this.metadata = metadata;
+    }
+
+}
@@ -73,6 +73,11 @@ public class CompileTimeSettings {
     public static final String STATUSREPOSITORY_LOG = "statusrepository.log";
 
     public static final String WEB_THEME = "web.theme";
+
+    public static final String CONFIGCHANGE_POLLINTERVAL = "configchange.pollinterval";
+
+    public static final String WORKERS_WARMUP = "workers.warmup";
+    public static final String WORKERS_WARMUP_THREADS = "workers.warmup.threads";
     
     /** Default values for the compile-time properties. */
     private static final Properties DEFAULT_PROPERTIES = new Properties();
@@ -44,6 +44,7 @@ public class GlobalConfiguration implements Serializable {
     private final Properties config;
     private final String state;
     private final String appVersion;
+    private final String configChanges;
 
     /**
      * Constructor that should only be called within
@@ -54,9 +55,24 @@ public class GlobalConfiguration implements Serializable {
      * @param appVersion
      */
     public GlobalConfiguration(Properties config, String state, String appVersion) {
+        this(config, state, appVersion, null);
+    }
+
+    /**
+     * Constructor that should only be called within
+     * the GlobalConfigurationSessionBean.
+     *
+     * @param config
+     * @param state
+     * @param appVersion
+     * @param configChanges summary of the configuration changes from other
+     * nodes applied by this node
+     */
+    public GlobalConfiguration(Properties config, String state, String appVersion, String configChanges) {
         this.config = config;
         this.state = state;
         this.appVersion = appVersion;
+        this.configChanges = configChanges;
     }
 
     /**
@@ -104,6 +120,14 @@ public class GlobalConfiguration implements Serializable {
         return appVersion;
     }
 
+    /**
+     * @return summary of the configuration changes from other nodes applied
+     * by this node or null if not available
+     */
+    public String getConfigChanges() {
+        return configChanges;
+    }
+
     /**
      * @return A new Properties object with the current configuration
      */
@@ -38,6 +38,48 @@ public class SignServerConstants {
      * Property with list of Archiver implementation classes.
      */
     public static String ARCHIVERS = "ARCHIVERS";
+
+    /**
+     * Property indicating that the archiving should be performed in the
+     * background instead of before the response is returned.
+     * Set property to TRUE to archive asynchronously.
+     */
+    public static final String ARCHIVING_ASYNC = "ARCHIVING_ASYNC";
+
+    /**
+     * Directory to store the items waiting to be archived asynchronously in,
+     * so that they are not lost in case of a restart. The items of each
+     * worker are stored in a subdirectory named by the worker ID.
+     */
+    public static final String ARCHIVING_SPOOL_DIRECTORY = "ARCHIVING_SPOOL_DIRECTORY";
+
+    /**
+     * Maximum number of items waiting to be archived asynchronously.
+     */
+    public static final String ARCHIVING_QUEUE_SIZE = "ARCHIVING_QUEUE_SIZE";
+
+    /**
+     * What to do with a request when the archiving queue is full, BLOCK to
+     * wait for space or FAIL to fail the request.
+     */
+    public static final String ARCHIVING_QUEUE_FULL = "ARCHIVING_QUEUE_FULL";
+
+    /**
+     * Maximum time in seconds to wait for space in the archiving queue
+     * before failing the request.
+     */
+    public static final String ARCHIVING_QUEUE_TIMEOUT = "ARCHIVING_QUEUE_TIMEOUT";
+
+    /**
+     * Maximum number of items to archive in the same transaction.
+     */
+    public static final String ARCHIVING_BATCH_SIZE = "ARCHIVING_BATCH_SIZE";
+
+    /**
+     * Number of attempts to archive a queued item alone before giving up on
+     * it and keeping it as a .failed file in the spool directory.
+     */
+    public static final String ARCHIVING_MAX_ATTEMPTS = "ARCHIVING_MAX_ATTEMPTS";
     
     /**
      * Constant indicating which module that should be used with
@@ -136,6 +136,12 @@ public class WorkerConfig extends UpgradeableDataHashMap {
      * Additional signers that can be referenced by the worker (for instance in order to request crypto instances from).
      */
     public static String OTHER_SIGNERS = "OTHER_SIGNERS";
+
+    /** Last parsed signer certificate, see getSignerCertificate(). */
+    private transient volatile ParsedCertificates parsedSignerCertificate;
+
+    /** Last parsed signer certificate chain, see getSignerCertificateChain(). */
+    private transient volatile ParsedCertificates parsedSignerCertificateChain;
     
     @SuppressWarnings("unchecked")
     public WorkerConfig() {
@@ -602,7 +608,11 @@ public class WorkerConfig extends UpgradeableDataHashMap {
     }
     
     /**
-     * Method used to fetch a signers certificate from the config
+     * Method used to fetch a signers certificate from the config.
+     *
+     * The parsed certificate is kept until the PEM in the configuration
+     * changes so that it is not parsed again for every request.
+     *
      * @return the signer certificate stored or null if no certificate have been uploaded.
      * 
      */
@@ -614,16 +624,14 @@ public class WorkerConfig extends UpgradeableDataHashMap {
         }
 
         if (stringcert != null && !stringcert.equals("")) {
-            Collection<?> certs;
-            try {
-                certs = CertTools.getCertsFromPEM(new ByteArrayInputStream(stringcert.getBytes()));
-                if (certs.size() > 0) {
-                    result = (X509Certificate) certs.iterator().next();
-                }
-            } catch (CertificateException | IllegalStateException e) {
-                LOG.error(e);
+            ParsedCertificates parsed = parsedSignerCertificate;
+            if (parsed == null || !parsed.isFrom(stringcert)) {
+                parsed = ParsedCertificates.parse(stringcert);
+                parsedSignerCertificate = parsed;
+            }
+            if (parsed.getCertificates() != null && !parsed.getCertificates().isEmpty()) {
+                result = (X509Certificate) parsed.getCertificates().get(0);
             }
-
         }
 
         if (result == null) {
@@ -672,11 +680,14 @@ public class WorkerConfig extends UpgradeableDataHashMap {
     }
     
     /**
-     * Method used to fetch a signers certificate chain from the config
+     * Method used to fetch a signers certificate chain from the config.
+     *
+     * The parsed certificates are kept until the PEM in the configuration
+     * changes, each call returns a new list.
+     *
      * @return the signer certificate stored or null if no certificates have been uploaded.
      * 
      */
-    @SuppressWarnings("unchecked")
     public List<Certificate> getSignerCertificateChain() {
         List<Certificate> result = null;
         String stringcert = (String) get(SIGNERCERTCHAIN);
@@ -685,10 +696,14 @@ public class WorkerConfig extends UpgradeableDataHashMap {
         }
 
         if (stringcert != null && !stringcert.equals("")) {
-            try {
-                result = CertTools.getCertsFromPEM(new ByteArrayInputStream(stringcert.getBytes()));
-            } catch (CertificateException | IllegalStateException e) {
-                LOG.error(e);
+            ParsedCertificates parsed = parsedSignerCertificateChain;
+            if (parsed == null || !parsed.isFrom(stringcert)) {
+                parsed = ParsedCertificates.parse(stringcert);
+                parsedSignerCertificateChain = parsed;
+            }
+            if (parsed.getCertificates() != null) {
+                // Copy as callers are free to modify the returned list
+                result = new ArrayList<>(parsed.getCertificates());
             }
         }
         return result;
@@ -742,4 +757,52 @@ public class WorkerConfig extends UpgradeableDataHashMap {
     public void setKeystoreData(final byte[] keystoreData) {
         getData().put(KEYSTORE_DATA, new String(Base64.encode(keystoreData)));
     }
+
+    /**
+     * Certificates parsed from a PEM value in the configuration together with
+     * the value they were parsed from.
+     */
+    private static final class ParsedCertificates {
+        private final String pem;
+        private final List<Certificate> certificates;
+
+        private ParsedCertificates(final String pem, final List<Certificate> certificates) {
+            this.pem = pem;
+            this.certificates = certificates;
+        }
+
+        /**
+         * Parses the certificates. In case of failure the error is logged and
+         * the result contains no certificates, so that the same value is not
+         * parsed and logged again.
+         *
+         * @param pem value to parse
+         * @return the parsed certificates
+         */
+        public static ParsedCertificates parse(final String pem) {
+            List<Certificate> certificates = null;
+            try {
+                certificates = Collections.unmodifiableList(
+                        CertTools.getCertsFromPEM(new ByteArrayInputStream(pem.getBytes())));
+            } catch (CertificateException | IllegalStateException e) {
+                LOG.error(e);
+            }
+            return new ParsedCertificates(pem, certificates);
+        }
+
+        /**
+         * @param pem current value in the configuration
+         * @return true if the certificates were parsed from the value
+         */
+        public boolean isFrom(final String pem) {
+            return this.pem.equals(pem);
+        }
+
+        /**
+         * @return the parsed certificates or null in case of parse failure
+         */
+        public List<Certificate> getCertificates() {
+            return certificates;
+        }
+    }
 }
@@ -0,0 +1,43 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.common.data;
+
+import java.util.List;
+
+/**
+ * Data holder for a request to sign many MRTD SODs at once.
+ *
+ * Each SOD is described by its own SODRequest, with its own data groups,
+ * versions and response data to write the SOD to.
+ *
+ * @version $Id$
+ */
+public class SODBatchRequest extends Request {
+
+    private final int requestID;
+    private final List<SODRequest> requests;
+
+    public SODBatchRequest(int requestID, List<SODRequest> requests) {
+        this.requestID = requestID;
+        this.requests = requests;
+    }
+
+    public int getRequestID() {
+        return requestID;
+    }
+
+    public List<SODRequest> getRequests() {
+        return requests;
+    }
+
+}
@@ -0,0 +1,43 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.common.data;
+
+import java.security.cert.Certificate;
+import java.util.Collection;
+import java.util.List;
+import org.signserver.server.archive.Archivable;
+
+/**
+ * Data holder for the response to a SODBatchRequest.
+ *
+ * The SODs are written to the response data of each request in the batch
+ * and described by the responses, in the same order as the requests. The
+ * batch response itself has no response data and holds the archivables of
+ * all the SODs.
+ *
+ * @version $Id$
+ */
+public class SODBatchResponse extends SignatureResponse {
+
+    private final List<SODResponse> responses;
+
+    public SODBatchResponse(int requestID, List<SODResponse> responses, Certificate signerCertificate, Collection<? extends Archivable> archivables) {
+        super(requestID, null, signerCertificate, null, archivables, null);
+        this.responses = responses;
+    }
+
+    public List<SODResponse> getResponses() {
+        return responses;
+    }
+
+}
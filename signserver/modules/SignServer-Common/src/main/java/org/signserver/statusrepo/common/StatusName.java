@@ -61,4 +61,11 @@ public enum StatusName {
      */
     TIMEMONITOR_LOG,
 
+    /**
+     * The state of the initialization of all workers after startup, when
+     * enabled. Either <source>RUNNING</source> or <source>DONE</source>.
+     * Set by the StartupSingletonBean and read by the health check.
+     */
+    WORKERS_WARMUP,
+
 }
@@ -12,12 +12,20 @@
  *************************************************************************/
 package org.signserver.common;
 
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.cesecore.util.CertTools;
 
 import junit.framework.TestCase;
 
@@ -289,4 +297,53 @@ public class WorkerConfigTest extends TestCase {
             return new HashSet<>(Arrays.asList("PIN", "KEYSTOREPASSWORD"));
         }
     }
+
+    private static X509Certificate createCertificate(final String dn) throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        final KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(1024);
+        final KeyPair keyPair = kpg.generateKeyPair();
+        return CertTools.genSelfCert(dn, 30, null, keyPair.getPrivate(), keyPair.getPublic(), "SHA256withRSA", false);
+    }
+
+    /**
+     * Tests that the signer certificate and chain are only parsed again after
+     * the configured values changed and that the returned chain can be
+     * modified by the caller.
+     * @throws Exception
+     */
+    public void test14SignerCertificateAndChainParsedOnce() throws Exception {
+        final X509Certificate cert1 = createCertificate("CN=Signer 1");
+        final X509Certificate cert2 = createCertificate("CN=Signer 2");
+        final WorkerConfig config = new WorkerConfig();
+        config.setSignerCertificate(cert1, GlobalConfiguration.SCOPE_GLOBAL);
+        config.setSignerCertificateChain(Arrays.<Certificate>asList(cert1), GlobalConfiguration.SCOPE_GLOBAL);
+
+        final X509Certificate parsed = config.getSignerCertificate();
+        assertEquals("signer certificate", cert1, parsed);
+        assertSame("same parsed certificate", parsed, config.getSignerCertificate());
+
+        final List<Certificate> chain = config.getSignerCertificateChain();
+        assertEquals("chain", Arrays.asList(cert1), chain);
+        final Certificate parsedInChain = chain.get(0);
+        chain.clear();
+        final List<Certificate> chainAgain = config.getSignerCertificateChain();
+        assertEquals("chain not affected by caller", Arrays.asList(cert1), chainAgain);
+        assertSame("same parsed chain certificate", parsedInChain, chainAgain.get(0));
+
+        // Changing the properties gives the new certificates
+        config.setSignerCertificate(cert2, GlobalConfiguration.SCOPE_GLOBAL);
+        config.setSignerCertificateChain(Arrays.<Certificate>asList(cert2), GlobalConfiguration.SCOPE_GLOBAL);
+        assertEquals("new signer certificate", cert2, config.getSignerCertificate());
+        assertEquals("new chain", Arrays.asList(cert2), config.getSignerCertificateChain());
+
+        // Also when changed directly in the properties
+        config.getProperties().setProperty("SIGNERCERT", new String(CertTools.getPemFromCertificateChain(Arrays.<Certificate>asList(cert1))));
+        assertEquals("signer certificate from properties", cert1, config.getSignerCertificate());
+
+        config.removeProperty("SIGNERCERT");
+        config.removeProperty("SIGNERCERTCHAIN");
+        assertNull("no chain", config.getSignerCertificateChain());
+        assertNull("no signer certificate", config.getSignerCertificate());
+    }
 }
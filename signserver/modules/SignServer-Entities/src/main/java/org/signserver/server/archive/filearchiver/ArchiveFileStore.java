@@ -0,0 +1,199 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.archive.filearchiver;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.bouncycastle.util.encoders.Hex;
+
+/**
+ * Store keeping archived content as compressed files in a directory.
+ *
+ * The files are named by the SHA-256 hash of the uncompressed content and
+ * spread over sub-directories using the first bytes of the hash, i.e.
+ * {@code <directory>/ab/cd/abcd...ef.gz}. Storing the same content twice
+ * only results in one file.
+ *
+ * The location returned when storing content is the path of the file
+ * relative to the directory. It is kept in the database, together with the
+ * directory, to read the content back. When read, it is resolved against the
+ * given directories in order, so that the directory can be moved or mounted
+ * elsewhere.
+ *
+ * @version $Id$
+ */
+public class ArchiveFileStore {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ArchiveFileStore.class);
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String SUFFIX = ".gz";
+    private static final String TEMP_PREFIX = "tmp-";
+
+    private final File directory;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param directory to store the files in
+     */
+    public ArchiveFileStore(final File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the directory the files are stored in
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Stores the content unless content with the same hash is already stored.
+     *
+     * The content is first written to a temporary file in the store directory
+     * which is then moved to its final name so that a partly written file is
+     * never seen under that name.
+     *
+     * @param content to store
+     * @return location of the stored content, relative to the directory
+     * @throws IOException in case the content could not be stored
+     */
+    public String store(final byte[] content) throws IOException {
+        Files.createDirectories(directory.toPath());
+        final Path temp = Files.createTempFile(directory.toPath(), TEMP_PREFIX, SUFFIX);
+        try {
+            final MessageDigest md = createDigest();
+            try (OutputStream out = new DigestOutputStream(new GZIPOutputStream(Files.newOutputStream(temp)), md)) {
+                out.write(content);
+            }
+            final String hash = Hex.toHexString(md.digest());
+            final Path target = getPath(hash);
+
+            if (Files.exists(target)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Content already stored: " + target);
+                }
+            } else {
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException ignored) { // NOPMD
+                    // Stored by an other request in the meantime
+                }
+            }
+            return getLocation(hash);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Opens a stream with the uncompressed content.
+     *
+     * @param location as returned when storing the content
+     * @param directories the content could be stored in
+     * @return stream to read the content from, to be closed by the caller
+     * @throws IOException in case the content could not be read
+     */
+    public static InputStream open(final String location, final Collection<File> directories) throws IOException {
+        final InputStream in = Files.newInputStream(resolve(location, directories));
+        try {
+            return new GZIPInputStream(new BufferedInputStream(in));
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads the uncompressed content.
+     *
+     * @param location as returned when storing the content
+     * @param directories the content could be stored in
+     * @return the content
+     * @throws IOException in case the content could not be read
+     */
+    public static byte[] read(final String location, final Collection<File> directories) throws IOException {
+        try (InputStream in = open(location, directories)) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    /**
+     * Gives the file of stored content.
+     *
+     * @param location as returned when storing the content
+     * @param directories the content could be stored in
+     * @return the first existing file
+     * @throws NoSuchFileException in case the location is not relative or
+     * the file was not found in any of the directories
+     */
+    static Path resolve(final String location, final Collection<File> directories) throws NoSuchFileException {
+        final Path path = Paths.get(location);
+        if (path.isAbsolute()) {
+            throw new NoSuchFileException(location, null, "Not a relative location");
+        }
+        for (final File directory : directories) {
+            final Path candidate = directory.toPath().resolve(path);
+            if (Files.exists(candidate)) {
+                return candidate;
+            }
+        }
+        throw new NoSuchFileException(location, null, "Not found in any of the archive directories " + directories);
+    }
+
+    /**
+     * Gives the path of the file for content with the given hash.
+     *
+     * @param hash hex encoded hash of the content
+     * @return path of the file
+     */
+    Path getPath(final String hash) {
+        return directory.toPath().resolve(getLocation(hash));
+    }
+
+    /**
+     * @param hash hex encoded hash of the content
+     * @return location of the file relative to the directory
+     */
+    private static String getLocation(final String hash) {
+        return hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + SUFFIX;
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("Digest algorithm not available: " + DIGEST_ALGORITHM, ex);
+        }
+    }
+}
@@ -13,13 +13,20 @@
 package org.signserver.server.archive.olddbarchiver.entities;
 
 import java.beans.XMLEncoder;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import javax.ejb.EJBException;
 import javax.persistence.*;
 import org.apache.log4j.Logger;
@@ -29,6 +36,7 @@ import org.cesecore.util.Base64PutHashMap;
 import org.signserver.common.ArchiveData;
 import org.signserver.common.ArchiveDataVO;
 import org.signserver.common.util.SecureXMLDecoder;
+import org.signserver.server.archive.filearchiver.ArchiveFileStore;
 
 /**
  * Entity Bean storing requests and responses of signer beans
@@ -44,13 +52,21 @@ import org.signserver.common.util.SecureXMLDecoder;
  * requestIP                : String (Null)
  * archiveData              : String
  * dataEncoding             : int
+ * archiveDirectory         : String (Null)
  * </pre>
  *
  * @version $Id$
  *
  */
 @Entity
-@Table(name = "ArchiveData")
+@Table(name = "ArchiveData", indexes = {
+    // Keep in sync with doc/sql-scripts/create-index-signserver.sql
+    @Index(name = "archivedata_idx4", columnList = "time,uniqueId"),
+    @Index(name = "archivedata_idx5", columnList = "signerid,time"),
+    @Index(name = "archivedata_idx6", columnList = "archiveid"),
+    @Index(name = "archivedata_idx7", columnList = "requestIP"),
+    @Index(name = "archivedata_idx8", columnList = "requestCertSerialnumber")
+})
 @NamedQueries({
     @NamedQuery(name = "ArchiveDataBean.findByArchiveId", query = "SELECT a from ArchiveDataBean a WHERE a.type=?1 AND a.signerid=?2 AND a.archiveid=?3"),
     @NamedQuery(name = "ArchiveDataBean.findAllByArchiveId", query = "SELECT a from ArchiveDataBean a WHERE a.signerid=?1 AND a.archiveid=?2"),
@@ -70,6 +86,8 @@ public class ArchiveDataBean implements Serializable {
     
     public static final int DATA_ENCODING_XML = 0;
     public static final int DATA_ENCODING_BASE64 = 1;
+    /** The data is stored in a file and archiveData contains its location. */
+    public static final int DATA_ENCODING_FILE = 2;
 
     @Id
     private String uniqueId;
@@ -94,6 +112,9 @@ public class ArchiveDataBean implements Serializable {
     @Column(length = 10485760)
     private String archiveData;
 
+    /** Directory the file is stored in, for data stored in a file. */
+    private String archiveDirectory;
+
     /**
      * Unique Id of the archieved data
      * Is a compination of type, archiveId and signerId
@@ -224,6 +245,39 @@ public class ArchiveDataBean implements Serializable {
         this.archiveData = archiveData;
     }
 
+    /**
+     * @return the directory the data was stored in or null if not stored in
+     * a file
+     */
+    public String getArchiveDirectory() {
+        return archiveDirectory;
+    }
+
+    /**
+     * @param archiveDirectory the directory the data was stored in
+     */
+    public void setArchiveDirectory(String archiveDirectory) {
+        this.archiveDirectory = archiveDirectory;
+    }
+
+    /**
+     * Gives the directories to look for the file in, starting with the
+     * directory the data was stored in.
+     *
+     * @param archiveDirectories the data could also be stored in, in case the
+     * directory has been moved
+     * @return the directories
+     */
+    private Collection<File> getArchiveDirectories(final Collection<File> archiveDirectories) {
+        if (archiveDirectory == null) {
+            return archiveDirectories;
+        }
+        final List<File> result = new ArrayList<>(archiveDirectories.size() + 1);
+        result.add(new File(archiveDirectory));
+        result.addAll(archiveDirectories);
+        return result;
+    }
+
     //
     // Public business methods used to help us manage certificates
     //
@@ -235,10 +289,23 @@ public class ArchiveDataBean implements Serializable {
      * @return certificate request history object
      */
     public ArchiveData getArchiveDataObject() throws IOException {
+        return getArchiveDataObject(Collections.<File>emptyList());
+    }
+
+    /**
+     * Returns the value object containing the information of the entity bean.
+     *
+     * @param archiveDirectories to also look for data stored in a file in
+     * @return certificate request history object
+     * @throws IOException in case the data could not be read
+     */
+    public ArchiveData getArchiveDataObject(final Collection<File> archiveDirectories) throws IOException {
         final ArchiveData result;
 
         if (dataEncoding != null && dataEncoding == DATA_ENCODING_BASE64) {
             result = new ArchiveData(Base64.decode(getArchiveData().getBytes(StandardCharsets.UTF_8)));
+        } else if (dataEncoding != null && dataEncoding == DATA_ENCODING_FILE) {
+            result = new ArchiveData(ArchiveFileStore.read(getArchiveData(), getArchiveDirectories(archiveDirectories)));
         } else {
             SecureXMLDecoder decoder;
 
@@ -279,12 +346,43 @@ public class ArchiveDataBean implements Serializable {
         }
     }
 
+    /**
+     * Opens a stream with the archived bytes.
+     *
+     * For data stored in a file the bytes are read from the file as they are
+     * consumed instead of first being loaded into memory.
+     *
+     * @param archiveDirectories to also look for data stored in a file in
+     * @return stream to read the archived bytes from, to be closed by the caller
+     * @throws IOException in case the data could not be read
+     */
+    public InputStream getArchivedBytesAsStream(final Collection<File> archiveDirectories) throws IOException {
+        if (getDataEncoding() != null && getDataEncoding() == DATA_ENCODING_FILE) {
+            return ArchiveFileStore.open(getArchiveData(), getArchiveDirectories(archiveDirectories));
+        } else {
+            return new ByteArrayInputStream(getArchiveDataVO().getArchivedBytes());
+        }
+    }
+
     /**
      * Method used to get the ArchiveDataVO representation of the data row.
+     *
+     * Data stored in a file is only read from the directory it was stored in.
      * 
      * @return Archive data
+     * @see #getArchiveDataVO(java.util.Collection)
      */
     public ArchiveDataVO getArchiveDataVO() {
+        return getArchiveDataVO(Collections.<File>emptyList());
+    }
+
+    /**
+     * Method used to get the ArchiveDataVO representation of the data row.
+     *
+     * @param archiveDirectories to also look for data stored in a file in
+     * @return Archive data
+     */
+    public ArchiveDataVO getArchiveDataVO(final Collection<File> archiveDirectories) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("getArchiveDataVO: dataEncoding: " + getDataEncoding());
         }
@@ -292,11 +390,19 @@ public class ArchiveDataBean implements Serializable {
             return new ArchiveDataVO(getType(), getSignerid(), getArchiveid(), new Date(getTime()),
                 getRequestIssuerDN(), getRequestCertSerialnumber(), getRequestIP(),
                 Base64.decode(getArchiveData().getBytes(StandardCharsets.UTF_8)));
+        } else if (getDataEncoding() != null && getDataEncoding() == DATA_ENCODING_FILE) {
+            try {
+                return new ArchiveDataVO(getType(), getSignerid(), getArchiveid(), new Date(getTime()),
+                    getRequestIssuerDN(), getRequestCertSerialnumber(), getRequestIP(),
+                    ArchiveFileStore.read(getArchiveData(), getArchiveDirectories(archiveDirectories)));
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("Unable to read archive data file", ex);
+            }
         } else {
             try {
                 return new ArchiveDataVO(getType(), getSignerid(), getArchiveid(), new Date(getTime()),
                     getRequestIssuerDN(), getRequestCertSerialnumber(), getRequestIP(),
-                    getArchiveDataObject());
+                    getArchiveDataObject(archiveDirectories));
             } catch (IOException ex) {
                 throw new IllegalArgumentException("Unable to parse archive data", ex);
             }
@@ -12,23 +12,35 @@
  *************************************************************************/
 package org.signserver.server.archive.olddbarchiver.entities;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.Query;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.cesecore.util.CertTools;
+import org.cesecore.util.query.Elem;
 import org.cesecore.util.query.QueryCriteria;
 import org.cesecore.util.query.QueryGenerator;
+import org.cesecore.util.query.clauses.Order;
 import org.signserver.common.ArchiveData;
+import org.signserver.common.ArchiveDataVO;
 import org.signserver.common.ArchiveMetadata;
 
 /**
@@ -45,9 +57,23 @@ public class ArchiveDataService {
     private static final Logger LOG = Logger.getLogger(ArchiveDataService.class);
     
     private final EntityManager em;
+    private final IntFunction<Collection<File>> archiveDirectories;
 
     public ArchiveDataService(EntityManager em) {
+        this(em, signerId -> Collections.<File>emptyList());
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param em entity manager
+     * @param archiveDirectories gives the directories a worker archives
+     * files in, used to read the data of entries stored in files that are no
+     * longer in the directory stored with the entry
+     */
+    public ArchiveDataService(EntityManager em, IntFunction<Collection<File>> archiveDirectories) {
         this.em = em;
+        this.archiveDirectories = archiveDirectories;
     }
 
     /**
@@ -110,6 +136,44 @@ public class ArchiveDataService {
         return uniqueId;
     }
 
+    /**
+     * Creates an archive entry for data stored outside of the database.
+     *
+     * @param type of archived data
+     * @param signerId ID of the worker
+     * @param archiveid archive ID
+     * @param clientCert client certificate or null
+     * @param requestIP IP address of the client
+     * @param directory the file is stored in
+     * @param location of the file with the archived data, relative to the
+     * directory
+     * @return the unique ID of the entry
+     */
+    public String createWithFile(int type, int signerId, String archiveid, X509Certificate clientCert,
+            String requestIP, File directory, String location) {
+        String uniqueId = type + ";" + signerId + ";" + archiveid;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Creating archive data, uniqueId=" + uniqueId + ", directory=" + directory + ", location=" + location);
+        }
+        ArchiveDataBean adb = new ArchiveDataBean();
+        adb.setUniqueId(uniqueId);
+        adb.setType(type);
+        adb.setSignerid(signerId);
+        adb.setTime(new Date().getTime());
+        adb.setArchiveid(archiveid);
+        if (clientCert != null) {
+            adb.setRequestIssuerDN(CertTools.getIssuerDN(clientCert));
+            adb.setRequestCertSerialnumber(clientCert.getSerialNumber().toString(16));
+        }
+        adb.setRequestIP(requestIP);
+        adb.setArchiveData(location);
+        adb.setArchiveDirectory(directory.getAbsolutePath());
+        adb.setDataEncoding(ArchiveDataBean.DATA_ENCODING_FILE);
+
+        em.persist(adb);
+        return uniqueId;
+    }
+
     /**
      * Method finding a AchiveData given its unique Id.
      * 
@@ -197,6 +261,54 @@ public class ArchiveDataService {
         return new ArrayList<>();
     }
     
+    /**
+     * Writes the archived bytes of an entry to the stream.
+     *
+     * @param uniqueId of the entry
+     * @param out to write the archived bytes to
+     * @return false if there was no such entry
+     * @throws IOException in case of failure reading or writing the data
+     */
+    public boolean writeArchivedBytes(final String uniqueId, final OutputStream out) throws IOException {
+        final ArchiveDataBean bean = em.find(ArchiveDataBean.class, uniqueId);
+        if (bean == null) {
+            return false;
+        }
+        try (InputStream in = bean.getArchivedBytesAsStream(getArchiveDirectories(bean))) {
+            IOUtils.copyLarge(in, out);
+        }
+        return true;
+    }
+
+    /**
+     * Gives the value object of an entry, reading data stored in a file
+     * from the archive directories of the worker.
+     *
+     * @param bean entry
+     * @return the archive data
+     */
+    public ArchiveDataVO getArchiveDataVO(final ArchiveDataBean bean) {
+        return bean.getArchiveDataVO(getArchiveDirectories(bean));
+    }
+
+    private Collection<File> getArchiveDirectories(final ArchiveDataBean bean) {
+        return getArchiveDirectories(bean, new HashMap<>());
+    }
+
+    /**
+     * @param bean entry
+     * @param cache of the directories of the workers already looked up
+     * @return the directories to find the data of the entry in
+     */
+    private Collection<File> getArchiveDirectories(final ArchiveDataBean bean, final Map<Integer, Collection<File>> cache) {
+        final Integer dataEncoding = bean.getDataEncoding();
+        if (dataEncoding != null && dataEncoding == ArchiveDataBean.DATA_ENCODING_FILE) {
+            return cache.computeIfAbsent(bean.getSignerid(), archiveDirectories::apply);
+        } else {
+            return Collections.emptyList();
+        }
+    }
+
     /**
      * Find archive entries with matching uniqueId.
      * 
@@ -225,7 +337,7 @@ public class ArchiveDataService {
                                                    archiveData.getRequestCertSerialnumber(),
                                                    archiveData.getRequestIP(),
                                                    includeData ?
-                                                    archiveData.getArchiveDataVO().getArchivedBytes() :
+                                                    getArchiveDataVO(archiveData).getArchivedBytes() :
                                                     null));
                 }
 
@@ -272,42 +384,177 @@ public class ArchiveDataService {
                 query.setMaxResults(max);
             }
             
-            final List<ArchiveMetadata> result = new LinkedList<>();
+            return toMetadata(query, includeData);
             
-            if (includeData) {
-                final List<ArchiveDataBean> queryResults = query.getResultList();
-
-                for (final ArchiveDataBean bean : queryResults) {
-                    final ArchiveMetadata metadata =
-                        new ArchiveMetadata(bean.getType(), bean.getSignerid(),
-                                            bean.getUniqueId(), bean.getArchiveid(),
-                                            new Date(bean.getTime()), bean.getRequestIssuerDN(),
-                                            bean.getRequestCertSerialnumber(),
-                                            bean.getRequestIP(),
-                                            bean.getArchiveDataVO().getArchivedBytes());
-                    result.add(metadata);
+        } catch (NoResultException ignored) { // NOPMD
+            // ignored
+        }
+        
+        return Collections.emptyList();
+    }
+
+    /**
+     * Finds the entries matching the criteria that come after the given
+     * position when ordered by time and unique ID.
+     *
+     * Instead of skipping a number of rows, as with the start index in
+     * findMatchingCriteria(), the query continues from the last entry of the
+     * previous page so that it can use the index on (time, uniqueId) also
+     * for pages far into the result.
+     *
+     * @param afterTime time of the last entry of the previous page or null
+     * to start from the beginning
+     * @param afterUniqueId unique ID of the last entry of the previous page
+     * or null to continue after all entries with the time
+     * @param max maximum number of results or 0 for all
+     * @param criteria search criteria, any ordering in it is ignored
+     * @param descending true to give the newest entries first
+     * @param includeData if the archived data should be included
+     * @return the matching entries
+     */
+    @SuppressWarnings("unchecked")
+    public List<ArchiveMetadata> findMatchingCriteriaAfter(final Long afterTime,
+            final String afterUniqueId, final int max, final QueryCriteria criteria,
+            final boolean descending, final boolean includeData) {
+        try {
+            final QueryGenerator generator = QueryGenerator.generator(ArchiveDataBean.class, getRestrictions(criteria), "a");
+            final String restrictions = generator.generate().trim();
+
+            // The generator does not group terms so the seek condition is added here
+            final List<String> conditions = new ArrayList<>();
+            if (restrictions.startsWith("WHERE")) {
+                conditions.add("(" + restrictions.substring("WHERE".length()).trim() + ")");
+            }
+            if (afterTime != null) {
+                final String op = descending ? "<" : ">";
+                if (afterUniqueId == null) {
+                    conditions.add("a.time " + op + " :afterTime");
+                } else {
+                    conditions.add("(a.time " + op + " :afterTime OR (a.time = :afterTime AND a.uniqueId " + op + " :afterUniqueId))");
                 }
-            } else {
-                final List<Object[]> queryResults = query.getResultList();
-                
-                for (final Object[] o : queryResults) {
-                    final ArchiveMetadata metadata =
-                            new ArchiveMetadata((Integer) o[0], (Integer) o[1],
-                                                (String) o[2], (String) o[3],
-                                                new Date((Long) o[4]),
-                                                (String) o[5], (String) o[6],
-                                                (String) o[7]);
-                    result.add(metadata);
+            }
+            final String direction = descending ? "DESC" : "ASC";
+            final StringBuilder jpql = new StringBuilder(includeData ?
+                    "SELECT a FROM ArchiveDataBean a" :
+                    "SELECT a.type, a.signerid, a.uniqueId, a.archiveid, a.time, a.requestIssuerDN, a.requestCertSerialnumber, a.requestIP FROM ArchiveDataBean a");
+            if (!conditions.isEmpty()) {
+                jpql.append(" WHERE ").append(String.join(" AND ", conditions));
+            }
+            jpql.append(" ORDER BY a.time ").append(direction).append(", a.uniqueId ").append(direction);
+
+            final Query query = em.createQuery(jpql.toString());
+            if (afterTime != null) {
+                query.setParameter("afterTime", afterTime);
+                if (afterUniqueId != null) {
+                    query.setParameter("afterUniqueId", afterUniqueId);
                 }
             }
-            
-            return result;
-            
+            for (final String key : generator.getParameterKeys()) {
+                query.setParameter(key, generator.getParameterValue(key));
+            }
+
+            if (max > 0) {
+                query.setMaxResults(max);
+            }
+
+            return toMetadata(query, includeData);
         } catch (NoResultException ignored) { // NOPMD
             // ignored
         }
-        
+
         return Collections.emptyList();
     }
 
+    /**
+     * @return criteria with only the restrictions of the given criteria,
+     * without any ordering
+     */
+    private static QueryCriteria getRestrictions(final QueryCriteria criteria) {
+        final QueryCriteria result = QueryCriteria.create();
+        for (final Elem elem : criteria.getElements()) {
+            if (!(elem instanceof Order)) {
+                result.add(elem);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gives all entries matching the criteria to the consumer, one at the
+     * time, ordered by time and unique ID.
+     *
+     * The entries are queried in batches continuing from the last entry of
+     * the previous batch and the entities are detached after each batch so
+     * that all matching entries never have to be in memory at the same time.
+     *
+     * @param criteria search criteria, any ordering in it is ignored
+     * @param descending true to give the newest entries first
+     * @param includeData if the archived data should be included
+     * @param batchSize number of entries to query at the time, must be positive
+     * @param consumer to give the entries to
+     * @return the number of entries
+     */
+    public long exportMatchingCriteria(final QueryCriteria criteria,
+            final boolean descending, final boolean includeData,
+            final int batchSize, final Consumer<ArchiveMetadata> consumer) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        long count = 0;
+        Long afterTime = null;
+        String afterUniqueId = null;
+        List<ArchiveMetadata> batch;
+        do {
+            batch = findMatchingCriteriaAfter(afterTime, afterUniqueId, batchSize, criteria, descending, includeData);
+            for (final ArchiveMetadata entry : batch) {
+                consumer.accept(entry);
+            }
+            count += batch.size();
+            if (!batch.isEmpty()) {
+                final ArchiveMetadata last = batch.get(batch.size() - 1);
+                afterTime = last.getTime().getTime();
+                afterUniqueId = last.getUniqueId();
+            }
+            if (includeData) {
+                em.clear();
+            }
+        } while (batch.size() >= batchSize);
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<ArchiveMetadata> toMetadata(final Query query, final boolean includeData) {
+        final List<ArchiveMetadata> result = new LinkedList<>();
+        
+        if (includeData) {
+            final List<ArchiveDataBean> queryResults = query.getResultList();
+            final Map<Integer, Collection<File>> directories = new HashMap<>();
+
+            for (final ArchiveDataBean bean : queryResults) {
+                final ArchiveMetadata metadata =
+                    new ArchiveMetadata(bean.getType(), bean.getSignerid(),
+                                        bean.getUniqueId(), bean.getArchiveid(),
+                                        new Date(bean.getTime()), bean.getRequestIssuerDN(),
+                                        bean.getRequestCertSerialnumber(),
+                                        bean.getRequestIP(),
+                                        bean.getArchiveDataVO(getArchiveDirectories(bean, directories)).getArchivedBytes());
+                result.add(metadata);
+            }
+        } else {
+            final List<Object[]> queryResults = query.getResultList();
+            
+            for (final Object[] o : queryResults) {
+                final ArchiveMetadata metadata =
+                        new ArchiveMetadata((Integer) o[0], (Integer) o[1],
+                                            (String) o[2], (String) o[3],
+                                            new Date((Long) o[4]),
+                                            (String) o[5], (String) o[6],
+                                            (String) o[7]);
+                result.add(metadata);
+            }
+        }
+        
+        return result;
+    }
+
 }
@@ -0,0 +1,88 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.config.entities;
+
+import java.io.Serializable;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * Entity Bean storing the version of the last applied configuration change
+ * for each worker and for the global configuration.
+ *
+ * Information stored:
+ * <pre>
+ * workerId (PrimaryKey, int, 0 for the global configuration and -1 for the row holding the latest version)
+ * version (long)
+ * changeTime (long)
+ * </pre>
+ *
+ * @version $Id$
+ */
+@Entity
+@Table(name = "ConfigChangeData", indexes = {
+    @Index(name = "configchangedata_idx1", columnList = "version")
+})
+public class ConfigChangeDataBean implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private int workerId;
+
+    private long version;
+
+    private long changeTime;
+
+    public ConfigChangeDataBean() {
+    }
+
+    public ConfigChangeDataBean(final int workerId, final long version, final long changeTime) {
+        this.workerId = workerId;
+        this.version = version;
+        this.changeTime = changeTime;
+    }
+
+    /**
+     * @return ID of the worker, 0 for the global configuration or -1 for
+     * the latest version
+     */
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    public void setWorkerId(int workerId) {
+        this.workerId = workerId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * @return time in milliseconds when the change was made
+     */
+    public long getChangeTime() {
+        return changeTime;
+    }
+
+    public void setChangeTime(long changeTime) {
+        this.changeTime = changeTime;
+    }
+}
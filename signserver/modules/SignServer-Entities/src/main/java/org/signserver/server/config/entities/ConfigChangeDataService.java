@@ -0,0 +1,96 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.config.entities;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.Query;
+
+/**
+ * Entity Service class managing the configuration change versions in the
+ * database.
+ *
+ * The latest version is kept in a row of its own which is locked while a
+ * change is recorded so that the versions are unique across all nodes. The
+ * row is created by the database scripts or, if missing, by each node at
+ * startup in a transaction of its own using createLatestVersion().
+ *
+ * @version $Id$
+ */
+public class ConfigChangeDataService implements IConfigChangeDataService {
+
+    /** Worker ID of the row holding the latest version. */
+    private static final int LATEST_VERSION = -1;
+
+    private final EntityManager em;
+
+    public ConfigChangeDataService(EntityManager em) {
+        this.em = em;
+    }
+
+    @Override
+    public long getVersion() {
+        final ConfigChangeDataBean latest = em.find(ConfigChangeDataBean.class, LATEST_VERSION);
+        return latest == null ? 0 : latest.getVersion();
+    }
+
+    /**
+     * Creates the row holding the latest version unless it already exists.
+     * Should be called in a transaction of its own as the insert fails if
+     * an other node creates the row at the same time.
+     */
+    public void createLatestVersion() {
+        if (em.find(ConfigChangeDataBean.class, LATEST_VERSION) == null) {
+            em.persist(new ConfigChangeDataBean(LATEST_VERSION, 0, System.currentTimeMillis()));
+            em.flush();
+        }
+    }
+
+    @Override
+    public long recordChange(int workerId) {
+        final long now = System.currentTimeMillis();
+        final ConfigChangeDataBean latest = em.find(ConfigChangeDataBean.class, LATEST_VERSION, LockModeType.PESSIMISTIC_WRITE);
+        if (latest == null) {
+            throw new IllegalStateException("No configuration version row. Check that the ConfigChangeData table is accessible");
+        }
+        final long version = latest.getVersion() + 1;
+        latest.setVersion(version);
+        latest.setChangeTime(now);
+
+        final ConfigChangeDataBean change = em.find(ConfigChangeDataBean.class, workerId);
+        if (change == null) {
+            em.persist(new ConfigChangeDataBean(workerId, version, now));
+        } else {
+            change.setVersion(version);
+            change.setChangeTime(now);
+        }
+        return version;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<Integer, Long> findChangesAfter(long version) {
+        final Query query = em.createQuery("SELECT c FROM ConfigChangeDataBean c WHERE c.version > :version AND c.workerId <> :latest");
+        query.setParameter("version", version);
+        query.setParameter("latest", LATEST_VERSION);
+        final List<ConfigChangeDataBean> changes = query.getResultList();
+        final Map<Integer, Long> result = new HashMap<>(changes.size());
+        for (ConfigChangeDataBean change : changes) {
+            result.put(change.getWorkerId(), change.getVersion());
+        }
+        return result;
+    }
+}
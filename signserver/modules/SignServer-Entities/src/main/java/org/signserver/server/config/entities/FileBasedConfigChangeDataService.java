@@ -0,0 +1,142 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.config.entities;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import org.signserver.common.FileBasedDatabaseException;
+import org.signserver.server.nodb.FileBasedDatabaseManager;
+
+/**
+ * Entity Service class managing the configuration change versions in the
+ * file based database.
+ *
+ * The data is only read again from disk when the last modification time or
+ * the size of the file has changed so checking for new changes is cheap.
+ *
+ * @version $Id$
+ */
+public class FileBasedConfigChangeDataService implements IConfigChangeDataService {
+
+    private static final String VERSION = "version";
+    private static final String WORKER_PREFIX = "worker.";
+
+    private static final int SCHEMA_VERSION = 1;
+
+    private final FileBasedDatabaseManager manager;
+    private final File file;
+
+    private Properties cached;
+    private long cachedLastModified = -1;
+    private long cachedLength = -1;
+
+    public FileBasedConfigChangeDataService(FileBasedDatabaseManager manager) {
+        this.manager = manager;
+        this.file = new File(manager.getDataFolder(), "configchangedata.dat");
+    }
+
+    @Override
+    public long getVersion() throws FileBasedDatabaseException {
+        try {
+            synchronized (manager) {
+                return Long.parseLong(loadData().getProperty(VERSION, "0"));
+            }
+        } catch (IOException | NumberFormatException ex) {
+            throw new FileBasedDatabaseException("Could not load data from file based database", ex);
+        }
+    }
+
+    @Override
+    public long recordChange(int workerId) throws FileBasedDatabaseException {
+        try {
+            synchronized (manager) {
+                final Properties data = new Properties();
+                data.putAll(loadData());
+                final long version = Long.parseLong(data.getProperty(VERSION, "0")) + 1;
+                data.setProperty(VERSION, String.valueOf(version));
+                data.setProperty(WORKER_PREFIX + workerId, String.valueOf(version));
+                writeData(data);
+                return version;
+            }
+        } catch (IOException | NumberFormatException ex) {
+            throw new FileBasedDatabaseException("Could not load from or write data to file based database", ex);
+        }
+    }
+
+    @Override
+    public Map<Integer, Long> findChangesAfter(long version) throws FileBasedDatabaseException {
+        try {
+            final Map<Integer, Long> result = new HashMap<>();
+            synchronized (manager) {
+                final Properties data = loadData();
+                for (String key : data.stringPropertyNames()) {
+                    if (key.startsWith(WORKER_PREFIX)) {
+                        final long changed = Long.parseLong(data.getProperty(key));
+                        if (changed > version) {
+                            result.put(Integer.parseInt(key.substring(WORKER_PREFIX.length())), changed);
+                        }
+                    }
+                }
+            }
+            return result;
+        } catch (IOException | NumberFormatException ex) {
+            throw new FileBasedDatabaseException("Could not load data from file based database", ex);
+        }
+    }
+
+    private Properties loadData() throws IOException {
+        assert Thread.holdsLock(manager);
+        checkSchemaVersion();
+
+        final long lastModified = file.lastModified();
+        final long length = file.length();
+        if (cached == null || lastModified != cachedLastModified || length != cachedLength) {
+            final Properties properties = new Properties();
+            if (length != 0) {
+                try (FileInputStream in = new FileInputStream(file)) {
+                    properties.loadFromXML(in);
+                }
+            }
+            cached = properties;
+            cachedLastModified = lastModified;
+            cachedLength = length;
+        }
+        return cached;
+    }
+
+    private void writeData(Properties properties) throws IOException {
+        assert Thread.holdsLock(manager);
+        checkSchemaVersion();
+
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            properties.storeToXML(out, "DO NOT EDIT THIS FILE MANUALLY (while SignServer is running)", StandardCharsets.UTF_8.name());
+            out.flush();
+            out.getFD().sync();
+        }
+        cached = properties;
+        cachedLastModified = file.lastModified();
+        cachedLength = file.length();
+    }
+
+    private void checkSchemaVersion() {
+        if (manager.getSchemaVersion() != SCHEMA_VERSION) {
+            throw new FileBasedDatabaseException("Unsupported schema version: " + manager.getSchemaVersion());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.config.entities;
+
+import java.util.Map;
+
+/**
+ * DataService managing the persistence of the configuration change versions
+ * used by the nodes to find out which workers have been reloaded by other
+ * nodes.
+ *
+ * Each change gets a new version number, higher than all previous. The
+ * latest version can be read without looking at all the changes.
+ *
+ * @version $Id$
+ */
+public interface IConfigChangeDataService {
+
+    /** Worker ID used for changes of the global configuration. */
+    int GLOBAL_CONFIGURATION = 0;
+
+    /**
+     * @return The version of the latest change or 0 if there has not been
+     * any changes
+     */
+    long getVersion();
+
+    /**
+     * Records a change of the configuration.
+     *
+     * @param workerId Id of worker changed or GLOBAL_CONFIGURATION
+     * @return The version of the change
+     */
+    long recordChange(int workerId);
+
+    /**
+     * Gives the changes made after the given version.
+     *
+     * @param version To give changes after
+     * @return Map from worker ID, or GLOBAL_CONFIGURATION, to the version of
+     * the last change
+     */
+    Map<Integer, Long> findChangesAfter(long version);
+}
@@ -0,0 +1,67 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.entities;
+
+import java.io.Serializable;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Balance in database of an account charged by an accounter.
+ *
+ * @version $Id$
+ */
+@Entity
+@Table(name = "AccountBalance")
+public class AccountBalance implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private String accountId;
+
+    private long balance;
+
+    private long lastUpdated;
+
+    public AccountBalance() {
+    }
+
+    public AccountBalance(final String accountId, final long balance, final long lastUpdated) {
+        this.accountId = accountId;
+        this.balance = balance;
+        this.lastUpdated = lastUpdated;
+    }
+
+    public String getAccountId() {
+        return accountId;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    /**
+     * @return time of the last change of the balance in milliseconds
+     */
+    public long getLastUpdated() {
+        return lastUpdated;
+    }
+
+    @Override
+    public String toString() {
+        return "AccountBalance(" + accountId + ", " + balance + ")";
+    }
+
+}
@@ -0,0 +1,85 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.entities;
+
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import org.apache.log4j.Logger;
+
+/**
+ * Entity Service class managing the account balances in the database.
+ *
+ * Charging and topping up are done using conditional update statements so
+ * that concurrent requests, also from other nodes, can not overdraw or
+ * overwrite the balance.
+ *
+ * @version $Id$
+ */
+public class AccountBalanceDataService implements IAccountBalanceDataService {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(AccountBalanceDataService.class);
+
+    private final EntityManager em;
+
+    public AccountBalanceDataService(EntityManager em) {
+        this.em = em;
+    }
+
+    @Override
+    public AccountBalance getBalance(final String accountId) {
+        return em.find(AccountBalance.class, accountId);
+    }
+
+    @Override
+    public boolean chargeIfSufficient(final String accountId, final long amount) {
+        final Query updateQuery = em.createQuery("UPDATE AccountBalance a SET a.balance = a.balance - :amount, a.lastUpdated = :now WHERE a.accountId = :accountId AND a.balance >= :amount");
+        updateQuery.setParameter("amount", amount);
+        updateQuery.setParameter("now", System.currentTimeMillis());
+        updateQuery.setParameter("accountId", accountId);
+
+        return updateQuery.executeUpdate() > 0;
+    }
+
+    @Override
+    public long topUp(final String accountId, final long amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Amount to top up must be positive: " + amount);
+        }
+        final long now = System.currentTimeMillis();
+        final Query updateQuery = em.createQuery("UPDATE AccountBalance a SET a.balance = a.balance + :amount, a.lastUpdated = :now WHERE a.accountId = :accountId");
+        updateQuery.setParameter("amount", amount);
+        updateQuery.setParameter("now", now);
+        updateQuery.setParameter("accountId", accountId);
+
+        if (updateQuery.executeUpdate() == 0) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Creating account " + accountId);
+            }
+            em.persist(new AccountBalance(accountId, amount, now));
+            em.flush();
+            return amount;
+        }
+        return (Long) em.createQuery("SELECT a.balance FROM AccountBalance a WHERE a.accountId = :accountId")
+                .setParameter("accountId", accountId)
+                .getSingleResult();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<AccountBalance> findAll() {
+        return em.createQuery("SELECT a FROM AccountBalance a ORDER BY a.accountId").getResultList();
+    }
+
+}
@@ -0,0 +1,166 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.entities;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import org.signserver.common.FileBasedDatabaseException;
+import org.signserver.server.nodb.FileBasedDatabaseManager;
+
+/**
+ * Entity Service class managing the account balances in the file based
+ * database.
+ *
+ * All balances are kept in one file. It is read for every operation, and
+ * not cached, as it is also updated by the other service instances.
+ *
+ * @version $Id$
+ */
+public class FileBasedAccountBalanceDataService implements IAccountBalanceDataService {
+
+    private static final String BALANCE_PREFIX = "balance.";
+    private static final String UPDATED_PREFIX = "updated.";
+
+    private static final int SCHEMA_VERSION = 1;
+
+    private final FileBasedDatabaseManager manager;
+    private final File file;
+
+    public FileBasedAccountBalanceDataService(FileBasedDatabaseManager manager) {
+        this.manager = manager;
+        this.file = new File(manager.getDataFolder(), "accountbalance.dat");
+    }
+
+    @Override
+    public AccountBalance getBalance(final String accountId) throws FileBasedDatabaseException {
+        try {
+            synchronized (manager) {
+                return toAccountBalance(loadData(), accountId);
+            }
+        } catch (IOException | NumberFormatException ex) {
+            throw new FileBasedDatabaseException("Could not load data from file based database", ex);
+        }
+    }
+
+    @Override
+    public boolean chargeIfSufficient(final String accountId, final long amount) throws FileBasedDatabaseException {
+        try {
+            synchronized (manager) {
+                final String value = loadData().getProperty(BALANCE_PREFIX + accountId);
+                if (value == null || Long.parseLong(value) < amount) {
+                    return false;
+                }
+                setBalance(accountId, Long.parseLong(value) - amount);
+                return true;
+            }
+        } catch (IOException | NumberFormatException ex) {
+            throw new FileBasedDatabaseException("Could not load from or write data to file based database", ex);
+        }
+    }
+
+    @Override
+    public long topUp(final String accountId, final long amount) throws FileBasedDatabaseException {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Amount to top up must be positive: " + amount);
+        }
+        try {
+            synchronized (manager) {
+                final String value = loadData().getProperty(BALANCE_PREFIX + accountId);
+                final long balance = (value == null ? 0 : Long.parseLong(value)) + amount;
+                setBalance(accountId, balance);
+                return balance;
+            }
+        } catch (IOException | NumberFormatException ex) {
+            throw new FileBasedDatabaseException("Could not load from or write data to file based database", ex);
+        }
+    }
+
+    @Override
+    public List<AccountBalance> findAll() throws FileBasedDatabaseException {
+        try {
+            final List<AccountBalance> result = new ArrayList<>();
+            synchronized (manager) {
+                final Properties data = loadData();
+                final List<String> keys = new ArrayList<>(data.stringPropertyNames());
+                Collections.sort(keys);
+                for (String key : keys) {
+                    if (key.startsWith(BALANCE_PREFIX)) {
+                        result.add(toAccountBalance(data, key.substring(BALANCE_PREFIX.length())));
+                    }
+                }
+            }
+            return result;
+        } catch (IOException | NumberFormatException ex) {
+            throw new FileBasedDatabaseException("Could not load data from file based database", ex);
+        }
+    }
+
+    private static AccountBalance toAccountBalance(final Properties data, final String accountId) {
+        final String value = data.getProperty(BALANCE_PREFIX + accountId);
+        if (value == null) {
+            return null;
+        }
+        return new AccountBalance(accountId, Long.parseLong(value),
+                Long.parseLong(data.getProperty(UPDATED_PREFIX + accountId, "0")));
+    }
+
+    private void setBalance(final String accountId, final long balance) throws IOException {
+        final Properties data = loadData();
+        data.setProperty(BALANCE_PREFIX + accountId, String.valueOf(balance));
+        data.setProperty(UPDATED_PREFIX + accountId, String.valueOf(System.currentTimeMillis()));
+        writeData(data);
+    }
+
+    private Properties loadData() throws IOException {
+        assert Thread.holdsLock(manager);
+        checkSchemaVersion();
+
+        final Properties properties = new Properties();
+        if (file.length() != 0) {
+            try (FileInputStream in = new FileInputStream(file)) {
+                properties.loadFromXML(in);
+            }
+        }
+        return properties;
+    }
+
+    private void writeData(Properties properties) throws IOException {
+        assert Thread.holdsLock(manager);
+        checkSchemaVersion();
+
+        // Replace the file only when completely written so that no balances
+        // are lost if the server is stopped while writing
+        final File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            properties.storeToXML(out, "DO NOT EDIT THIS FILE MANUALLY (while SignServer is running)", StandardCharsets.UTF_8.name());
+            out.flush();
+            out.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void checkSchemaVersion() {
+        if (manager.getSchemaVersion() != SCHEMA_VERSION) {
+            throw new FileBasedDatabaseException("Unsupported schema version: " + manager.getSchemaVersion());
+        }
+    }
+}
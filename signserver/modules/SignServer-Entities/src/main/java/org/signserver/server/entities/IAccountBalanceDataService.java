@@ -0,0 +1,57 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.entities;
+
+import java.util.List;
+
+/**
+ * DataService managing the persistence of the account balances.
+ *
+ * @version $Id$
+ */
+public interface IAccountBalanceDataService {
+
+    /**
+     * Get the current balance of the given account.
+     * @param accountId Id of the account
+     * @return The balance or null if there is no such account
+     */
+    AccountBalance getBalance(String accountId);
+
+    /**
+     * Decrease the balance of the account but only if the balance is
+     * sufficient in which case it instead just returns false.
+     * The check and the decrease is done in one atomic operation.
+     * @param accountId Id of the account
+     * @param amount The amount to charge
+     * @return True if the account was charged or false if the balance was
+     * insufficient or there is no such account
+     */
+    boolean chargeIfSufficient(String accountId, long amount);
+
+    /**
+     * Increase the balance of the account, creating the account if it does
+     * not already exist.
+     * @param accountId Id of the account
+     * @param amount The amount to add, must be positive
+     * @return The new balance
+     * @throws IllegalArgumentException if the amount is not positive
+     */
+    long topUp(String accountId, long amount);
+
+    /**
+     * @return All accounts ordered by account id
+     */
+    List<AccountBalance> findAll();
+
+}
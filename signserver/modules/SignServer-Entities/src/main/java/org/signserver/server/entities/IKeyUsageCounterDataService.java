@@ -43,6 +43,31 @@ public interface IKeyUsageCounterDataService {
      */
     boolean incrementIfWithinLimit(String keyHash, long limit);
 
+    /**
+     * Increase the value of the key usage counter by the given number of
+     * operations but only if the limit is not exceeded by that in which case
+     * it instead just returns false.
+     *
+     * The default implementation increments the counter one operation at a
+     * time, and might increment it by less than count before returning
+     * false. Implementations should override it to update the counter in
+     * one step.
+     *
+     * @param keyHash Hash of the key
+     * @param limit The maximum number of operations
+     * @param count The number of operations to add
+     * @return True if the counter was increased or false if the limit was
+     * exceeded or the counter not initialized
+     */
+    default boolean incrementIfWithinLimit(String keyHash, long limit, long count) {
+        for (long i = 0; i < count; i++) {
+            if (!incrementIfWithinLimit(keyHash, limit)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Checks if the counter for the given key is within the given limit.
      * @param keyHash Hash of the key
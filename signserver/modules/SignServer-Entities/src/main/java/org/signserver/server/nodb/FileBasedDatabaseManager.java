@@ -48,7 +48,14 @@ public class FileBasedDatabaseManager {
     private MetaDataService dataService;
     private boolean initialized;
     
-    private FileBasedDatabaseManager(File dataFolder) {
+    /**
+     * Creates a manager for a database in the given folder. Normally the
+     * instance from getInstance() should be used, this is for running
+     * without an application server, i.e. from the benchmarks.
+     *
+     * @param dataFolder folder of the database
+     */
+    public FileBasedDatabaseManager(File dataFolder) {
         this.dataFolder = dataFolder;
         this.dataService = new MetaDataService(this);
     }
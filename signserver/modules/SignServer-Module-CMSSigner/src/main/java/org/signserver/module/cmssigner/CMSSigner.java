@@ -62,7 +62,8 @@ import org.signserver.server.archive.Archivable;
 import org.signserver.server.archive.DefaultArchivable;
 import org.signserver.server.cryptotokens.ICryptoInstance;
 import org.signserver.server.cryptotokens.ICryptoTokenV4;
-import org.signserver.server.data.impl.UploadUtil;
+import org.signserver.server.data.impl.DigestingReadableData;
+import org.signserver.server.data.impl.DigestingWritableData;
 import org.signserver.server.log.IWorkerLogger;
 import org.signserver.server.log.LogMap;
 import org.signserver.server.log.Loggable;
@@ -309,6 +310,10 @@ public class CMSSigner extends BaseSigner {
      * Must be overridden by extending implementations when extendCMSData
      * returns true.
      * 
+     * Note that when signing data (not a client-side computed hash) the
+     * CMS passed in does not contain the encapsulated content. The content is
+     * streamed into the DER encoded output after the extension.
+     * 
      * @param cms Basic CMS signature data
      * @param context Request context
      * @return CMS signature data with additional attributes
@@ -356,14 +361,15 @@ public class CMSSigner extends BaseSigner {
                 IOUtils.copyLarge(requestIn, out);
             }
         } else {
-            // Sign and then parse and re-encode as DER
-            // Note, this will not support large files as the above case and will not be as performant.
+            // Sign without encapsulating the content so that only the small
+            // signed data structure needs to be parsed, extended and
+            // re-encoded, then stream the content into the DER encoding
             if (LOG.isDebugEnabled()) {
-                LOG.debug("Signing and then re-encoding as DER");
+                LOG.debug("Signing and then encoding as DER");
             }
             final ByteArrayOutputStream bout = new ByteArrayOutputStream();
             try (
-                    final OutputStream out = generator.open(contentOID, bout, !detached);
+                    final OutputStream out = generator.open(contentOID, bout, false);
                     final InputStream requestIn = requestData.getAsInputStream();
                 ) {
                 IOUtils.copyLarge(requestIn, out);
@@ -376,7 +382,9 @@ public class CMSSigner extends BaseSigner {
             } 
             
             try (final OutputStream responseOutputStream = requestData.isFile() && !detached ? responseData.getAsFileOutputStream() : responseData.getAsInMemoryOutputStream();) {
-                if (derReEncode) {
+                if (!detached) {
+                    DERSignedDataWriter.writeEncapsulated(signedData.toASN1Structure(), requestData, responseOutputStream);
+                } else if (derReEncode) {
                     final ASN1OutputStream derOut =
                             ASN1OutputStream.create(responseOutputStream,
                                                     ASN1Encoding.DER);
@@ -521,59 +529,64 @@ public class CMSSigner extends BaseSigner {
             // Log anything interesting from the request to the worker logger
             final LogMap logMap = LogMap.getInstance(requestContext);
 
-            final byte[] requestDigest;
-            if (doLogRequestDigest) {
-                logMap.put(IWorkerLogger.LOG_REQUEST_DIGEST_ALGORITHM, logRequestDigestAlgorithm);
-
-                try (InputStream input = requestData.getAsInputStream()) {
-                    final MessageDigest md = MessageDigest.getInstance(logRequestDigestAlgorithm, BouncyCastleProvider.PROVIDER_NAME);
-
-                    // Digest all data
-                    // TODO: Future optimization: could be done while the file is read instead
-                    requestDigest = UploadUtil.digest(input, md);
-
-                    logMap.put(IWorkerLogger.LOG_REQUEST_DIGEST, new Loggable() {
-                        @Override
-                        public String toString() {
-                            return Hex.toHexString(requestDigest);
-                        }
-                    });
-                } catch (NoSuchAlgorithmException | NoSuchProviderException ex) {
-                    LOG.error("Log digest algorithm not supported", ex);
-                    throw new SignServerException("Log digest algorithm not supported", ex);
-                } catch (IOException ex) {
-                    LOG.error("Log request digest failed", ex);
-                    throw new SignServerException("Log request digest failed", ex);
+            // Digests for the log are computed while the data is read and
+            // written by the signing
+            final DigestingReadableData digestingRequestData;
+            final DigestingWritableData digestingResponseData;
+            try {
+                if (doLogRequestDigest) {
+                    logMap.put(IWorkerLogger.LOG_REQUEST_DIGEST_ALGORITHM, logRequestDigestAlgorithm);
+                    digestingRequestData = new DigestingReadableData(requestData, MessageDigest.getInstance(logRequestDigestAlgorithm, BouncyCastleProvider.PROVIDER_NAME));
+                } else {
+                    digestingRequestData = null;
+                }
+                if (doLogResponseDigest) {
+                    logMap.put(IWorkerLogger.LOG_RESPONSE_DIGEST_ALGORITHM, logResponseDigestAlgorithm);
+                    digestingResponseData = new DigestingWritableData(responseData, MessageDigest.getInstance(logResponseDigestAlgorithm, BouncyCastleProvider.PROVIDER_NAME));
+                } else {
+                    digestingResponseData = null;
                 }
+            } catch (NoSuchAlgorithmException | NoSuchProviderException ex) {
+                LOG.error("Log digest algorithm not supported", ex);
+                throw new SignServerException("Log digest algorithm not supported", ex);
             }
 
-            sign(crypto, cert, certs, sigAlg, requestContext, requestData,
-                         responseData, contentOIDToUse);
+            try {
+                sign(crypto, cert, certs, sigAlg, requestContext,
+                        digestingRequestData == null ? requestData : digestingRequestData,
+                        digestingResponseData == null ? responseData : digestingResponseData,
+                        contentOIDToUse);
+            } finally {
+                // The request digest is logged also if the signing failed
+                if (digestingRequestData != null) {
+                    try {
+                        final byte[] requestDigest = digestingRequestData.getDigest();
+                        logMap.put(IWorkerLogger.LOG_REQUEST_DIGEST, new Loggable() {
+                            @Override
+                            public String toString() {
+                                return Hex.toHexString(requestDigest);
+                            }
+                        });
+                    } catch (IOException ex) {
+                        LOG.error("Log request digest failed", ex);
+                    }
+                }
+            }
 
             final String archiveId = createArchiveId(new byte[0], (String) requestContext.get(RequestContext.TRANSACTION_ID));
             final Collection<? extends Archivable> archivables = Arrays.asList(
                     new DefaultArchivable(Archivable.TYPE_REQUEST, CONTENT_TYPE, requestData, archiveId), 
                     new DefaultArchivable(Archivable.TYPE_RESPONSE, CONTENT_TYPE, responseData.toReadableData(), archiveId));
 
-            final byte[] responseDigest;
-            if (doLogResponseDigest) {
-                logMap.put(IWorkerLogger.LOG_RESPONSE_DIGEST_ALGORITHM, logResponseDigestAlgorithm);
-
-                try (InputStream in = responseData.toReadableData().getAsInputStream()) {
-                    final MessageDigest md = MessageDigest.getInstance(logResponseDigestAlgorithm, BouncyCastleProvider.PROVIDER_NAME);
-                    responseDigest = UploadUtil.digest(in, md);
-
-                    logMap.put(IWorkerLogger.LOG_RESPONSE_DIGEST,
-                               new Loggable() {
-                                   @Override
-                                   public String toString() {
-                                        return Hex.toHexString(responseDigest);
-                                   }
-                               });
-                } catch (NoSuchAlgorithmException | NoSuchProviderException ex) {
-                    LOG.error("Log digest algorithm not supported", ex);
-                    throw new SignServerException("Log digest algorithm not supported", ex);
-                }
+            if (digestingResponseData != null) {
+                final byte[] responseDigest = digestingResponseData.getDigest();
+                logMap.put(IWorkerLogger.LOG_RESPONSE_DIGEST,
+                           new Loggable() {
+                               @Override
+                               public String toString() {
+                                    return Hex.toHexString(responseDigest);
+                               }
+                           });
             }
 
             // Suggest new file name
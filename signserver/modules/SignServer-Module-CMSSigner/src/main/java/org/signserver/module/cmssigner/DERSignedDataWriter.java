@@ -0,0 +1,153 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.module.cmssigner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.BERTags;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.cms.ContentInfo;
+import org.bouncycastle.asn1.cms.SignedData;
+import org.signserver.common.data.ReadableData;
+
+/**
+ * Writes a CMS SignedData structure in DER with encapsulated content that is
+ * streamed from the request data instead of being held in memory.
+ *
+ * The signed data structure is given without the content (i.e. as a detached
+ * signature) and the definite lengths of all enclosing structures are
+ * computed from the known length of the content. This gives the same bytes as
+ * DER encoding the complete structure with the content included.
+ *
+ * @version $Id$
+ */
+public final class DERSignedDataWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int SEQUENCE = BERTags.CONSTRUCTED | BERTags.SEQUENCE;
+    private static final int EXPLICIT_0 = BERTags.CONSTRUCTED | BERTags.CONTEXT_SPECIFIC;
+
+    private DERSignedDataWriter() {
+        // No instances
+    }
+
+    /**
+     * Writes the signed data in DER with the content encapsulated.
+     *
+     * @param detachedContentInfo ContentInfo with a SignedData not having
+     * any encapsulated content
+     * @param content to encapsulate
+     * @param out to write the DER encoding to
+     * @throws IOException in case of error reading the content or writing
+     */
+    public static void writeEncapsulated(final ContentInfo detachedContentInfo, final ReadableData content, final OutputStream out) throws IOException {
+        final SignedData signedData = SignedData.getInstance(detachedContentInfo.getContent());
+        if (signedData.getEncapContentInfo().getContent() != null) {
+            throw new IllegalArgumentException("Signed data already has encapsulated content");
+        }
+
+        final byte[] contentType = detachedContentInfo.getContentType().getEncoded(ASN1Encoding.DER);
+        final byte[] version = signedData.getVersion().getEncoded(ASN1Encoding.DER);
+        final byte[] digestAlgorithms = signedData.getDigestAlgorithms().getEncoded(ASN1Encoding.DER);
+        final byte[] eContentType = signedData.getEncapContentInfo().getContentType().getEncoded(ASN1Encoding.DER);
+
+        final ByteArrayOutputStream trailer = new ByteArrayOutputStream();
+        if (signedData.getCertificates() != null) {
+            trailer.write(new DERTaggedObject(false, 0, signedData.getCertificates()).getEncoded(ASN1Encoding.DER));
+        }
+        if (signedData.getCRLs() != null) {
+            trailer.write(new DERTaggedObject(false, 1, signedData.getCRLs()).getEncoded(ASN1Encoding.DER));
+        }
+        trailer.write(signedData.getSignerInfos().getEncoded(ASN1Encoding.DER));
+
+        // Compute the lengths from the inside out
+        final long contentLength = content.getLength();
+        final long octetStringLength = headerLength(contentLength) + contentLength;
+        final long encapLength = eContentType.length + headerLength(octetStringLength) + octetStringLength;
+        final long signedDataLength = version.length + digestAlgorithms.length + headerLength(encapLength) + encapLength + trailer.size();
+        final long explicitLength = headerLength(signedDataLength) + signedDataLength;
+        final long contentInfoLength = contentType.length + headerLength(explicitLength) + explicitLength;
+
+        // ContentInfo
+        writeHeader(SEQUENCE, contentInfoLength, out);
+        out.write(contentType);
+        writeHeader(EXPLICIT_0, explicitLength, out);
+
+        // SignedData
+        writeHeader(SEQUENCE, signedDataLength, out);
+        out.write(version);
+        out.write(digestAlgorithms);
+
+        // EncapsulatedContentInfo
+        writeHeader(SEQUENCE, encapLength, out);
+        out.write(eContentType);
+        writeHeader(EXPLICIT_0, octetStringLength, out);
+        writeHeader(BERTags.OCTET_STRING, contentLength, out);
+        try (InputStream in = content.getAsInputStream()) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            long written = 0;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                written += n;
+                if (written > contentLength) {
+                    break;
+                }
+                out.write(buffer, 0, n);
+            }
+            if (written != contentLength) {
+                throw new IOException("Content length changed while encoding: expected " + contentLength + " bytes but read " + written);
+            }
+        }
+
+        // Certificates, CRLs and SignerInfos
+        trailer.writeTo(out);
+    }
+
+    /**
+     * @param length of the contents
+     * @return number of bytes in the DER tag and length octets
+     */
+    static int headerLength(final long length) {
+        return 1 + lengthOctets(length);
+    }
+
+    private static int lengthOctets(final long length) {
+        if (length < 0x80) {
+            return 1;
+        }
+        int size = 1;
+        long value = length;
+        while (value > 0) {
+            size++;
+            value >>>= 8;
+        }
+        return size;
+    }
+
+    private static void writeHeader(final int tag, final long length, final OutputStream out) throws IOException {
+        out.write(tag);
+        if (length < 0x80) {
+            out.write((int) length);
+        } else {
+            final int count = lengthOctets(length) - 1;
+            out.write(0x80 | count);
+            for (int i = (count - 1) * 8; i >= 0; i -= 8) {
+                out.write((int) (length >>> i));
+            }
+        }
+    }
+}
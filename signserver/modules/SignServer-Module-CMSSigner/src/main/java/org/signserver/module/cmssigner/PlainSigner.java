@@ -59,7 +59,7 @@ import org.signserver.server.archive.Archivable;
 import org.signserver.server.archive.DefaultArchivable;
 import org.signserver.server.cryptotokens.ICryptoInstance;
 import org.signserver.server.cryptotokens.ICryptoTokenV4;
-import org.signserver.server.data.impl.UploadUtil;
+import org.signserver.server.data.impl.DigestingReadableData;
 import org.signserver.server.log.IWorkerLogger;
 import org.signserver.server.log.LogMap;
 import org.signserver.server.log.Loggable;
@@ -204,28 +204,20 @@ public class PlainSigner extends BaseSigner {
                 return logRequestDigestAlgorithm;
             }
         });
+        // The request digest for the log is computed while the data is read
+        // for signing
+        final DigestingReadableData digestingRequestData;
         if (doLogRequestDigest) {
-            try (InputStream input = requestData.getAsInputStream()) {
-                final MessageDigest md = MessageDigest.getInstance(logRequestDigestAlgorithm, BouncyCastleProvider.PROVIDER_NAME);
-
-                // Digest all data
-                // TODO: Future optimization: could be done while the file is read instead
-                final byte[] requestDigest = UploadUtil.digest(input, md);
-
-                logMap.put(IWorkerLogger.LOG_REQUEST_DIGEST, new Loggable() {
-                    @Override
-                    public String toString() {
-                        return Hex.toHexString(requestDigest);
-                    }
-                });
+            try {
+                digestingRequestData = new DigestingReadableData(requestData, MessageDigest.getInstance(logRequestDigestAlgorithm, BouncyCastleProvider.PROVIDER_NAME));
             } catch (NoSuchAlgorithmException | NoSuchProviderException ex) {
                 LOG.error("Log digest algorithm not supported", ex);
                 throw new SignServerException("Log digest algorithm not supported", ex);
-            } catch (IOException ex) {
-                LOG.error("Log request digest failed", ex);
-                throw new SignServerException("Log request digest failed", ex);
             }
+        } else {
+            digestingRequestData = null;
         }
+        final ReadableData requestDataToSign = digestingRequestData == null ? requestData : digestingRequestData;
         final String archiveId = createArchiveId(new byte[0], (String) requestContext.get(RequestContext.TRANSACTION_ID));
 
         ICryptoInstance crypto = null;
@@ -256,7 +248,7 @@ public class PlainSigner extends BaseSigner {
                 // Special case as BC (ContentSignerBuilder) does not handle NONEwithRSA
                 final Signature signature = Signature.getInstance(sigAlg, crypto.getProvider());
 
-                final byte[] data = requestData.getAsByteArray();
+                final byte[] data = requestDataToSign.getAsByteArray();
                 final byte[] dataToSign;
 
                 // check that the digest is of the expected length
@@ -297,7 +289,7 @@ public class PlainSigner extends BaseSigner {
                 signature.update(dataToSign);
                 signedbytes = signature.sign();
             } else {
-                try (final InputStream in = requestData.getAsInputStream()) {
+                try (final InputStream in = requestDataToSign.getAsInputStream()) {
                     // Special case as BC (ContentSignerBuilder) does not handle NONEwithRSA
                     if (sigAlgUpperCase.startsWith("NONEWITH")) { 
                         // We need PSS params for this
@@ -379,6 +371,20 @@ public class PlainSigner extends BaseSigner {
         } catch (IOException ex) {
             throw new SignServerException("IO error", ex);
         } finally {
+            // The request digest is logged also if the signing failed
+            if (digestingRequestData != null) {
+                try {
+                    final byte[] requestDigest = digestingRequestData.getDigest();
+                    logMap.put(IWorkerLogger.LOG_REQUEST_DIGEST, new Loggable() {
+                        @Override
+                        public String toString() {
+                            return Hex.toHexString(requestDigest);
+                        }
+                    });
+                } catch (IOException ex) {
+                    LOG.error("Log request digest failed", ex);
+                }
+            }
             releaseCryptoInstance(crypto, requestContext);
         }
     }
@@ -12,8 +12,10 @@
  *************************************************************************/
 package org.signserver.module.cmssigner;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
 import java.security.MessageDigest;
@@ -26,6 +28,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.Random;
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertTrue;
 import org.apache.log4j.Logger;
@@ -947,6 +950,72 @@ public class CMSSignerUnitTest {
         assertEquals("expect DER format", Hex.toHexString(der), Hex.toHexString(cms));
     }
 
+    /**
+     * Tests that setting DER_RE_ENCODE=true gives DER encoding for a detached
+     * signature.
+     * @throws Exception 
+     */
+    @Test
+    public void testDERReEncodeTrueDetached() throws Exception {
+        LOG.info("testDERReEncodeTrueDetached");
+        WorkerConfig config = new WorkerConfig();
+        config.setProperty("DER_RE_ENCODE", "true");
+        config.setProperty("DETACHEDSIGNATURE", "true");
+
+        final byte[] data = "my-data".getBytes("ASCII");
+        SimplifiedResponse response = signAndVerify(data, tokenRSA, config, null, true, "RSA");
+
+        byte[] cms = response.getProcessedData();
+
+        // expect DER format
+        final byte[] der = new ASN1InputStream(cms).readObject().getEncoded("DER");
+        assertEquals("expect DER format", Hex.toHexString(der), Hex.toHexString(cms));
+    }
+
+    /**
+     * Tests that DER_RE_ENCODE=true gives DER encoding with the content
+     * streamed from a file larger than what fits in a two byte length.
+     * @throws Exception 
+     */
+    @Test
+    public void testDERReEncodeTrueLargeFile() throws Exception {
+        LOG.info("testDERReEncodeTrueLargeFile");
+        WorkerConfig config = new WorkerConfig();
+        config.setProperty("DER_RE_ENCODE", "true");
+        CMSSigner instance = createMockSigner(tokenRSA);
+        instance.init(1, config, new SignServerContext(), null);
+
+        final byte[] data = new byte[200 * 1024];
+        new Random(4711).nextBytes(data);
+        final File file = File.createTempFile("testDERReEncodeTrueLargeFile", ".bin");
+        try {
+            Files.write(file.toPath(), data);
+            final RequestContext requestContext = new RequestContext();
+            requestContext.put(RequestContext.TRANSACTION_ID, "0000-100-1");
+            try (
+                    CloseableReadableData requestData = ModulesTestCase.createRequestDataKeepingFile(file);
+                    CloseableWritableData responseData = ModulesTestCase.createResponseData(true);
+                ) {
+                instance.processData(new SignatureRequest(100, requestData, responseData), requestContext);
+
+                final byte[] cms = responseData.toReadableData().getAsByteArray();
+
+                // expect DER format
+                final byte[] der = new ASN1InputStream(cms).readObject().getEncoded("DER");
+                assertTrue("expect DER format", Arrays.equals(der, cms));
+
+                // expect the content and a valid signature
+                final CMSSignedData signedData = new CMSSignedData(cms);
+                assertTrue("content", Arrays.equals(data, (byte[]) signedData.getSignedContent().getContent()));
+                final SignerInformation signer = signedData.getSignerInfos().getSigners().iterator().next();
+                final X509CertificateHolder signerCert = (X509CertificateHolder) signedData.getCertificates().getMatches(signer.getSID()).iterator().next();
+                assertTrue("verified", signer.verify(new JcaSimpleSignerInfoVerifierBuilder().setProvider("BC").build(signerCert)));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
     /**
      * Tests that setting DER_RE_ENCODE=true gives DER encoding for
      * clientside.
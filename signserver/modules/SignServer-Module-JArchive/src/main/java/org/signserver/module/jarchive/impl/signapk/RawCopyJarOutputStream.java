@@ -0,0 +1,550 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.module.jarchive.impl.signapk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * JarOutputStream that in addition to the normal operations can copy entries
+ * from a source archive without inflating and deflating their content.
+ *
+ * The ZIP format is written by this class instead of by the super class so
+ * that raw entries can be mixed with entries written the normal way. The
+ * layout of the local headers is the same as written by JarOutputStream
+ * (including the JAR magic extra field on the first entry) so that the
+ * alignment computations done by the callers still apply.
+ *
+ * Extended timestamp and ZIP64 extra fields given in the entries are not
+ * written, the ZIP64 fields are instead added as needed.
+ *
+ * @version $Id$
+ */
+class RawCopyJarOutputStream extends JarOutputStream {
+
+    private static final int LOCSIG = 0x04034b50;
+    private static final int EXTSIG = 0x08074b50;
+    private static final int CENSIG = 0x02014b50;
+    private static final int ENDSIG = 0x06054b50;
+    private static final int ZIP64_ENDSIG = 0x06064b50;
+    private static final int ZIP64_LOCSIG = 0x07064b50;
+
+    private static final int JAR_MAGIC = 0xCAFE;
+    private static final int EXTID_ZIP64 = 0x0001;
+    private static final int EXTID_EXTT = 0x5455;
+    private static final long ZIP64_MAGICVAL = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGICCOUNT = 0xFFFF;
+
+    private static final int FLAG_DATA_DESCRIPTOR = 0x8;
+    private static final int FLAG_UTF8 = 0x800;
+
+    private static final int VERSION_STORED = 10;
+    private static final int VERSION_DEFLATED = 20;
+    private static final int VERSION_ZIP64 = 45;
+
+    private final RawZipFile source;
+    private final List<Entry> entries = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+    private final byte[] copyBuffer = new byte[64 * 1024];
+
+    private Entry current;
+    private long written;
+    private long entryWritten;
+    private int defaultMethod = DEFLATED;
+    private byte[] comment;
+    private boolean firstEntry = true;
+    private boolean finished;
+    private boolean closed;
+
+    /**
+     * Creates a new output stream.
+     *
+     * @param out to write the archive to
+     * @param source to copy raw entries from
+     * @throws IOException not thrown by this implementation
+     */
+    RawCopyJarOutputStream(final OutputStream out, final RawZipFile source) throws IOException {
+        super(out);
+        this.source = source;
+    }
+
+    /**
+     * Copies an entry from the source archive as is, without decompressing
+     * and compressing it again.
+     *
+     * Only DEFLATED entries that are not encrypted are copied. The
+     * compression method, CRC and sizes of the given entry are updated with
+     * the values from the source.
+     *
+     * @param name of entry in the source archive
+     * @param e the entry to write, having the name and time to use
+     * @return true if the entry was copied or false if it was not and has to
+     * be written the normal way
+     * @throws IOException in case of IO error
+     */
+    boolean copyRawEntry(final String name, final ZipEntry e) throws IOException {
+        ensureOpen();
+        final RawZipFile.Entry sourceEntry = source.getEntry(name);
+        if (sourceEntry == null || sourceEntry.getMethod() != DEFLATED || sourceEntry.isEncrypted()) {
+            return false;
+        }
+        if (current != null) {
+            closeEntry();
+        }
+        if (e.getTime() == -1) {
+            e.setTime(System.currentTimeMillis());
+        }
+        e.setMethod(DEFLATED);
+        e.setCrc(sourceEntry.getCrc());
+        e.setSize(sourceEntry.getSize());
+        e.setCompressedSize(sourceEntry.getCompressedSize());
+
+        final Entry entry = new Entry(e, DEFLATED, FLAG_UTF8, written);
+        writeLocalHeader(entry);
+
+        long remaining = sourceEntry.getCompressedSize();
+        try (InputStream in = source.getRawInputStream(sourceEntry)) {
+            int n;
+            while (remaining > 0 && (n = in.read(copyBuffer, 0, (int) Math.min(copyBuffer.length, remaining))) != -1) {
+                writeBytes(copyBuffer, 0, n);
+                remaining -= n;
+            }
+        }
+        if (remaining != 0) {
+            throw new ZipException("Unexpected end of data for entry: " + name);
+        }
+        entries.add(entry);
+        return true;
+    }
+
+    @Override
+    public void putNextEntry(final ZipEntry e) throws IOException {
+        ensureOpen();
+        if (current != null) {
+            closeEntry();
+        }
+        if (e.getTime() == -1) {
+            e.setTime(System.currentTimeMillis());
+        }
+        final int method = e.getMethod() == -1 ? defaultMethod : e.getMethod();
+        int flag = FLAG_UTF8;
+        switch (method) {
+            case DEFLATED:
+                // Sizes and CRC in a data descriptor after the data unless known
+                if (e.getSize() == -1 || e.getCompressedSize() == -1 || e.getCrc() == -1) {
+                    flag |= FLAG_DATA_DESCRIPTOR;
+                }
+                break;
+            case STORED:
+                if (e.getSize() == -1) {
+                    e.setSize(e.getCompressedSize());
+                } else if (e.getCompressedSize() == -1) {
+                    e.setCompressedSize(e.getSize());
+                } else if (e.getSize() != e.getCompressedSize()) {
+                    throw new ZipException("STORED entry where compressed != uncompressed size");
+                }
+                if (e.getSize() == -1 || e.getCrc() == -1) {
+                    throw new ZipException("STORED entry missing size, compressed size, or crc-32");
+                }
+                break;
+            default:
+                throw new ZipException("unsupported compression method");
+        }
+        current = new Entry(e, method, flag, written);
+        writeLocalHeader(current);
+        crc.reset();
+        entryWritten = 0;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || off > b.length - len) {
+            throw new IndexOutOfBoundsException();
+        } else if (len == 0) {
+            return;
+        }
+        if (current == null) {
+            throw new ZipException("no current ZIP entry");
+        }
+        if (current.method == DEFLATED) {
+            def.setInput(b, off, len);
+            while (!def.needsInput()) {
+                deflate();
+            }
+        } else {
+            entryWritten += len;
+            if (entryWritten > current.entry.getSize()) {
+                throw new ZipException("attempt to write past end of STORED entry");
+            }
+            writeBytes(b, off, len);
+        }
+        crc.update(b, off, len);
+    }
+
+    @Override
+    public void closeEntry() throws IOException {
+        ensureOpen();
+        if (current == null) {
+            return;
+        }
+        final ZipEntry e = current.entry;
+        if (current.method == DEFLATED) {
+            def.finish();
+            while (!def.finished()) {
+                deflate();
+            }
+            if ((current.flag & FLAG_DATA_DESCRIPTOR) == 0) {
+                if (e.getSize() != def.getBytesRead()) {
+                    throw new ZipException("invalid entry size (expected " + e.getSize() + " but got " + def.getBytesRead() + " bytes)");
+                }
+                if (e.getCompressedSize() != def.getBytesWritten()) {
+                    throw new ZipException("invalid entry compressed size (expected " + e.getCompressedSize() + " but got " + def.getBytesWritten() + " bytes)");
+                }
+                if (e.getCrc() != crc.getValue()) {
+                    throw new ZipException("invalid entry CRC-32 (expected 0x" + Long.toHexString(e.getCrc()) + " but got 0x" + Long.toHexString(crc.getValue()) + ")");
+                }
+            } else {
+                e.setSize(def.getBytesRead());
+                e.setCompressedSize(def.getBytesWritten());
+                e.setCrc(crc.getValue());
+                writeDataDescriptor(e);
+            }
+            def.reset();
+        } else {
+            if (entryWritten != e.getSize()) {
+                throw new ZipException("invalid entry size (expected " + e.getSize() + " but got " + entryWritten + " bytes)");
+            }
+            if (e.getCrc() != crc.getValue()) {
+                throw new ZipException("invalid entry crc-32 (expected 0x" + Long.toHexString(e.getCrc()) + " but got 0x" + Long.toHexString(crc.getValue()) + ")");
+            }
+        }
+        entries.add(current);
+        current = null;
+    }
+
+    @Override
+    public void setMethod(final int method) {
+        if (method != DEFLATED && method != STORED) {
+            throw new IllegalArgumentException("invalid compression method");
+        }
+        this.defaultMethod = method;
+    }
+
+    @Override
+    public void setComment(final String comment) {
+        this.comment = comment == null ? null : comment.getBytes(StandardCharsets.UTF_8);
+        if (this.comment != null && this.comment.length > 0xffff) {
+            throw new IllegalArgumentException("ZIP file comment too long.");
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        ensureOpen();
+        if (finished) {
+            return;
+        }
+        if (current != null) {
+            closeEntry();
+        }
+        final long cenOffset = written;
+        for (Entry entry : entries) {
+            writeCentralHeader(entry);
+        }
+        writeEnd(cenOffset, written - cenOffset);
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            try {
+                finish();
+            } finally {
+                closed = true;
+                def.end();
+                out.close();
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    @Override
+    protected void deflate() throws IOException {
+        final int n = def.deflate(copyBuffer, 0, copyBuffer.length);
+        if (n > 0) {
+            writeBytes(copyBuffer, 0, n);
+        }
+    }
+
+    private void writeLocalHeader(final Entry entry) throws IOException {
+        final ZipEntry e = entry.entry;
+        if (firstEntry) {
+            // Same as JarOutputStream: mark the archive as a JAR file
+            entry.extra = addJarMagic(entry.extra);
+            firstEntry = false;
+        }
+        final byte[] name = entry.name;
+        final boolean hasDataDescriptor = (entry.flag & FLAG_DATA_DESCRIPTOR) != 0;
+        final boolean zip64 = !hasDataDescriptor
+                && (e.getSize() >= ZIP64_MAGICVAL || e.getCompressedSize() >= ZIP64_MAGICVAL);
+        writeInt(LOCSIG);
+        writeShort(zip64 ? VERSION_ZIP64 : entry.version());
+        writeShort(entry.flag);
+        writeShort(entry.method);
+        writeInt(entry.dosTime);
+        if (hasDataDescriptor) {
+            writeInt(0);
+            writeInt(0);
+            writeInt(0);
+        } else {
+            writeInt(e.getCrc());
+            writeInt(zip64 ? ZIP64_MAGICVAL : e.getCompressedSize());
+            writeInt(zip64 ? ZIP64_MAGICVAL : e.getSize());
+        }
+        writeShort(name.length);
+        writeShort(entry.extra.length + (zip64 ? 20 : 0));
+        writeBytes(name, 0, name.length);
+        if (zip64) {
+            writeShort(EXTID_ZIP64);
+            writeShort(16);
+            writeLong(e.getSize());
+            writeLong(e.getCompressedSize());
+        }
+        writeBytes(entry.extra, 0, entry.extra.length);
+    }
+
+    private void writeDataDescriptor(final ZipEntry e) throws IOException {
+        writeInt(EXTSIG);
+        writeInt(e.getCrc());
+        if (e.getCompressedSize() >= ZIP64_MAGICVAL || e.getSize() >= ZIP64_MAGICVAL) {
+            writeLong(e.getCompressedSize());
+            writeLong(e.getSize());
+        } else {
+            writeInt(e.getCompressedSize());
+            writeInt(e.getSize());
+        }
+    }
+
+    private void writeCentralHeader(final Entry entry) throws IOException {
+        final ZipEntry e = entry.entry;
+        final boolean sizeZip64 = e.getSize() >= ZIP64_MAGICVAL;
+        final boolean csizeZip64 = e.getCompressedSize() >= ZIP64_MAGICVAL;
+        final boolean offsetZip64 = entry.offset >= ZIP64_MAGICVAL;
+        final int zip64Length = (sizeZip64 ? 8 : 0) + (csizeZip64 ? 8 : 0) + (offsetZip64 ? 8 : 0);
+        final byte[] name = entry.name;
+        final int version = zip64Length > 0 ? VERSION_ZIP64 : entry.version();
+
+        writeInt(CENSIG);
+        writeShort(version);
+        writeShort(version);
+        writeShort(entry.flag);
+        writeShort(entry.method);
+        writeInt(entry.dosTime);
+        writeInt(e.getCrc());
+        writeInt(csizeZip64 ? ZIP64_MAGICVAL : e.getCompressedSize());
+        writeInt(sizeZip64 ? ZIP64_MAGICVAL : e.getSize());
+        writeShort(name.length);
+        writeShort(entry.extra.length + (zip64Length > 0 ? zip64Length + 4 : 0));
+        writeShort(0); // comment length
+        writeShort(0); // disk number start
+        writeShort(0); // internal file attributes
+        writeInt(0);   // external file attributes
+        writeInt(offsetZip64 ? ZIP64_MAGICVAL : entry.offset);
+        writeBytes(name, 0, name.length);
+        if (zip64Length > 0) {
+            writeShort(EXTID_ZIP64);
+            writeShort(zip64Length);
+            if (sizeZip64) {
+                writeLong(e.getSize());
+            }
+            if (csizeZip64) {
+                writeLong(e.getCompressedSize());
+            }
+            if (offsetZip64) {
+                writeLong(entry.offset);
+            }
+        }
+        writeBytes(entry.extra, 0, entry.extra.length);
+    }
+
+    private void writeEnd(final long cenOffset, final long cenLength) throws IOException {
+        final int count = entries.size();
+        final boolean zip64 = count >= ZIP64_MAGICCOUNT || cenOffset >= ZIP64_MAGICVAL || cenLength >= ZIP64_MAGICVAL;
+        if (zip64) {
+            final long end64Offset = written;
+            writeInt(ZIP64_ENDSIG);
+            writeLong(44);          // size of the remaining record
+            writeShort(VERSION_ZIP64);
+            writeShort(VERSION_ZIP64);
+            writeInt(0);            // number of this disk
+            writeInt(0);            // disk with the central directory
+            writeLong(count);
+            writeLong(count);
+            writeLong(cenLength);
+            writeLong(cenOffset);
+
+            writeInt(ZIP64_LOCSIG);
+            writeInt(0);
+            writeLong(end64Offset);
+            writeInt(1);
+        }
+        writeInt(ENDSIG);
+        writeShort(0);
+        writeShort(0);
+        writeShort(zip64 ? ZIP64_MAGICCOUNT : count);
+        writeShort(zip64 ? ZIP64_MAGICCOUNT : count);
+        writeInt(zip64 ? ZIP64_MAGICVAL : cenLength);
+        writeInt(zip64 ? ZIP64_MAGICVAL : cenOffset);
+        if (comment == null) {
+            writeShort(0);
+        } else {
+            writeShort(comment.length);
+            writeBytes(comment, 0, comment.length);
+        }
+    }
+
+    private void writeShort(final int v) throws IOException {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+        written += 2;
+    }
+
+    private void writeInt(final long v) throws IOException {
+        writeShort((int) (v & 0xffff));
+        writeShort((int) ((v >>> 16) & 0xffff));
+    }
+
+    private void writeLong(final long v) throws IOException {
+        writeInt(v & 0xffffffffL);
+        writeInt(v >>> 32);
+    }
+
+    private void writeBytes(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+        written += len;
+    }
+
+    /**
+     * @return the extra data with the JAR magic field first unless already
+     * present
+     */
+    private static byte[] addJarMagic(final byte[] extra) {
+        for (int i = 0; i + 4 <= extra.length; i += 4 + get16(extra, i + 2)) {
+            if (get16(extra, i) == JAR_MAGIC) {
+                return extra;
+            }
+        }
+        final byte[] result = new byte[extra.length + 4];
+        result[0] = (byte) (JAR_MAGIC & 0xff);
+        result[1] = (byte) (JAR_MAGIC >>> 8);
+        System.arraycopy(extra, 0, result, 4, extra.length);
+        return result;
+    }
+
+    /**
+     * @return the extra data without extended timestamp and ZIP64 fields
+     */
+    private static byte[] stripExtra(final byte[] extra) {
+        if (extra == null) {
+            return new byte[0];
+        }
+        final byte[] result = new byte[extra.length];
+        int length = 0;
+        int off = 0;
+        while (off + 4 <= extra.length) {
+            final int tag = get16(extra, off);
+            final int size = get16(extra, off + 2);
+            if (off + 4 + size > extra.length) {
+                break;
+            }
+            if (tag != EXTID_EXTT && tag != EXTID_ZIP64) {
+                System.arraycopy(extra, off, result, length, size + 4);
+                length += size + 4;
+            }
+            off += size + 4;
+        }
+        // Keep any trailing bytes not forming a complete field (i.e. padding)
+        System.arraycopy(extra, off, result, length, extra.length - off);
+        length += extra.length - off;
+        final byte[] stripped = new byte[length];
+        System.arraycopy(result, 0, stripped, 0, length);
+        return stripped;
+    }
+
+    private static int get16(final byte[] b, final int off) {
+        return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8);
+    }
+
+    private static int toDosTime(final long time) {
+        final LocalDateTime ldt = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        final int year = ldt.getYear() - 1980;
+        if (year < 0) {
+            return (1 << 21) | (1 << 16); // 1980-01-01 00:00:00
+        } else if (year > 127) {
+            return (127 << 25) | (12 << 21) | (31 << 16) | (23 << 11) | (59 << 5) | (59 >> 1);
+        }
+        return (year << 25) | (ldt.getMonthValue() << 21) | (ldt.getDayOfMonth() << 16)
+                | (ldt.getHour() << 11) | (ldt.getMinute() << 5) | (ldt.getSecond() >> 1);
+    }
+
+    /**
+     * Entry written to the archive.
+     */
+    private static class Entry {
+        private final ZipEntry entry;
+        private final int method;
+        private final int flag;
+        private final long offset;
+        private final byte[] name;
+        private final int dosTime;
+        private byte[] extra;
+
+        Entry(final ZipEntry entry, final int method, final int flag, final long offset) {
+            this.entry = entry;
+            this.method = method;
+            this.flag = flag;
+            this.offset = offset;
+            this.name = entry.getName().getBytes(StandardCharsets.UTF_8);
+            this.dosTime = toDosTime(entry.getTime());
+            this.extra = stripExtra(entry.getExtra());
+        }
+
+        int version() {
+            return method == STORED ? VERSION_STORED : VERSION_DEFLATED;
+        }
+    }
+}
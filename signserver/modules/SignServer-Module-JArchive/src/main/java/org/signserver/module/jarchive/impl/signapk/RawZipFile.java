@@ -0,0 +1,295 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.module.jarchive.impl.signapk;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only view of the central directory of a ZIP file giving access to the
+ * compressed data of the entries as stored in the file.
+ *
+ * This is used for copying entries from one archive to an other without
+ * inflating and deflating their content again.
+ *
+ * @version $Id$
+ */
+class RawZipFile implements Closeable {
+
+    private static final int LOCSIG = 0x04034b50;
+    private static final int CENSIG = 0x02014b50;
+    private static final int ENDSIG = 0x06054b50;
+    private static final int ZIP64_LOCSIG = 0x07064b50;
+    private static final int ZIP64_ENDSIG = 0x06064b50;
+
+    private static final int LOCHDR = 30;
+    private static final int CENHDR = 46;
+    private static final int ENDHDR = 22;
+    private static final int ZIP64_LOCHDR = 20;
+    private static final int ZIP64_EXTID = 0x0001;
+    private static final long ZIP64_MAGICVAL = 0xFFFFFFFFL;
+
+    /** General purpose flag bit for encrypted entries. */
+    private static final int FLAG_ENCRYPTED = 0x1;
+
+    private final FileChannel channel;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Opens the file and reads its central directory.
+     *
+     * @param file to read
+     * @throws IOException in case of IO error or if the file is not a ZIP file
+     */
+    RawZipFile(final File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            readCentralDirectory();
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @param name of entry
+     * @return the entry or null if there is no such entry
+     */
+    Entry getEntry(final String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * Gives the compressed data of the entry as stored in the file.
+     *
+     * The stream is not thread-safe with respect to other streams from this
+     * file and should be closed before an other is opened.
+     *
+     * @param entry to read
+     * @return stream of exactly the compressed size number of bytes
+     * @throws IOException in case of IO error or invalid local header
+     */
+    InputStream getRawInputStream(final Entry entry) throws IOException {
+        final ByteBuffer loc = read(entry.localHeaderOffset, LOCHDR);
+        if (loc.getInt(0) != LOCSIG) {
+            throw new ZipException("Invalid local header for entry: " + entry.name);
+        }
+        final long dataOffset = entry.localHeaderOffset + LOCHDR
+                + (loc.getShort(26) & 0xffff) + (loc.getShort(28) & 0xffff);
+        if (dataOffset + entry.compressedSize > channel.size()) {
+            throw new ZipException("Truncated data for entry: " + entry.name);
+        }
+        return new BoundedInputStream(dataOffset, entry.compressedSize);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readCentralDirectory() throws IOException {
+        final long endOffset = findEndOfCentralDirectory();
+        final ByteBuffer end = read(endOffset, ENDHDR);
+        long total = end.getShort(10) & 0xffff;
+        long cenSize = end.getInt(12) & 0xffffffffL;
+        long cenOffset = end.getInt(16) & 0xffffffffL;
+
+        // ZIP64 end of central directory if any of the values did not fit
+        if (endOffset >= ZIP64_LOCHDR) {
+            final ByteBuffer locator = read(endOffset - ZIP64_LOCHDR, ZIP64_LOCHDR);
+            if (locator.getInt(0) == ZIP64_LOCSIG) {
+                final ByteBuffer end64 = read(locator.getLong(8), 56);
+                if (end64.getInt(0) != ZIP64_ENDSIG) {
+                    throw new ZipException("Invalid ZIP64 end of central directory");
+                }
+                total = end64.getLong(32);
+                cenSize = end64.getLong(40);
+                cenOffset = end64.getLong(48);
+            }
+        }
+        if (cenSize > Integer.MAX_VALUE || cenOffset + cenSize > endOffset) {
+            throw new ZipException("Invalid central directory");
+        }
+
+        final ByteBuffer cen = read(cenOffset, (int) cenSize);
+        int pos = 0;
+        for (long i = 0; i < total; i++) {
+            if (pos + CENHDR > cen.limit() || cen.getInt(pos) != CENSIG) {
+                throw new ZipException("Invalid central directory header");
+            }
+            final int flags = cen.getShort(pos + 8) & 0xffff;
+            final int method = cen.getShort(pos + 10) & 0xffff;
+            final long crc = cen.getInt(pos + 16) & 0xffffffffL;
+            long compressedSize = cen.getInt(pos + 20) & 0xffffffffL;
+            long size = cen.getInt(pos + 24) & 0xffffffffL;
+            final int nameLength = cen.getShort(pos + 28) & 0xffff;
+            final int extraLength = cen.getShort(pos + 30) & 0xffff;
+            final int commentLength = cen.getShort(pos + 32) & 0xffff;
+            long localHeaderOffset = cen.getInt(pos + 42) & 0xffffffffL;
+
+            final byte[] nameBytes = new byte[nameLength];
+            cen.position(pos + CENHDR);
+            cen.get(nameBytes);
+            final String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            // Sizes and offset not fitting are in the ZIP64 extra field
+            int extraPos = pos + CENHDR + nameLength;
+            final int extraEnd = extraPos + extraLength;
+            while (extraPos + 4 <= extraEnd) {
+                final int id = cen.getShort(extraPos) & 0xffff;
+                final int length = cen.getShort(extraPos + 2) & 0xffff;
+                if (id == ZIP64_EXTID) {
+                    int p = extraPos + 4;
+                    if (size == ZIP64_MAGICVAL) {
+                        size = cen.getLong(p);
+                        p += 8;
+                    }
+                    if (compressedSize == ZIP64_MAGICVAL) {
+                        compressedSize = cen.getLong(p);
+                        p += 8;
+                    }
+                    if (localHeaderOffset == ZIP64_MAGICVAL) {
+                        localHeaderOffset = cen.getLong(p);
+                    }
+                    break;
+                }
+                extraPos += 4 + length;
+            }
+
+            entries.put(name, new Entry(name, flags, method, crc, compressedSize, size, localHeaderOffset));
+            pos += CENHDR + nameLength + extraLength + commentLength;
+        }
+    }
+
+    private long findEndOfCentralDirectory() throws IOException {
+        final long fileSize = channel.size();
+        if (fileSize < ENDHDR) {
+            throw new ZipException("Not a ZIP file");
+        }
+        // The record is followed by a comment of at most 0xffff bytes
+        final int searchLength = (int) Math.min(fileSize, ENDHDR + 0xffff);
+        final long searchStart = fileSize - searchLength;
+        final ByteBuffer buffer = read(searchStart, searchLength);
+        for (int i = searchLength - ENDHDR; i >= 0; i--) {
+            if (buffer.getInt(i) == ENDSIG
+                    && i + ENDHDR + (buffer.getShort(i + 20) & 0xffff) == searchLength) {
+                return searchStart + i;
+            }
+        }
+        throw new ZipException("End of central directory not found");
+    }
+
+    private ByteBuffer read(final long position, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            final int n = channel.read(buffer, pos);
+            if (n < 0) {
+                throw new ZipException("Unexpected end of file");
+            }
+            pos += n;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Entry as listed in the central directory.
+     */
+    static class Entry {
+        private final String name;
+        private final int flags;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        Entry(String name, int flags, int method, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getMethod() {
+            return method;
+        }
+
+        long getCrc() {
+            return crc;
+        }
+
+        long getCompressedSize() {
+            return compressedSize;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        boolean isEncrypted() {
+            return (flags & FLAG_ENCRYPTED) != 0;
+        }
+    }
+
+    /**
+     * Stream of a region of the file.
+     */
+    private class BoundedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        BoundedInputStream(final long offset, final long length) throws IOException {
+            this.in = Channels.newInputStream(channel.position(offset));
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n < 0) {
+                throw new ZipException("Unexpected end of file");
+            }
+            remaining -= n;
+            return n;
+        }
+    }
+}
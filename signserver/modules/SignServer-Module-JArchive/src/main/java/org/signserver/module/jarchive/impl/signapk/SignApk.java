@@ -30,6 +30,7 @@
 // - Added support for specifying a created-by string
 // - Fixed NPE when an Name attribute does not exist (or is an URL)
 // - Changed methods to not declare they throw raw Exception type
+// - Added copying of compressed entries without re-compressing them
 
 package org.signserver.module.jarchive.impl.signapk;
 import org.bouncycastle.asn1.ASN1InputStream;
@@ -500,6 +501,12 @@ class SignApk {
             if (timestamp != -1) {
                 outEntry.setTime(timestamp);
             }
+            // Copy the compressed data as is when possible instead of
+            // inflating and deflating it again
+            if (out instanceof RawCopyJarOutputStream
+                    && ((RawCopyJarOutputStream) out).copyRawEntry(inEntry.getName(), outEntry)) {
+                continue;
+            }
             out.putNextEntry(outEntry);
             InputStream data = in.getInputStream(inEntry);
             while ((num = data.read(buffer)) > 0) {
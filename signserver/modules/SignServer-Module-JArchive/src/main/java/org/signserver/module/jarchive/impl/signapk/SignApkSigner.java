@@ -15,6 +15,7 @@ package org.signserver.module.jarchive.impl.signapk;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -90,6 +91,23 @@ public abstract class SignApkSigner {
     }
 
     public void sign(final File input, final File output) throws GeneralSecurityException, IOException, OperatorCreationException, CMSException, IllegalRequestException {
+        try (OutputStream out = new FileOutputStream(output)) {
+            sign(input, out);
+        }
+    }
+
+    /**
+     * Signs the input file and writes the signed file to the output stream.
+     *
+     * @param input file to sign
+     * @param output to write the signed file to, closed when done
+     * @throws GeneralSecurityException in case of signing errors
+     * @throws IOException in case of IO errors
+     * @throws OperatorCreationException in case of signing errors
+     * @throws CMSException in case of signing errors
+     * @throws IllegalRequestException in case the input can not be signed
+     */
+    public void sign(final File input, final OutputStream output) throws GeneralSecurityException, IOException, OperatorCreationException, CMSException, IllegalRequestException {
 
         final SignApk.TimeStampingProvider timeStamping;
 
@@ -137,7 +155,7 @@ public abstract class SignApkSigner {
         final int alignment = zipAlign ? 4 : 0;
 
         JarFile inputJar = null;
-        FileOutputStream outputFile = null;
+        final OutputStream outputFile = output;
         try {
             // TODO: Future: Make optional:
             // Set the ZIP file timestamp to the starting valid time
@@ -146,7 +164,6 @@ public abstract class SignApkSigner {
             long timestamp = certificateChain[0].getNotBefore().getTime() + 3600L * 1000;
 
             inputJar = new JarFile(input, false);  // Don't verify.
-            outputFile = new FileOutputStream(output);
             if (signWholeFile) {
                 SignApk.signWholeFile(inputJar, /*publicKeyFile*/ null,
                         certificateChain, privateKey, provider, outputFile, signatureAlgorithm, digestAlgorithm, timeStamping, keepSignatures, replaceSignature, signatureName, CREATED_BY);
@@ -157,8 +174,11 @@ public abstract class SignApkSigner {
                 // default compression level, which is much much faster
                 // and produces output that is only a tiny bit larger
                 // (~0.1% on full OTA packages I tested).
+                // Entries already compressed in the input are copied as is
+                // and only the new entries are compressed.
                 CountingOutputStream cout = new CountingOutputStream(outputFile);
-                try (JarOutputStream jarOut = new JarOutputStream(cout)) {
+                try (RawZipFile rawInput = new RawZipFile(input);
+                        JarOutputStream jarOut = new RawCopyJarOutputStream(cout, rawInput)) {
                     // For signing .apks, use the maximum compression to make
                     // them as small as possible (since they live forever on
                     // the system partition).  For OTA packages, use the
@@ -237,11 +257,9 @@ public abstract class SignApkSigner {
                     inputJar.close();
                 } catch (IOException ignored) {} // NOPMD
             }   
-            if (outputFile != null) {
-                try {
-                    outputFile.close();
-                } catch (IOException ignored) {} // NOPMD
-            }
+            try {
+                outputFile.close();
+            } catch (IOException ignored) {} // NOPMD
         }
     }
 
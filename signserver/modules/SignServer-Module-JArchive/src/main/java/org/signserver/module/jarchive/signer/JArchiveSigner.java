@@ -12,12 +12,10 @@
  *************************************************************************/
 package org.signserver.module.jarchive.signer;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
@@ -77,6 +75,7 @@ import org.signserver.common.data.Request;
 import org.signserver.common.data.Response;
 import org.signserver.common.data.SignatureRequest;
 import org.signserver.common.data.SignatureResponse;
+import org.signserver.server.data.impl.DigestingWritableData;
 import org.signserver.server.data.impl.UploadUtil;
 import org.signserver.common.data.WritableData;
 import org.signserver.server.log.IWorkerLogger;
@@ -304,7 +303,8 @@ public class JArchiveSigner extends BaseSigner {
                 final MessageDigest md = MessageDigest.getInstance(logRequestDigestAlgorithm, BouncyCastleProvider.PROVIDER_NAME);
                 
                 // Digest all data
-                // TODO: Future optimization: could be done while the file is read instead
+                // Note: The archive is read using random access while signing
+                // so the request digest can not be computed at the same time
                 requestDigest = UploadUtil.digest(input, md);
 
                 logMap.put(IWorkerLogger.LOG_REQUEST_DIGEST, new Loggable() {
@@ -322,11 +322,25 @@ public class JArchiveSigner extends BaseSigner {
             }
         }
 
+        // The response digest for the log is computed while the signed
+        // archive is written
+        final DigestingWritableData digestingResponseData;
+        if (doLogResponseDigest) {
+            logMap.put(IWorkerLogger.LOG_RESPONSE_DIGEST_ALGORITHM, logResponseDigestAlgorithm);
+            try {
+                digestingResponseData = new DigestingWritableData(responseData, MessageDigest.getInstance(logResponseDigestAlgorithm, BouncyCastleProvider.PROVIDER_NAME));
+            } catch (NoSuchAlgorithmException | NoSuchProviderException ex) {
+                LOG.error("Log digest algorithm not supported", ex);
+                throw new SignServerException("Log digest algorithm not supported", ex);
+            }
+        } else {
+            digestingResponseData = null;
+        }
+
         // Produce the result, ie doing the work...
         Certificate signerCert = null;
         ICryptoInstance cryptoInstance = null;
         File inFile = null;
-        File outFile = null;
         SignApkSigner signer;
         final String archiveId;
 
@@ -355,7 +369,6 @@ public class JArchiveSigner extends BaseSigner {
             PrivateKey privKey = cryptoInstance.getPrivateKey();
 
             inFile = data.getAsFile();
-            outFile = responseData.getAsFile();
 
             // Get name to use for the signature
             String signatureName;
@@ -385,7 +398,11 @@ public class JArchiveSigner extends BaseSigner {
                 };
             }
 
-            signer.sign(inFile, outFile);
+            if (digestingResponseData == null) {
+                signer.sign(inFile, responseData.getAsFile());
+            } else {
+                signer.sign(inFile, digestingResponseData.getAsNewFileOutputStream());
+            }
 
             // TODO: Future optimization: For performance reasons, instead of
             // hashing the document again and use that in the archive id, we
@@ -394,25 +411,15 @@ public class JArchiveSigner extends BaseSigner {
             // SignedData structure
             archiveId = createArchiveId(/*signer.getCachedDigest()*/ /*data*/ new byte[0], (String) requestContext.get(RequestContext.TRANSACTION_ID));
 
-            final byte[] responseDigest;
-            if (doLogResponseDigest) {
-                logMap.put(IWorkerLogger.LOG_RESPONSE_DIGEST_ALGORITHM, logResponseDigestAlgorithm);
-
-                try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(outFile))) {
-                    final MessageDigest md = MessageDigest.getInstance(logResponseDigestAlgorithm, BouncyCastleProvider.PROVIDER_NAME);
-                    responseDigest = UploadUtil.digest(in, md);
-
-                    logMap.put(IWorkerLogger.LOG_RESPONSE_DIGEST,
-                               new Loggable() {
-                                   @Override
-                                   public String toString() {
-                                        return Hex.toHexString(responseDigest);
-                                   }
-                               });
-                } catch (NoSuchAlgorithmException ex) {
-                    LOG.error("Log digest algorithm not supported", ex);
-                    throw new SignServerException("Log digest algorithm not supported", ex);
-                }
+            if (digestingResponseData != null) {
+                final byte[] responseDigest = digestingResponseData.getDigest();
+                logMap.put(IWorkerLogger.LOG_RESPONSE_DIGEST,
+                           new Loggable() {
+                               @Override
+                               public String toString() {
+                                    return Hex.toHexString(responseDigest);
+                               }
+                           });
             }
 
         } catch (ZipException ex) {
@@ -37,6 +37,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Random;
 import java.util.TreeMap;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
@@ -44,6 +45,7 @@ import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -2151,4 +2153,200 @@ public class JArchiveSignerUnitTest {
                 expectedSfDigests.toString(), actualSfDigests.toString());
     }
 
+    /**
+     * Tests that the DEFLATED entries are copied to the signed file with the
+     * compressed data as it was in the input file instead of being
+     * re-compressed, while the STORED entries are still aligned.
+     *
+     * The input is compressed with a different compression level than what
+     * the signer uses so that re-compressed data would not be equal.
+     *
+     * @throws Exception in case of failure.
+     */
+    @Test
+    public void testSignZIP_compressedEntriesCopiedAsIs() throws Exception {
+        LOG.info("testSignZIP_compressedEntriesCopiedAsIs");
+
+        final byte[] zipFile = createZipWithCompressedEntries(10, 4096);
+
+        try (
+                CloseableReadableData requestData = ModulesTestCase.createRequestData(zipFile);
+                CloseableWritableData responseData = ModulesTestCase.createResponseData(false)
+            ) {
+            SignatureResponse resp = signData(requestData, responseData, tokenRSA, new ConfigBuilder()
+                    .withDigestAlgorithm(JAVA_SHA_256)
+                    .withSignatureAlgorithm("SHA256WithRSA")
+                    .withZipAlign(true)
+                    .create(),
+                    null);
+            assertSignedAndTimestamped(requestData, responseData, tokenRSA, JAVA_SHA_256, CMSAlgorithm.SHA256, PKCSObjectIdentifiers.sha256WithRSAEncryption, resp);
+            final byte[] data = responseData.toReadableData().getAsByteArray();
+
+            assertCompressedPayloadsEqual(zipFile, data, 10);
+            assertAllZipAligned(true, data);
+        }
+    }
+
+    /**
+     * Tests signing of an archive with entries in multiple directories and
+     * without zipalign, and that the compressed data and CRC of the entries
+     * are copied as is.
+     *
+     * @throws Exception in case of failure.
+     */
+    @Test
+    public void testSignLargeZIP_compressedEntriesCopiedAsIs() throws Exception {
+        LOG.info("testSignLargeZIP_compressedEntriesCopiedAsIs");
+
+        final int entries = 50;
+        final byte[] zipFile = createZipWithCompressedEntries(entries, 4096);
+
+        try (
+                CloseableReadableData requestData = ModulesTestCase.createRequestData(zipFile);
+                CloseableWritableData responseData = ModulesTestCase.createResponseData(true)
+            ) {
+            signData(requestData, responseData, tokenRSA, new ConfigBuilder()
+                    .withDigestAlgorithm(JAVA_SHA_256)
+                    .withSignatureAlgorithm("SHA256WithRSA")
+                    .create(),
+                    null);
+
+            final byte[] data = responseData.toReadableData().getAsByteArray();
+            assertCompressedPayloadsEqual(zipFile, data, entries);
+        }
+    }
+
+    /**
+     * Creates a ZIP file with one STORED entry and the given number of
+     * DEFLATED entries compressed with the fastest compression level.
+     *
+     * @param entries number of DEFLATED entries
+     * @param entrySize size of each uncompressed entry
+     * @return the ZIP data
+     * @throws Exception in case of failure
+     */
+    private byte[] createZipWithCompressedEntries(final int entries, final int entrySize) throws Exception {
+        final Random random = new Random(4711);
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bout)) {
+            out.setLevel(Deflater.BEST_SPEED);
+
+            final byte[] storedBytes = Hex.decode("f1f2f3");
+            final ZipEntry stored = new ZipEntry("stored.bin");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(storedBytes.length);
+            final CRC32 crc = new CRC32();
+            crc.update(storedBytes);
+            stored.setCrc(crc.getValue());
+            out.putNextEntry(stored);
+            out.write(storedBytes);
+            out.closeEntry();
+
+            // Compressible content: lines of random words
+            final String[] words = {"sign", "server", "archive", "entry", "deflate", "manifest", "digest"};
+            for (int i = 0; i < entries; i++) {
+                final StringBuilder sb = new StringBuilder(entrySize);
+                while (sb.length() < entrySize) {
+                    sb.append(words[random.nextInt(words.length)]).append(random.nextInt(1000)).append(i % 7 == 0 ? '\n' : ' ');
+                }
+                out.putNextEntry(new ZipEntry("dir" + (i % 10) + "/file" + i + ".txt"));
+                out.write(sb.substring(0, entrySize).getBytes(StandardCharsets.US_ASCII));
+                out.closeEntry();
+            }
+        }
+        return bout.toByteArray();
+    }
+
+    /**
+     * Asserts that the compressed data and the CRC of the DEFLATED entries in
+     * the input are equal to the ones of the same entries in the output.
+     *
+     * @param input ZIP file
+     * @param output signed ZIP file
+     * @param expectedEntries number of DEFLATED entries expected in input
+     * @throws Exception in case of failure
+     */
+    private void assertCompressedPayloadsEqual(final byte[] input, final byte[] output, final int expectedEntries) throws Exception {
+        final Map<String, byte[]> inputPayloads = getCompressedPayloads(input);
+        final Map<String, byte[]> outputPayloads = getCompressedPayloads(output);
+
+        assertEquals("DEFLATED entries in input", expectedEntries, inputPayloads.size());
+        for (Map.Entry<String, byte[]> entry : inputPayloads.entrySet()) {
+            assertTrue("Entry in output: " + entry.getKey(), outputPayloads.containsKey(entry.getKey()));
+            assertArrayEquals("Compressed data of " + entry.getKey(), entry.getValue(), outputPayloads.get(entry.getKey()));
+        }
+        assertEquals("CRCs", getCrcs(input, inputPayloads.keySet()), getCrcs(output, inputPayloads.keySet()));
+    }
+
+    /**
+     * @param data ZIP file
+     * @param names of the entries
+     * @return map from entry name to CRC as given in the central directory
+     * @throws Exception in case of failure
+     */
+    private Map<String, Long> getCrcs(final byte[] data, final Collection<String> names) throws Exception {
+        final File file = File.createTempFile("test-zip", ".zip");
+        file.deleteOnExit();
+        FileUtils.writeByteArrayToFile(file, data);
+
+        final Map<String, Long> result = new TreeMap<>();
+        try (ZipFile zip = new ZipFile(file)) {
+            for (String name : names) {
+                result.put(name, zip.getEntry(name).getCrc());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the compressed data of the DEFLATED entries by walking the local
+     * file headers.
+     *
+     * @param data ZIP file
+     * @return map from entry name to compressed data
+     * @throws Exception in case of failure
+     */
+    private Map<String, byte[]> getCompressedPayloads(final byte[] data) throws Exception {
+        final File file = File.createTempFile("test-zip", ".zip");
+        file.deleteOnExit();
+        FileUtils.writeByteArrayToFile(file, data);
+
+        final Map<String, byte[]> result = new TreeMap<>();
+        try (ZipFile zip = new ZipFile(file)) {
+            int offset = 0;
+            while (get32(data, offset) == 0x04034b50) {
+                final int flags = get16(data, offset + 6);
+                final int method = get16(data, offset + 8);
+                final int nameLen = get16(data, offset + 26);
+                final int extraLen = get16(data, offset + 28);
+                final String name = new String(data, offset + 30, nameLen, StandardCharsets.UTF_8);
+                final int dataStart = offset + 30 + nameLen + extraLen;
+                final int compressedSize = (int) zip.getEntry(name).getCompressedSize();
+
+                if (method == ZipEntry.DEFLATED) {
+                    result.put(name, Arrays.copyOfRange(data, dataStart, dataStart + compressedSize));
+                }
+
+                offset = dataStart + compressedSize;
+                if ((flags & 0x8) != 0) {
+                    // Data descriptor with signature, CRC and sizes
+                    offset += 16;
+                }
+            }
+            assertEquals("Entries found", zip.size(), result.size() + (int) zip.stream().filter(e -> e.getMethod() != ZipEntry.DEFLATED).count());
+        }
+        return result;
+    }
+
+    private static int get16(final byte[] b, final int off) {
+        return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8);
+    }
+
+    private static long get32(final byte[] b, final int off) {
+        if (off + 4 > b.length) {
+            return -1;
+        }
+        return (get16(b, off) | ((long) get16(b, off + 2) << 16)) & 0xffffffffL;
+    }
+
 }
@@ -26,13 +26,20 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.persistence.EntityManager;
 
 import org.apache.commons.lang.StringUtils;
@@ -44,6 +51,8 @@ import org.cesecore.util.CertTools;
 import org.signserver.common.*;
 import org.signserver.common.data.Request;
 import org.signserver.common.data.Response;
+import org.signserver.common.data.SODBatchRequest;
+import org.signserver.common.data.SODBatchResponse;
 import org.signserver.common.data.SODRequest;
 import org.signserver.common.data.SODResponse;
 import org.signserver.common.data.WritableData;
@@ -70,6 +79,9 @@ import org.signserver.server.HashDigestUtils;
  * the values are assumed to be hashes</li>
  *  <li>LDSVERSION = Version of Logical Data Structure (LDS). For LDS version 1.7 enter "0107" and for version 1.8 "0108". (Optional, default is 0107)</li>
  *  <li>UNICODEVERSION = Version of Unicode used in the datagroups. Required if LDS 1.8 is used. Example: "040000" for Unicode version 4.0.0.</li>
+ *  <li>BATCH_MAX_SIZE = Maximum number of SODs in one batch request. (Optional, default is no limit)</li>
+ *  <li>BATCH_PARALLELISM = Maximum number of SODs in batch requests having their data groups hashed at the same time
+ *  by the worker, including the threads of the requests. (Optional, default is 4)</li>
  * </ul>
  *
  * @author Tomas Gustavsson
@@ -104,10 +116,26 @@ public class MRTDSODSigner extends BaseSigner {
     /** Determines which version of Unicode to set. */
     private static final String PROPERTY_UNICODEVERSION = "UNICODEVERSION";
     
+    /** Maximum number of SODs in a batch request. */
+    private static final String PROPERTY_BATCH_MAX_SIZE = "BATCH_MAX_SIZE";
+
+    /** Default value if the maximum batch size is not specified, no limit. */
+    private static final int DEFAULT_BATCH_MAX_SIZE = -1;
+
+    /** Maximum number of SODs in batches hashed at the same time. */
+    private static final String PROPERTY_BATCH_PARALLELISM = "BATCH_PARALLELISM";
+
+    /** Default value if the batch parallelism is not specified. */
+    private static final int DEFAULT_BATCH_PARALLELISM = 4;
+
     private static final Object syncObj = new Object();
     
     private List<String> configErrors;
     private String signatureAlgorithm;
+    private int batchMaxSize;
+
+    /** Additional threads that may be borrowed for hashing batches. */
+    private Semaphore hashingPermits;
 
     @Override
     public void init(int workerId, WorkerConfig config,
@@ -122,14 +150,43 @@ public class MRTDSODSigner extends BaseSigner {
         if (hasSetIncludeCertificateLevels) {
             configErrors.add(WorkerConfig.PROPERTY_INCLUDE_CERTIFICATE_LEVELS + " is not supported.");
         }
+
+        final String batchMaxSizeValue = config.getProperty(PROPERTY_BATCH_MAX_SIZE, DEFAULT_NULL);
+        if (batchMaxSizeValue == null) {
+            batchMaxSize = DEFAULT_BATCH_MAX_SIZE;
+        } else {
+            try {
+                batchMaxSize = Integer.parseInt(batchMaxSizeValue.trim());
+            } catch (NumberFormatException ex) {
+                configErrors.add("Illegal value for " + PROPERTY_BATCH_MAX_SIZE + ": " + batchMaxSizeValue);
+            }
         }
 
+        int batchParallelism = DEFAULT_BATCH_PARALLELISM;
+        final String batchParallelismValue = config.getProperty(PROPERTY_BATCH_PARALLELISM, DEFAULT_NULL);
+        if (batchParallelismValue != null) {
+            try {
+                batchParallelism = Integer.parseInt(batchParallelismValue.trim());
+                if (batchParallelism < 1) {
+                    configErrors.add("Illegal value for " + PROPERTY_BATCH_PARALLELISM + ": " + batchParallelismValue);
+                }
+            } catch (NumberFormatException ex) {
+                configErrors.add("Illegal value for " + PROPERTY_BATCH_PARALLELISM + ": " + batchParallelismValue);
+            }
+        }
+        hashingPermits = new Semaphore(Math.max(0, batchParallelism - 1));
+    }
+
     @Override
     public Response processData(Request signRequest, RequestContext requestContext) throws IllegalRequestException, CryptoTokenOfflineException, SignServerException {
         if (log.isTraceEnabled()) {
             log.trace(">processData");
         }
 
+        if (signRequest instanceof SODBatchRequest) {
+            return processBatch((SODBatchRequest) signRequest, requestContext);
+        }
+
         // Check that the request contains a valid SODSignRequest object.
         if (!(signRequest instanceof SODRequest)) {
             throw new IllegalRequestException("Received request wasn't an expected SODSignRequest.");
@@ -141,10 +198,118 @@ public class MRTDSODSigner extends BaseSigner {
         
         final SODRequest sodRequest = (SODRequest) signRequest;
 
-        final IServices services = requestContext.getServices();
+        checkCryptoTokenActive(requestContext.getServices());
+
+        // Construct SOD
+        final SODFile sod;
+        final X509Certificate cert;
+        final List<Certificate> certChain;
+        ICryptoInstance crypto = null;
+        try {
+            crypto = acquireCryptoInstance(ICryptoTokenV4.PURPOSE_SIGN, signRequest, requestContext);
+
+            cert = getSignerCertificate(crypto);
+            certChain = getSigningCertificateChain(crypto);
+
+            // Create the SODFile using the data group hashes that was sent to us in the request.
+            final String digestAlgorithm = config.getProperty(PROPERTY_DIGESTALGORITHM, DEFAULT_DIGESTALGORITHM);
+            final String digestEncryptionAlgorithm = getDigestEncryptionAlgorithm(crypto);
+            if (log.isDebugEnabled()) {
+                log.debug("Using algorithms " + digestAlgorithm + ", " + digestEncryptionAlgorithm);
+            }
+            final Map<Integer, byte[]> dghashes = getDataGroupHashes(sodRequest, digestAlgorithm);
+
+            sod = createSOD(sodRequest, dghashes, digestAlgorithm, digestEncryptionAlgorithm, crypto, cert);
+        } catch (NoSuchAlgorithmException | NoSuchProviderException ex) {
+            throw new SignServerException("Problem constructing SOD as configured algorithm not supported", ex);
+        } finally {
+            releaseCryptoInstance(crypto, requestContext);
+        }
+
+        final SODResponse response = createResponse(sodRequest, sod, cert, certChain, requestContext);
+
+        // The client can be charged for the request
+        requestContext.setRequestFulfilledByWorker(true);
+
+        return response;
+    }
+
+    /**
+     * Signs all the SODs of a batch request using one crypto instance. The
+     * data groups of the requests are hashed in parallel before the crypto
+     * instance is acquired. If any of the SODs can not be created the whole
+     * batch fails.
+     */
+    private Response processBatch(final SODBatchRequest batchRequest, final RequestContext requestContext) throws IllegalRequestException, CryptoTokenOfflineException, SignServerException {
+        if (!configErrors.isEmpty()) {
+            throw new SignServerException("Worker is misconfigured");
+        }
+
+        final List<SODRequest> requests = batchRequest.getRequests();
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalRequestException("No SOD requests in batch");
+        }
+        if (batchMaxSize >= 0 && requests.size() > batchMaxSize) {
+            throw new IllegalRequestException("Batch of " + requests.size()
+                    + " SOD requests exceeds the maximum of " + batchMaxSize);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Processing batch of " + requests.size() + " SOD requests");
+        }
+
+        final String digestAlgorithm = config.getProperty(PROPERTY_DIGESTALGORITHM, DEFAULT_DIGESTALGORITHM);
+        final List<Map<Integer, byte[]>> dghashes = getDataGroupHashes(requests, digestAlgorithm, requestContext.getServices());
+
+        checkCryptoTokenActive(requestContext.getServices());
+
+        // Construct all SODs with the same crypto instance
+        final List<SODFile> sods = new ArrayList<>(requests.size());
+        final X509Certificate cert;
+        final List<Certificate> certChain;
+        ICryptoInstance crypto = null;
+        try {
+            crypto = acquireCryptoInstance(ICryptoTokenV4.PURPOSE_SIGN, batchRequest, requestContext);
+
+            cert = getSignerCertificate(crypto);
+            certChain = getSigningCertificateChain(crypto);
+
+            final String digestEncryptionAlgorithm = getDigestEncryptionAlgorithm(crypto);
+            if (log.isDebugEnabled()) {
+                log.debug("Using algorithms " + digestAlgorithm + ", " + digestEncryptionAlgorithm);
+            }
+            for (int i = 0; i < requests.size(); i++) {
+                try {
+                    sods.add(createSOD(requests.get(i), dghashes.get(i), digestAlgorithm, digestEncryptionAlgorithm, crypto, cert));
+                } catch (IllegalRequestException ex) {
+                    throw new IllegalRequestException("SOD request " + i + ": " + ex.getMessage(), ex);
+                }
+            }
+        } finally {
+            releaseCryptoInstance(crypto, requestContext);
+        }
+
+        // Verify and return the SODs
+        final List<SODResponse> responses = new ArrayList<>(requests.size());
+        final List<Archivable> archivables = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            final SODResponse response = createResponse(requests.get(i), sods.get(i), cert, certChain, requestContext);
+            responses.add(response);
+            archivables.addAll(response.getArchivables());
+        }
+
+        // The client can be charged for the request
+        requestContext.setRequestFulfilledByWorker(true);
+
+        return new SODBatchResponse(batchRequest.getRequestID(), responses, cert, archivables);
+    }
+
+    /**
+     * Trying to do a workaround for issue when the PKCS#11 session becomes
+     * invalid. If autoactivate is on, we can deactivate and re-activate the
+     * token.
+     */
+    private void checkCryptoTokenActive(final IServices services) throws CryptoTokenOfflineException, SignServerException {
         final ICryptoTokenV4 token = getCryptoToken(services);
-        // Trying to do a workaround for issue when the PKCS#11 session becomes invalid
-        // If autoactivate is on, we can deactivate and re-activate the token.
         synchronized (syncObj) {
             int status = token.getCryptoTokenStatus(services);
             if (log.isDebugEnabled()) {
@@ -169,119 +334,197 @@ public class MRTDSODSigner extends BaseSigner {
                 }
             }
         }
+    }
 
-        // Construct SOD
-        final WritableData responseData = sodRequest.getResponseData();
-        final SODFile sod;
-        final X509Certificate cert;
-        final List<Certificate> certChain;
-        ICryptoInstance crypto = null;
-        try {
-            crypto = acquireCryptoInstance(ICryptoTokenV4.PURPOSE_SIGN, signRequest, requestContext);
+    private X509Certificate getSignerCertificate(final ICryptoInstance crypto) throws CryptoTokenOfflineException {
+        final X509Certificate cert = (X509Certificate) getSigningCertificate(crypto);
+        if (cert == null) {
+            throw new CryptoTokenOfflineException("No signing certificate");
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Using signer certificate with subjectDN '" 
+                    + CertTools.getSubjectDN(cert) 
+                    + "', issuerDN '" 
+                    + CertTools.getIssuerDN(cert) 
+                    + ", serNo " 
+                    + CertTools.getSerialNumberAsString(cert));
+        }
+        return cert;
+    }
+
+    private String getDigestEncryptionAlgorithm(final ICryptoInstance crypto) {
+        final String sigAlg = signatureAlgorithm == null ? getDefaultSignatureAlgorithm(crypto.getPublicKey()) : signatureAlgorithm;
+        return config.getProperty(PROPERTY_SIGNATUREALGORITHM, sigAlg);
+    }
 
-            cert = (X509Certificate) getSigningCertificate(crypto);
-            if (cert == null) {
-                throw new CryptoTokenOfflineException("No signing certificate");
+    /**
+     * Gets the data group hashes of all the requests, hashing the data groups
+     * of the different requests in parallel. The calling thread takes part and
+     * additional threads are borrowed from the managed executor service, if
+     * available, as long as the worker has not reached its batch parallelism.
+     *
+     * @return the hashes of each request, in the same order as the requests
+     */
+    private List<Map<Integer, byte[]>> getDataGroupHashes(final List<SODRequest> requests, final String digestAlgorithm, final IServices services) throws IllegalRequestException, SignServerException {
+        final int size = requests.size();
+        final List<Map<Integer, byte[]>> results = new ArrayList<>(Collections.nCopies(size, null));
+        final List<Exception> failures = new ArrayList<>(Collections.nCopies(size, null));
+        final AtomicInteger next = new AtomicInteger();
+        final Runnable hasher = () -> {
+            int i;
+            while ((i = next.getAndIncrement()) < size) {
+                try {
+                    results.set(i, getDataGroupHashes(requests.get(i), digestAlgorithm));
+                } catch (IllegalRequestException | NoSuchAlgorithmException | NoSuchProviderException | RuntimeException ex) {
+                    failures.set(i, ex);
+                }
             }
-            if (log.isDebugEnabled()) {
-                log.debug("Using signer certificate with subjectDN '" 
-                        + CertTools.getSubjectDN(cert) 
-                        + "', issuerDN '" 
-                        + CertTools.getIssuerDN(cert) 
-                        + ", serNo " 
-                        + CertTools.getSerialNumberAsString(cert));
+        };
+
+        // Borrow additional threads, at most one per remaining request
+        final ManagedExecutorService executor = services == null ? null : services.get(ManagedExecutorService.class);
+        int helpers = 0;
+        while (executor != null && helpers < size - 1 && hashingPermits.tryAcquire()) {
+            helpers++;
+        }
+        final CountDownLatch helpersDone = new CountDownLatch(helpers);
+        for (int h = 0; h < helpers; h++) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        hasher.run();
+                    } finally {
+                        hashingPermits.release();
+                        helpersDone.countDown();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                if (log.isDebugEnabled()) {
+                    log.debug("No additional thread available: " + ex.getMessage());
+                }
+                hashingPermits.release();
+                helpersDone.countDown();
             }
-            certChain = getSigningCertificateChain(crypto);
+        }
 
-            // Create the SODFile using the data group hashes that was sent to us in the request.
-            final String digestAlgorithm = config.getProperty(PROPERTY_DIGESTALGORITHM, DEFAULT_DIGESTALGORITHM);
-            final String sigAlg = signatureAlgorithm == null ? getDefaultSignatureAlgorithm(crypto.getPublicKey()) : signatureAlgorithm;
-            final String digestEncryptionAlgorithm = config.getProperty(PROPERTY_SIGNATUREALGORITHM, sigAlg);
+        hasher.run();
+        try {
+            helpersDone.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SignServerException("Interrupted while hashing data groups", ex);
+        }
+
+        // Fail with the first failing request
+        for (int i = 0; i < size; i++) {
+            final Exception failure = failures.get(i);
+            if (failure instanceof IllegalRequestException) {
+                throw new IllegalRequestException("SOD request " + i + ": " + failure.getMessage(), failure);
+            } else if (failure instanceof NoSuchAlgorithmException || failure instanceof NoSuchProviderException) {
+                throw new SignServerException("Problem constructing SOD as configured algorithm not supported", failure);
+            } else if (failure != null) {
+                throw new SignServerException("Problem hashing data groups of SOD request " + i, failure);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Gets the data group hashes of the request, hashing the values if the
+     * signer is configured to do that and otherwise checking that the values
+     * are hashes of the right length.
+     */
+    private Map<Integer, byte[]> getDataGroupHashes(final SODRequest sodRequest, final String digestAlgorithm) throws IllegalRequestException, NoSuchAlgorithmException, NoSuchProviderException {
+        final String doHashing = config.getProperty(PROPERTY_DODATAGROUPHASHING, DEFAULT_DODATAGROUPHASHING);
+        final Map<Integer, byte[]> dgvalues = sodRequest.getDataGroupHashes();
+        Map<Integer, byte[]> dghashes = dgvalues;
+        if (StringUtils.equalsIgnoreCase(doHashing, "true")) {
             if (log.isDebugEnabled()) {
-                log.debug("Using algorithms " + digestAlgorithm + ", " + digestEncryptionAlgorithm);
+                log.debug("Converting data group values to hashes using algorithm " + digestAlgorithm);
             }
-            final String doHashing = config.getProperty(PROPERTY_DODATAGROUPHASHING, DEFAULT_DODATAGROUPHASHING);
-            final Map<Integer, byte[]> dgvalues = sodRequest.getDataGroupHashes();
-            Map<Integer, byte[]> dghashes = dgvalues;
-            if (StringUtils.equalsIgnoreCase(doHashing, "true")) {
+            // If true here the "data group hashes" are not really hashes but values that we must hash.
+            // The input is already decoded (if needed) and nice, so we just need to hash it
+            dghashes = new HashMap<>(16);
+            for (Map.Entry<Integer, byte[]> dgId : dgvalues.entrySet()) {
+                final byte[] value = dgId.getValue();
                 if (log.isDebugEnabled()) {
-                    log.debug("Converting data group values to hashes using algorithm " + digestAlgorithm);
+                    log.debug("Hashing data group " + dgId + ", value is of length: " + value.length);
                 }
-                // If true here the "data group hashes" are not really hashes but values that we must hash.
-                // The input is already decoded (if needed) and nice, so we just need to hash it
-                dghashes = new HashMap<>(16);
-                for (Map.Entry<Integer, byte[]> dgId : dgvalues.entrySet()) {
-                    final byte[] value = dgId.getValue();
+                if ((value != null) && (value.length > 0)) {
+                    MessageDigest digest = MessageDigest.getInstance(digestAlgorithm, BouncyCastleProvider.PROVIDER_NAME);
+                    byte[] result = digest.digest(value);
                     if (log.isDebugEnabled()) {
-                        log.debug("Hashing data group " + dgId + ", value is of length: " + value.length);
-                    }
-                    if ((value != null) && (value.length > 0)) {
-                        MessageDigest digest = MessageDigest.getInstance(digestAlgorithm, BouncyCastleProvider.PROVIDER_NAME);
-                        byte[] result = digest.digest(value);
-                        if (log.isDebugEnabled()) {
-                            log.debug("Resulting hash is of length: " + result.length);
-                        }
-                        dghashes.put(dgId.getKey(), result);
+                        log.debug("Resulting hash is of length: " + result.length);
                     }
+                    dghashes.put(dgId.getKey(), result);
                 }
-            } else {
-                for (Map.Entry<Integer, byte[]> dgId : dgvalues.entrySet()) {
-                    final byte[] value = dgId.getValue();
-                    if (log.isDebugEnabled()) {
-                        log.debug("Hashing data group " + dgId + ", value is of length: " + value.length);
-                    }
-                    if ((value != null) && (value.length > 0)) {
-                        boolean isSuppliedHashDigestLengthOk = HashDigestUtils.isSuppliedHashDigestLengthValid(digestAlgorithm, value.length);
-                        if (!isSuppliedHashDigestLengthOk) {
-                            throw new IllegalRequestException("Client-side hashing data length must match with the length of client specified digest algorithm");
-                        }
+            }
+        } else {
+            for (Map.Entry<Integer, byte[]> dgId : dgvalues.entrySet()) {
+                final byte[] value = dgId.getValue();
+                if (log.isDebugEnabled()) {
+                    log.debug("Hashing data group " + dgId + ", value is of length: " + value.length);
+                }
+                if ((value != null) && (value.length > 0)) {
+                    boolean isSuppliedHashDigestLengthOk = HashDigestUtils.isSuppliedHashDigestLengthValid(digestAlgorithm, value.length);
+                    if (!isSuppliedHashDigestLengthOk) {
+                        throw new IllegalRequestException("Client-side hashing data length must match with the length of client specified digest algorithm");
                     }
                 }
             }
+        }
+        return dghashes;
+    }
 
-            // Version values from configuration
-            String ldsVersion = config.getProperty(PROPERTY_LDSVERSION,
-                    DEFAULT_LDSVERSION);
-            String unicodeVersion = config.getProperty(PROPERTY_UNICODEVERSION, DEFAULT_NULL);
-
-            // Version values in request overrides configuration
-            final String ldsVersionRequest = sodRequest.getLdsVersion();
-            if (ldsVersionRequest != null) {
-                ldsVersion = ldsVersionRequest;
-            }
-            final String unicodeVersionRequest = sodRequest.getUnicodeVersion();
-            if (unicodeVersionRequest != null) {
-                unicodeVersion = unicodeVersionRequest;
-            }
+    /**
+     * Creates and signs the SOD.
+     */
+    private SODFile createSOD(final SODRequest sodRequest, final Map<Integer, byte[]> dghashes,
+            final String digestAlgorithm, final String digestEncryptionAlgorithm,
+            final ICryptoInstance crypto, final X509Certificate cert) throws IllegalRequestException, SignServerException {
+        // Version values from configuration
+        String ldsVersion = config.getProperty(PROPERTY_LDSVERSION,
+                DEFAULT_LDSVERSION);
+        String unicodeVersion = config.getProperty(PROPERTY_UNICODEVERSION, DEFAULT_NULL);
+
+        // Version values in request overrides configuration
+        final String ldsVersionRequest = sodRequest.getLdsVersion();
+        if (ldsVersionRequest != null) {
+            ldsVersion = ldsVersionRequest;
+        }
+        final String unicodeVersionRequest = sodRequest.getUnicodeVersion();
+        if (unicodeVersionRequest != null) {
+            unicodeVersion = unicodeVersionRequest;
+        }
 
-            // Check version
-            if ("0107".equals(ldsVersion)) {
-                // LDS V1.7 does not supported the version fields
-                ldsVersion = null;
-                unicodeVersion = null;
-            } else if ("0108".equals(ldsVersion)) {
-                // LDS V1.8 requires a unicode version
-                if (unicodeVersion == null) {
-                    throw new IllegalRequestException(
-                            "Unicode version must be specified in LDS version 1.8");
-                }
-            } else {
+        // Check version
+        if ("0107".equals(ldsVersion)) {
+            // LDS V1.7 does not supported the version fields
+            ldsVersion = null;
+            unicodeVersion = null;
+        } else if ("0108".equals(ldsVersion)) {
+            // LDS V1.8 requires a unicode version
+            if (unicodeVersion == null) {
                 throw new IllegalRequestException(
-                        "Unsupported LDS version: " + ldsVersion);
-            }
-            if (log.isDebugEnabled()) {
-                log.debug("LDS version: " + ldsVersion
-                        + ", unicodeVerison: " + unicodeVersion);
+                        "Unicode version must be specified in LDS version 1.8");
             }
+        } else {
+            throw new IllegalRequestException(
+                    "Unsupported LDS version: " + ldsVersion);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("LDS version: " + ldsVersion
+                    + ", unicodeVerison: " + unicodeVersion);
+        }
 
+        try {
             final SODFile constructedSod
                     = new SODFile(digestAlgorithm, digestEncryptionAlgorithm,
                     dghashes, crypto.getPrivateKey(), cert, crypto.getProvider().getName(),
                     ldsVersion, unicodeVersion);
 
             // Reconstruct the sod
-            sod = new SODFile(new ByteArrayInputStream(constructedSod.getEncoded()));
-
+            return new SODFile(new ByteArrayInputStream(constructedSod.getEncoded()));
         } catch (NoSuchAlgorithmException | NoSuchProviderException ex) {
             throw new SignServerException("Problem constructing SOD as configured algorithm not supported", ex);
         } catch(InvalidKeyException ex) {
@@ -292,9 +535,16 @@ public class MRTDSODSigner extends BaseSigner {
             throw new SignServerException("Problem constructing SOD", ex);
         } catch (IOException ex) {
             throw new SignServerException("Problem reconstructing SOD", ex);
-        } finally {
-            releaseCryptoInstance(crypto, requestContext);
         }
+    }
+
+    /**
+     * Verifies the SOD and writes it to the response data of the request.
+     */
+    private SODResponse createResponse(final SODRequest sodRequest, final SODFile sod,
+            final X509Certificate cert, final List<Certificate> certChain,
+            final RequestContext requestContext) throws SignServerException {
+        final WritableData responseData = sodRequest.getResponseData();
 
         // Verify the Signature before returning
         try (OutputStream out = responseData.getAsOutputStream()) {
@@ -309,9 +559,6 @@ public class MRTDSODSigner extends BaseSigner {
             final String archiveId = createArchiveId(signedbytes, (String) requestContext.get(RequestContext.TRANSACTION_ID));
             final Collection<? extends Archivable> archivables = Arrays.asList(new DefaultArchivable(Archivable.TYPE_RESPONSE, responseData.toReadableData(), archiveId));
 
-            // The client can be charged for the request
-            requestContext.setRequestFulfilledByWorker(true);
-            
             return new SODResponse(sodRequest.getRequestID(), responseData, cert,
                     archiveId, archivables, "application/octet-stream");
         } catch (GeneralSecurityException e) {
@@ -21,7 +21,12 @@ import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.lang.reflect.Proxy;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import junit.framework.TestCase;
 import org.apache.log4j.Logger;
 import org.bouncycastle.asn1.ASN1InputStream;
@@ -39,6 +44,8 @@ import org.signserver.common.SignServerException;
 import org.signserver.common.SignServerUtil;
 import org.signserver.common.WorkerConfig;
 import org.signserver.common.WorkerIdentifier;
+import org.signserver.common.data.SODBatchRequest;
+import org.signserver.common.data.SODBatchResponse;
 import org.signserver.common.data.SODRequest;
 import org.signserver.common.data.SODResponse;
 import org.signserver.ejb.interfaces.GlobalConfigurationSessionLocal;
@@ -738,6 +745,107 @@ public class MRTDSODSignerUnitTest extends TestCase {
         }
     }
 
+    /**
+     * Tests signing a batch of SODs in one request, with the signer hashing
+     * the data groups using threads from the executor, and that each SOD is
+     * written to its own response data.
+     * @throws Exception
+     */
+    public void test12SignBatch() throws Exception {
+        final List<Map<Integer, byte[]>> batch = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final Map<Integer, byte[]> dataGroups = new LinkedHashMap<>();
+            dataGroups.put(1, ("Dummy Value 1 of " + i).getBytes());
+            dataGroups.put(2, ("Dummy Value 2 of " + i).getBytes());
+            batch.add(dataGroups);
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        final AtomicInteger executed = new AtomicInteger();
+        final ManagedExecutorService executor = (ManagedExecutorService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {ManagedExecutorService.class}, (proxy, method, args) -> {
+            if ("execute".equals(method.getName())) {
+                executed.incrementAndGet();
+            }
+            return method.invoke(pool, args);
+        });
+        final RequestContext context = new RequestContext();
+        context.setServices(new MockedServicesImpl().with(GlobalConfigurationSessionLocal.class, globalConfig).with(ManagedExecutorService.class, executor));
+        final List<CloseableWritableData> responseDatas = new ArrayList<>();
+        try {
+            final List<SODRequest> requests = new ArrayList<>();
+            for (Map<Integer, byte[]> dataGroups : batch) {
+                final CloseableWritableData responseData = ModulesTestCase.createResponseData(false);
+                responseDatas.add(responseData);
+                requests.add(new SODRequest(18, dataGroups, null, null, responseData));
+            }
+
+            final SODBatchResponse res = (SODBatchResponse) processSession.process(new AdminInfo("Client user", null, null), new WorkerIdentifier(WORKER3),
+                    new SODBatchRequest(18, requests), context);
+            assertEquals(18, res.getRequestID());
+            assertEquals("responses", batch.size(), res.getResponses().size());
+            assertEquals("archivables", batch.size(), res.getArchivables().size());
+            final Certificate signercert = res.getSignerCertificate();
+            assertNotNull(signercert);
+
+            final MessageDigest md = MessageDigest.getInstance("SHA256", "BC");
+            for (int i = 0; i < batch.size(); i++) {
+                final SODFile sod = new SODFile(new ByteArrayInputStream(responseDatas.get(i).toReadableData().getAsByteArray()));
+                assertTrue("Signature verification " + i, sod.checkDocSignature(signercert));
+                assertTrue("DG1 of " + i, Arrays.equals(md.digest(batch.get(i).get(1)), sod.getDataGroupHashes().get(1)));
+                assertTrue("DG2 of " + i, Arrays.equals(md.digest(batch.get(i).get(2)), sod.getDataGroupHashes().get(2)));
+            }
+            assertTrue("threads borrowed", executed.get() > 0);
+        } finally {
+            pool.shutdown();
+            for (CloseableWritableData responseData : responseDatas) {
+                responseData.close();
+            }
+        }
+    }
+
+    /**
+     * Tests that a batch fails if one of the requests is illegal or if the
+     * batch is larger than the configured maximum.
+     * @throws Exception
+     */
+    public void test13SignBatchFailures() throws Exception {
+        final Map<Integer, byte[]> hashes = new LinkedHashMap<>();
+        hashes.put(1, digestHelper("Dummy Value 1".getBytes(), "SHA256"));
+        final Map<Integer, byte[]> wrongLength = new LinkedHashMap<>();
+        wrongLength.put(1, digestHelper("Dummy Value 1".getBytes(), "SHA512"));
+
+        final RequestContext context = new RequestContext();
+        context.setServices(services);
+        try (CloseableWritableData responseData1 = ModulesTestCase.createResponseData(false);
+             CloseableWritableData responseData2 = ModulesTestCase.createResponseData(false)) {
+            final List<SODRequest> requests = Arrays.asList(
+                    new SODRequest(19, hashes, null, null, responseData1),
+                    new SODRequest(19, wrongLength, null, null, responseData2));
+            try {
+                processSession.process(new AdminInfo("Client user", null, null), new WorkerIdentifier(WORKER1),
+                        new SODBatchRequest(19, requests), context);
+                fail("Should have failed");
+            } catch (IllegalRequestException expected) {
+                assertTrue("message: " + expected.getMessage(), expected.getMessage().startsWith("SOD request 1: "));
+            }
+
+            workerSession.setWorkerProperty(WORKER1, "BATCH_MAX_SIZE", "1");
+            workerSession.reloadConfiguration(WORKER1);
+            try {
+                processSession.process(new AdminInfo("Client user", null, null), new WorkerIdentifier(WORKER1),
+                        new SODBatchRequest(20, Arrays.asList(
+                                new SODRequest(20, hashes, null, null, responseData1),
+                                new SODRequest(20, hashes, null, null, responseData2))), context);
+                fail("Should have failed");
+            } catch (IllegalRequestException expected) {
+                assertEquals("Batch of 2 SOD requests exceeds the maximum of 1", expected.getMessage());
+            }
+        } finally {
+            workerSession.removeWorkerProperty(WORKER1, "BATCH_MAX_SIZE");
+            workerSession.reloadConfiguration(WORKER1);
+        }
+    }
+
     private void setupWorkers() {
 
         final GlobalConfigurationSessionMock globalMock
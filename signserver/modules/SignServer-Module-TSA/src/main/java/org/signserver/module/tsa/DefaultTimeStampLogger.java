@@ -21,8 +21,8 @@ import org.signserver.common.WorkerConfig;
 import org.signserver.server.SignServerContext;
 import org.signserver.server.log.AdminInfo;
 import org.signserver.server.log.BaseWorkerLogger;
-import org.signserver.server.log.EjbcaPatternLogger;
 import org.signserver.server.log.IWorkerLogger;
+import org.signserver.server.log.PatternLogTemplate;
 import org.signserver.server.log.WorkerLoggerException;
 
 /**
@@ -32,12 +32,9 @@ import org.signserver.server.log.WorkerLoggerException;
  */
 public class DefaultTimeStampLogger extends BaseWorkerLogger implements IWorkerLogger {
 
-    private Pattern pattern;
-    private String orderString;
+    private PatternLogTemplate template;
     private static final Logger ACCOUNTLOG =
             Logger.getLogger(IWorkerLogger.class);
-    private String logDateFormat;
-    private String timeZone;
     private Level logLevel;
 
     private static final String DEFAULT_LOGPATTERN =
@@ -82,27 +79,20 @@ public class DefaultTimeStampLogger extends BaseWorkerLogger implements IWorkerL
     @Override
     public void init(final int workerId, final WorkerConfig config, final SignServerContext context) {
         
-        this.pattern = Pattern.compile(config.getProperty("LOGPATTERN",
-                DEFAULT_LOGPATTERN));
-        this.orderString = config.getProperty("LOGORDER", DEFAULT_LOGORDER);
-        this.logDateFormat = config.getProperty("LOGDATEFORMAT", DEFAULT_LOGDATEFORMAT);
-        this.timeZone = config.getProperty("LOGTIMEZONE", DEFAULT_LOGTIMEZONE);
+        this.template = new PatternLogTemplate(
+                Pattern.compile(config.getProperty("LOGPATTERN", DEFAULT_LOGPATTERN)),
+                config.getProperty("LOGORDER", DEFAULT_LOGORDER),
+                config.getProperty("LOGDATEFORMAT", DEFAULT_LOGDATEFORMAT),
+                config.getProperty("LOGTIMEZONE", DEFAULT_LOGTIMEZONE));
         this.logLevel = Level.toLevel(config.getProperty("LOGLEVEL_DEFAULT",
         		DEFAULT_LOGLEVEL), Level.INFO);
     }
 
     @Override
     public void log(final AdminInfo adminInfo, final Map<String, Object> fields, final RequestContext context) throws WorkerLoggerException {
-        final EjbcaPatternLogger pl = new EjbcaPatternLogger(this.pattern.matcher(
-                this.orderString), this.orderString, ACCOUNTLOG,
-                this.logDateFormat, this.timeZone, this.logLevel);
-
-        // TODO: Do a new version of pattern logger instead of this copying
-        for (Map.Entry<String, Object> entry : fields.entrySet()) {
-            pl.paramPut(entry.getKey(), String.valueOf(entry.getValue()));
+        if (ACCOUNTLOG.isEnabledFor(logLevel)) {
+            ACCOUNTLOG.log(logLevel, template.render(fields));
         }
-        pl.writeln();
-        pl.flush();
     }
 
 }
@@ -22,6 +22,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import javax.persistence.EntityManager;
 import javax.xml.crypto.dsig.SignatureMethod;
 import javax.xml.parsers.DocumentBuilder;
@@ -59,6 +60,7 @@ import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
 import xades4j.XAdES4jException;
+import xades4j.production.AnonymousDataObjectReference;
 import xades4j.production.EnvelopedXmlObject;
 import xades4j.production.SignedDataObjects;
 import xades4j.production.XadesBesSigningProfile;
@@ -121,8 +123,14 @@ public class XAdESSigner extends BaseSigner {
     public static final String CLAIMED_ROLE = "CLAIMED_ROLE";
     public static final String CLAIMED_ROLE_FROM_USERNAME = "CLAIMED_ROLE_FROM_USERNAME";
 
+    /** Worker property: SIGNATURETYPE. */
+    public static final String SIGNATURETYPE = "SIGNATURETYPE";
+
     /** Default value to use if the worker property XADESFORM has not been set. */
     private static final String DEFAULT_XADESFORM = "BES";
+
+    /** Default value to use if the worker property SIGNATURETYPE has not been set. */
+    private static final String DEFAULT_SIGNATURETYPE = "ENVELOPED";
     
     private static final String DEFAULT_TSA_DIGEST_ALGORITHM = "SHA256";
     
@@ -142,6 +150,8 @@ public class XAdESSigner extends BaseSigner {
     private String claimedRoleDefault;
     private boolean claimedRoleFromUsername;
 
+    private SignatureType signatureType;
+
     AbstractTimeStampTokenProvider timeStampTokenProviderImplementation;
 
     private TimeStampTokenProvider internalTimeStampTokenProvider;
@@ -164,6 +174,19 @@ public class XAdESSigner extends BaseSigner {
     }
     
     
+    /**
+     * Where the signature is placed in relation to the signed document.
+     */
+    public enum SignatureType {
+        /** Signature added to the parsed signed document. */
+        ENVELOPED,
+        /**
+         * Signature over the request octets, referenced without URI. The
+         * request is streamed while digesting and not parsed.
+         */
+        DETACHED
+    }
+
     /**
      * Commitment types defined in ETSI TS 101 903 V1.4.1 (2009-06).
      * section 7.2.6.
@@ -269,6 +292,13 @@ public class XAdESSigner extends BaseSigner {
         claimedRoleFromUsername =
                 Boolean.parseBoolean(config.getProperty(CLAIMED_ROLE_FROM_USERNAME, Boolean.FALSE.toString()));
 
+        final String signatureTypeValue = config.getProperty(SIGNATURETYPE, DEFAULT_SIGNATURETYPE);
+        try {
+            signatureType = SignatureType.valueOf(signatureTypeValue.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException ex) {
+            configErrors.add("Incorrect value for property " + SIGNATURETYPE + ": \"" + signatureTypeValue + "\"");
+        }
+
         // additionally check that at least one certificate is included.
         // (initIncludeCertificateLevels already checks non-negative values)
         if (hasSetIncludeCertificateLevels && includeCertificateLevels == 0) {
@@ -351,11 +381,18 @@ public class XAdESSigner extends BaseSigner {
             dbf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
 
             final DocumentBuilder builder = dbf.newDocumentBuilder();
-            final Document doc = builder.parse(in);
+            final Document doc;
+            SignedDataObjects dataObjs;
 
-            // Sign
-            final Node node = doc.getDocumentElement();
-            SignedDataObjects dataObjs = new SignedDataObjects(new EnvelopedXmlObject(node));
+            if (signatureType == SignatureType.DETACHED) {
+                // Digest the request as it is read and only build the signature
+                doc = builder.newDocument();
+                dataObjs = new SignedDataObjects(new AnonymousDataObjectReference(in));
+            } else {
+                doc = builder.parse(in);
+                final Node node = doc.getDocumentElement();
+                dataObjs = new SignedDataObjects(new EnvelopedXmlObject(node));
+            }
 
             for (final AllDataObjsCommitmentTypeProperty commitmentType : commitmentTypes) {
                 dataObjs = dataObjs.withCommitmentType(commitmentType);
@@ -373,7 +373,11 @@ public class XAdESSignerUnitTest {
         final Document doc = builder.parse(new ByteArrayInputStream(data));
         Element node = doc.getDocumentElement();
         
-        XAdESVerificationResult r = verifier.verify(node, new SignatureSpecificVerificationOptions());
+        final SignatureSpecificVerificationOptions options = new SignatureSpecificVerificationOptions();
+        if ("DETACHED".equals(config.getProperty("SIGNATURETYPE"))) {
+            options.useDataForAnonymousReference(toSign.getBytes(StandardCharsets.UTF_8));
+        }
+        XAdESVerificationResult r = verifier.verify(node, options);
         
         return r;
     }
@@ -1177,4 +1181,58 @@ public class XAdESSignerUnitTest {
             }
         }
     }
+
+    /**
+     * Tests that a detached signature can be created without the document
+     * being parsed (here not even being XML) and that it verifies against the
+     * original data.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testProcessData_detached() throws Exception {
+        LOG.info("testProcessData_detached");
+        final WorkerConfig config = new WorkerConfig();
+        config.setProperty(WorkerConfig.TYPE, WorkerType.PROCESSABLE.name());
+        config.setProperty("SIGNATURETYPE", "DETACHED");
+
+        final XAdESVerificationResult r = getVerificationResult(tokenRSA, config, "Not an XML document", false, null);
+
+        assertEquals("BES", r.getSignatureForm().name());
+        assertEquals("one signed data object", 1, r.getSignedDataObjects().size());
+    }
+
+    /**
+     * Tests that an unknown signature type gives a configuration error.
+     */
+    @Test
+    public void testInit_incorrectSignatureType() {
+        LOG.info("testInit_incorrectSignatureType");
+        final WorkerConfig config = new WorkerConfig();
+        config.setProperty(WorkerConfig.TYPE, WorkerType.PROCESSABLE.name());
+        config.setProperty("SIGNATURETYPE", "ENVELOPING");
+
+        final XAdESSigner instance = new MockedXAdESSigner(tokenRSA);
+        instance.init(4711, config, null, null);
+
+        final String errors = instance.getFatalErrors(null).toString();
+        assertTrue("error: " + errors, errors.contains("SIGNATURETYPE"));
+    }
+
+    /**
+     * Tests that the signature type is not case sensitive, as in XMLSigner.
+     */
+    @Test
+    public void testInit_signatureTypeLowerCase() {
+        LOG.info("testInit_signatureTypeLowerCase");
+        final WorkerConfig config = new WorkerConfig();
+        config.setProperty(WorkerConfig.TYPE, WorkerType.PROCESSABLE.name());
+        config.setProperty("SIGNATURETYPE", " detached ");
+
+        final XAdESSigner instance = new MockedXAdESSigner(tokenRSA);
+        instance.init(4711, config, null, null);
+
+        final String errors = instance.getFatalErrors(null).toString();
+        assertFalse("error: " + errors, errors.contains("SIGNATURETYPE"));
+    }
 }
@@ -0,0 +1,287 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.module.xmlsigner;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming implementation of Canonical XML 1.0 (without comments) of the
+ * document element of an XML document, as it would be rendered when placed
+ * as child of an element with the given namespace context.
+ *
+ * The document is read using StAX and the canonical form is written to the
+ * output stream as the events are read so that only the namespace context of
+ * the current element path is kept in memory.
+ *
+ * Comments, processing instructions and white space outside of the document
+ * element are not part of the output. Documents with a DOCTYPE declaration are
+ * not accepted.
+ *
+ * @version $Id$
+ */
+class StreamingCanonicalizer {
+
+    private static final XMLInputFactory FACTORY;
+
+    static {
+        FACTORY = XMLInputFactory.newInstance();
+        FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        FACTORY.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
+        FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+    }
+
+    private final Map<String, String> inheritedNamespaces;
+
+    /**
+     * Creates a canonicalizer for content placed below an element with the
+     * given in-scope namespaces.
+     *
+     * @param inheritedNamespaces map from prefix (empty string for the default
+     * namespace) to namespace URI already rendered by the ancestors
+     */
+    StreamingCanonicalizer(final Map<String, String> inheritedNamespaces) {
+        this.inheritedNamespaces = new HashMap<>(inheritedNamespaces);
+    }
+
+    /**
+     * Reads the XML document from the input stream and writes the canonical
+     * form of the document element to the output stream.
+     *
+     * The output stream is flushed but not closed.
+     *
+     * @param in to read the document from
+     * @param out to write the canonical form to
+     * @throws XMLStreamException in case the document could not be parsed
+     * @throws IOException in case of error reading or writing
+     */
+    void canonicalize(final InputStream in, final OutputStream out) throws XMLStreamException, IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        final XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+        try {
+            final Deque<Map<String, String>> namespaceStack = new ArrayDeque<>();
+            namespaceStack.push(inheritedNamespaces);
+            int depth = 0;
+
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                switch (event) {
+                    case XMLStreamConstants.DTD:
+                        throw new XMLStreamException("DOCTYPE is disallowed", reader.getLocation());
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        namespaceStack.push(writeStartElement(reader, namespaceStack.peek(), writer));
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        depth--;
+                        namespaceStack.pop();
+                        writer.write("</");
+                        writer.write(qualifiedName(reader.getPrefix(), reader.getLocalName()));
+                        writer.write('>');
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (depth > 0) {
+                            writeText(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength(), writer);
+                        }
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        if (depth > 0) {
+                            writer.write("<?");
+                            writer.write(reader.getPITarget());
+                            final String data = reader.getPIData();
+                            if (data != null && !data.isEmpty()) {
+                                writer.write(' ');
+                                writer.write(data);
+                            }
+                            writer.write("?>");
+                        }
+                        break;
+                    case XMLStreamConstants.ENTITY_REFERENCE:
+                        throw new XMLStreamException("Unresolved entity reference: " + reader.getLocalName(), reader.getLocation());
+                    default:
+                        // Comments, the XML declaration and document events
+                        // are not part of the canonical form
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the start tag with the namespace declarations not already
+     * rendered by an ancestor followed by the attributes in canonical order.
+     *
+     * @return the namespaces in scope for the children of this element
+     */
+    private static Map<String, String> writeStartElement(final XMLStreamReader reader, final Map<String, String> parentNamespaces, final Writer writer) throws IOException {
+        writer.write('<');
+        writer.write(qualifiedName(reader.getPrefix(), reader.getLocalName()));
+
+        // Namespace declarations, sorted by prefix with the default first
+        Map<String, String> namespaces = parentNamespaces;
+        final int namespaceCount = reader.getNamespaceCount();
+        if (namespaceCount > 0) {
+            final TreeMap<String, String> rendered = new TreeMap<>();
+            for (int i = 0; i < namespaceCount; i++) {
+                final String prefix = emptyIfNull(reader.getNamespacePrefix(i));
+                final String uri = emptyIfNull(reader.getNamespaceURI(i));
+                if (!uri.equals(emptyIfNull(parentNamespaces.get(prefix)))) {
+                    rendered.put(prefix, uri);
+                }
+            }
+            if (!rendered.isEmpty()) {
+                namespaces = new HashMap<>(parentNamespaces);
+                for (Map.Entry<String, String> entry : rendered.entrySet()) {
+                    namespaces.put(entry.getKey(), entry.getValue());
+                    writer.write(entry.getKey().isEmpty() ? " xmlns" : " xmlns:" + entry.getKey());
+                    writer.write("=\"");
+                    writeAttributeValue(entry.getValue(), writer);
+                    writer.write('"');
+                }
+            }
+        }
+
+        // Attributes, sorted by namespace URI and then local name
+        final int attributeCount = reader.getAttributeCount();
+        if (attributeCount > 0) {
+            final List<Attribute> attributes = new ArrayList<>(attributeCount);
+            for (int i = 0; i < attributeCount; i++) {
+                attributes.add(new Attribute(emptyIfNull(reader.getAttributeNamespace(i)),
+                        reader.getAttributeLocalName(i),
+                        emptyIfNull(reader.getAttributePrefix(i)),
+                        reader.getAttributeValue(i)));
+            }
+            Collections.sort(attributes);
+            for (Attribute attribute : attributes) {
+                writer.write(' ');
+                writer.write(qualifiedName(attribute.prefix, attribute.localName));
+                writer.write("=\"");
+                writeAttributeValue(attribute.value, writer);
+                writer.write('"');
+            }
+        }
+        writer.write('>');
+        return namespaces;
+    }
+
+    private static void writeText(final char[] text, final int start, final int length, final Writer writer) throws IOException {
+        int last = start;
+        final int end = start + length;
+        for (int i = start; i < end; i++) {
+            final String replacement;
+            switch (text[i]) {
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '\r':
+                    replacement = "&#xD;";
+                    break;
+                default:
+                    continue;
+            }
+            writer.write(text, last, i - last);
+            writer.write(replacement);
+            last = i + 1;
+        }
+        writer.write(text, last, end - last);
+    }
+
+    private static void writeAttributeValue(final String value, final Writer writer) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    writer.write("&amp;");
+                    break;
+                case '<':
+                    writer.write("&lt;");
+                    break;
+                case '"':
+                    writer.write("&quot;");
+                    break;
+                case '\t':
+                    writer.write("&#x9;");
+                    break;
+                case '\n':
+                    writer.write("&#xA;");
+                    break;
+                case '\r':
+                    writer.write("&#xD;");
+                    break;
+                default:
+                    writer.write(c);
+            }
+        }
+    }
+
+    private static String qualifiedName(final String prefix, final String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    private static String emptyIfNull(final String value) {
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Attribute in canonical sort order.
+     */
+    private static class Attribute implements Comparable<Attribute> {
+        private final String namespaceURI;
+        private final String localName;
+        private final String prefix;
+        private final String value;
+
+        Attribute(final String namespaceURI, final String localName, final String prefix, final String value) {
+            this.namespaceURI = namespaceURI;
+            this.localName = localName;
+            this.prefix = prefix;
+            this.value = value;
+        }
+
+        @Override
+        public int compareTo(final Attribute other) {
+            final int result = namespaceURI.compareTo(other.namespaceURI);
+            return result != 0 ? result : localName.compareTo(other.localName);
+        }
+    }
+}
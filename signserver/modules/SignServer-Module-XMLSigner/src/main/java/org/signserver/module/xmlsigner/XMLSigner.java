@@ -12,10 +12,14 @@
  *************************************************************************/
 package org.signserver.module.xmlsigner;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
 import java.security.InvalidAlgorithmParameterException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.Provider;
@@ -28,16 +32,23 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
 import javax.persistence.EntityManager;
 import javax.xml.crypto.MarshalException;
 import javax.xml.crypto.XMLStructure;
+import javax.xml.crypto.dom.DOMStructure;
 import javax.xml.crypto.dsig.*;
 import javax.xml.crypto.dsig.dom.DOMSignContext;
 import javax.xml.crypto.dsig.keyinfo.KeyInfo;
 import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
 import javax.xml.crypto.dsig.keyinfo.X509Data;
+import javax.xml.crypto.dsig.spec.TransformParameterSpec;
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
@@ -66,7 +77,14 @@ import org.signserver.server.IServices;
  * A Signer signing XML documents.
  *
  * Implements a ISigner and have the following properties:
- * No properties yet
+ * SIGNATUREALGORITHM, DIGESTALGORITHM, SIGNATURETYPE and
+ * DETACHEDREFERENCEURI.
+ *
+ * With SIGNATURETYPE=ENVELOPED (the default) the document is parsed into a DOM
+ * tree and the signature is added as last child of the document element.
+ * With SIGNATURETYPE=ENVELOPING or DETACHED the document is instead processed
+ * as a stream so that the memory used is proportional to the size of the
+ * signature and not the document.
  *
  * @author Markus Kilås
  * @version $Id$
@@ -80,8 +98,20 @@ public class XMLSigner extends BaseSigner {
     // Property constants
     public static final String SIGNATUREALGORITHM = "SIGNATUREALGORITHM";    
     public static final String DIGESTALGORITHM = "DIGESTALGORITHM";    
+    public static final String SIGNATURETYPE = "SIGNATURETYPE";
+    public static final String DETACHEDREFERENCEURI = "DETACHEDREFERENCEURI";
     private static final String SIGNATURE_ALGORITHM_PREFIX = "with";     
     private static final String DIGEST_METHOD_URI_SHA384 = "http://www.w3.org/2001/04/xmldsig-more#sha384";
+    private static final String DEFAULT_SIGNATURETYPE = "ENVELOPED";
+
+    /** Id of the ds:Object holding the document in an enveloping signature. */
+    private static final String ENVELOPING_OBJECT_ID = "Object-1";
+    private static final String XMLDSIG_PREFIX = "ds";
+    private static final byte[] ENVELOPING_OBJECT_END_TAG = ("</" + XMLDSIG_PREFIX + ":Object>").getBytes(StandardCharsets.UTF_8);
+
+    /** Canonicalizer for the document placed in the ds:Object element. */
+    private static final StreamingCanonicalizer ENVELOPING_CANONICALIZER =
+            new StreamingCanonicalizer(Collections.singletonMap(XMLDSIG_PREFIX, XMLSignature.XMLNS));
     
     /**
      * Addional signature methods not yet covered by
@@ -109,8 +139,22 @@ public class XMLSigner extends BaseSigner {
     private String signatureAlgorithm;
     private String digestAlgorithmString;
     private String digestMethod;
+    private SignatureType signatureType;
+    private String detachedReferenceURI;
     private LinkedList<String> configErrors;
 
+    /**
+     * Where the signature is placed in relation to the signed document.
+     */
+    public enum SignatureType {
+        /** Signature added to the signed document. */
+        ENVELOPED,
+        /** Signed document placed inside the signature. */
+        ENVELOPING,
+        /** Signature referencing the signed document as external data. */
+        DETACHED
+    }
+
     @Override
     public void init(final int workerId, final WorkerConfig config,
             final WorkerContext workerContext, final EntityManager workerEM) {
@@ -133,6 +177,20 @@ public class XMLSigner extends BaseSigner {
                 configErrors.add("XMLSigner does not support digest algorithm: " + digestAlgorithmString);
             }
         }
+
+        // Get the signature type
+        final String signatureTypeString = config.getProperty(SIGNATURETYPE, DEFAULT_SIGNATURETYPE);
+        try {
+            signatureType = SignatureType.valueOf(signatureTypeString.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException ex) {
+            configErrors.add("Incorrect value for property " + SIGNATURETYPE + ": \"" + signatureTypeString + "\"");
+        }
+
+        // Get the URI to put in the reference of a detached signature, if any
+        detachedReferenceURI = config.getProperty(DETACHEDREFERENCEURI, DEFAULT_NULL);
+        if (detachedReferenceURI != null && signatureType != SignatureType.DETACHED) {
+            configErrors.add("Property " + DETACHEDREFERENCEURI + " is only supported with " + SIGNATURETYPE + " " + SignatureType.DETACHED);
+        }
     }
 
     @Override
@@ -163,7 +221,6 @@ public class XMLSigner extends BaseSigner {
         final ReadableData requestData = sReq.getRequestData();
         final WritableData responseData = sReq.getResponseData();
         Certificate cert;
-        Document doc;
         ICryptoInstance crypto = null;
         try {
             crypto = acquireCryptoInstance(ICryptoTokenV4.PURPOSE_SIGN, signRequest, requestContext);
@@ -188,24 +245,18 @@ public class XMLSigner extends BaseSigner {
             // Private key
             final PrivateKey privKey = crypto.getPrivateKey();
 
-            SignedInfo si;
+            final String sigAlg = signatureAlgorithm == null ? getDefaultSignatureAlgorithm(privKey) : signatureAlgorithm;
+            final DigestMethod dm;
+            final CanonicalizationMethod cm;
+            final SignatureMethod sm;
             try {
-                final String sigAlg = signatureAlgorithm == null ? getDefaultSignatureAlgorithm(privKey) : signatureAlgorithm;
-                
                 // find digest method if DIGESTALGORITHM not provided                               
                 if (digestMethod == null) {
                     digestMethod = getDefaultDigestMethodFromSignatureAlgorithm((sigAlg));
                 }
-                
-                Reference ref = fac.newReference("",
-                        fac.newDigestMethod(digestMethod, null),
-                        Collections.singletonList(fac.newTransform(Transform.ENVELOPED, (XMLStructure) null)),
-                        null, null);
-
-                si = fac.newSignedInfo(fac.newCanonicalizationMethod(CanonicalizationMethod.INCLUSIVE_WITH_COMMENTS, (XMLStructure) null),
-                        fac.newSignatureMethod(getSignatureMethod(sigAlg), null),
-                        Collections.singletonList(ref));
-
+                dm = fac.newDigestMethod(digestMethod, null);
+                cm = fac.newCanonicalizationMethod(CanonicalizationMethod.INCLUSIVE_WITH_COMMENTS, (XMLStructure) null);
+                sm = fac.newSignatureMethod(getSignatureMethod(sigAlg), null);
             } catch (InvalidAlgorithmParameterException | NoSuchAlgorithmException ex) {
                 throw new SignServerException("XML signing algorithm error", ex);
             }
@@ -221,38 +272,63 @@ public class XMLSigner extends BaseSigner {
                 ki = kif.newKeyInfo(kviItems);
             }
 
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
+            if (signatureType == SignatureType.ENVELOPED) {
+                signEnveloped(fac, dm, cm, sm, ki, crypto, requestData, responseData);
+            } else {
+                signStreaming(fac, dm, cm, sm, ki, crypto, requestData, responseData);
+            }
+        } finally {
+            releaseCryptoInstance(crypto, requestContext);
+        }
 
-            try (InputStream in = requestData.getAsInputStream()) {
-                // Xerces 1 - http://xerces.apache.org/xerces-j/features.html#external-general-entities
-                // Xerces 2 - http://xerces.apache.org/xerces2-j/features.html#external-general-entities
-                dbf.setFeature("http://xml.org/sax/features/external-general-entities", false);
+        final Collection<? extends Archivable> archivables = Arrays.asList(
+                    new DefaultArchivable(Archivable.TYPE_REQUEST, CONTENT_TYPE, requestData, archiveId), 
+                    new DefaultArchivable(Archivable.TYPE_RESPONSE, CONTENT_TYPE, responseData.toReadableData(), archiveId));
+
+        // The client can be charged for the request
+        requestContext.setRequestFulfilledByWorker(true);
+
+        return new SignatureResponse(sReq.getRequestID(), responseData,
+                cert,
+                archiveId, archivables, CONTENT_TYPE);
+    }
 
-                // Xerces 1 - http://xerces.apache.org/xerces-j/features.html#external-parameter-entities
-                // Xerces 2 - http://xerces.apache.org/xerces2-j/features.html#external-parameter-entities
-                dbf.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+    /**
+     * Signs the document by parsing it into a DOM tree and adding the
+     * signature to the document element.
+     */
+    private void signEnveloped(final XMLSignatureFactory fac, final DigestMethod dm,
+            final CanonicalizationMethod cm, final SignatureMethod sm,
+            final KeyInfo ki, final ICryptoInstance crypto,
+            final ReadableData requestData, final WritableData responseData)
+            throws IllegalRequestException, SignServerException {
+        final SignedInfo si;
+        try {
+            Reference ref = fac.newReference("", dm,
+                    Collections.singletonList(fac.newTransform(Transform.ENVELOPED, (XMLStructure) null)),
+                    null, null);
 
-                // Xerces 2 only - http://xerces.apache.org/xerces2-j/features.html#disallow-doctype-decl
-                dbf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            si = fac.newSignedInfo(cm, sm, Collections.singletonList(ref));
+        } catch (InvalidAlgorithmParameterException | NoSuchAlgorithmException ex) {
+            throw new SignServerException("XML signing algorithm error", ex);
+        }
 
-                doc = dbf.newDocumentBuilder().parse(in);
-            } catch (SAXException ex) {
-                throw new IllegalRequestException("Document parsing error", ex);
-            } catch (ParserConfigurationException | IOException ex) {
-                throw new SignServerException("Document parsing error", ex);
-            }
-            DOMSignContext dsc = new DOMSignContext(privKey, doc.getDocumentElement());
-            dsc.setProperty("org.jcp.xml.dsig.internal.dom.SignatureProvider", crypto.getProvider());
+        final Document doc;
+        try (InputStream in = requestData.getAsInputStream()) {
+            doc = createDocumentBuilder().parse(in);
+        } catch (SAXException ex) {
+            throw new IllegalRequestException("Document parsing error", ex);
+        } catch (ParserConfigurationException | IOException ex) {
+            throw new SignServerException("Document parsing error", ex);
+        }
+        DOMSignContext dsc = new DOMSignContext(crypto.getPrivateKey(), doc.getDocumentElement());
+        dsc.setProperty("org.jcp.xml.dsig.internal.dom.SignatureProvider", crypto.getProvider());
 
-            XMLSignature signature = fac.newXMLSignature(si, ki);
-            try {
-                signature.sign(dsc);
-            } catch (MarshalException | XMLSignatureException ex) {
-                throw new SignServerException("Signature generation error", ex);
-            }
-        } finally {
-            releaseCryptoInstance(crypto, requestContext);
+        XMLSignature signature = fac.newXMLSignature(si, ki);
+        try {
+            signature.sign(dsc);
+        } catch (MarshalException | XMLSignatureException ex) {
+            throw new SignServerException("Signature generation error", ex);
         }
 
         TransformerFactory tf = TransformerFactory.newInstance();
@@ -263,17 +339,181 @@ public class XMLSigner extends BaseSigner {
         } catch (TransformerException | IOException ex) {
             throw new SignServerException("XML transformation error", ex);
         }
+    }
 
-        final Collection<? extends Archivable> archivables = Arrays.asList(
-                    new DefaultArchivable(Archivable.TYPE_REQUEST, CONTENT_TYPE, requestData, archiveId), 
-                    new DefaultArchivable(Archivable.TYPE_RESPONSE, CONTENT_TYPE, responseData.toReadableData(), archiveId));
+    /**
+     * Signs the document without building a DOM tree of it.
+     *
+     * The reference digest is computed while streaming the request data and
+     * only the Signature element is built in memory. For an enveloping
+     * signature the document is canonicalized on the fly and the canonical
+     * form is streamed into the ds:Object element of the serialized signature.
+     * For a detached signature the digest is computed over the request octets.
+     */
+    private void signStreaming(final XMLSignatureFactory fac, final DigestMethod dm,
+            final CanonicalizationMethod cm, final SignatureMethod sm,
+            final KeyInfo ki, final ICryptoInstance crypto,
+            final ReadableData requestData, final WritableData responseData)
+            throws IllegalRequestException, SignServerException {
+        final boolean enveloping = signatureType == SignatureType.ENVELOPING;
+        final String placeholder = "SIGNSERVER-CONTENT-" + UUID.randomUUID().toString();
+        final Document sigDoc;
+        try {
+            sigDoc = createDocumentBuilder().newDocument();
+        } catch (ParserConfigurationException ex) {
+            throw new SignServerException("Document builder error", ex);
+        }
 
-        // The client can be charged for the request
-        requestContext.setRequestFulfilledByWorker(true);
+        // Digest the content
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(getJcaDigestAlgorithm(dm.getAlgorithm()));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new SignServerException("XML signing algorithm error", ex);
+        }
+        try (InputStream in = requestData.getAsInputStream()) {
+            if (enveloping) {
+                final OutputStream digestOut = new DigestOutputStream(OutputStream.nullOutputStream(), md);
+                digestOut.write(getEnvelopingObjectStartTag());
+                ENVELOPING_CANONICALIZER.canonicalize(in, digestOut);
+                digestOut.write(ENVELOPING_OBJECT_END_TAG);
+            } else {
+                final byte[] buffer = new byte[4096];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    md.update(buffer, 0, n);
+                }
+            }
+        } catch (XMLStreamException ex) {
+            throw new IllegalRequestException("Document parsing error", ex);
+        } catch (IOException ex) {
+            throw new SignServerException("Document parsing error", ex);
+        }
 
-        return new SignatureResponse(sReq.getRequestID(), responseData,
-                cert,
-                archiveId, archivables, CONTENT_TYPE);
+        // Create the signature with the already computed reference digest
+        final List<XMLObject> objects;
+        final Reference ref;
+        try {
+            if (enveloping) {
+                ref = fac.newReference("#" + ENVELOPING_OBJECT_ID, dm,
+                        Collections.singletonList(fac.newTransform(CanonicalizationMethod.INCLUSIVE, (TransformParameterSpec) null)),
+                        null, null, md.digest());
+                objects = Collections.singletonList(fac.newXMLObject(
+                        Collections.singletonList(new DOMStructure(sigDoc.createTextNode(placeholder))),
+                        ENVELOPING_OBJECT_ID, null, null));
+            } else {
+                ref = fac.newReference(detachedReferenceURI, dm, null, null, null, md.digest());
+                objects = null;
+            }
+        } catch (InvalidAlgorithmParameterException | NoSuchAlgorithmException ex) {
+            throw new SignServerException("XML signing algorithm error", ex);
+        }
+        final SignedInfo si = fac.newSignedInfo(cm, sm, Collections.singletonList(ref));
+
+        DOMSignContext dsc = new DOMSignContext(crypto.getPrivateKey(), sigDoc);
+        dsc.setDefaultNamespacePrefix(XMLDSIG_PREFIX);
+        dsc.setProperty("org.jcp.xml.dsig.internal.dom.SignatureProvider", crypto.getProvider());
+
+        XMLSignature signature = fac.newXMLSignature(si, ki, objects, null, null);
+        try {
+            signature.sign(dsc);
+        } catch (MarshalException | XMLSignatureException ex) {
+            throw new SignServerException("Signature generation error", ex);
+        }
+
+        // Render the signature and for enveloping splice in the content
+        final ByteArrayOutputStream sigOut = new ByteArrayOutputStream();
+        try {
+            final Transformer trans = TransformerFactory.newInstance().newTransformer();
+            trans.setOutputProperty(OutputKeys.ENCODING, StandardCharsets.UTF_8.name());
+            trans.transform(new DOMSource(sigDoc), new StreamResult(sigOut));
+        } catch (TransformerException ex) {
+            throw new SignServerException("XML transformation error", ex);
+        }
+        final byte[] sigBytes = sigOut.toByteArray();
+
+        try (OutputStream out = responseData.getAsOutputStream()) {
+            if (enveloping) {
+                final String sigString = new String(sigBytes, StandardCharsets.UTF_8);
+                final int index = sigString.indexOf(placeholder);
+                if (index == -1) {
+                    throw new SignServerException("Signature object content not found");
+                }
+                out.write(sigString.substring(0, index).getBytes(StandardCharsets.UTF_8));
+                try (InputStream in = requestData.getAsInputStream()) {
+                    ENVELOPING_CANONICALIZER.canonicalize(in, out);
+                } catch (XMLStreamException ex) {
+                    throw new IllegalRequestException("Document parsing error", ex);
+                }
+                out.write(sigString.substring(index + placeholder.length()).getBytes(StandardCharsets.UTF_8));
+            } else {
+                out.write(sigBytes);
+            }
+        } catch (IOException ex) {
+            throw new SignServerException("Error writing signature", ex);
+        }
+    }
+
+    /**
+     * @return The canonical start tag of the ds:Object element holding the
+     * document in an enveloping signature
+     */
+    private static byte[] getEnvelopingObjectStartTag() {
+        return ("<" + XMLDSIG_PREFIX + ":Object xmlns:" + XMLDSIG_PREFIX + "=\"" + XMLSignature.XMLNS
+                + "\" Id=\"" + ENVELOPING_OBJECT_ID + "\">").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return A new namespace aware document builder not accepting DTDs
+     */
+    private static DocumentBuilder createDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+
+        // Xerces 1 - http://xerces.apache.org/xerces-j/features.html#external-general-entities
+        // Xerces 2 - http://xerces.apache.org/xerces2-j/features.html#external-general-entities
+        dbf.setFeature("http://xml.org/sax/features/external-general-entities", false);
+
+        // Xerces 1 - http://xerces.apache.org/xerces-j/features.html#external-parameter-entities
+        // Xerces 2 - http://xerces.apache.org/xerces2-j/features.html#external-parameter-entities
+        dbf.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+
+        // Xerces 2 only - http://xerces.apache.org/xerces2-j/features.html#disallow-doctype-decl
+        dbf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+
+        return dbf.newDocumentBuilder();
+    }
+
+    /**
+     * Get the JCA message digest algorithm name for a digest method URI.
+     *
+     * @param digestMethodURI URI of the digest method
+     * @return The JCA algorithm name
+     * @throws NoSuchAlgorithmException
+     */
+    private static String getJcaDigestAlgorithm(final String digestMethodURI) throws NoSuchAlgorithmException {
+        final String result;
+
+        switch (digestMethodURI) {
+            case DigestMethod.SHA1:
+                result = "SHA-1";
+                break;
+            case DigestMethod.SHA256:
+                result = "SHA-256";
+                break;
+            case DIGEST_METHOD_URI_SHA384:
+                result = "SHA-384";
+                break;
+            case DigestMethod.SHA512:
+                result = "SHA-512";
+                break;
+            case DigestMethod.RIPEMD160:
+                result = "RIPEMD160";
+                break;
+            default:
+                throw new NoSuchAlgorithmException("XMLSigner does not support digest method: " + digestMethodURI);
+        }
+        return result;
     }
 
     /**
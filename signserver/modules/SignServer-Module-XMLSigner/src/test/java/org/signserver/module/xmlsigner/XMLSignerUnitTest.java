@@ -12,11 +12,18 @@
  *************************************************************************/
 package org.signserver.module.xmlsigner;
 
+import java.io.ByteArrayInputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.Certificate;
 import java.util.Arrays;
+import javax.xml.crypto.OctetStreamData;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.apache.jcp.xml.dsig.internal.dom.XMLDSigRI;
 import org.apache.log4j.Logger;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
@@ -30,6 +37,7 @@ import org.signserver.common.WorkerConfig;
 import org.signserver.common.WorkerType;
 import org.signserver.server.CertificateClientCredential;
 import org.signserver.server.UsernamePasswordClientCredential;
+import org.signserver.server.cryptotokens.ICryptoTokenV4;
 import org.signserver.common.data.SignatureRequest;
 import org.signserver.server.data.impl.CloseableReadableData;
 import org.signserver.server.data.impl.CloseableWritableData;
@@ -37,6 +45,7 @@ import org.signserver.test.utils.builders.CertBuilder;
 import org.signserver.test.utils.builders.CryptoUtils;
 import org.signserver.test.utils.mock.MockedCryptoToken;
 import org.signserver.testutils.ModulesTestCase;
+import org.w3c.dom.Document;
 import org.xml.sax.SAXParseException;
 
 /**
@@ -395,4 +404,130 @@ public class XMLSignerUnitTest {
             }
         }
     }
+
+    /**
+     * Signs the document with the given signature type and validates the
+     * result.
+     *
+     * @param signatureType value for the SIGNATURETYPE property
+     * @param toSign document to sign
+     * @return the validated signature document
+     * @throws Exception
+     */
+    private Document signAndValidateStreaming(final String signatureType, final String toSign) throws Exception {
+        final WorkerConfig config = new WorkerConfig();
+        config.setProperty(WorkerConfig.TYPE, WorkerType.PROCESSABLE.name());
+        config.setProperty("SIGNATURETYPE", signatureType);
+
+        final String signedXml = signWithXMLSigner(tokenRSA, config, toSign, false, null);
+
+        final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        final Document doc = dbf.newDocumentBuilder().parse(new ByteArrayInputStream(signedXml.getBytes(StandardCharsets.UTF_8)));
+        assertEquals("Signature is document element", "Signature", doc.getDocumentElement().getLocalName());
+
+        final XMLSignatureFactory fac = XMLSignatureFactory.getInstance("DOM", new XMLDSigRI());
+        final DOMValidateContext context = new DOMValidateContext(tokenRSA.getPublicKey(ICryptoTokenV4.PURPOSE_SIGN), doc.getDocumentElement());
+
+        // A detached reference is resolved to the original document
+        context.setURIDereferencer((uriReference, ctx) -> uriReference.getURI() == null
+                ? new OctetStreamData(new ByteArrayInputStream(toSign.getBytes(StandardCharsets.UTF_8)))
+                : fac.getURIDereferencer().dereference(uriReference, ctx));
+        final XMLSignature signature = fac.unmarshalXMLSignature(context);
+        assertTrue("Signature valid", signature.validate(context));
+        return doc;
+    }
+
+    /**
+     * Tests that an enveloping signature created in streaming mode is valid
+     * and contains the document.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testProcessData_enveloping() throws Exception {
+        LOG.info("testProcessData_enveloping");
+        final Document doc = signAndValidateStreaming("ENVELOPING", "<?xml version=\"1.0\"?>\n<!-- before -->\n<testroot><child a=\"1\">text</child></testroot>\n");
+        assertEquals("document in object", 1, doc.getElementsByTagName("testroot").getLength());
+    }
+
+    /**
+     * Tests that the streaming canonicalization of an enveloping signature
+     * matches the one used when validating, for a document with namespaces,
+     * attributes in non-canonical order and characters needing escaping.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testProcessData_envelopingCanonicalization() throws Exception {
+        LOG.info("testProcessData_envelopingCanonicalization");
+        final String toSign = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<r:root xmlns:r=\"urn:root\" xmlns=\"urn:default\" xmlns:b=\"urn:b\" xmlns:a=\"urn:a\" z=\"last\" b:y=\"2\" a:x=\"1\">"
+                + "<e xmlns:r=\"urn:root\" attr=\"&quot;&lt;&amp;&#9;&#10;&#13;\">&amp;&lt;&gt;&#13;\u00e5\u00e4\u00f6<![CDATA[<cdata>]]></e>"
+                + "<inner xmlns=\"\"><x/><?pi data?><!-- comment --></inner>"
+                + "<ds:Object xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\"/>"
+                + "</r:root>";
+        signAndValidateStreaming("ENVELOPING", toSign);
+    }
+
+    /**
+     * Tests that a detached signature created in streaming mode is valid
+     * and does not contain the document.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testProcessData_detached() throws Exception {
+        LOG.info("testProcessData_detached");
+        final Document doc = signAndValidateStreaming("DETACHED", "<testroot>content</testroot>");
+        assertEquals("no document", 0, doc.getElementsByTagName("testroot").getLength());
+    }
+
+    /**
+     * Tests that a document with a DOCTYPE is not allowed when streaming.
+     * @throws Exception
+     */
+    @Test
+    public void testDTDNotAllowedEnveloping() throws Exception {
+        LOG.info("testDTDNotAllowedEnveloping");
+        final String xmlWithDoctype =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<!DOCTYPE foo [\n" +
+            "  <!ELEMENT foo ANY >\n" +
+            "]><foo/>\n";
+        try {
+            final WorkerConfig config = new WorkerConfig();
+            config.setProperty(WorkerConfig.TYPE, WorkerType.PROCESSABLE.name());
+            config.setProperty("SIGNATURETYPE", "ENVELOPING");
+            signWithXMLSigner(tokenRSA, config, xmlWithDoctype, false, null);
+            fail("Should have thrown IllegalRequestException as the document contained a DTD");
+        } catch (IllegalRequestException expected) { // NOPMD
+            // OK
+        }
+    }
+
+    /**
+     * Tests that an unknown signature type and a reference URI for a
+     * non-detached signature gives configuration errors.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInit_incorrectSignatureType() throws Exception {
+        LOG.info("testInit_incorrectSignatureType");
+        final WorkerConfig config = new WorkerConfig();
+        config.setProperty(WorkerConfig.TYPE, WorkerType.PROCESSABLE.name());
+        config.setProperty("SIGNATURETYPE", "_incorrect_");
+        XMLSigner instance = new MockedXMLSigner(tokenRSA);
+        instance.init(4711, config, null, null);
+        assertTrue("error: " + instance.getFatalErrors(null),
+                instance.getFatalErrors(null).toString().contains("SIGNATURETYPE"));
+
+        config.setProperty("SIGNATURETYPE", "ENVELOPED");
+        config.setProperty("DETACHEDREFERENCEURI", "document.xml");
+        instance = new MockedXMLSigner(tokenRSA);
+        instance.init(4711, config, null, null);
+        assertTrue("error: " + instance.getFatalErrors(null),
+                instance.getFatalErrors(null).toString().contains("DETACHEDREFERENCEURI"));
+    }
 }
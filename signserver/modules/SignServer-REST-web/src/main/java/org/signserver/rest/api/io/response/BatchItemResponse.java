@@ -0,0 +1,95 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.rest.api.io.response;
+
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+
+/**
+ * Result of one request in a batch, written as one line of the response
+ * when the request has been processed.
+ *
+ * @version $Id$
+ */
+@Schema(
+    name = "BatchItemResponse",
+    description = "POJO that represents the result of one request in a batch."
+)
+public class BatchItemResponse {
+
+    @Schema(
+        description = "Index of the request in the batch, starting at 0"
+    )
+    private int index;
+
+    @Schema(
+        description = "HTTP status code the request would have given if sent alone"
+    )
+    private int status;
+
+    @Schema(
+        description = "The response if the request succeeded"
+    )
+    private ProcessResponse response;
+
+    @Schema(
+        description = "Error message if the request failed"
+    )
+    private String error;
+
+    public BatchItemResponse() {
+    }
+
+    public BatchItemResponse(int index, ProcessResponse response) {
+        this.index = index;
+        this.status = 200;
+        this.response = response;
+    }
+
+    public BatchItemResponse(int index, int status, String error) {
+        this.index = index;
+        this.status = status;
+        this.error = error;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public ProcessResponse getResponse() {
+        return response;
+    }
+
+    public void setResponse(ProcessResponse response) {
+        this.response = response;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -27,6 +27,7 @@ import org.signserver.rest.api.entities.Metadata;
 import org.signserver.rest.api.exception.InternalServerException;
 import org.signserver.rest.api.exception.RequestFailedException;
 import org.signserver.rest.api.io.request.ProcessRequest;
+import org.signserver.rest.api.io.response.BatchItemResponse;
 import org.signserver.rest.api.io.response.ProcessResponse;
 import org.signserver.server.CredentialUtils;
 import org.signserver.server.data.impl.*;
@@ -34,16 +35,30 @@ import org.signserver.server.log.AdminInfo;
 import org.signserver.server.log.IWorkerLogger;
 import org.signserver.server.log.LogMap;
 import org.signserver.server.log.Loggable;
+import org.signserver.web.common.BatchExecutor;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.json.bind.JsonbException;
+import javax.json.stream.JsonParser;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.*;
@@ -64,6 +79,7 @@ import org.signserver.rest.api.entities.DataEncoding;
  * REST API implementation containing operations:
  * GET /workers : Returns a list of available workers
  * POST /workers/{idOrName}/process : Gets data bytes or a file, worker, MetaData and returns signature.
+ * POST /workers/{idOrName}/process/batch : Gets many requests for a worker and streams back the results.
  *
  * @author Nima Saboonchi
  * @version $Id$
@@ -73,6 +89,10 @@ import org.signserver.rest.api.entities.DataEncoding;
 public class WorkerResource {
     private static final Logger LOG = Logger.getLogger(WorkerResource.class);
 
+    /** Media type of newline delimited JSON. */
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+    private static final MediaType APPLICATION_NDJSON_TYPE = MediaType.valueOf(APPLICATION_NDJSON);
+
     @EJB
     private ProcessSessionLocal processSession;
 
@@ -82,11 +102,19 @@ public class WorkerResource {
     @EJB
     private WorkerSessionLocal workerSession;
 
+    /** Executor for processing the requests of a batch in parallel. */
+    @Resource
+    private ManagedExecutorService executorService;
+
     private DataFactory dataFactory;
+    private BatchExecutor batchExecutor;
+    private Jsonb jsonb;
 
     @PostConstruct
     protected void init() {
         dataFactory = DataUtils.createDataFactory();
+        batchExecutor = new BatchExecutor(executorService);
+        jsonb = JsonbBuilder.create();
     }
 
     /**
@@ -156,29 +184,7 @@ public class WorkerResource {
             @RequestBody(
                 description = "The request"
             ) final ProcessRequest request) throws RequestFailedException, InternalServerException, CryptoTokenOfflineException, IllegalRequestException {
-        final List<Metadata> requestMetadata = new ArrayList<>();
-        if (request.getMetaData() != null) {
-            request.getMetaData().forEach((name, value) -> requestMetadata.add(new Metadata(name, value)));
-        }
-        if (request.getData() == null) {
-            throw new IllegalRequestException("Missing data in request");
-        }
-        byte[] dataBytes = request.getData().getBytes(StandardCharsets.UTF_8);
-
-        DataEncoding encoding = request.getEncoding();
-        if (encoding == DataEncoding.BASE64) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Decoding base64 data");
-            }
-            if (dataBytes.length > 0) {
-                try {
-                    dataBytes = Base64.decode(dataBytes);
-                } catch (DecoderException ex) {
-                    throw new InternalServerException("Incorrect base64 data");
-                }
-            }
-        }
-        return process(idOrName, httpServletRequest, requestMetadata, dataBytes);
+        return process(idOrName, httpServletRequest, toMetadata(request), decodeData(request));
     }
 
     /**
@@ -195,7 +201,171 @@ public class WorkerResource {
     public Response process(String idOrName, HttpServletRequest httpServletRequest, List<Metadata> requestMetadata,
                             byte[] data) throws RequestFailedException, InternalServerException, CryptoTokenOfflineException, IllegalRequestException {
         final UploadConfig uploadConfig = UploadConfig.create(globalSession);
+        final RequestContext requestContext = handleRequestContext(requestMetadata, httpServletRequest);
+        final WorkerIdentifier workerIdentifier = checkPriority(WorkerIdentifier.createFromIdOrName(idOrName), httpServletRequest);
+
+        try {
+            return Response.ok(processData(workerIdentifier, requestContext, uploadConfig, data))
+                    .header("Content-Type", MediaType.APPLICATION_JSON).build();
+        } catch (AuthorizationRequiredException | AccessDeniedException e) {
+            LOG.info("Request failed: " + e.getMessage());
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Request failed: " + e.getMessage(), e);
+            }
+            throw new RequestFailedException(e.getMessage());
+        }
+    }
 
+    /**
+     * REST operation for processing a batch of requests to the same worker.
+     *
+     * The requests are given as a JSON array or as newline delimited JSON,
+     * each in the same form as for the process operation. They are processed
+     * in parallel and the result of each request is written as one line of
+     * newline delimited JSON as soon as it is available, so not in the order
+     * of the requests. A failing request does not stop the others but gives a
+     * line with the status code and error message the request would have
+     * given if sent alone.
+     *
+     * The first request is processed before the response is started, so that
+     * a client not authorized gets a single error and no other requests are
+     * processed.
+     *
+     * @param idOrName           Name or ID of worker to send the requests to
+     * @param httpServletRequest Http Servlet request to extract request context from it
+     * @param body               The requests
+     * @return The streamed results
+     * @throws RequestFailedException  In case the client was not authorized.
+     * @throws InternalServerException In case the request could not be processed by some error at the server side.
+     * @throws IllegalRequestException In case of malformed or too many requests.
+     */
+    @POST
+    @Path("{idOrName}/process/batch")
+    @Consumes({MediaType.APPLICATION_JSON, APPLICATION_NDJSON})
+    @Produces({APPLICATION_NDJSON})
+    @APIResponse(
+        responseCode = "400",
+        description = "Malformed or too many requests",
+        content = @Content(
+            mediaType = MediaType.APPLICATION_JSON,
+            schema = @Schema(implementation = ErrorMessage.class)
+        )
+    )
+    @APIResponse(
+        responseCode = "401",
+        description = "Client not authorized",
+        content = @Content(
+            mediaType = MediaType.APPLICATION_JSON,
+            schema = @Schema(implementation = ErrorMessage.class)
+        )
+    )
+    @APIResponse(
+        responseCode = "404",
+        description = "No such worker",
+        content = @Content(
+            mediaType = MediaType.APPLICATION_JSON,
+            schema = @Schema(implementation = ErrorMessage.class)
+        )
+    )
+    @APIResponse(
+        responseCode = "200",
+        description = "One result per line, in the order the requests completed",
+        content = @Content(
+            mediaType = APPLICATION_NDJSON,
+            schema = @Schema(implementation = BatchItemResponse.class)
+        )
+    )
+    @Operation(
+        summary = "Submit a batch of data for processing",
+        description = "Submit many data/documents/files for processing by the "
+                + "same worker and get back the result of each as soon as it "
+                + "is available."
+    )
+    public Response processBatch(
+            @Parameter(
+                description = "Worker Id or name of the worker",
+                example = "ExampleSigner1",
+                schema = @Schema(anyOf = {String.class, Integer.class})
+            )
+            @PathParam("idOrName") final String idOrName,
+            @Context final HttpServletRequest httpServletRequest,
+            @RequestBody(
+                description = "The requests"
+            ) final InputStream body) throws RequestFailedException, InternalServerException, IllegalRequestException {
+        WorkerIdentifier workerIdentifier = checkPriority(WorkerIdentifier.createFromIdOrName(idOrName), httpServletRequest);
+        if (!workerIdentifier.hasId()) {
+            try {
+                workerIdentifier = new WorkerIdentifier(workerSession.getWorkerId(workerIdentifier.getName()), workerIdentifier.getName());
+            } catch (InvalidWorkerIdException ex) {
+                throw new NoSuchWorkerException(idOrName);
+            }
+        }
+        final WorkerIdentifier wi = workerIdentifier;
+        final WorkerConfig config = workerSession.getCurrentWorkerConfig(wi.getId());
+        final int maxSize = getIntProperty(wi, config, BatchExecutor.BATCH_MAX_SIZE, BatchExecutor.DEFAULT_BATCH_MAX_SIZE);
+        final int parallelism = getIntProperty(wi, config, BatchExecutor.BATCH_PARALLELISM, BatchExecutor.DEFAULT_BATCH_PARALLELISM);
+
+        final List<ProcessRequest> requests = readBatch(body, httpServletRequest.getContentType(), maxSize);
+        final UploadConfig uploadConfig = UploadConfig.create(globalSession);
+
+        // Each request gets its own context as they can be processed by
+        // other threads at the same time
+        final List<RequestContext> requestContexts = new ArrayList<>(requests.size());
+        for (final ProcessRequest request : requests) {
+            requestContexts.add(handleRequestContext(toMetadata(request), httpServletRequest));
+        }
+        final BatchExecutor.Task<ProcessResponse> task = (int index) -> processData(wi,
+                requestContexts.get(index), uploadConfig, decodeData(requests.get(index)));
+
+        // Fail the whole batch directly if the client is not authorized
+        BatchItemResponse first = null;
+        if (!requests.isEmpty()) {
+            try {
+                first = new BatchItemResponse(0, task.process(0));
+            } catch (AuthorizationRequiredException | AccessDeniedException e) {
+                LOG.info("Batch request failed: " + e.getMessage());
+                throw new RequestFailedException(e.getMessage());
+            } catch (Exception e) {
+                first = toBatchItemResponse(0, e);
+            }
+        }
+        final BatchItemResponse firstResult = first;
+
+        final StreamingOutput output = (OutputStream out) -> {
+            if (firstResult == null) {
+                return;
+            }
+            writeLine(out, firstResult);
+            try {
+                batchExecutor.executeEach(wi.getId(), parallelism, requests.size() - 1,
+                        (int index) -> task.process(index + 1),
+                        (int index, ProcessResponse result, Exception failure) -> writeLine(out, failure == null
+                                ? new BatchItemResponse(index + 1, result)
+                                : toBatchItemResponse(index + 1, failure)));
+            } catch (IOException | RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new IOException("Batch processing failed: " + ex.getMessage(), ex);
+            }
+        };
+        return Response.ok(output, APPLICATION_NDJSON).build();
+    }
+
+    /**
+     * Processes one request.
+     *
+     * @param workerIdentifier   Worker to send the request to
+     * @param requestContext     Context of the request
+     * @param uploadConfig       Upload configuration
+     * @param data               Actual data to be signed
+     * @return The response data
+     * @throws AuthorizationRequiredException In case the client was not authorized.
+     * @throws AccessDeniedException In case the client was not authorized.
+     * @throws InternalServerException In case the request could not be processed by some error at the server side.
+     */
+    private ProcessResponse processData(final WorkerIdentifier workerIdentifier, final RequestContext requestContext,
+                                        final UploadConfig uploadConfig, final byte[] data)
+            throws AuthorizationRequiredException, AccessDeniedException, InternalServerException, CryptoTokenOfflineException, IllegalRequestException {
         final int requestId = ThreadLocalRandom.current().nextInt();
 
         CloseableReadableData requestData;
@@ -209,33 +379,9 @@ public class WorkerResource {
             throw new RuntimeException(e);
         }
 
-        final RequestContext requestContext = handleRequestContext(requestMetadata, httpServletRequest);
-        WorkerIdentifier workerIdentifier = WorkerIdentifier.createFromIdOrName(idOrName);
-
         final Request req = new SignatureRequest(requestId, requestData, responseData);
 
-
         try {
-            // Check if this came in as a high priority request
-            Set<Integer> highPriorityWorkers = (Set<Integer>) httpServletRequest.getAttribute(RequestContext.QOS_PRIORITY_WORKER_ID_LIST);
-            if (highPriorityWorkers == null) {
-                LOG.debug("Not highest priority request");
-            } else {
-                if (!workerIdentifier.hasId()) {
-                    try {
-                        workerIdentifier = new WorkerIdentifier(workerSession.getWorkerId(workerIdentifier.getName()), workerIdentifier.getName());
-                    } catch (InvalidWorkerIdException ex) {
-                        LOG.debug("No such worker: " + ex.getMessage());
-                    }
-                }
-
-                if (!highPriorityWorkers.contains(workerIdentifier.getId())) {
-                    LOG.error("Worker with id " + workerIdentifier.getId() + " not one of the highest priority workers: " + highPriorityWorkers);
-                    throw new RequestFailedException("Requests to the high priority endpoint not allowed for this worker");
-                }
-            }
-
-
             AdminInfo adminInfo = new AdminInfo("REST user", null, null);
 
             final org.signserver.common.data.Response resp = processSession.process(adminInfo, workerIdentifier, req, requestContext);
@@ -247,22 +393,17 @@ public class WorkerResource {
                     LOG.error("Response ID " + signatureResponse.getRequestID() + " not matching request ID " + requestId);
                     throw new InternalServerException("Error in process operation, response id didn't match request id");
                 }
-                return Response.ok(new ProcessResponse(signatureResponse.getArchiveId(),
+                return new ProcessResponse(signatureResponse.getArchiveId(),
                                 Base64.toBase64String(signatureResponse.getResponseData().toReadableData().getAsByteArray()),
                                 String.valueOf(signatureResponse.getRequestID()),
                                 signatureResponse.getSignerCertificate() == null ? null : Base64.toBase64String(signatureResponse.getSignerCertificate().getEncoded()),
-                                getResponseMetadata(requestContext)))
-                        .header("Content-Type", MediaType.APPLICATION_JSON).build();
+                                getResponseMetadata(requestContext));
             } else {
                 LOG.error("Unexpected return type: " + resp.getClass().getName());
                 throw new InternalServerException("Unexpected return type");
             }
         } catch (AuthorizationRequiredException | AccessDeniedException e) {
-            LOG.info("Request failed: " + e.getMessage());
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Request failed: " + e.getMessage(), e);
-            }
-            throw new RequestFailedException(e.getMessage());
+            throw e;
         } catch (IOException e) {
             LOG.debug("Internal IO error", e);
             throw new InternalServerException("Internal IO error: " + e.getMessage());
@@ -277,6 +418,166 @@ public class WorkerResource {
         }
     }
 
+    /**
+     * Checks that the worker may be used if this came in as a high priority
+     * request.
+     *
+     * @param workerIdentifier   Worker to send the request to
+     * @param httpServletRequest Http Servlet request
+     * @return The worker identifier, with the ID resolved if needed for the check
+     * @throws RequestFailedException In case the worker is not one of the high priority workers
+     */
+    private WorkerIdentifier checkPriority(WorkerIdentifier workerIdentifier, final HttpServletRequest httpServletRequest) throws RequestFailedException {
+        Set<Integer> highPriorityWorkers = (Set<Integer>) httpServletRequest.getAttribute(RequestContext.QOS_PRIORITY_WORKER_ID_LIST);
+        if (highPriorityWorkers == null) {
+            LOG.debug("Not highest priority request");
+        } else {
+            if (!workerIdentifier.hasId()) {
+                try {
+                    workerIdentifier = new WorkerIdentifier(workerSession.getWorkerId(workerIdentifier.getName()), workerIdentifier.getName());
+                } catch (InvalidWorkerIdException ex) {
+                    LOG.debug("No such worker: " + ex.getMessage());
+                }
+            }
+
+            if (!highPriorityWorkers.contains(workerIdentifier.getId())) {
+                LOG.error("Worker with id " + workerIdentifier.getId() + " not one of the highest priority workers: " + highPriorityWorkers);
+                throw new RequestFailedException("Requests to the high priority endpoint not allowed for this worker");
+            }
+        }
+        return workerIdentifier;
+    }
+
+    private static List<Metadata> toMetadata(final ProcessRequest request) {
+        final List<Metadata> requestMetadata = new ArrayList<>();
+        if (request.getMetaData() != null) {
+            request.getMetaData().forEach((name, value) -> requestMetadata.add(new Metadata(name, value)));
+        }
+        return requestMetadata;
+    }
+
+    private static byte[] decodeData(final ProcessRequest request) throws IllegalRequestException, InternalServerException {
+        if (request.getData() == null) {
+            throw new IllegalRequestException("Missing data in request");
+        }
+        byte[] dataBytes = request.getData().getBytes(StandardCharsets.UTF_8);
+
+        DataEncoding encoding = request.getEncoding();
+        if (encoding == DataEncoding.BASE64) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Decoding base64 data");
+            }
+            if (dataBytes.length > 0) {
+                try {
+                    dataBytes = Base64.decode(dataBytes);
+                } catch (DecoderException ex) {
+                    throw new InternalServerException("Incorrect base64 data");
+                }
+            }
+        }
+        return dataBytes;
+    }
+
+    /**
+     * Reads the requests of a batch, either as a JSON array or as one JSON
+     * object per line.
+     *
+     * @param body to read from
+     * @param contentType of the body
+     * @param maxSize maximum number of requests or -1 for no limit
+     * @return the requests
+     * @throws IllegalRequestException in case of malformed or too many requests
+     * @throws InternalServerException in case the body could not be read
+     */
+    private List<ProcessRequest> readBatch(final InputStream body, final String contentType, final int maxSize)
+            throws IllegalRequestException, InternalServerException {
+        final List<ProcessRequest> requests = new ArrayList<>();
+        try {
+            if (contentType != null && MediaType.valueOf(contentType).isCompatible(APPLICATION_NDJSON_TYPE)) {
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty()) {
+                        checkBatchSize(requests.size() + 1, maxSize);
+                        requests.add(jsonb.fromJson(line, ProcessRequest.class));
+                    }
+                }
+            } else {
+                try (JsonParser parser = Json.createParser(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+                    if (!parser.hasNext() || parser.next() != JsonParser.Event.START_ARRAY) {
+                        throw new IllegalRequestException("Expected a JSON array of requests");
+                    }
+                    JsonParser.Event event;
+                    while ((event = parser.next()) != JsonParser.Event.END_ARRAY) {
+                        if (event != JsonParser.Event.START_OBJECT) {
+                            throw new IllegalRequestException("Expected a JSON object for request " + requests.size());
+                        }
+                        checkBatchSize(requests.size() + 1, maxSize);
+                        requests.add(jsonb.fromJson(parser.getObject().toString(), ProcessRequest.class));
+                    }
+                }
+            }
+        } catch (JsonException | JsonbException | NoSuchElementException | IllegalArgumentException e) {
+            throw new IllegalRequestException("Malformed request " + requests.size() + " in batch: " + e.getMessage());
+        } catch (IOException e) {
+            LOG.debug("Internal IO error", e);
+            throw new InternalServerException("Internal IO error: " + e.getMessage());
+        }
+        return requests;
+    }
+
+    private static void checkBatchSize(final int size, final int maxSize) throws IllegalRequestException {
+        if (maxSize >= 0 && size > maxSize) {
+            throw new IllegalRequestException("Too many requests in batch, maximum is " + maxSize);
+        }
+    }
+
+    private static BatchItemResponse toBatchItemResponse(final int index, final Exception e) {
+        final int status;
+        final String error;
+        if (e instanceof AuthorizationRequiredException || e instanceof AccessDeniedException
+                || e instanceof RequestFailedException) {
+            status = Response.Status.UNAUTHORIZED.getStatusCode();
+            error = e.getMessage();
+        } else if (e instanceof NoSuchWorkerException) {
+            status = Response.Status.NOT_FOUND.getStatusCode();
+            error = e.getMessage();
+        } else if (e instanceof IllegalRequestException) {
+            status = Response.Status.BAD_REQUEST.getStatusCode();
+            error = e.getMessage();
+        } else if (e instanceof CryptoTokenOfflineException) {
+            status = Response.Status.SERVICE_UNAVAILABLE.getStatusCode();
+            error = e.getMessage();
+        } else if (e instanceof InternalServerException) {
+            status = Response.Status.INTERNAL_SERVER_ERROR.getStatusCode();
+            error = e.getMessage();
+        } else {
+            LOG.error("Unhandled REST exception in batch: " + e.getMessage());
+            status = Response.Status.INTERNAL_SERVER_ERROR.getStatusCode();
+            error = "The server were unable to process the request. See server-side logs for more details.";
+        }
+        return new BatchItemResponse(index, status, error);
+    }
+
+    private void writeLine(final OutputStream out, final BatchItemResponse item) throws IOException {
+        out.write(jsonb.toJson(item).getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+        out.flush();
+    }
+
+    private int getIntProperty(final WorkerIdentifier wi, final WorkerConfig config, final String property, final int defaultValue) {
+        final String value = config.getProperty(property);
+        if (value != null && !value.trim().isEmpty()) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOG.error("Error: Worker " + wi + " badly configured, property "
+                        + property + " should only contain integers");
+            }
+        }
+        return defaultValue;
+    }
+
     private X509Certificate getClientCertificate(HttpServletRequest httpServletRequest) {
         X509Certificate[] certificates = (X509Certificate[]) httpServletRequest.getAttribute("javax.servlet.request.X509Certificate");
 
@@ -298,26 +599,12 @@ public class WorkerResource {
 
         final String xForwardedFor = httpServletRequest.getHeader(RequestContext.X_FORWARDED_FOR);
 
-        // Add HTTP specific log entries
-        logMap.put(IWorkerLogger.LOG_REQUEST_FULLURL, new Loggable() {
-            @Override
-            public String toString() {
-                return httpServletRequest.getRequestURL().append("?")
-                        .append(httpServletRequest.getQueryString()).toString();
-            }
-        });
-        logMap.put(IWorkerLogger.LOG_REQUEST_LENGTH, new Loggable() {
-            @Override
-            public String toString() {
-                return httpServletRequest.getHeader("Content-Length");
-            }
-        });
-        logMap.put(IWorkerLogger.LOG_XFORWARDEDFOR, new Loggable() {
-            @Override
-            public String toString() {
-                return httpServletRequest.getHeader("X-Forwarded-For");
-            }
-        });
+        // Add HTTP specific log entries, read here as the requests in a batch
+        // can be processed by other threads
+        logMap.put(IWorkerLogger.LOG_REQUEST_FULLURL, httpServletRequest.getRequestURL().append("?")
+                .append(httpServletRequest.getQueryString()).toString());
+        logMap.put(IWorkerLogger.LOG_REQUEST_LENGTH, httpServletRequest.getHeader("Content-Length"));
+        logMap.put(IWorkerLogger.LOG_XFORWARDEDFOR, httpServletRequest.getHeader("X-Forwarded-For"));
 
         if (xForwardedFor != null) {
             requestContext.put(RequestContext.X_FORWARDED_FOR, xForwardedFor);
@@ -0,0 +1,251 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import org.apache.log4j.Logger;
+import org.signserver.common.RequestContext;
+import org.signserver.common.data.Request;
+import org.signserver.common.data.Response;
+import org.signserver.server.entities.IAccountBalanceDataService;
+
+/**
+ * Accounter charging the account of the client in the AccountBalance table
+ * (or the file based database when running without database).
+ * <p>
+ *    The accounter has the following worker properties:
+ * </p>
+ * <ul>
+ *    <li>
+ *        <b>ACCOUNTER_ACCOUNTS</b> = Mapping from client to account
+ *           (Required).<br/>
+ *           The client is identified either by user name or by certificate
+ *           serial number (in hex) and issuer DN.<br/>
+ *           Ex: user1:account1; 1234abcd,CN=Client CA:account2
+ *    </li>
+ *    <li>
+ *        <b>ACCOUNTER_PRICE</b> = Amount to charge for each request
+ *           (Optional, default: 1)
+ *    </li>
+ *    <li>
+ *        <b>ACCOUNTER_RESERVATION</b> = Amount to reserve from the account at
+ *           a time and then charge requests from in memory, or 0 to charge
+ *           the account in the database for every request
+ *           (Optional, default: 0)
+ *    </li>
+ * </ul>
+ * <p>
+ *    The balance is decreased in one conditional update so concurrent
+ *    requests can never overdraw the account. With a reservation, fewer
+ *    updates are done but the reserved amount is already taken from the
+ *    account and any part of it not used is lost when the worker is reloaded
+ *    or the server is restarted. A reservation is made in the same
+ *    transaction as the request and the reserved amount can only be used by
+ *    other requests once that transaction is committed. If the transaction
+ *    is rolled back after the purchase, the reservation is not kept and
+ *    any amount the request used from an earlier reservation is given back.
+ * </p>
+ * <p>
+ *    Balances are topped up and queried using the administration interface.
+ * </p>
+ *
+ * @version $Id$
+ */
+public class AccountBalanceAccounter implements IAccounter {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(AccountBalanceAccounter.class);
+
+    // Worker properties
+    public static final String ACCOUNTER_ACCOUNTS = "ACCOUNTER_ACCOUNTS";
+    public static final String ACCOUNTER_PRICE = "ACCOUNTER_PRICE";
+    public static final String ACCOUNTER_RESERVATION = "ACCOUNTER_RESERVATION";
+
+    private static final long DEFAULT_PRICE = 1;
+    private static final long DEFAULT_RESERVATION = 0;
+
+    private Map<String, String> accounts = Collections.emptyMap();
+    private long price = DEFAULT_PRICE;
+    private long reservation = DEFAULT_RESERVATION;
+    private String configError;
+
+    /** Amount reserved but not yet used, per account. */
+    private final Map<String, Reservation> reservations = new ConcurrentHashMap<>();
+
+    @Override
+    public void init(final Properties props) {
+        final String mapping = props.getProperty(ACCOUNTER_ACCOUNTS);
+        if (mapping == null || mapping.trim().isEmpty()) {
+            configError = "Missing required property " + ACCOUNTER_ACCOUNTS;
+        } else {
+            accounts = parseAccountMapping(mapping);
+        }
+        try {
+            price = Long.parseLong(props.getProperty(ACCOUNTER_PRICE, String.valueOf(DEFAULT_PRICE)).trim());
+            reservation = Long.parseLong(props.getProperty(ACCOUNTER_RESERVATION, String.valueOf(DEFAULT_RESERVATION)).trim());
+            if (price < 0 || reservation < 0) {
+                configError = "Incorrect value for " + ACCOUNTER_PRICE + " or " + ACCOUNTER_RESERVATION + ": Must not be negative";
+            }
+        } catch (NumberFormatException ex) {
+            configError = "Incorrect value for " + ACCOUNTER_PRICE + " or " + ACCOUNTER_RESERVATION + ": " + ex.getMessage();
+        }
+        if (configError != null) {
+            LOG.error(configError);
+        }
+    }
+
+    @Override
+    public boolean purchase(final IClientCredential credential,
+            final Request request, final Response response,
+            final RequestContext context) throws AccounterException {
+        if (configError != null) {
+            throw new AccounterException(configError);
+        }
+
+        final String account = getAccount(credential);
+        if (account == null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("No account for client");
+            }
+            return false;
+        }
+
+        final IAccountBalanceDataService balances = context.getServices().get(IAccountBalanceDataService.class);
+        if (balances == null) {
+            throw new AccounterException("Account balance service not available");
+        }
+
+        final boolean result;
+        if (reservation <= price) {
+            result = balances.chargeIfSufficient(account, price);
+        } else {
+            result = purchaseFromReservation(balances, account,
+                    context.getServices().get(TransactionSynchronizationRegistry.class));
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Purchase of " + price + " from account " + account + ": " + result);
+        }
+        return result;
+    }
+
+    private boolean purchaseFromReservation(final IAccountBalanceDataService balances,
+            final String account, final TransactionSynchronizationRegistry registry) {
+        final Reservation reserved = reservations.computeIfAbsent(account, k -> new Reservation());
+
+        // Take what is reserved so concurrent requests can not use it
+        final long taken;
+        synchronized (reserved) {
+            if (reserved.remaining >= price) {
+                reserved.remaining -= price;
+                afterCompletion(registry, reserved, 0, price);
+                return true;
+            }
+            taken = reserved.remaining;
+            reserved.remaining = 0;
+        }
+
+        if (balances.chargeIfSufficient(account, reservation)) {
+            afterCompletion(registry, reserved, reservation + taken - price, taken);
+            return true;
+        } else if (balances.chargeIfSufficient(account, price - taken)) {
+            // Not enough for a new reservation but for this request
+            afterCompletion(registry, reserved, 0, taken);
+            return true;
+        } else {
+            reserved.add(taken);
+            return false;
+        }
+    }
+
+    /**
+     * Gives the amount to the reservation when the transaction has completed.
+     * Without a transaction the amount is given directly.
+     *
+     * @param registry to register with or null if not available
+     * @param reserved reservation of the account
+     * @param committed amount to give if the transaction is committed
+     * @param rolledBack amount to give if the transaction is rolled back
+     */
+    private static void afterCompletion(final TransactionSynchronizationRegistry registry,
+            final Reservation reserved, final long committed, final long rolledBack) {
+        if (registry == null || registry.getTransactionKey() == null) {
+            reserved.add(committed);
+        } else {
+            registry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(final int status) {
+                    if (status == Status.STATUS_COMMITTED) {
+                        reserved.add(committed);
+                    } else {
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Transaction not committed, giving back " + rolledBack);
+                        }
+                        reserved.add(rolledBack);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @param credential of the client
+     * @return the account of the client or null if it has none
+     */
+    String getAccount(final IClientCredential credential) {
+        final String key;
+        if (credential instanceof CertificateClientCredential) {
+            final CertificateClientCredential certCred = (CertificateClientCredential) credential;
+            key = certCred.getSerialNumber() + "," + certCred.getIssuerDN();
+        } else if (credential instanceof UsernamePasswordClientCredential) {
+            key = ((UsernamePasswordClientCredential) credential).getUsername();
+        } else {
+            key = null;
+        }
+        return key == null ? null : accounts.get(key);
+    }
+
+    private static Map<String, String> parseAccountMapping(final String mapping) {
+        final Map<String, String> result = new HashMap<>();
+        for (String entry : mapping.split(";")) {
+            // The issuer DN could contain ':' but not the account
+            final int separator = entry.lastIndexOf(':');
+            if (separator > 0) {
+                result.put(entry.substring(0, separator).trim(), entry.substring(separator + 1).trim());
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Account mapping: " + result);
+        }
+        return result;
+    }
+
+    /** Amount reserved for an account. */
+    private static class Reservation {
+        private long remaining;
+
+        private synchronized void add(final long amount) {
+            remaining += amount;
+        }
+    }
+}
@@ -429,6 +429,27 @@ public abstract class BaseProcessable extends BaseWorker implements IProcessable
         return cryptoToken;
     }
 
+    /**
+     * Takes over the crypto token, and any cached private key, from the
+     * instance this one replaces. Used when the worker is reloaded after
+     * configuration changes not affecting the crypto token so that an
+     * activated token does not have to be created and activated again.
+     *
+     * @param previous instance being replaced, initialized with the same
+     * crypto token configuration
+     */
+    public void takeOverCryptoToken(final BaseProcessable previous) {
+        if (previous.cryptoToken != null) {
+            cryptoToken = previous.cryptoToken;
+            cryptoTokenFatalErrors.addAll(previous.cryptoTokenFatalErrors);
+            if (cachePrivateKey) {
+                synchronized (previous.workerCache) {
+                    workerCache.putAll(previous.workerCache);
+                }
+            }
+        }
+    }
+
     @Override
     public int getCryptoTokenStatus(IServices services) {
         int result = WorkerStatus.STATUS_OFFLINE;
@@ -15,10 +15,15 @@ package org.signserver.server;
 import java.math.BigInteger;
 import java.security.cert.X509Certificate;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 import javax.persistence.EntityManager;
+import javax.security.auth.x500.X500Principal;
 import org.apache.log4j.Logger;
 import org.cesecore.certificates.util.DNFieldExtractor;
 import org.cesecore.util.CertTools;
@@ -45,10 +50,19 @@ public class ClientCertAuthorizer implements IAuthorizer {
     private static final Logger LOG = Logger.getLogger(ClientCertAuthorizer.class);
 
     private static final Pattern SERIAL_PATTERN = Pattern.compile("\\bSERIALNUMBER=", Pattern.CASE_INSENSITIVE);
+
+    /** Maximum number of authorization decisions to remember. */
+    private static final int DECISION_CACHE_SIZE = 1000;
     
     private int workerId;
 
     private Set<AuthorizedClientEntry> authorizedClients;
+
+    /** Match types used in the rules by issuer DN. */
+    private Map<String, Set<MatchSubjectWithType>> matchTypesByIssuer = Collections.emptyMap();
+
+    /** Last authorization decisions, replaced when the worker is reloaded. */
+    private Map<DecisionKey, Boolean> decisionCache = createDecisionCache();
     
     /**
      * Initialize a ClientCertAuthorizer.
@@ -67,6 +81,31 @@ public class ClientCertAuthorizer implements IAuthorizer {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Configured clients: " + authorizedClients);
         }
+
+        // Index the types of rules used for each issuer
+        final Map<String, Set<MatchSubjectWithType>> index = new HashMap<>();
+        for (final AuthorizedClientEntry client : authorizedClients) {
+            final MatchSubjectWithType matchSubjectWithType = client.getMatchSubjectWithType();
+            if (matchSubjectWithType != MatchSubjectWithType.CERTIFICATE_SERIALNO
+                    && getDNFieldParameter(matchSubjectWithType) == -1) {
+                // Do not match on supported match types
+                LOG.warn("Unsupported " + MatchSubjectWithType.class.getSimpleName() + " : " + matchSubjectWithType);
+                continue;
+            }
+            index.computeIfAbsent(client.getMatchIssuerWithValue(), k -> EnumSet.noneOf(MatchSubjectWithType.class))
+                    .add(matchSubjectWithType);
+        }
+        this.matchTypesByIssuer = index;
+        this.decisionCache = createDecisionCache();
+    }
+
+    private static Map<DecisionKey, Boolean> createDecisionCache() {
+        return new LinkedHashMap<DecisionKey, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<DecisionKey, Boolean> eldest) {
+                return size() > DECISION_CACHE_SIZE;
+            }
+        };
     }
     
     @Override
@@ -131,98 +170,145 @@ public class ClientCertAuthorizer implements IAuthorizer {
     }
 
     private boolean authorizedToRequestSignature(final X509Certificate clientCert) {
-        boolean ruleMatched = false;
-        String matchSubjectwithValue;
-        AuthorizedClientEntry client;
+        final DecisionKey key = new DecisionKey(clientCert.getIssuerX500Principal(), clientCert.getSerialNumber());
+        Boolean result;
+        synchronized (decisionCache) {
+            result = decisionCache.get(key);
+        }
+        if (result == null) {
+            result = matchesAnyRule(clientCert);
+            synchronized (decisionCache) {
+                decisionCache.put(key, result);
+            }
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug("Using cached authorization decision: " + result);
+        }
+        return result;
+    }
 
+    private boolean matchesAnyRule(final X509Certificate clientCert) {
         // Only one MatchIssuerType is supported now
-        MatchIssuerWithType matchIssuerWithType = MatchIssuerWithType.ISSUER_DN_BCSTYLE;
+        final MatchIssuerWithType matchIssuerWithType = MatchIssuerWithType.ISSUER_DN_BCSTYLE;
         final String clientIssuerDN = CertTools.stringToBCDNString(clientCert.getIssuerX500Principal().getName());
-        
-        for (final AuthorizedClientEntry authClient : authorizedClients) {
-            MatchSubjectWithType matchSubjectWithType = authClient.getMatchSubjectWithType();
 
+        // Only rules for the issuer of the client certificate can match
+        final Set<MatchSubjectWithType> matchTypes = matchTypesByIssuer.get(clientIssuerDN);
+        if (matchTypes == null) {
+            return false;
+        }
+
+        // Subject fields are only extracted if needed and then only once
+        DNFieldExtractor dnExtractor = null;
+        DNFieldExtractor anExtractor = null;
+
+        for (final MatchSubjectWithType matchSubjectWithType : matchTypes) {
             if (matchSubjectWithType == MatchSubjectWithType.CERTIFICATE_SERIALNO) {
                 final BigInteger sn = clientCert.getSerialNumber();
-                matchSubjectwithValue = sn.toString(16);
-                client = new AuthorizedClientEntry(matchSubjectwithValue, clientIssuerDN, MatchSubjectWithType.CERTIFICATE_SERIALNO, matchIssuerWithType);
+                final AuthorizedClientEntry client = new AuthorizedClientEntry(sn.toString(16), clientIssuerDN, MatchSubjectWithType.CERTIFICATE_SERIALNO, matchIssuerWithType);
                 
                 if (authorizedClients.contains(client)) {
-                    ruleMatched = true;
-                    break;
+                    return true;
                 }
             } else {
-                // See X509CertificateAuthenticationToken in EJBCA/CESeCore
-                String certstring = CertTools.getSubjectDN(clientCert);
-                certstring = SERIAL_PATTERN.matcher(certstring).replaceAll("SN=");
-                final String altNameString = CertTools.getSubjectAlternativeName(clientCert);
-                final DNFieldExtractor dnExtractor = new DNFieldExtractor(certstring, DNFieldExtractor.TYPE_SUBJECTDN);
-                final DNFieldExtractor anExtractor = new DNFieldExtractor(altNameString, DNFieldExtractor.TYPE_SUBJECTALTNAME);
-                final int parameter;
-                DNFieldExtractor usedExtractor = dnExtractor;
-                
-                switch (matchSubjectWithType) {
-                    case SUBJECT_RDN_C:
-                        parameter = DNFieldExtractor.C;
-                        break;
-                    case SUBJECT_RDN_DC:
-                        parameter = DNFieldExtractor.DC;
-                        break;
-                    case SUBJECT_RDN_ST:
-                        parameter = DNFieldExtractor.ST;
-                        break;
-                    case SUBJECT_RDN_L:
-                        parameter = DNFieldExtractor.L;
-                        break;
-                    case SUBJECT_RDN_O:
-                        parameter = DNFieldExtractor.O;
-                        break;
-                    case SUBJECT_RDN_OU:
-                        parameter = DNFieldExtractor.OU;
-                        break;
-                    case SUBJECT_RDN_TITLE:
-                        parameter = DNFieldExtractor.T;
-                        break;
-                    case SUBJECT_RDN_SERIALNO:
-                        parameter = DNFieldExtractor.SN;
-                        break;
-                    case SUBJECT_RDN_CN:
-                        parameter = DNFieldExtractor.CN;
-                        break;
-                    case SUBJECT_RDN_UID:
-                        parameter = DNFieldExtractor.UID;
-                        break;
-                    case SUBJECT_RDN_E:
-                        parameter = DNFieldExtractor.E;
-                        break;
-                    case SUBJECT_ALTNAME_RFC822NAME:
-                        parameter = DNFieldExtractor.RFC822NAME;
-                        usedExtractor = anExtractor;
-                        break;
-                    case SUBJECT_ALTNAME_MSUPN:
-                        parameter = DNFieldExtractor.UPN;
-                        usedExtractor = anExtractor;
-                        break;
-                    default:
-                        // Do not match on supported match types
-                        LOG.warn("Unsupported " + MatchSubjectWithType.class.getSimpleName() + " : " + matchSubjectWithType);
-                        continue;
+                final int parameter = getDNFieldParameter(matchSubjectWithType);
+                final DNFieldExtractor usedExtractor;
+                if (matchSubjectWithType == MatchSubjectWithType.SUBJECT_ALTNAME_RFC822NAME
+                        || matchSubjectWithType == MatchSubjectWithType.SUBJECT_ALTNAME_MSUPN) {
+                    if (anExtractor == null) {
+                        final String altNameString = CertTools.getSubjectAlternativeName(clientCert);
+                        anExtractor = new DNFieldExtractor(altNameString, DNFieldExtractor.TYPE_SUBJECTALTNAME);
+                    }
+                    usedExtractor = anExtractor;
+                } else {
+                    if (dnExtractor == null) {
+                        // See X509CertificateAuthenticationToken in EJBCA/CESeCore
+                        String certstring = CertTools.getSubjectDN(clientCert);
+                        certstring = SERIAL_PATTERN.matcher(certstring).replaceAll("SN=");
+                        dnExtractor = new DNFieldExtractor(certstring, DNFieldExtractor.TYPE_SUBJECTDN);
+                    }
+                    usedExtractor = dnExtractor;
                 }
                 
-                int size = usedExtractor.getNumberOfFields(parameter);
-                AuthorizedClientEntry[] clientstrings = new AuthorizedClientEntry[size];
+                final int size = usedExtractor.getNumberOfFields(parameter);
                 for (int i = 0; i < size; i++) {
-                    String value = usedExtractor.getField(parameter, i);
-                    clientstrings[i] = new AuthorizedClientEntry(value, clientIssuerDN, matchSubjectWithType, matchIssuerWithType);
+                    final String value = usedExtractor.getField(parameter, i);
+                    final AuthorizedClientEntry client = new AuthorizedClientEntry(value, clientIssuerDN, matchSubjectWithType, matchIssuerWithType);
                     
-                    if (authorizedClients.contains(clientstrings[i])) {
-                        ruleMatched = true;
-                        break;
+                    if (authorizedClients.contains(client)) {
+                        return true;
                     }
                 }
             }
         }
 
-        return ruleMatched;
+        return false;
+    }
+
+    /**
+     * @param matchSubjectWithType to get the field for
+     * @return the DNFieldExtractor field or -1 if the type is not supported
+     */
+    private static int getDNFieldParameter(final MatchSubjectWithType matchSubjectWithType) {
+        switch (matchSubjectWithType) {
+            case SUBJECT_RDN_C:
+                return DNFieldExtractor.C;
+            case SUBJECT_RDN_DC:
+                return DNFieldExtractor.DC;
+            case SUBJECT_RDN_ST:
+                return DNFieldExtractor.ST;
+            case SUBJECT_RDN_L:
+                return DNFieldExtractor.L;
+            case SUBJECT_RDN_O:
+                return DNFieldExtractor.O;
+            case SUBJECT_RDN_OU:
+                return DNFieldExtractor.OU;
+            case SUBJECT_RDN_TITLE:
+                return DNFieldExtractor.T;
+            case SUBJECT_RDN_SERIALNO:
+                return DNFieldExtractor.SN;
+            case SUBJECT_RDN_CN:
+                return DNFieldExtractor.CN;
+            case SUBJECT_RDN_UID:
+                return DNFieldExtractor.UID;
+            case SUBJECT_RDN_E:
+                return DNFieldExtractor.E;
+            case SUBJECT_ALTNAME_RFC822NAME:
+                return DNFieldExtractor.RFC822NAME;
+            case SUBJECT_ALTNAME_MSUPN:
+                return DNFieldExtractor.UPN;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Key for the authorization decisions, identifying a client certificate
+     * by its issuer and serial number.
+     */
+    private static final class DecisionKey {
+        private final X500Principal issuer;
+        private final BigInteger serialNumber;
+
+        DecisionKey(final X500Principal issuer, final BigInteger serialNumber) {
+            this.issuer = issuer;
+            this.serialNumber = serialNumber;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * issuer.hashCode() + serialNumber.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof DecisionKey)) {
+                return false;
+            }
+            final DecisionKey other = (DecisionKey) obj;
+            return serialNumber.equals(other.serialNumber) && issuer.equals(other.issuer);
+        }
     }
 }
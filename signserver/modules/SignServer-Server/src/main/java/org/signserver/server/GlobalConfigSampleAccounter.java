@@ -42,8 +42,8 @@ import org.signserver.ejb.interfaces.GlobalConfigurationSessionLocal;
  * </ul>
  * <p>
  *    Note: This accounter is not safe for use in production as concurrent
- *    requests can overwrite the balance. Instead an accounter using a real
- *    database should be used.
+ *    requests can overwrite the balance. Instead the AccountBalanceAccounter,
+ *    which keeps the balances in a database table, should be used.
  * </p>
  *
  * @author Markus Kilås
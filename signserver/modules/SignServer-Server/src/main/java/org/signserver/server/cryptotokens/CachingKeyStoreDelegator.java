@@ -0,0 +1,210 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.cryptotokens;
+
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.log4j.Logger;
+import org.signserver.common.CryptoTokenOfflineException;
+import org.signserver.server.IServices;
+
+import static org.signserver.server.cryptotokens.CryptoTokenHelper.INFO_KEY_SIGNINGS;
+
+/**
+ * KeyStoreDelegator keeping an index of the entries of an other delegator.
+ *
+ * Listing the entries and reading their certificates and key information can
+ * be slow with an HSM holding many keys. This delegator keeps the list of
+ * entries, sorted by alias, and the additional data of the entries that have
+ * been looked at so that paging through the entries does not need to query
+ * the token again for each page.
+ *
+ * The index is cleared when an entry is deleted or set through this
+ * delegator and should be cleared by the crypto token using invalidate()
+ * when it changes the keystore in other ways, i.e. when generating keys.
+ * As keys could be changed on the token by others, the index is also
+ * rebuilt when it is older than the configured cache time.
+ *
+ * The number of signings is not cached but looked up every time.
+ *
+ * @version $Id$
+ */
+public class CachingKeyStoreDelegator implements KeyStoreDelegator {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(CachingKeyStoreDelegator.class);
+
+    private final KeyStoreDelegator delegate;
+    private final long cacheTimeMillis;
+
+    private volatile Index index;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param delegate to get the entries from
+     * @param cacheTimeMillis maximum time to keep the index before reading
+     * the entries again
+     */
+    public CachingKeyStoreDelegator(final KeyStoreDelegator delegate, final long cacheTimeMillis) {
+        this.delegate = delegate;
+        this.cacheTimeMillis = cacheTimeMillis;
+    }
+
+    /**
+     * Clears the index so that the entries are read again the next time they
+     * are needed.
+     */
+    public void invalidate() {
+        index = null;
+    }
+
+    @Override
+    public boolean containsAlias(final String alias) throws KeyStoreException {
+        return delegate.containsAlias(alias);
+    }
+
+    @Override
+    public void deleteEntry(final String alias) throws KeyStoreException {
+        try {
+            delegate.deleteEntry(alias);
+        } finally {
+            invalidate();
+        }
+    }
+
+    @Override
+    public PublicKey getPublicKey(final String keyAlias) throws KeyStoreException {
+        return delegate.getPublicKey(keyAlias);
+    }
+
+    @Override
+    public PrivateKey aquirePrivateKey(final String alias, final char[] password) throws KeyStoreException, NoSuchAlgorithmException, UnrecoverableKeyException, CryptoTokenOfflineException {
+        return delegate.aquirePrivateKey(alias, password);
+    }
+
+    @Override
+    public void releasePrivateKey(final PrivateKey privateKey) {
+        delegate.releasePrivateKey(privateKey);
+    }
+
+    /**
+     * Gives new entries, sorted by alias, for all entries in the index.
+     *
+     * @return list of token entries
+     * @throws KeyStoreException in case the entries could not be read
+     * @throws CryptoTokenOfflineException in case the token is offline
+     */
+    @Override
+    public List<TokenEntry> getEntries() throws KeyStoreException, CryptoTokenOfflineException {
+        final List<TokenEntry> entries = getIndex().entries;
+        final List<TokenEntry> result = new ArrayList<>(entries.size());
+        for (final TokenEntry entry : entries) {
+            result.add(new TokenEntry(entry.getAlias(), entry.getType()));
+        }
+        return result;
+    }
+
+    @Override
+    public void addAdditionalDataToEntry(final TokenEntry entry, final char[] authCode, final IServices services) throws KeyStoreException, CryptoTokenOfflineException {
+        final Index current = getIndex();
+        TokenEntry cached = current.additionalData.get(entry.getAlias());
+        if (cached == null) {
+            cached = new TokenEntry(entry.getAlias(), entry.getType());
+            delegate.addAdditionalDataToEntry(cached, authCode, services);
+            current.additionalData.put(entry.getAlias(), cached);
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug("Using cached data for entry: " + entry.getAlias());
+        }
+
+        entry.setCreationDate(cached.getCreationDate());
+        entry.setChain(cached.getChain());
+        entry.setTrustedCertificate(cached.getTrustedCertificate());
+        if (cached.getInfo() != null) {
+            final Map<String, String> info = new HashMap<>(cached.getInfo());
+            if (info.containsKey(INFO_KEY_SIGNINGS) && services != null) {
+                final PublicKey publicKey = getPublicKey(cached);
+                if (publicKey != null) {
+                    info.put(INFO_KEY_SIGNINGS, String.valueOf(CryptoTokenHelper.getNoOfSignings(publicKey, services)));
+                }
+            }
+            entry.setInfo(info);
+        }
+    }
+
+    @Override
+    public void setKeyEntry(final String alias, final PrivateKey key, final char[] authCode, final Certificate[] certificate) throws KeyStoreException {
+        try {
+            delegate.setKeyEntry(alias, key, authCode, certificate);
+        } finally {
+            invalidate();
+        }
+    }
+
+    private Index getIndex() throws KeyStoreException, CryptoTokenOfflineException {
+        Index result = index;
+        if (result == null || System.currentTimeMillis() - result.created > cacheTimeMillis) {
+            final long startTime = System.currentTimeMillis();
+            final List<TokenEntry> entries = new ArrayList<>(delegate.getEntries());
+            Collections.sort(entries, new TokenEntryKeyAliasOrderByASC());
+            result = new Index(startTime, entries);
+            index = result;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Indexed " + entries.size() + " entries in "
+                        + (System.currentTimeMillis() - startTime) + " ms");
+            }
+        }
+        return result;
+    }
+
+    private static PublicKey getPublicKey(final TokenEntry entry) {
+        try {
+            final Certificate[] chain = entry.getParsedChain();
+            if (chain != null && chain.length > 0) {
+                return chain[0].getPublicKey();
+            }
+            final Certificate trusted = entry.getParsedTrustedCertificate();
+            if (trusted != null) {
+                return trusted.getPublicKey();
+            }
+        } catch (CertificateException ex) {
+            LOG.error("Unable to parse cached certificate for alias: " + entry.getAlias(), ex);
+        }
+        return null;
+    }
+
+    /**
+     * Entries of the token at one point in time.
+     */
+    private static class Index {
+        private final long created;
+        private final List<TokenEntry> entries;
+        private final Map<String, TokenEntry> additionalData = new ConcurrentHashMap<>();
+
+        Index(final long created, final List<TokenEntry> entries) {
+            this.created = created;
+            this.entries = Collections.unmodifiableList(entries);
+        }
+    }
+}
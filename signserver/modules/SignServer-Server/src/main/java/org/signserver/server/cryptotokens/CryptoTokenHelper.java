@@ -110,6 +110,12 @@ public class CryptoTokenHelper {
     
     public static final String PROPERTY_KEYGENERATIONLIMIT = "KEYGENERATIONLIMIT";
     
+    /**
+     * Number of seconds to keep the index of token entries used when
+     * searching for entries. Default is 0 (no caching).
+     */
+    public static final String PROPERTY_TOKEN_ENTRY_CACHE_TIME = "TOKEN_ENTRY_CACHE_TIME";
+    
     public static final String PROPERTY_SELFSIGNED_DN = "SELFSIGNED_DN";
     public static final String PROPERTY_SELFSIGNED_VALIDITY = "SELFSIGNED_VALIDITY";
     public static final String PROPERTY_SELFSIGNED_SIGNATUREALGORITHM = "SELFSIGNED_SIGNATUREALGORITHM";
@@ -638,10 +644,11 @@ public class CryptoTokenHelper {
             final ArrayList<TokenEntry> tokenEntries = new ArrayList<>();
 
             final List<TokenEntry> entries = keyStore.getEntries();
-            final List<TokenEntry> filteredEntries = new LinkedList<>();
+            final List<TokenEntry> filteredEntries = new ArrayList<>(entries.size());
+            final Elem restriction = getRestriction(qc);
             
             for (final TokenEntry entry : entries) {
-                if (shouldBeIncluded(entry, qc)) {
+                if (restriction == null || generate(entry, restriction)) {
                     filteredEntries.add(entry);
                 }
             }
@@ -650,8 +657,9 @@ public class CryptoTokenHelper {
             handleOrdering(filteredEntries, qc);
             
             final long maxIndex = (long) startIndex + max;
+            final int endIndex = (int) Math.min(maxIndex, filteredEntries.size());
             
-            for (int i = startIndex; i < maxIndex && i < filteredEntries.size(); i++) {
+            for (int i = startIndex; i < endIndex; i++) {
                 final TokenEntry entry = filteredEntries.get(i);
                 final String keyAlias = entry.getAlias();
              
@@ -674,14 +682,14 @@ public class CryptoTokenHelper {
         return result;
     }
     
-    private static boolean shouldBeIncluded(TokenEntry tokenEntry, QueryCriteria qc) throws QueryException {
+    private static Elem getRestriction(QueryCriteria qc) {
         final List<Elem> terms = new ArrayList<>();
             
         CollectionUtils.selectRejected(qc.getElements(), PredicateUtils.instanceofPredicate(Order.class), terms);
         if (terms.isEmpty()) {
-            return true;
+            return null;
         }
-        return generate(tokenEntry, terms.iterator().next());
+        return terms.iterator().next();
     }
     
     private static boolean generate(TokenEntry tokenEntry, final Elem elem) throws QueryException {
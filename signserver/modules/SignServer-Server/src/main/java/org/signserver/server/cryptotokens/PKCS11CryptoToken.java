@@ -107,6 +107,7 @@ public class PKCS11CryptoToken extends BaseCryptoToken {
     private PKCS11Settings settings;
     
     private Integer keygenerationLimit;
+    private long tokenEntryCacheTime;
     
     private KeyStoreDelegator keystoreDelegator;
 
@@ -283,10 +284,20 @@ public class PKCS11CryptoToken extends BaseCryptoToken {
                 }
             }
 
+            // Read property TOKEN_ENTRY_CACHE_TIME
+            final String cacheTimeValue = props.getProperty(CryptoTokenHelper.PROPERTY_TOKEN_ENTRY_CACHE_TIME);
+            if (cacheTimeValue != null && !cacheTimeValue.trim().isEmpty()) {
+                try {
+                    tokenEntryCacheTime = Long.parseLong(cacheTimeValue.trim()) * 1000;
+                } catch (NumberFormatException ex) {
+                    throw new CryptoTokenInitializationFailureException("Incorrect value for " + CryptoTokenHelper.PROPERTY_TOKEN_ENTRY_CACHE_TIME + ": " + ex.getLocalizedMessage());
+                }
+            }
+
             delegate = new KeyStorePKCS11CryptoToken();
             delegate.init(props, null, workerId);
             try {
-                keystoreDelegator = new JavaKeyStoreDelegator(delegate.getActivatedKeyStore());
+                keystoreDelegator = createKeyStoreDelegator(delegate.getActivatedKeyStore());
             } catch (CryptoTokenOfflineException ex) {
                 // don't initialize keystore delegator when not auto-activated
             }
@@ -338,7 +349,7 @@ public class PKCS11CryptoToken extends BaseCryptoToken {
     public void activate(String authenticationcode, IServices services) throws CryptoTokenAuthenticationFailureException, CryptoTokenOfflineException {
         try {
             delegate.activate(authenticationcode.toCharArray());
-            keystoreDelegator = new JavaKeyStoreDelegator(delegate.getActivatedKeyStore());
+            keystoreDelegator = createKeyStoreDelegator(delegate.getActivatedKeyStore());
         } catch (org.cesecore.keys.token.CryptoTokenOfflineException ex) {
             LOG.error("Activate failed", ex);
             throw new CryptoTokenOfflineException(ex);
@@ -365,6 +376,24 @@ public class PKCS11CryptoToken extends BaseCryptoToken {
         return true;
     }
 
+    private KeyStoreDelegator createKeyStoreDelegator(final KeyStore keyStore) {
+        final KeyStoreDelegator result = new JavaKeyStoreDelegator(keyStore);
+        if (tokenEntryCacheTime > 0) {
+            return new CachingKeyStoreDelegator(result, tokenEntryCacheTime);
+        }
+        return result;
+    }
+
+    /**
+     * Clears the index of token entries, if used, after the keystore has
+     * been changed.
+     */
+    private void invalidateTokenEntries() {
+        if (keystoreDelegator instanceof CachingKeyStoreDelegator) {
+            ((CachingKeyStoreDelegator) keystoreDelegator).invalidate();
+        }
+    }
+
     private PrivateKey getPrivateKey(String alias) throws CryptoTokenOfflineException {
         try {
             return delegate.getPrivateKey(alias);
@@ -524,6 +553,8 @@ public class PKCS11CryptoToken extends BaseCryptoToken {
         } catch (UnsupportedOperationException ex) {
             LOG.error(ex, ex);
             throw new CryptoTokenOfflineException(ex);
+        } finally {
+            invalidateTokenEntries();
         }
     }
     
@@ -558,6 +589,8 @@ public class PKCS11CryptoToken extends BaseCryptoToken {
         } catch (KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException ex) {
             LOG.error(ex, ex);
             throw new CryptoTokenOfflineException(ex);
+        } finally {
+            invalidateTokenEntries();
         }
     }
 
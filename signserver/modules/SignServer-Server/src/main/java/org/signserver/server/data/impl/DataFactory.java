@@ -13,6 +13,8 @@
 package org.signserver.server.data.impl;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.FileUploadException;
 import org.signserver.common.data.ReadableData;
@@ -34,6 +36,20 @@ public interface DataFactory {
      * @throws FileUploadException in case data.length > maxSize
      */
     CloseableReadableData createReadableData(byte[] data, long maxSize, File repository) throws FileUploadException;
+
+    /**
+     * Create a readable data implementation by reading the provided stream.
+     * Data larger than the threshold is written to a file in the repository
+     * while reading so that it is never kept in memory.
+     * @param in stream to read the data from
+     * @param maxSize to allow for data
+     * @param sizeThreshold maximum size to keep in memory
+     * @param repository to store the data as file in (if needed)
+     * @return a new readable data instance
+     * @throws FileUploadException in case the data is larger than maxSize
+     * @throws IOException in case reading or storing the data failed
+     */
+    CloseableReadableData createReadableData(InputStream in, long maxSize, int sizeThreshold, File repository) throws FileUploadException, IOException;
     
     /**
      * Create a readable data implementation from the provided FileItem.
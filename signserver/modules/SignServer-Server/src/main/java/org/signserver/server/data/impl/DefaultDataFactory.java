@@ -13,10 +13,14 @@
 package org.signserver.server.data.impl;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.FileUploadBase;
 import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.disk.DiskFileItem;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 import org.apache.log4j.Logger;
 import org.signserver.common.data.ReadableData;
 
@@ -29,6 +33,9 @@ import org.signserver.common.data.ReadableData;
 public class DefaultDataFactory implements DataFactory {
     /** Logger for this class. */
     private static final Logger LOG = Logger.getLogger(DefaultDataFactory.class);
+
+    private static final String FILE_PREFIX = "signserver-upload_";
+    private static final String FILE_SUFFIX = ".tmp";
     
     public DefaultDataFactory() {
         LOG.info("Loading default data factory");
@@ -48,6 +55,42 @@ public class DefaultDataFactory implements DataFactory {
         return new ByteArrayReadableData(data, repository);
     }
 
+    @Override
+    public CloseableReadableData createReadableData(InputStream in, long maxSize, int sizeThreshold, File repository) throws FileUploadException, IOException {
+        final DeferredFileOutputStream out = new DeferredFileOutputStream(sizeThreshold, FILE_PREFIX, FILE_SUFFIX, repository);
+        boolean success = false;
+        try {
+            final byte[] buffer = new byte[8192];
+            long length = 0;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                length += n;
+                if (length > maxSize) {
+                    throw new FileUploadBase.SizeLimitExceededException(
+                                String.format("the request was rejected because its size (at least %s) exceeds the configured maximum (%s)",
+                                        length, maxSize),
+                                       length, maxSize);
+                }
+                out.write(buffer, 0, n);
+            }
+            out.close();
+            success = true;
+        } finally {
+            if (!success) {
+                out.close();
+                if (out.getFile() != null) {
+                    Files.deleteIfExists(out.getFile().toPath());
+                }
+            }
+        }
+
+        if (out.isInMemory()) {
+            return new ByteArrayReadableData(out.getData(), repository);
+        } else {
+            return new TemporaryFileReadableData(out.getFile());
+        }
+    }
+
     @Override
     public CloseableReadableData createReadableData(FileItem item, File repository) {
         DiskFileItem dfi = (DiskFileItem) item;
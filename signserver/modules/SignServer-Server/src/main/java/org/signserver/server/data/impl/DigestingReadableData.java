@@ -0,0 +1,204 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.data.impl;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import org.signserver.common.data.ReadableData;
+
+/**
+ * ReadableData wrapping an other ReadableData and computing a digest of the
+ * data while it is being read.
+ *
+ * The first input stream obtained is digested as it is read. If it is read
+ * until the end the digest is available from getDigest() without reading
+ * the data again. If the data is instead only accessed as a file or if the
+ * stream was not completely read, the digest is computed by reading the data
+ * when it is requested.
+ *
+ * This class is not thread-safe and does not take ownership of the wrapped
+ * data, which is still to be closed by its owner.
+ *
+ * @version $Id$
+ * @see DigestingWritableData
+ */
+public class DigestingReadableData implements ReadableData {
+
+    private final ReadableData data;
+    private final MessageDigest md;
+
+    private DigestingInputStream activeStream;
+    private byte[] digest;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param data to wrap
+     * @param md to compute the digest with
+     */
+    public DigestingReadableData(final ReadableData data, final MessageDigest md) {
+        this.data = data;
+        this.md = md;
+    }
+
+    @Override
+    public byte[] getAsByteArray() throws IOException {
+        final byte[] result = data.getAsByteArray();
+        if (digest == null && activeStream == null && result != null) {
+            // Discard anything digested from a stream not read until the end
+            md.reset();
+            digest = md.digest(result);
+        }
+        return result;
+    }
+
+    @Override
+    public InputStream getAsInputStream() throws IOException {
+        final InputStream in = data.getAsInputStream();
+        if (digest != null || activeStream != null) {
+            return in;
+        }
+        md.reset();
+        activeStream = new DigestingInputStream(in);
+        return activeStream;
+    }
+
+    @Override
+    public File getAsFile() throws IOException {
+        return data.getAsFile();
+    }
+
+    @Override
+    public long getLength() {
+        return data.getLength();
+    }
+
+    @Override
+    public boolean isFile() {
+        return data.isFile();
+    }
+
+    /**
+     * @return true if the digest has been computed from the data read so far
+     */
+    public boolean isDigestComplete() {
+        return digest != null;
+    }
+
+    /**
+     * Gives the digest of the data. If the data has not been completely read
+     * through this instance it is read now.
+     *
+     * @return the digest of all the data
+     * @throws IOException in case of error reading the data
+     */
+    public byte[] getDigest() throws IOException {
+        if (digest == null) {
+            if (activeStream != null) {
+                // Only partly read so far, start over
+                activeStream.invalidate();
+            }
+            try (InputStream in = getAsInputStream()) {
+                final byte[] buffer = new byte[4096];
+                while (in.read(buffer) != -1) {
+                    // Digested by the stream
+                }
+            }
+        }
+        return digest;
+    }
+
+    /**
+     * Input stream updating the digest for all bytes read and storing the
+     * result when the end of the stream is reached.
+     */
+    private class DigestingInputStream extends FilterInputStream {
+
+        private boolean valid = true;
+
+        DigestingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b == -1) {
+                endOfStream();
+            } else if (valid) {
+                md.update((byte) b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n == -1) {
+                endOfStream();
+            } else if (valid) {
+                md.update(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            // Skipped bytes are not digested
+            invalidate();
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public synchronized void mark(final int readlimit) {
+            // Not supported
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            throw new IOException("mark/reset not supported");
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                invalidate();
+            }
+        }
+
+        private void endOfStream() {
+            if (valid) {
+                digest = md.digest();
+                invalidate();
+            }
+        }
+
+        private void invalidate() {
+            valid = false;
+            if (activeStream == this) {
+                activeStream = null;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.data.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import org.signserver.common.data.ReadableData;
+import org.signserver.common.data.WritableData;
+
+/**
+ * WritableData wrapping an other WritableData and computing a digest of the
+ * data while it is being written.
+ *
+ * When the output stream has been closed the digest is available from
+ * getDigest() without reading the data back. If the data was instead written
+ * to the file obtained using getAsFile() the digest is computed by reading
+ * the data when it is requested.
+ *
+ * This class is not thread-safe and does not take ownership of the wrapped
+ * data, which is still to be closed by its owner.
+ *
+ * @version $Id$
+ * @see DigestingReadableData
+ */
+public class DigestingWritableData implements WritableData {
+
+    private final WritableData data;
+    private final MessageDigest md;
+
+    private OutputStream wrappedStream;
+    private DigestingOutputStream stream;
+    private boolean fileAccessed;
+    private byte[] digest;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param data to wrap
+     * @param md to compute the digest with
+     */
+    public DigestingWritableData(final WritableData data, final MessageDigest md) {
+        this.data = data;
+        this.md = md;
+    }
+
+    @Override
+    public File getAsFile() throws IOException {
+        fileAccessed = true;
+        return data.getAsFile();
+    }
+
+    @Override
+    public OutputStream getAsOutputStream() throws IOException {
+        return wrap(data.getAsOutputStream());
+    }
+
+    @Override
+    public OutputStream getAsFileOutputStream() throws IOException {
+        return wrap(data.getAsFileOutputStream());
+    }
+
+    @Override
+    public OutputStream getAsInMemoryOutputStream() {
+        return wrap(data.getAsInMemoryOutputStream());
+    }
+
+    /**
+     * Opens a new output stream for writing to the file given by
+     * getAsFile() on the wrapped data and which is digested as it is
+     * written. This is for callers that otherwise would write to the file
+     * directly.
+     *
+     * The caller is responsible for closing the stream.
+     *
+     * @return a new output stream to the file
+     * @throws IOException in case the file could not be opened
+     */
+    public OutputStream getAsNewFileOutputStream() throws IOException {
+        return wrap(new FileOutputStream(data.getAsFile()));
+    }
+
+    @Override
+    public ReadableData toReadableData() {
+        return data.toReadableData();
+    }
+
+    /**
+     * Gives the digest of the data written. If the data was not written
+     * through an output stream from this instance it is read back now.
+     *
+     * @return the digest of all the data
+     * @throws IOException in case of error reading the data
+     */
+    public byte[] getDigest() throws IOException {
+        if (digest == null || fileAccessed) {
+            try (InputStream in = data.toReadableData().getAsInputStream()) {
+                md.reset();
+                digest = UploadUtil.digest(in, md);
+                fileAccessed = false;
+            }
+        }
+        return digest;
+    }
+
+    private OutputStream wrap(final OutputStream out) {
+        // The same stream can be returned again by the wrapped data
+        if (out != wrappedStream) {
+            md.reset();
+            digest = null;
+            wrappedStream = out;
+            stream = new DigestingOutputStream(out);
+        }
+        return stream;
+    }
+
+    /**
+     * Output stream updating the digest for all bytes written and storing
+     * the result when closed.
+     */
+    private class DigestingOutputStream extends FilterOutputStream {
+
+        private boolean closed;
+
+        DigestingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            md.update((byte) b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            md.update(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                super.close();
+                if (stream == this) {
+                    digest = md.digest();
+                }
+            }
+        }
+    }
+
+}
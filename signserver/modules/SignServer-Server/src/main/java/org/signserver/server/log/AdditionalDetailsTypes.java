@@ -49,4 +49,8 @@ public enum AdditionalDetailsTypes {
     
     CSR, 
 
+    ACCOUNT,
+    AMOUNT,
+    BALANCE,
+
 }
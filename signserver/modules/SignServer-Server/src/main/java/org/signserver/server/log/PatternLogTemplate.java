@@ -0,0 +1,150 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang.time.FastDateFormat;
+
+/**
+ * Log line template compiled once from a pattern and an order string, giving
+ * the same output as the EjbcaPatternLogger.
+ *
+ * The order string is split into literal text and the fields matched by the
+ * pattern, where group 1 is the name of the field. When rendering, only the
+ * values of the fields referenced are converted to strings. Fields without
+ * a value are kept as they are in the order string.
+ *
+ * The default values of EjbcaPatternLogger are used for LOG_TIME, LOG_ID and
+ * REPLY_TIME, and as there, any REPLY_TIME in the output is replaced by the
+ * number of milliseconds rendering took.
+ *
+ * Instances are thread-safe.
+ *
+ * @version $Id$
+ */
+public class PatternLogTemplate {
+
+    /** Builders larger than this are not kept for the next line. */
+    private static final int MAX_KEPT_CAPACITY = 16 * 1024;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(512));
+
+    /** Literal text before each field, with the text after the last field at the end. */
+    private final String[] literals;
+
+    /** Names of the fields. */
+    private final String[] keys;
+
+    /** Text to output for each field without value. */
+    private final String[] placeholders;
+
+    private final FastDateFormat dateFormat;
+
+    /**
+     * Compiles the template.
+     *
+     * @param pattern matching the fields in the order string
+     * @param orderString text with the fields to log
+     * @param logDateFormat date format for LOG_TIME
+     * @param timeZone for LOG_TIME or null for the default time zone
+     */
+    public PatternLogTemplate(final Pattern pattern, final String orderString,
+            final String logDateFormat, final String timeZone) {
+        final List<String> literalList = new ArrayList<>();
+        final List<String> keyList = new ArrayList<>();
+        final List<String> placeholderList = new ArrayList<>();
+        final Matcher m = pattern.matcher(orderString);
+        int last = 0;
+        while (m.find()) {
+            literalList.add(orderString.substring(last, m.start()));
+            keyList.add(m.group(1));
+            placeholderList.add(m.group(0));
+            last = m.end();
+        }
+        literalList.add(orderString.substring(last));
+
+        this.literals = literalList.toArray(new String[0]);
+        this.keys = keyList.toArray(new String[0]);
+        this.placeholders = placeholderList.toArray(new String[0]);
+        if (timeZone == null) {
+            this.dateFormat = FastDateFormat.getInstance(logDateFormat);
+        } else {
+            this.dateFormat = FastDateFormat.getInstance(logDateFormat, TimeZone.getTimeZone(timeZone));
+        }
+    }
+
+    /**
+     * @return names of the fields referenced, in order of first appearance
+     */
+    public Set<String> getKeys() {
+        final Set<String> result = new LinkedHashSet<>();
+        Collections.addAll(result, keys);
+        return result;
+    }
+
+    /**
+     * Renders a log line, ending with a line separator as when printed by
+     * the EjbcaPatternLogger.
+     *
+     * @param fields values to log
+     * @return the log line
+     */
+    public String render(final Map<String, ?> fields) {
+        final long startTime = System.currentTimeMillis();
+        StringBuilder sb = BUFFER.get();
+        if (sb.capacity() > MAX_KEPT_CAPACITY) {
+            sb = new StringBuilder(512);
+            BUFFER.set(sb);
+        }
+        sb.setLength(0);
+
+        for (int i = 0; i < keys.length; i++) {
+            sb.append(literals[i]);
+            final String key = keys[i];
+            final Object value = fields.get(key);
+            if (value != null || fields.containsKey(key)) {
+                sb.append(value);
+            } else if (EjbcaPatternLogger.LOG_TIME.equals(key)) {
+                sb.append(dateFormat.format(new Date(startTime)));
+            } else if (EjbcaPatternLogger.LOG_ID.equals(key)) {
+                sb.append('0');
+            } else if (EjbcaPatternLogger.REPLY_TIME.equals(key)) {
+                sb.append(EjbcaPatternLogger.REPLY_TIME);
+            } else {
+                sb.append(placeholders[i]);
+            }
+        }
+        sb.append(literals[keys.length]);
+        sb.append(System.lineSeparator());
+
+        replaceAll(sb, EjbcaPatternLogger.REPLY_TIME, String.valueOf(System.currentTimeMillis() - startTime));
+        return sb.toString();
+    }
+
+    private static void replaceAll(final StringBuilder sb, final String text, final String replacement) {
+        int index = sb.indexOf(text);
+        while (index >= 0) {
+            sb.replace(index, index + text.length(), replacement);
+            index = sb.indexOf(text, index + replacement.length());
+        }
+    }
+}
@@ -64,7 +64,10 @@ public enum SignServerEventTypes implements EventType {
     RELOAD_WORKER_CONFIG,
     
     /** Logged when a timed service has run. */
-    TIMED_SERVICE_RUN;
+    TIMED_SERVICE_RUN,
+
+    /** Logged when the balance of an account was topped up. */
+    ACCOUNT_TOPUP;
     
    @Override
    public boolean equals(EventType value) {
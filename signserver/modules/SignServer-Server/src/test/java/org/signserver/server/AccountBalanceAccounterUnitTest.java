@@ -0,0 +1,307 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.signserver.common.RequestContext;
+import org.signserver.server.entities.AccountBalance;
+import org.signserver.server.entities.IAccountBalanceDataService;
+
+/**
+ * Unit tests for the AccountBalanceAccounter class.
+ *
+ * @version $Id$
+ */
+public class AccountBalanceAccounterUnitTest {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(AccountBalanceAccounterUnitTest.class);
+
+    private static final IClientCredential USER1 = new UsernamePasswordClientCredential("user1", "foo123");
+    private static final IClientCredential CLIENT2 = new CertificateClientCredential("1234abcd", "CN=Client CA, O=Test: Org");
+
+    /** In-memory account balances counting the charges. */
+    private static class MockedBalances implements IAccountBalanceDataService {
+        private final Map<String, Long> balances = new HashMap<>();
+        private final AtomicInteger charges = new AtomicInteger();
+
+        @Override
+        public synchronized AccountBalance getBalance(String accountId) {
+            final Long balance = balances.get(accountId);
+            return balance == null ? null : new AccountBalance(accountId, balance, 0);
+        }
+
+        @Override
+        public synchronized boolean chargeIfSufficient(String accountId, long amount) {
+            charges.incrementAndGet();
+            final Long balance = balances.get(accountId);
+            if (balance == null || balance < amount) {
+                return false;
+            }
+            balances.put(accountId, balance - amount);
+            return true;
+        }
+
+        @Override
+        public synchronized long topUp(String accountId, long amount) {
+            final long balance = balances.getOrDefault(accountId, 0L) + amount;
+            balances.put(accountId, balance);
+            return balance;
+        }
+
+        @Override
+        public synchronized List<AccountBalance> findAll() {
+            throw new UnsupportedOperationException("Not supported yet.");
+        }
+    }
+
+    /** Registry for one transaction at a time that is completed by the test. */
+    private static class MockedTransactions implements TransactionSynchronizationRegistry {
+        private final List<Synchronization> synchronizations = new ArrayList<>();
+
+        private void complete(final int status) {
+            for (Synchronization synchronization : synchronizations) {
+                synchronization.afterCompletion(status);
+            }
+            synchronizations.clear();
+        }
+
+        @Override
+        public Object getTransactionKey() {
+            return this;
+        }
+
+        @Override
+        public void putResource(Object key, Object value) {
+            throw new UnsupportedOperationException("Not supported yet.");
+        }
+
+        @Override
+        public Object getResource(Object key) {
+            throw new UnsupportedOperationException("Not supported yet.");
+        }
+
+        @Override
+        public void registerInterposedSynchronization(Synchronization sync) {
+            synchronizations.add(sync);
+        }
+
+        @Override
+        public int getTransactionStatus() {
+            return Status.STATUS_ACTIVE;
+        }
+
+        @Override
+        public void setRollbackOnly() {
+            throw new UnsupportedOperationException("Not supported yet.");
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return false;
+        }
+    }
+
+    private static AccountBalanceAccounter createAccounter(final String... keyValues) {
+        final Properties props = new Properties();
+        props.setProperty(AccountBalanceAccounter.ACCOUNTER_ACCOUNTS, "user1:account1; 1234abcd,CN=Client CA, O=Test: Org:account2");
+        for (int i = 0; i < keyValues.length; i += 2) {
+            props.setProperty(keyValues[i], keyValues[i + 1]);
+        }
+        final AccountBalanceAccounter result = new AccountBalanceAccounter();
+        result.init(props);
+        return result;
+    }
+
+    private static RequestContext createContext(final IAccountBalanceDataService balances) {
+        final ServicesImpl services = new ServicesImpl();
+        services.put(IAccountBalanceDataService.class, balances);
+        final RequestContext result = new RequestContext();
+        result.setServices(services);
+        return result;
+    }
+
+    /**
+     * Tests that the accounts are charged the price for each request and
+     * that the purchase is not granted when the balance is insufficient or
+     * the client has no account.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testPurchase() throws Exception {
+        LOG.info("testPurchase");
+        final MockedBalances balances = new MockedBalances();
+        balances.topUp("account1", 5);
+        balances.topUp("account2", 1);
+        final RequestContext context = createContext(balances);
+        final AccountBalanceAccounter instance = createAccounter(AccountBalanceAccounter.ACCOUNTER_PRICE, "2");
+
+        assertTrue("purchase 1", instance.purchase(USER1, null, null, context));
+        assertTrue("purchase 2", instance.purchase(USER1, null, null, context));
+        assertFalse("insufficient", instance.purchase(USER1, null, null, context));
+        assertEquals("balance", 1, balances.getBalance("account1").getBalance());
+
+        assertFalse("insufficient for cert client", instance.purchase(CLIENT2, null, null, context));
+        assertFalse("no account", instance.purchase(new UsernamePasswordClientCredential("user2", "foo123"), null, null, context));
+        assertFalse("no credential", instance.purchase(null, null, null, context));
+    }
+
+    /**
+     * Tests that with a reservation the account is only charged once per
+     * reservation and that the last units can still be used when there is
+     * not enough for a full reservation.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testPurchaseWithReservation() throws Exception {
+        LOG.info("testPurchaseWithReservation");
+        final MockedBalances balances = new MockedBalances();
+        balances.topUp("account1", 25);
+        final RequestContext context = createContext(balances);
+        final AccountBalanceAccounter instance = createAccounter(AccountBalanceAccounter.ACCOUNTER_RESERVATION, "10");
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue("purchase " + i, instance.purchase(USER1, null, null, context));
+        }
+        assertEquals("charges", 2, balances.charges.get());
+        assertEquals("balance", 5, balances.getBalance("account1").getBalance());
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue("purchase of last " + i, instance.purchase(USER1, null, null, context));
+        }
+        assertFalse("insufficient", instance.purchase(USER1, null, null, context));
+        assertEquals("balance after", 0, balances.getBalance("account1").getBalance());
+    }
+
+    /**
+     * Tests that a reservation made in a transaction that is rolled back is
+     * not used by later requests and that a request rolled back gives back
+     * what it used from the reservation.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testPurchaseWithReservationRolledBack() throws Exception {
+        LOG.info("testPurchaseWithReservationRolledBack");
+        final MockedBalances balances = new MockedBalances();
+        balances.topUp("account1", 25);
+        final MockedTransactions transactions = new MockedTransactions();
+        final RequestContext context = createContext(balances);
+        ((ServicesImpl) context.getServices()).put(TransactionSynchronizationRegistry.class, transactions);
+        final AccountBalanceAccounter instance = createAccounter(AccountBalanceAccounter.ACCOUNTER_RESERVATION, "10");
+
+        // Reservation rolled back, as the database would, so nothing reserved
+        assertTrue("purchase rolled back", instance.purchase(USER1, null, null, context));
+        balances.topUp("account1", 10);
+        transactions.complete(Status.STATUS_ROLLEDBACK);
+        assertEquals("balance after rollback", 25, balances.getBalance("account1").getBalance());
+
+        assertTrue("purchase committed", instance.purchase(USER1, null, null, context));
+        transactions.complete(Status.STATUS_COMMITTED);
+        assertEquals("charges", 2, balances.charges.get());
+        assertEquals("balance after commit", 15, balances.getBalance("account1").getBalance());
+
+        // Request rolled back gives back its price to the reservation
+        assertTrue("purchase from reservation rolled back", instance.purchase(USER1, null, null, context));
+        transactions.complete(Status.STATUS_ROLLEDBACK);
+        for (int i = 0; i < 9; i++) {
+            assertTrue("purchase from reservation " + i, instance.purchase(USER1, null, null, context));
+            transactions.complete(Status.STATUS_COMMITTED);
+        }
+        assertEquals("charges from reservation", 2, balances.charges.get());
+
+        assertTrue("purchase with new reservation", instance.purchase(USER1, null, null, context));
+        transactions.complete(Status.STATUS_COMMITTED);
+        assertEquals("charges after", 3, balances.charges.get());
+        assertEquals("balance after", 5, balances.getBalance("account1").getBalance());
+    }
+
+    /**
+     * Tests that concurrent purchases never use more than the balance.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testConcurrentPurchases() throws Exception {
+        LOG.info("testConcurrentPurchases");
+        final MockedBalances balances = new MockedBalances();
+        balances.topUp("account1", 1000);
+        final RequestContext context = createContext(balances);
+        final AccountBalanceAccounter instance = createAccounter(AccountBalanceAccounter.ACCOUNTER_RESERVATION, "30");
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        int granted = 0;
+                        for (int i = 0; i < 200; i++) {
+                            if (instance.purchase(USER1, null, null, context)) {
+                                granted++;
+                            }
+                        }
+                        return granted;
+                    }
+                }));
+            }
+            int granted = 0;
+            for (Future<Integer> result : results) {
+                granted += result.get();
+            }
+            assertEquals("granted", 1000, granted);
+            assertEquals("balance", 0, balances.getBalance("account1").getBalance());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tests that an incorrect configuration fails the purchase.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testIncorrectConfiguration() throws Exception {
+        LOG.info("testIncorrectConfiguration");
+        final RequestContext context = createContext(new MockedBalances());
+        final AccountBalanceAccounter instance = new AccountBalanceAccounter();
+        instance.init(new Properties());
+        try {
+            instance.purchase(USER1, null, null, context);
+            fail("Should have failed");
+        } catch (AccounterException expected) { // NOPMD
+            // OK
+        }
+
+        try {
+            createAccounter(AccountBalanceAccounter.ACCOUNTER_PRICE, "-1").purchase(USER1, null, null, context);
+            fail("Should have failed");
+        } catch (AccounterException expected) { // NOPMD
+            // OK
+        }
+    }
+}
@@ -17,11 +17,19 @@ import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
 import java.security.Security;
+import java.security.UnrecoverableKeyException;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.security.spec.RSAKeyGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.SortedMap;
@@ -30,6 +38,7 @@ import java.util.concurrent.TimeUnit;
 import javax.security.auth.x500.X500Principal;
 import junit.framework.TestCase;
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertTrue;
 import static junit.framework.TestCase.fail;
 import org.apache.log4j.Logger;
@@ -37,6 +46,12 @@ import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.util.encoders.Hex;
 import org.cesecore.keys.token.CachingKeyStoreWrapper;
 import org.cesecore.keys.util.KeyStoreTools;
+import org.cesecore.util.query.QueryCriteria;
+import org.cesecore.util.query.clauses.Order;
+import org.cesecore.util.query.elems.RelationalOperator;
+import org.cesecore.util.query.elems.Term;
+import org.signserver.common.CryptoTokenOfflineException;
+import org.signserver.server.IServices;
 
 /**
  * Tests that the hard token properties are set correctly for PKCS11 crypto tokens.
@@ -285,6 +300,114 @@ public class CryptoTokenHelperTest extends TestCase {
         assertEquals("New validity time about 2 hour", 2L, TimeUnit.MILLISECONDS.toHours(certAfter.getNotAfter().getTime() - certAfter.getNotBefore().getTime()));
     }
 
+    /**
+     * Tests paging through the entries using the CachingKeyStoreDelegator
+     * and that the entries are only read from the keystore again after an
+     * entry has been removed.
+     *
+     * @throws Exception
+     */
+    public void testSearchTokenEntries_cached() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        final KeyStore ks = createKeyStoreWithAnEntry();
+        final Certificate[] chain = ks.getCertificateChain(KEYALIAS);
+        for (final String alias : new String[] {"key3", "key1", "key4", "key2"}) {
+            ks.setCertificateEntry(alias, chain[0]);
+        }
+        final CountingKeyStoreDelegator counting = new CountingKeyStoreDelegator(new JavaKeyStoreDelegator(ks));
+        final CachingKeyStoreDelegator instance = new CachingKeyStoreDelegator(counting, 60000);
+
+        // Page through all entries matching
+        final QueryCriteria qc = QueryCriteria.create()
+                .add(new Term(RelationalOperator.LIKE, CryptoTokenHelper.TokenEntryFields.keyAlias.name(), "key%"))
+                .add(new Order(CryptoTokenHelper.TokenEntryFields.keyAlias.name(), Order.Value.ASC));
+        TokenSearchResults results = CryptoTokenHelper.searchTokenEntries(instance, 0, 3, qc, true, null, null);
+        assertEquals("first page", "[key1, key2, key3]", getAliases(results));
+        assertTrue("more entries", results.isMoreEntriesAvailable());
+        assertEquals("info", "RSA", results.getEntries().get(0).getInfo().get(CryptoTokenHelper.INFO_KEY_ALGORITHM));
+
+        results = CryptoTokenHelper.searchTokenEntries(instance, 3, 3, qc, true, null, null);
+        assertEquals("second page", "[key4]", getAliases(results));
+        assertFalse("no more entries", results.isMoreEntriesAvailable());
+
+        results = CryptoTokenHelper.searchTokenEntries(instance, 0, 10, qc, true, null, null);
+        assertEquals("all entries", "[key1, key2, key3, key4]", getAliases(results));
+        assertEquals("info again", "RSA", results.getEntries().get(0).getInfo().get(CryptoTokenHelper.INFO_KEY_ALGORITHM));
+
+        assertEquals("entries read once", 1, counting.entriesCalls);
+        assertEquals("additional data read once per entry", 4, counting.additionalDataCalls);
+
+        // Removing an entry clears the index
+        CryptoTokenHelper.removeKey(instance, "key2");
+        results = CryptoTokenHelper.searchTokenEntries(instance, 0, 10, qc, false, null, null);
+        assertEquals("entries after removal", "[key1, key3, key4]", getAliases(results));
+        assertEquals("entries read again", 2, counting.entriesCalls);
+    }
+
+    private static String getAliases(final TokenSearchResults results) {
+        final List<String> aliases = new ArrayList<>();
+        for (final TokenEntry entry : results.getEntries()) {
+            aliases.add(entry.getAlias());
+        }
+        return aliases.toString();
+    }
+
+    /**
+     * KeyStoreDelegator counting the number of times the entries are read
+     * and giving fixed additional data.
+     */
+    private static class CountingKeyStoreDelegator implements KeyStoreDelegator {
+        private final KeyStoreDelegator delegate;
+        private int entriesCalls;
+        private int additionalDataCalls;
+
+        CountingKeyStoreDelegator(final KeyStoreDelegator delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean containsAlias(String alias) throws KeyStoreException {
+            return delegate.containsAlias(alias);
+        }
+
+        @Override
+        public void deleteEntry(String alias) throws KeyStoreException {
+            delegate.deleteEntry(alias);
+        }
+
+        @Override
+        public PublicKey getPublicKey(String keyAlias) throws KeyStoreException {
+            return delegate.getPublicKey(keyAlias);
+        }
+
+        @Override
+        public PrivateKey aquirePrivateKey(String alias, char[] password) throws KeyStoreException, NoSuchAlgorithmException, UnrecoverableKeyException, CryptoTokenOfflineException {
+            return delegate.aquirePrivateKey(alias, password);
+        }
+
+        @Override
+        public void releasePrivateKey(PrivateKey privateKey) {
+            delegate.releasePrivateKey(privateKey);
+        }
+
+        @Override
+        public List<TokenEntry> getEntries() throws KeyStoreException, CryptoTokenOfflineException {
+            entriesCalls++;
+            return delegate.getEntries();
+        }
+
+        @Override
+        public void addAdditionalDataToEntry(TokenEntry entry, char[] authCode, IServices services) throws KeyStoreException, CryptoTokenOfflineException {
+            additionalDataCalls++;
+            entry.setInfo(Collections.singletonMap(CryptoTokenHelper.INFO_KEY_ALGORITHM, "RSA"));
+        }
+
+        @Override
+        public void setKeyEntry(String alias, PrivateKey key, char[] authCode, Certificate[] certificate) throws KeyStoreException {
+            delegate.setKeyEntry(alias, key, authCode, certificate);
+        }
+    }
+
     /**
      * Tests that a certificate generate by CESeCore code is detected to be a
      * dummy certificate.
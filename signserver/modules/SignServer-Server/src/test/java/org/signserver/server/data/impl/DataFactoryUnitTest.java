@@ -324,4 +324,60 @@ public class DataFactoryUnitTest {
         try (CloseableReadableData readableData = dataFactory.createReadableData(upload.parseTheRequest(), fileRepository)) {}
     }
 
+    /**
+     * Tests the method DataFactory.createReadabeData(InputStream,...) with
+     * data small enough to be kept in memory.
+     * @throws Exception
+     */
+    @Test
+    public void testDataFactoryCreateReadableData_streamInMemory() throws Exception {
+        DataFactory dataFactory = createDataFactory();
+
+        byte[] bytes = "abcdefghijklmn".getBytes(StandardCharsets.US_ASCII);
+
+        try (CloseableReadableData readableData = dataFactory.createReadableData(new ByteArrayInputStream(bytes), 10000, 100, fileRepository)) {
+            assertEquals("length", bytes.length, readableData.getLength());
+            assertFalse("not file", readableData.isFile());
+            assertEquals("byte array", Hex.toHexString(bytes), Hex.toHexString(readableData.getAsByteArray()));
+        }
+    }
+
+    /**
+     * Tests the method DataFactory.createReadabeData(InputStream,...) with
+     * data larger than the threshold and that the file is removed when
+     * closed.
+     * @throws Exception
+     */
+    @Test
+    public void testDataFactoryCreateReadableData_streamToFile() throws Exception {
+        DataFactory dataFactory = createDataFactory();
+
+        byte[] bytes = new byte[5000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+
+        File file;
+        try (CloseableReadableData readableData = dataFactory.createReadableData(new ByteArrayInputStream(bytes), 10000, 100, fileRepository)) {
+            assertEquals("length", bytes.length, readableData.getLength());
+            assertTrue("file", readableData.isFile());
+            assertEquals("stream", Hex.toHexString(bytes), Hex.toHexString(IOUtils.toByteArray(readableData.getAsInputStream())));
+            file = readableData.getAsFile();
+            assertTrue("file exists", file.exists());
+        }
+        // File removed (auto-closeable)
+        assertFalse("file removed", file.exists());
+    }
+
+    /**
+     * Tests that the method DataFactory.createReadabeData(InputStream,...)
+     * throws an Exception on too large data (+1).
+     * @throws Exception
+     */
+    @Test(expected = FileUploadBase.SizeLimitExceededException.class)
+    public void testDataFactoryCreateReadableData_streamTooLarge1() throws Exception {
+        DataFactory dataFactory = createDataFactory();
+        byte[] bytes = new byte[10001];
+        try (CloseableReadableData readableData = dataFactory.createReadableData(new ByteArrayInputStream(bytes), 10000, 100, fileRepository)) {}
+    }
 }
@@ -0,0 +1,238 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.data.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Random;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.signserver.common.data.ReadableData;
+
+/**
+ * Unit tests for the DigestingReadableData and DigestingWritableData classes.
+ *
+ * @version $Id$
+ */
+public class DigestingDataUnitTest {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(DigestingDataUnitTest.class);
+
+    private final File fileRepository = new UploadConfig().getRepository();
+
+    private static byte[] createData(final int length) {
+        final byte[] result = new byte[length];
+        new Random(4711).nextBytes(result);
+        return result;
+    }
+
+    private static String sha256(final byte[] data) throws Exception {
+        return Hex.toHexString(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+
+    /**
+     * Tests that the digest is computed while the data is read as a stream
+     * and that the data is not read again to get the digest.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testReadableData_digestWhileReading() throws Exception {
+        LOG.info("testReadableData_digestWhileReading");
+        final byte[] bytes = createData(100000);
+
+        try (CloseableReadableData data = new ByteArrayReadableData(bytes, fileRepository)) {
+            final CountingReadableData counting = new CountingReadableData(data);
+            final DigestingReadableData instance = new DigestingReadableData(counting, MessageDigest.getInstance("SHA-256"));
+
+            assertFalse("not complete before reading", instance.isDigestComplete());
+            try (InputStream in = instance.getAsInputStream()) {
+                assertArrayEquals("data", bytes, IOUtils.toByteArray(in));
+            }
+            assertTrue("complete after reading", instance.isDigestComplete());
+            assertEquals("digest", sha256(bytes), Hex.toHexString(instance.getDigest()));
+            assertEquals("streams opened", 1, counting.streams);
+
+            // Reading again does not change the digest
+            try (InputStream in = instance.getAsInputStream()) {
+                assertEquals("byte", bytes[0] & 0xff, in.read());
+            }
+            assertEquals("digest after partial read", sha256(bytes), Hex.toHexString(instance.getDigest()));
+        }
+    }
+
+    /**
+     * Tests that the digest is computed by reading the data when the
+     * stream was not read until the end.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testReadableData_partlyRead() throws Exception {
+        LOG.info("testReadableData_partlyRead");
+        final byte[] bytes = createData(10000);
+
+        try (CloseableReadableData data = new ByteArrayReadableData(bytes, fileRepository)) {
+            final DigestingReadableData instance = new DigestingReadableData(data, MessageDigest.getInstance("SHA-256"));
+
+            try (InputStream in = instance.getAsInputStream()) {
+                assertEquals("read", 100, in.read(new byte[100]));
+                assertEquals("skipped", 100, in.skip(100));
+            }
+            assertFalse("not complete", instance.isDigestComplete());
+            assertEquals("digest", sha256(bytes), Hex.toHexString(instance.getDigest()));
+        }
+    }
+
+    /**
+     * Tests that the bytes digested from a stream that was closed before the
+     * end are not included in the digest computed from the byte array.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testReadableData_partlyReadThenByteArray() throws Exception {
+        LOG.info("testReadableData_partlyReadThenByteArray");
+        final byte[] bytes = createData(10000);
+
+        try (CloseableReadableData data = new ByteArrayReadableData(bytes, fileRepository)) {
+            final DigestingReadableData instance = new DigestingReadableData(data, MessageDigest.getInstance("SHA-256"));
+
+            try (InputStream in = instance.getAsInputStream()) {
+                assertEquals("read", 100, in.read(new byte[100]));
+            }
+            assertFalse("not complete", instance.isDigestComplete());
+            assertArrayEquals("byte array", bytes, instance.getAsByteArray());
+            assertTrue("complete from byte array", instance.isDigestComplete());
+            assertEquals("digest", sha256(bytes), Hex.toHexString(instance.getDigest()));
+        }
+    }
+
+    /**
+     * Tests that the digest is computed by reading the data when it was only
+     * accessed as a file and when it was read as a byte array.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testReadableData_fileAndByteArray() throws Exception {
+        LOG.info("testReadableData_fileAndByteArray");
+        final byte[] bytes = createData(10000);
+
+        try (CloseableReadableData data = new ByteArrayReadableData(bytes, fileRepository)) {
+            DigestingReadableData instance = new DigestingReadableData(data, MessageDigest.getInstance("SHA-256"));
+            assertArrayEquals("file", bytes, FileUtils.readFileToByteArray(instance.getAsFile()));
+            assertEquals("digest from file", sha256(bytes), Hex.toHexString(instance.getDigest()));
+
+            instance = new DigestingReadableData(data, MessageDigest.getInstance("SHA-256"));
+            assertArrayEquals("byte array", bytes, instance.getAsByteArray());
+            assertTrue("complete from byte array", instance.isDigestComplete());
+            assertEquals("digest from byte array", sha256(bytes), Hex.toHexString(instance.getDigest()));
+        }
+    }
+
+    /**
+     * Tests that the digest is computed while the data is written to the
+     * output streams.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testWritableData_digestWhileWriting() throws Exception {
+        LOG.info("testWritableData_digestWhileWriting");
+        final byte[] bytes = createData(100000);
+
+        for (boolean toDisk : new boolean[] {true, false}) {
+            try (CloseableWritableData data = new TemporarlyWritableData(toDisk, fileRepository)) {
+                final DigestingWritableData instance = new DigestingWritableData(data, MessageDigest.getInstance("SHA-256"));
+                try (OutputStream out = instance.getAsOutputStream()) {
+                    out.write(bytes[0]);
+                    out.write(bytes, 1, bytes.length - 1);
+                }
+                assertEquals("digest to disk: " + toDisk, sha256(bytes), Hex.toHexString(instance.getDigest()));
+                assertArrayEquals("data to disk: " + toDisk, bytes, instance.toReadableData().getAsByteArray());
+            }
+        }
+    }
+
+    /**
+     * Tests that the digest is correct when the data is written using a new
+     * file output stream and when written directly to the file.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testWritableData_file() throws Exception {
+        LOG.info("testWritableData_file");
+        final byte[] bytes1 = createData(1000);
+        final byte[] bytes2 = createData(2000);
+
+        try (CloseableWritableData data = new TemporarlyWritableData(false, fileRepository)) {
+            final DigestingWritableData instance = new DigestingWritableData(data, MessageDigest.getInstance("SHA-256"));
+            try (OutputStream out = instance.getAsNewFileOutputStream()) {
+                out.write(bytes1);
+            }
+            assertEquals("digest new stream", sha256(bytes1), Hex.toHexString(instance.getDigest()));
+
+            // Overwritten using a second stream
+            try (OutputStream out = instance.getAsNewFileOutputStream()) {
+                out.write(bytes2);
+            }
+            assertEquals("digest second stream", sha256(bytes2), Hex.toHexString(instance.getDigest()));
+
+            // Written to the file directly
+            FileUtils.writeByteArrayToFile(instance.getAsFile(), bytes1);
+            assertEquals("digest file", sha256(bytes1), Hex.toHexString(instance.getDigest()));
+        }
+    }
+
+    /**
+     * ReadableData counting the number of streams opened.
+     */
+    private static class CountingReadableData implements ReadableData {
+        private final ReadableData data;
+        private int streams;
+
+        CountingReadableData(final ReadableData data) {
+            this.data = data;
+        }
+
+        @Override
+        public byte[] getAsByteArray() throws IOException {
+            return data.getAsByteArray();
+        }
+
+        @Override
+        public InputStream getAsInputStream() throws IOException {
+            streams++;
+            return data.getAsInputStream();
+        }
+
+        @Override
+        public File getAsFile() throws IOException {
+            return data.getAsFile();
+        }
+
+        @Override
+        public long getLength() {
+            return data.getLength();
+        }
+
+        @Override
+        public boolean isFile() {
+            return data.isFile();
+        }
+    }
+}
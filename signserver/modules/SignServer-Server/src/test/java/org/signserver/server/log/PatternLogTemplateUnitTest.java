@@ -0,0 +1,112 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.log;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the PatternLogTemplate class.
+ *
+ * @version $Id$
+ */
+public class PatternLogTemplateUnitTest {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(PatternLogTemplateUnitTest.class);
+
+    private static final Pattern PATTERN = Pattern.compile("\\$\\{(.+?)\\}");
+
+    private static final String ORDER = "AUDIT; LOG_ID: ${LOG_ID}; CLIENT_IP: ${CLIENT_IP}; "
+            + "RequestTime: ${LOG_TIME}; ResponseTime: ${REPLY_TIME}; CERT: ${CERT}; EXCEPTION: ${EXCEPTION}";
+
+    /**
+     * Tests rendering with values, missing values and the defaults.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testRender() throws Exception {
+        LOG.info("testRender");
+        final PatternLogTemplate instance = new PatternLogTemplate(PATTERN, ORDER, "yyyy", "GMT");
+        assertEquals("keys", new LinkedHashSet<>(Arrays.asList("LOG_ID", "CLIENT_IP", "LOG_TIME", "REPLY_TIME", "CERT", "EXCEPTION")), instance.getKeys());
+
+        final Map<String, Object> fields = new HashMap<>();
+        fields.put("LOG_ID", "4711");
+        fields.put("CLIENT_IP", "10.0.0.1");
+        fields.put("LOG_TIME", "2020");
+        fields.put("REPLY_TIME", "42");
+        fields.put("EXCEPTION", null);
+        assertEquals("AUDIT; LOG_ID: 4711; CLIENT_IP: 10.0.0.1; RequestTime: 2020; ResponseTime: 42; CERT: ${CERT}; EXCEPTION: null"
+                + System.lineSeparator(), instance.render(fields));
+
+        final String defaults = instance.render(new HashMap<>());
+        assertTrue("defaults: " + defaults, defaults.matches(
+                "AUDIT; LOG_ID: 0; CLIENT_IP: \\$\\{CLIENT_IP\\}; RequestTime: \\d{4}; ResponseTime: \\d+; CERT: \\$\\{CERT\\}; EXCEPTION: \\$\\{EXCEPTION\\}\\s+"));
+    }
+
+    /**
+     * Tests that values are rendered as they are, also with characters
+     * having a special meaning in regular expression replacements.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testSpecialCharacters() throws Exception {
+        LOG.info("testSpecialCharacters");
+        final PatternLogTemplate instance = new PatternLogTemplate(PATTERN, "[${A}]", "yyyy", null);
+        assertEquals("[$1 \\ ${B}]" + System.lineSeparator(), instance.render(Collections.singletonMap("A", "$1 \\ ${B}")));
+    }
+
+    /**
+     * Tests that only the values of the fields referenced are converted to
+     * strings.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testOnlyReferencedRendered() throws Exception {
+        LOG.info("testOnlyReferencedRendered");
+        final PatternLogTemplate instance = new PatternLogTemplate(PATTERN, ORDER, "yyyy", "GMT");
+        final CountingLoggable referenced = new CountingLoggable("cert");
+        final CountingLoggable unreferenced = new CountingLoggable("request");
+        final LogMap fields = new LogMap();
+        fields.put("CERT", referenced);
+        fields.put("REQUEST_ENCODED", unreferenced);
+
+        assertTrue(instance.render(fields).contains("CERT: cert;"));
+        assertEquals("referenced", 1, referenced.count.get());
+        assertEquals("unreferenced", 0, unreferenced.count.get());
+    }
+
+    /** Loggable counting the number of times it is rendered. */
+    private static class CountingLoggable implements Loggable {
+        private final String value;
+        private final AtomicInteger count = new AtomicInteger();
+
+        CountingLoggable(final String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            count.incrementAndGet();
+            return value;
+        }
+    }
+}
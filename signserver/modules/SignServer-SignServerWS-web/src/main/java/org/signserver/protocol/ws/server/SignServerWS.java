@@ -24,6 +24,7 @@ import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.jws.WebMethod;
 import javax.jws.WebParam;
 import javax.jws.WebService;
@@ -85,6 +86,7 @@ import org.signserver.server.log.Loggable;
 import org.signserver.server.nodb.FileBasedDatabaseManager;
 import org.signserver.validationservice.common.ValidateRequest;
 import org.signserver.validationservice.common.ValidateResponse;
+import org.signserver.web.common.BatchExecutor;
 
 /**
  * Legacy SignServerWS interface.
@@ -123,9 +125,16 @@ public class SignServerWS {
 
     private DataFactory dataFactory;
 
+    /** Executor for processing the requests of a batch in parallel. */
+    @Resource
+    private ManagedExecutorService executorService;
+
+    private BatchExecutor batchExecutor;
+
     @PostConstruct
     protected void init() {
         dataFactory = DataUtils.createDataFactory();
+        batchExecutor = new BatchExecutor(executorService);
     }
 
     /**
@@ -203,236 +212,247 @@ public class SignServerWS {
             @WebParam(name = "arg1") final Collection<ProcessRequestWS> requests
     ) throws InvalidWorkerIdException, IllegalRequestException, CryptoTokenOfflineException, SignServerException {
         LOG.debug("WS process called");
-        final ArrayList<ProcessResponseWS> returnValues = new ArrayList<>();
         final HttpServletRequest servletRequest = getHttpServletRequest();
         final String requestIP = getRequestIP();
         final X509Certificate clientCertificate = getClientCertificate();
-        final RequestContext requestContext = new RequestContext(clientCertificate, requestIP);
-        // Add credentials to the context
-        CredentialUtils.addToRequestContext(requestContext, servletRequest, clientCertificate);
-        final LogMap logMap = LogMap.getInstance(requestContext);
+        // Read from the servlet request here as the requests in the batch
+        // can be processed by other threads
+        final String requestUrl = servletRequest.getRequestURL().append("?")
+                .append(servletRequest.getQueryString()).toString();
+        final String contentLength = servletRequest.getHeader("Content-Length");
         final String xForwardedFor = servletRequest.getHeader(RequestContext.X_FORWARDED_FOR);
-        // Add HTTP specific log entries
-        logMap.put(IWorkerLogger.LOG_REQUEST_FULLURL, new Loggable() {
-            @Override
-            public String toString() {
-                return servletRequest.getRequestURL().append("?")
-                        .append(servletRequest.getQueryString()).toString();
-            }
-        });
-        //
-        logMap.put(IWorkerLogger.LOG_REQUEST_LENGTH, new Loggable() {
-            @Override
-            public String toString() {
-                return servletRequest.getHeader("Content-Length");
-            }
-        });
-        //
-        logMap.put(IWorkerLogger.LOG_XFORWARDEDFOR, new Loggable() {
-            @Override
-            public String toString() {
-                return xForwardedFor;
-            }
-        });
-        if (xForwardedFor != null) {
-            requestContext.put(RequestContext.X_FORWARDED_FOR, xForwardedFor);
-        }
-        // Add and log the X-SignServer-Custom-1 header if available
         final String xCustom1 = servletRequest.getHeader(RequestContext.X_SIGNSERVER_CUSTOM_1);
-        if (xCustom1 != null && !xCustom1.isEmpty()) {
-            requestContext.put(RequestContext.X_SIGNSERVER_CUSTOM_1, xCustom1);
-        }
-        logMap.put(IWorkerLogger.LOG_XCUSTOM1, xCustom1);
         //
         final WorkerIdentifier wi = WorkerIdentifier.createFromIdOrName(workerIdOrName);
-        final ArrayList<Certificate> signerCertificateChain = getSignerCertificateChain(wi);
+        final WorkerStatus status = getWorkerSession().getStatus(wi);
+        final ArrayList<Certificate> signerCertificateChain = getSignerCertificateChain(status);
+        final List<ProcessRequestWS> batch = new ArrayList<>(requests);
         //
-        for (ProcessRequestWS next : requests) {
-            ProcessRequest req;
-            try {
-                req = RequestAndResponseManager.parseProcessRequest(next.getRequestData());
-            } catch (IOException e1) {
-                LOG.error("Error parsing process request", e1);
-                throw new IllegalRequestException(e1.getMessage());
-            }
-            //
-            Map<String, String> metadata = next.getRequestMetadata();
-            if (metadata == null) {
-                requestContext.remove(RequestContext.REQUEST_METADATA);
-            } else {
-                requestContext.put(RequestContext.REQUEST_METADATA, metadata);
-                final String fileName = metadata.get(RequestContext.FILENAME);
-                if (fileName != null) {
-                    requestContext.put(RequestContext.FILENAME, fileName);
-                    logMap.put(IWorkerLogger.LOG_FILENAME, new Loggable() {
-                        @Override
-                        public String toString() {
-                            return fileName;
-                        }
-                    });
-                }
+        final int maxSize = getIntProperty(status, BatchExecutor.BATCH_MAX_SIZE, BatchExecutor.DEFAULT_BATCH_MAX_SIZE);
+        if (maxSize >= 0 && batch.size() > maxSize) {
+            throw new IllegalRequestException("Too many requests in batch: " + batch.size() + ", maximum is " + maxSize);
+        }
+        final int parallelism = getIntProperty(status, BatchExecutor.BATCH_PARALLELISM, BatchExecutor.DEFAULT_BATCH_PARALLELISM);
+
+        // Each request gets its own context as they can be processed by
+        // other threads at the same time
+        final List<RequestContext> requestContexts = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            final RequestContext requestContext = new RequestContext(clientCertificate, requestIP);
+            // Add credentials to the context
+            CredentialUtils.addToRequestContext(requestContext, servletRequest, clientCertificate);
+            final LogMap logMap = LogMap.getInstance(requestContext);
+            // Add HTTP specific log entries
+            logMap.put(IWorkerLogger.LOG_REQUEST_FULLURL, requestUrl);
+            logMap.put(IWorkerLogger.LOG_REQUEST_LENGTH, contentLength);
+            logMap.put(IWorkerLogger.LOG_XFORWARDEDFOR, xForwardedFor);
+            if (xForwardedFor != null) {
+                requestContext.put(RequestContext.X_FORWARDED_FOR, xForwardedFor);
             }
-            if (wi.hasName()) {
-                logMap.put(IWorkerLogger.LOG_WORKER_NAME, new Loggable() {
-                    @Override
-                    public String toString() {
-                        return wi.getName();
-                    }
-                });
+            // Add and log the X-SignServer-Custom-1 header if available
+            if (xCustom1 != null && !xCustom1.isEmpty()) {
+                requestContext.put(RequestContext.X_SIGNSERVER_CUSTOM_1, xCustom1);
             }
-            if (wi.hasId()) {
-                logMap.put(IWorkerLogger.LOG_WORKER_ID, new Loggable() {
+            logMap.put(IWorkerLogger.LOG_XCUSTOM1, xCustom1);
+            requestContexts.add(requestContext);
+        }
+
+        try {
+            return batchExecutor.execute(status.getWorkerId(), parallelism, batch.size(),
+                    (int index) -> processRequest(wi, batch.get(index), requestContexts.get(index), signerCertificateChain));
+        } catch (InvalidWorkerIdException | IllegalRequestException | CryptoTokenOfflineException | SignServerException | RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new SignServerException("Batch processing failed: " + ex.getMessage(), ex);
+        }
+    }
+
+    private ProcessResponseWS processRequest(final WorkerIdentifier wi, final ProcessRequestWS next,
+            final RequestContext requestContext, final ArrayList<Certificate> signerCertificateChain)
+            throws IllegalRequestException, CryptoTokenOfflineException, SignServerException {
+        final LogMap logMap = LogMap.getInstance(requestContext);
+        ProcessRequest req;
+        try {
+            req = RequestAndResponseManager.parseProcessRequest(next.getRequestData());
+        } catch (IOException e1) {
+            LOG.error("Error parsing process request", e1);
+            throw new IllegalRequestException(e1.getMessage());
+        }
+        //
+        Map<String, String> metadata = next.getRequestMetadata();
+        if (metadata == null) {
+            requestContext.remove(RequestContext.REQUEST_METADATA);
+        } else {
+            requestContext.put(RequestContext.REQUEST_METADATA, metadata);
+            final String fileName = metadata.get(RequestContext.FILENAME);
+            if (fileName != null) {
+                requestContext.put(RequestContext.FILENAME, fileName);
+                logMap.put(IWorkerLogger.LOG_FILENAME, new Loggable() {
                     @Override
                     public String toString() {
-                        return String.valueOf(wi.getId());
+                        return fileName;
                     }
                 });
             }
-            // TODO: Duplicated in SignServerWS, AdminWS, ProcessSessionBean (remote)
-            CloseableReadableData requestData = null;
-            CloseableWritableData responseData = null;
-            int requestID;
-            try {
-                final Request req2;
-                // Use the new request types with large file support for
-                // GenericSignRequest and GenericValidationRequest
-                if (req instanceof GenericSignRequest) {
-                    byte[] data = ((GenericSignRequest) req).getRequestData();
-                    requestID = ((GenericSignRequest) req).getRequestID();
-                    // Upload handling (Note: close in finally clause)
-                    UploadConfig uploadConfig = UploadConfig.create(globalSession);
-                    requestData = dataFactory.createReadableData(
-                            data,
-                            uploadConfig.getMaxUploadSize(),
-                            uploadConfig.getRepository()
-                    );
-                    responseData = dataFactory.createWritableData(requestData, uploadConfig.getRepository());
-                    req2 = new SignatureRequest(requestID, requestData, responseData);
-                } else if (req instanceof GenericValidationRequest) {
-                    byte[] data = ((GenericValidationRequest) req).getRequestData();
-                    requestID = ((GenericValidationRequest) req).getRequestID();
-                    // Upload handling (Note: close in finally clause)
-                    UploadConfig uploadConfig = UploadConfig.create(globalSession);
-                    requestData = dataFactory.createReadableData(
-                            data,
-                            uploadConfig.getMaxUploadSize(),
-                            uploadConfig.getRepository()
-                    );
-                    req2 = new DocumentValidationRequest(requestID, requestData);
-                } else if (req instanceof ValidateRequest) {
-                    final ValidateRequest vr = (ValidateRequest) req;
-                    // Upload handling
-                    req2 = new CertificateValidationRequest(vr.getCertificate(), vr.getCertPurposesString());
-                } else if (req instanceof SODSignRequest) {
-                    SODSignRequest sodReq = (SODSignRequest) req;
-                    req2 = new SODRequest(
-                            sodReq.getRequestID(),
-                            sodReq.getDataGroupHashes(),
-                            sodReq.getLdsVersion(),
-                            sodReq.getUnicodeVersion(),
-                            responseData
-                    );
-                } else {
-                    // Passthroughs for all legacy requests
-                    req2 = new LegacyRequest(req);
-                }
-
-                final Response resp = getProcessSession().process(
-                        new AdminInfo("Client user", null, null),
-                        wi, req2, requestContext);
-                final ProcessResponse processResponse;
-                //
-                if (resp instanceof SignatureResponse) {
-                    SignatureResponse sigResp = (SignatureResponse) resp;
-                    processResponse = new GenericSignResponse(
-                            sigResp.getRequestID(),
-                            responseData.toReadableData().getAsByteArray(),
-                            sigResp.getSignerCertificate(),
-                            sigResp.getArchiveId(),
-                            sigResp.getArchivables()
-                    );
-                } else if (resp instanceof DocumentValidationResponse) {
-                    DocumentValidationResponse docResp = (DocumentValidationResponse) resp;
-                    processResponse = new GenericValidationResponse(
-                            docResp.getRequestID(),
-                            docResp.isValid(),
-                            convert(docResp.getCertificateValidationResponse()),
-                            requestData.getAsByteArray()
-                    );
-                } else if (resp instanceof CertificateValidationResponse) {
-                    CertificateValidationResponse certResp = (CertificateValidationResponse) resp;
-                    processResponse = new ValidateResponse(
-                            certResp.getValidation(),
-                            certResp.getValidCertificatePurposes()
-                    );
-                } else if (resp instanceof SODResponse) {
-                    SODResponse sodResp = (SODResponse) resp;
-                    processResponse = new SODSignResponse(
-                            sodResp.getRequestID(),
-                            responseData.toReadableData().getAsByteArray(),
-                            sodResp.getSignerCertificate(),
-                            sodResp.getArchiveId(),
-                            sodResp.getArchivables()
-                    );
-                } else if (resp instanceof LegacyResponse) {
-                    processResponse = ((LegacyResponse) resp).getLegacyResponse();
-                } else {
-                    throw new SignServerException("Unexpected response type: " + resp);
+        }
+        if (wi.hasName()) {
+            logMap.put(IWorkerLogger.LOG_WORKER_NAME, new Loggable() {
+                @Override
+                public String toString() {
+                    return wi.getName();
                 }
-                //
-                ProcessResponseWS wsResponse = new ProcessResponseWS();
-                if (processResponse instanceof GenericSignResponse) {
-                    GenericSignResponse sigResp = (GenericSignResponse) processResponse;
-                    wsResponse.setRequestID(sigResp.getRequestID());
-                    try {
-                        wsResponse.setWorkerCertificate(new Certificate(sigResp.getSignerCertificate()));
-                        wsResponse.setWorkerCertificateChain(signerCertificateChain);
-                    } catch (CertificateEncodingException e) {
-                        LOG.error(e);
-                    }
+            });
+        }
+        if (wi.hasId()) {
+            logMap.put(IWorkerLogger.LOG_WORKER_ID, new Loggable() {
+                @Override
+                public String toString() {
+                    return String.valueOf(wi.getId());
                 }
-                //
+            });
+        }
+        // TODO: Duplicated in SignServerWS, AdminWS, ProcessSessionBean (remote)
+        CloseableReadableData requestData = null;
+        CloseableWritableData responseData = null;
+        int requestID;
+        try {
+            final Request req2;
+            // Use the new request types with large file support for
+            // GenericSignRequest and GenericValidationRequest
+            if (req instanceof GenericSignRequest) {
+                byte[] data = ((GenericSignRequest) req).getRequestData();
+                requestID = ((GenericSignRequest) req).getRequestID();
+                // Upload handling (Note: close in finally clause)
+                UploadConfig uploadConfig = UploadConfig.create(globalSession);
+                requestData = dataFactory.createReadableData(
+                        data,
+                        uploadConfig.getMaxUploadSize(),
+                        uploadConfig.getRepository()
+                );
+                responseData = dataFactory.createWritableData(requestData, uploadConfig.getRepository());
+                req2 = new SignatureRequest(requestID, requestData, responseData);
+            } else if (req instanceof GenericValidationRequest) {
+                byte[] data = ((GenericValidationRequest) req).getRequestData();
+                requestID = ((GenericValidationRequest) req).getRequestID();
+                // Upload handling (Note: close in finally clause)
+                UploadConfig uploadConfig = UploadConfig.create(globalSession);
+                requestData = dataFactory.createReadableData(
+                        data,
+                        uploadConfig.getMaxUploadSize(),
+                        uploadConfig.getRepository()
+                );
+                req2 = new DocumentValidationRequest(requestID, requestData);
+            } else if (req instanceof ValidateRequest) {
+                final ValidateRequest vr = (ValidateRequest) req;
+                // Upload handling
+                req2 = new CertificateValidationRequest(vr.getCertificate(), vr.getCertPurposesString());
+            } else if (req instanceof SODSignRequest) {
+                SODSignRequest sodReq = (SODSignRequest) req;
+                req2 = new SODRequest(
+                        sodReq.getRequestID(),
+                        sodReq.getDataGroupHashes(),
+                        sodReq.getLdsVersion(),
+                        sodReq.getUnicodeVersion(),
+                        responseData
+                );
+            } else {
+                // Passthroughs for all legacy requests
+                req2 = new LegacyRequest(req);
+            }
+
+            final Response resp = getProcessSession().process(
+                    new AdminInfo("Client user", null, null),
+                    wi, req2, requestContext);
+            final ProcessResponse processResponse;
+            //
+            if (resp instanceof SignatureResponse) {
+                SignatureResponse sigResp = (SignatureResponse) resp;
+                processResponse = new GenericSignResponse(
+                        sigResp.getRequestID(),
+                        responseData.toReadableData().getAsByteArray(),
+                        sigResp.getSignerCertificate(),
+                        sigResp.getArchiveId(),
+                        sigResp.getArchivables()
+                );
+            } else if (resp instanceof DocumentValidationResponse) {
+                DocumentValidationResponse docResp = (DocumentValidationResponse) resp;
+                processResponse = new GenericValidationResponse(
+                        docResp.getRequestID(),
+                        docResp.isValid(),
+                        convert(docResp.getCertificateValidationResponse()),
+                        requestData.getAsByteArray()
+                );
+            } else if (resp instanceof CertificateValidationResponse) {
+                CertificateValidationResponse certResp = (CertificateValidationResponse) resp;
+                processResponse = new ValidateResponse(
+                        certResp.getValidation(),
+                        certResp.getValidCertificatePurposes()
+                );
+            } else if (resp instanceof SODResponse) {
+                SODResponse sodResp = (SODResponse) resp;
+                processResponse = new SODSignResponse(
+                        sodResp.getRequestID(),
+                        responseData.toReadableData().getAsByteArray(),
+                        sodResp.getSignerCertificate(),
+                        sodResp.getArchiveId(),
+                        sodResp.getArchivables()
+                );
+            } else if (resp instanceof LegacyResponse) {
+                processResponse = ((LegacyResponse) resp).getLegacyResponse();
+            } else {
+                throw new SignServerException("Unexpected response type: " + resp);
+            }
+            //
+            ProcessResponseWS wsResponse = new ProcessResponseWS();
+            if (processResponse instanceof GenericSignResponse) {
+                GenericSignResponse sigResp = (GenericSignResponse) processResponse;
+                wsResponse.setRequestID(sigResp.getRequestID());
                 try {
-                    wsResponse.setResponseData(RequestAndResponseManager.serializeProcessResponse(processResponse));
-                } catch (IOException e1) {
-                    LOG.error("Error parsing process response", e1);
-                    throw new SignServerException(e1.getMessage());
+                    wsResponse.setWorkerCertificate(new Certificate(sigResp.getSignerCertificate()));
+                    wsResponse.setWorkerCertificateChain(signerCertificateChain);
+                } catch (CertificateEncodingException e) {
+                    LOG.error(e);
                 }
+            }
+            //
+            try {
+                wsResponse.setResponseData(RequestAndResponseManager.serializeProcessResponse(processResponse));
+            } catch (IOException e1) {
+                LOG.error("Error parsing process response", e1);
+                throw new SignServerException(e1.getMessage());
+            }
 
-                returnValues.add(wsResponse);
-            } catch (FileUploadBase.SizeLimitExceededException ex) {
-                LOG.error("Maximum content length exceeded: " + ex.getLocalizedMessage());
-                throw new IllegalRequestException("Maximum content length exceeded");
-            } catch (FileUploadException ex) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Upload failed", ex);
-                }
-                throw new IllegalRequestException("Upload failed: " + ex.getLocalizedMessage());
-            } catch (IOException ex) {
-                throw new SignServerException("IO error", ex);
-            } finally {
-                if (requestData != null) {
-                    try {
-                        requestData.close();
-                    } catch (IOException ex) {
-                        LOG.error("Unable to remove temporary upload file: " + ex.getLocalizedMessage());
-                    }
+            return wsResponse;
+        } catch (FileUploadBase.SizeLimitExceededException ex) {
+            LOG.error("Maximum content length exceeded: " + ex.getLocalizedMessage());
+            throw new IllegalRequestException("Maximum content length exceeded");
+        } catch (FileUploadException ex) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Upload failed", ex);
+            }
+            throw new IllegalRequestException("Upload failed: " + ex.getLocalizedMessage());
+        } catch (IOException ex) {
+            throw new SignServerException("IO error", ex);
+        } finally {
+            if (requestData != null) {
+                try {
+                    requestData.close();
+                } catch (IOException ex) {
+                    LOG.error("Unable to remove temporary upload file: " + ex.getLocalizedMessage());
                 }
-                if (responseData != null) {
-                    try {
-                        responseData.close();
-                    } catch (IOException ex) {
-                        LOG.error("Unable to remove temporary response file: " + ex.getLocalizedMessage());
-                    }
+            }
+            if (responseData != null) {
+                try {
+                    responseData.close();
+                } catch (IOException ex) {
+                    LOG.error("Unable to remove temporary response file: " + ex.getLocalizedMessage());
                 }
             }
         }
-        return returnValues;
     }
 
-    private ArrayList<Certificate> getSignerCertificateChain(WorkerIdentifier wi) throws InvalidWorkerIdException {
+    private ArrayList<Certificate> getSignerCertificateChain(WorkerStatus ws) {
         try {
-            WorkerStatus ws = getWorkerSession().getStatus(wi);
             Collection<java.security.cert.Certificate> signerCertificateChain =
                     ws.getActiveSignerConfig().getSignerCertificateChain();
 
@@ -449,6 +469,19 @@ public class SignServerWS {
         return null;
     }
 
+    private int getIntProperty(final WorkerStatus status, final String property, final int defaultValue) {
+        final String value = status.getActiveSignerConfig().getProperty(property);
+        if (value != null && !value.trim().isEmpty()) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOG.error("Error: Worker " + status.getWorkerId() + " badly configured, property "
+                        + property + " should only contain integers");
+            }
+        }
+        return defaultValue;
+    }
+
     private X509Certificate getClientCertificate() {
         final HttpServletRequest request = getHttpServletRequest();
         X509Certificate[] certificates =
@@ -12,6 +12,8 @@
  *************************************************************************/
 package org.signserver.server.cryptotokens;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyStoreException;
@@ -23,6 +25,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.function.Consumer;
 import org.apache.log4j.Logger;
 import org.cesecore.audit.AuditLogEntry;
 import org.cesecore.authorization.AuthorizationDeniedException;
@@ -530,6 +533,46 @@ public class InternalKeystoreCryptoTokenTest extends CryptoTokenTestBase {
                         throw new UnsupportedOperationException("Not supported yet."); 
                     }
 
+                    @Override
+                    public boolean writeArchivedData(AdminInfo adminInfo, String uniqueId, OutputStream out) throws IOException {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
+                    @Override
+                    public List<ArchiveMetadata> searchArchiveAfter(AdminInfo adminInfo, Date afterTime, String afterUniqueId, int max, QueryCriteria criteria, boolean descending, boolean includeData) throws AuthorizationDeniedException {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
+                    @Override
+                    public long exportArchive(AdminInfo adminInfo, QueryCriteria criteria, boolean descending, boolean includeData, Consumer<ArchiveMetadata> consumer) throws AuthorizationDeniedException {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
+                    @Override
+                    public List<ArchiveMetadata> searchArchiveAfter(Date afterTime, String afterUniqueId, int max, QueryCriteria criteria, boolean descending, boolean includeData) throws AuthorizationDeniedException {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
+                    @Override
+                    public long topUpAccountBalance(AdminInfo adminInfo, String accountId, long amount) {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
+                    @Override
+                    public long topUpAccountBalance(String accountId, long amount) {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
+                    @Override
+                    public Long getAccountBalance(String accountId) {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
+                    @Override
+                    public Map<String, Long> getAccountBalances() {
+                        throw new UnsupportedOperationException("Not supported yet.");
+                    }
+
                     
                 };
             }
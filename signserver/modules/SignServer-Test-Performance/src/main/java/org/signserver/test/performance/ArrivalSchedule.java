@@ -0,0 +1,80 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.test.performance;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedule of requests arriving at a constant rate, shared by the worker
+ * threads of an open-loop test.
+ *
+ * Each worker thread takes the next slot, waits until its time and then
+ * sends the request. The time of a slot does not depend on the response
+ * times, so when all threads are busy the slots fall behind and the time
+ * waited is included in the latency measured from the time of the slot.
+ * This avoids the coordinated omission of a closed-loop test, where a slow
+ * response also delays the following requests that would have been sent.
+ *
+ * @version $Id$
+ */
+public class ArrivalSchedule {
+
+    private final double ratePerSecond;
+    private final double intervalNanos;
+    private final AtomicLong nextSlot = new AtomicLong();
+    private volatile long startNanos;
+
+    /**
+     * Creates a new schedule.
+     *
+     * @param ratePerSecond number of requests per second
+     */
+    public ArrivalSchedule(final double ratePerSecond) {
+        if (!(ratePerSecond > 0)) {
+            throw new IllegalArgumentException("Rate must be larger than 0: " + ratePerSecond);
+        }
+        this.ratePerSecond = ratePerSecond;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+    }
+
+    /**
+     * Starts the schedule, with the first slot at the given time.
+     *
+     * @param startNanos time as given by System.nanoTime()
+     */
+    public void start(final long startNanos) {
+        this.startNanos = startNanos;
+        nextSlot.set(0);
+    }
+
+    /**
+     * Takes the next slot.
+     *
+     * @return the time the request should be sent, as by System.nanoTime()
+     */
+    public long nextSlot() {
+        return startNanos + (long) (nextSlot.getAndIncrement() * intervalNanos);
+    }
+
+    /**
+     * @return number of slots taken
+     */
+    public long getSlotsTaken() {
+        return nextSlot.get();
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+}
@@ -0,0 +1,108 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.test.performance;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Input documents for the requests, shared by the worker threads.
+ *
+ * A corpus created from a directory gives the files in it in order of their
+ * names and then starts over, so that the threads together go through all
+ * of the inputs. The files are read for each request so that large corpora
+ * do not need to fit in memory.
+ *
+ * @version $Id$
+ */
+public class Corpus {
+
+    private final byte[] data;
+    private final List<File> files;
+    private final AtomicLong position = new AtomicLong();
+
+    /**
+     * Creates a corpus always giving the same data.
+     *
+     * @param data input
+     */
+    public Corpus(final byte[] data) {
+        this.data = data;
+        this.files = Collections.emptyList();
+    }
+
+    /**
+     * Creates a corpus going through the files.
+     *
+     * @param files inputs
+     */
+    public Corpus(final List<File> files) {
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No input files");
+        }
+        this.data = null;
+        this.files = new ArrayList<>(files);
+    }
+
+    /**
+     * Creates a corpus of the regular files in a directory.
+     *
+     * @param directory containing the inputs
+     * @return the new corpus
+     * @throws IOException in case the directory could not be read or does not
+     * contain any files
+     */
+    public static Corpus fromDirectory(final File directory) throws IOException {
+        final File[] files = directory.listFiles(File::isFile);
+        if (files == null) {
+            throw new IOException("Not a directory: " + directory.getAbsolutePath());
+        }
+        if (files.length == 0) {
+            throw new IOException("No files in directory: " + directory.getAbsolutePath());
+        }
+        Arrays.sort(files);
+        return new Corpus(Arrays.asList(files));
+    }
+
+    /**
+     * @return number of different inputs
+     */
+    public int size() {
+        return data == null ? files.size() : 1;
+    }
+
+    /**
+     * Gives the next input.
+     *
+     * @return content of the next input
+     * @throws IOException in case the file could not be read
+     */
+    public byte[] next() throws IOException {
+        if (data != null) {
+            return data;
+        }
+        final int index = (int) (position.getAndIncrement() % files.size());
+        return Files.readAllBytes(files.get(index).toPath());
+    }
+
+    @Override
+    public String toString() {
+        return data == null ? files.size() + " files" : data.length + " bytes";
+    }
+}
@@ -0,0 +1,171 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.test.performance;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of latencies in nanoseconds with buckets of logarithmically
+ * increasing width, in the same way as HdrHistogram.
+ *
+ * Values below 256 are counted exactly. Larger values are counted in buckets
+ * of 128 sub-buckets each, covering one power of two, giving a relative
+ * error of less than 1% for any recorded value. The memory used is constant
+ * regardless of the number of values recorded.
+ *
+ * The methods are synchronized so that one thread can record values while
+ * another one drains the histogram for reporting.
+ *
+ * @version $Id$
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKET_HALF_COUNT << 1;
+    private static final int BUCKET_COUNT = Long.SIZE - 1 - SUB_BUCKET_BITS;
+    private static final int LENGTH = (BUCKET_COUNT + 1) * SUB_BUCKET_HALF_COUNT;
+
+    private final long[] counts = new long[LENGTH];
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Records one value.
+     *
+     * @param value in nanoseconds, negative values are counted as 0
+     */
+    public synchronized void record(final long value) {
+        final long v = Math.max(0, value);
+        counts[indexOf(v)]++;
+        totalCount++;
+        sum += v;
+        if (v < min) {
+            min = v;
+        }
+        if (v > max) {
+            max = v;
+        }
+    }
+
+    /**
+     * Adds all values of the other histogram to this one.
+     *
+     * @param other histogram to add values from
+     */
+    public synchronized void add(final LatencyHistogram other) {
+        synchronized (other) {
+            for (int i = 0; i < LENGTH; i++) {
+                counts[i] += other.counts[i];
+            }
+            totalCount += other.totalCount;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+    }
+
+    /**
+     * Adds all values of this histogram to the target and resets this one,
+     * so that no value recorded in between is lost.
+     *
+     * @param target histogram to add the values to
+     */
+    public synchronized void drainTo(final LatencyHistogram target) {
+        target.add(this);
+        reset();
+    }
+
+    /**
+     * Removes all values.
+     */
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * @return number of values recorded
+     */
+    public synchronized long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the smallest value recorded or 0 if none
+     */
+    public synchronized long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    /**
+     * @return the largest value recorded or 0 if none
+     */
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * @return the mean of the values recorded or NaN if none
+     */
+    public synchronized double getMean() {
+        return totalCount == 0 ? Double.NaN : (double) sum / totalCount;
+    }
+
+    /**
+     * Gives the value at the percentile, meaning that the given percentage of
+     * the recorded values are smaller than or equivalent to it. The value
+     * returned is the highest value counted in the same bucket, but never
+     * larger than the largest value recorded.
+     *
+     * @param percentile from 0 to 100
+     * @return the value or 0 if no values have been recorded
+     */
+    public synchronized long getValueAtPercentile(final double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        final double p = Math.min(100.0, Math.max(0.0, percentile));
+        final long countAtPercentile = Math.max(1, (long) Math.ceil(p / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            seen += counts[i];
+            if (seen >= countAtPercentile) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int indexOf(final long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+    }
+
+    static long highestEquivalentValue(final int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        final long subBucket = index % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
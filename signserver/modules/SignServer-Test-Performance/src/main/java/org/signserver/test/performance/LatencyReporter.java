@@ -0,0 +1,221 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.test.performance;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Collects the latencies recorded by the worker threads, interval by
+ * interval, and writes them as CSV or JSON for comparison between runs.
+ *
+ * @version $Id$
+ */
+public class LatencyReporter {
+
+    /** Percentiles reported for each interval. */
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+
+    private static final String CSV_HEADER = "interval,start_ms,end_ms,count,rate,min_ms,p50_ms,p90_ms,p99_ms,p99.9_ms,max_ms,mean_ms";
+
+    private final List<? extends WorkerThread> threads;
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final List<Interval> intervals = new ArrayList<>();
+    private long startTime;
+    private long intervalStart;
+
+    /**
+     * Creates a new reporter.
+     *
+     * @param threads to collect the latencies from
+     */
+    public LatencyReporter(final List<? extends WorkerThread> threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Starts the first interval.
+     *
+     * @param startTime time in milliseconds
+     */
+    public synchronized void start(final long startTime) {
+        this.startTime = startTime;
+        this.intervalStart = startTime;
+    }
+
+    /**
+     * Ends the current interval and starts a new one.
+     *
+     * @param now time in milliseconds
+     * @return the interval ended
+     */
+    public synchronized Interval sample(final long now) {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (final WorkerThread thread : threads) {
+            thread.getHistogram().drainTo(histogram);
+        }
+        total.add(histogram);
+        final Interval interval = new Interval(String.valueOf(intervals.size() + 1),
+                intervalStart - startTime, now - startTime, histogram);
+        intervals.add(interval);
+        intervalStart = now;
+        return interval;
+    }
+
+    /**
+     * @param now time in milliseconds
+     * @return all values collected so far
+     */
+    public synchronized Interval getTotal(final long now) {
+        return new Interval("total", 0, now - startTime, total);
+    }
+
+    public synchronized List<Interval> getIntervals() {
+        return Collections.unmodifiableList(new ArrayList<>(intervals));
+    }
+
+    /**
+     * Writes one line for each interval and a last one with the total.
+     *
+     * @param out to write to
+     * @param now time in milliseconds
+     * @throws IOException in case of write failure
+     */
+    public synchronized void writeCsv(final Writer out, final long now) throws IOException {
+        out.write(CSV_HEADER);
+        out.write('\n');
+        for (final Interval interval : intervals) {
+            out.write(interval.toCsv());
+            out.write('\n');
+        }
+        out.write(getTotal(now).toCsv());
+        out.write('\n');
+    }
+
+    /**
+     * Writes an object with the intervals and the total.
+     *
+     * @param out to write to
+     * @param now time in milliseconds
+     * @throws IOException in case of write failure
+     */
+    public synchronized void writeJson(final Writer out, final long now) throws IOException {
+        out.write("{\n  \"intervals\": [");
+        for (int i = 0; i < intervals.size(); i++) {
+            out.write(i == 0 ? "\n    " : ",\n    ");
+            out.write(intervals.get(i).toJson());
+        }
+        out.write("\n  ],\n  \"total\": ");
+        out.write(getTotal(now).toJson());
+        out.write("\n}\n");
+    }
+
+    private static String millis(final long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    /**
+     * Latency statistics for a period of time.
+     */
+    public static class Interval {
+        private final String name;
+        private final long start;
+        private final long end;
+        private final long count;
+        private final long min;
+        private final long[] percentiles = new long[PERCENTILES.length];
+        private final long max;
+        private final double mean;
+
+        Interval(final String name, final long start, final long end, final LatencyHistogram histogram) {
+            this.name = name;
+            this.start = start;
+            this.end = end;
+            this.count = histogram.getTotalCount();
+            this.min = histogram.getMin();
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                percentiles[i] = histogram.getValueAtPercentile(PERCENTILES[i]);
+            }
+            this.max = histogram.getMax();
+            this.mean = histogram.getMean();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return successful requests per second in the interval
+         */
+        public double getRate() {
+            return end > start ? count / ((end - start) / 1000d) : Double.NaN;
+        }
+
+        public long getP50() {
+            return percentiles[0];
+        }
+
+        public long getP90() {
+            return percentiles[1];
+        }
+
+        public long getP99() {
+            return percentiles[2];
+        }
+
+        public long getP999() {
+            return percentiles[3];
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @return one line summary with the latencies in milliseconds
+         */
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%6s: %8d ops %10.1f/s  p50 %s  p90 %s  p99 %s  p99.9 %s  max %s ms",
+                    name, count, getRate(), millis(getP50()), millis(getP90()),
+                    millis(getP99()), millis(getP999()), millis(max));
+        }
+
+        String toCsv() {
+            return String.format(Locale.ROOT, "%s,%d,%d,%d,%.1f,%s,%s,%s,%s,%s,%s,%s",
+                    name, start, end, count, getRate(), millis(min), millis(getP50()),
+                    millis(getP90()), millis(getP99()), millis(getP999()), millis(max),
+                    count == 0 ? "" : String.format(Locale.ROOT, "%.3f", mean / 1e6));
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT,
+                    "{\"interval\": \"%s\", \"startMs\": %d, \"endMs\": %d, \"count\": %d, \"rate\": %s, "
+                    + "\"minMs\": %s, \"p50Ms\": %s, \"p90Ms\": %s, \"p99Ms\": %s, \"p999Ms\": %s, \"maxMs\": %s, \"meanMs\": %s}",
+                    name, start, end, count,
+                    Double.isNaN(getRate()) ? "null" : String.format(Locale.ROOT, "%.1f", getRate()),
+                    millis(min), millis(getP50()), millis(getP90()), millis(getP99()),
+                    millis(getP999()), millis(max),
+                    count == 0 ? "null" : String.format(Locale.ROOT, "%.3f", mean / 1e6));
+        }
+    }
+}
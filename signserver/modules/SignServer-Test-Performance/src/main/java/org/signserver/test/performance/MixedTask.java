@@ -0,0 +1,60 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.test.performance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Task running one of the tasks of a workload mix for each request.
+ *
+ * @version $Id$
+ */
+public class MixedTask implements Task {
+
+    private final WorkloadMix mix;
+    private final List<Task> tasks;
+    private final Random random;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param mix of workloads
+     * @param tasks one task for each of the workloads in the mix, in the
+     * same order
+     * @param random random generator of the thread
+     */
+    public MixedTask(final WorkloadMix mix, final List<Task> tasks, final Random random) {
+        if (tasks.size() != mix.getEntries().size()) {
+            throw new IllegalArgumentException("Expected " + mix.getEntries().size() + " tasks but got " + tasks.size());
+        }
+        this.mix = mix;
+        this.tasks = new ArrayList<>(tasks);
+        this.random = random;
+    }
+
+    @Override
+    public long run() throws FailedException {
+        final int index = mix.pick(random);
+        final long startTime = System.nanoTime();
+        try {
+            final long result = tasks.get(index).run();
+            mix.recordSuccess(index, System.nanoTime() - startTime);
+            return result;
+        } catch (FailedException ex) {
+            mix.recordFailure(index);
+            throw new FailedException(mix.getEntries().get(index).getName() + ": " + ex.getMessage(), ex);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.test.performance;
+
+import java.io.File;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Thread running a task created for it.
+ *
+ * @version $Id$
+ */
+public class TaskThread extends WorkerThread {
+
+    /**
+     * Creates a new thread.
+     *
+     * @param name of the thread
+     * @param failureCallback callback to handle failures
+     * @param taskFactory creating the task to run given the random generator
+     * of the thread
+     * @param maxWaitTime maximum waiting time between requests
+     * @param seed for the random generator
+     * @param warmupTime time before collecting statistics
+     * @param limitedTime maximum run time or -1 to run until interrupted
+     * @param statFile file to output statistics to or null
+     * @param continueOnFailure if the thread should continue after a failure
+     */
+    public TaskThread(final String name, final FailureCallback failureCallback,
+            final Function<Random, Task> taskFactory, final int maxWaitTime,
+            final int seed, final long warmupTime, final long limitedTime, final File statFile,
+            final boolean continueOnFailure) {
+        super(name, failureCallback, maxWaitTime, seed, warmupTime, limitedTime,
+              statFile, continueOnFailure);
+        this.task = taskFactory.apply(random);
+    }
+}
@@ -18,6 +18,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Date;
 import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.log4j.Logger;
 
@@ -51,6 +52,8 @@ public class WorkerThread extends Thread {
     private boolean continueOnFailure;
     private long operationsFailed;
     private long operationsAttempted;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private ArrivalSchedule schedule;
     
     public WorkerThread(final String name, final FailureCallback failureCallback,
             long maxWaitTime, int seed, long warmupTime, final long limitedTime,
@@ -84,6 +87,19 @@ public class WorkerThread extends Thread {
                 if (limitedTime > 0 && currentTime > startTime + limitedTime) {
                     break;
                 }
+
+                // In open-loop mode the latency is measured from when the
+                // request should have been sent, otherwise from now
+                final long intendedTime;
+                if (schedule == null) {
+                    intendedTime = System.nanoTime();
+                } else {
+                    intendedTime = schedule.nextSlot();
+                    waitUntil(intendedTime);
+                    if (isStop()) {
+                        break;
+                    }
+                }
                 
                 try {
                     estimatedTime = task.run();
@@ -99,9 +115,11 @@ public class WorkerThread extends Thread {
                     successfull = false;
                     operationsFailed++;
                 }
+                final long latency = System.nanoTime() - intendedTime;
               
                 if (currentTime > startTime + warmupTime && successfull) {
                     addResponseTime(estimatedTime);
+                    histogram.record(latency);
                     if (out != null) {
                         out.write((System.currentTimeMillis() /*- startTime*/) + ";" + estimatedTime);
                         out.newLine();
@@ -109,7 +127,9 @@ public class WorkerThread extends Thread {
                 }
                 
                 // Sleep
-                Thread.sleep((int) (random.nextDouble() * maxWaitTime));
+                if (schedule == null) {
+                    Thread.sleep((int) (random.nextDouble() * maxWaitTime));
+                }
 
                 operationsAttempted++;
             }
@@ -134,6 +154,17 @@ public class WorkerThread extends Thread {
         }
     }
     
+    private void waitUntil(final long nanoTime) throws InterruptedException {
+        long remaining = nanoTime - System.nanoTime();
+        while (remaining > 0 && !isStop()) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Interrupted while waiting for next request");
+            }
+            remaining = nanoTime - System.nanoTime();
+        }
+    }
+
     /**
      * Indicate that this thread has discovered a failure.
      * @param message A description of the problem
@@ -149,6 +180,17 @@ public class WorkerThread extends Thread {
         stop = true;
     }
 
+    /**
+     * Sends the requests at the times given by the schedule instead of
+     * sleeping a random time between the requests. Must be called before
+     * the thread is started.
+     *
+     * @param schedule shared by all threads in the test
+     */
+    public void setArrivalSchedule(final ArrivalSchedule schedule) {
+        this.schedule = schedule;
+    }
+
     /**
      * @return Wither this thread should stop or not.
      */
@@ -186,6 +228,14 @@ public class WorkerThread extends Thread {
         }
     }
     
+    /**
+     * @return Histogram with the latencies in nanoseconds of the successful
+     * requests after the warm up time, drained by the reporting
+     */
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
     /**
      * Get average response time.
      * @return Average response time
@@ -0,0 +1,224 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.test.performance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mix of workloads run by the same threads, each request going to one of
+ * the workloads chosen at random according to their weights.
+ *
+ * The statistics are kept per workload so that the response times of the
+ * different workers in the mix can be told apart.
+ *
+ * @version $Id$
+ */
+public class WorkloadMix {
+
+    private final List<Entry> entries;
+    private final int totalWeight;
+    private volatile long measureFrom;
+
+    /**
+     * Creates a new mix.
+     *
+     * @param entries workloads in the mix
+     */
+    public WorkloadMix(final List<Entry> entries) {
+        if (entries.isEmpty()) {
+            throw new IllegalArgumentException("No workloads in mix");
+        }
+        int sum = 0;
+        for (final Entry entry : entries) {
+            sum += entry.getWeight();
+        }
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+        this.totalWeight = sum;
+    }
+
+    /**
+     * Parses a mix specified as a comma separated list of
+     * WEIGHT:NAME[:ARGUMENT], i.e. "70:timestamp,30:PDFSigner:/tmp/pdfs".
+     *
+     * @param spec to parse
+     * @return the new mix
+     * @throws IllegalArgumentException in case of malformed specification
+     */
+    public static WorkloadMix parse(final String spec) {
+        final List<Entry> entries = new ArrayList<>();
+        for (final String part : spec.split(",", -1)) {
+            final String[] values = part.trim().split(":", 3);
+            if (values.length < 2 || values[1].trim().isEmpty()) {
+                throw new IllegalArgumentException("Expected WEIGHT:NAME[:ARGUMENT] but was: " + part);
+            }
+            final int weight;
+            try {
+                weight = Integer.parseInt(values[0].trim());
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Illegal weight: " + values[0]);
+            }
+            entries.add(new Entry(values[1].trim(), weight, values.length > 2 ? values[2].trim() : null));
+        }
+        return new WorkloadMix(entries);
+    }
+
+    /**
+     * @return the workloads in the mix
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Chooses the workload for the next request.
+     *
+     * @param random generator to use
+     * @return index of the chosen workload
+     */
+    public int pick(final Random random) {
+        int value = random.nextInt(totalWeight);
+        for (int i = 0; i < entries.size(); i++) {
+            value -= entries.get(i).getWeight();
+            if (value < 0) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Weights changed");
+    }
+
+    /**
+     * Sets from when the statistics should be collected, to not count
+     * requests during the warm up.
+     *
+     * @param timeMillis time as given by System.currentTimeMillis()
+     */
+    public void setMeasureFrom(final long timeMillis) {
+        this.measureFrom = timeMillis;
+    }
+
+    /**
+     * Records a successful request.
+     *
+     * @param index of the workload
+     * @param responseTimeNanos response time in nanoseconds
+     */
+    public void recordSuccess(final int index, final long responseTimeNanos) {
+        if (System.currentTimeMillis() >= measureFrom) {
+            entries.get(index).histogram.record(responseTimeNanos);
+        }
+    }
+
+    /**
+     * Records a failed request.
+     *
+     * @param index of the workload
+     */
+    public void recordFailure(final int index) {
+        if (System.currentTimeMillis() >= measureFrom) {
+            entries.get(index).failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Formats the statistics of each workload.
+     *
+     * @param runTimeMillis time statistics were collected for
+     * @return one line per workload
+     */
+    public String getSummary(final long runTimeMillis) {
+        long total = 0;
+        for (final Entry entry : entries) {
+            total += entry.getOperationsPerformed();
+        }
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "   %-20s %6s %10s %8s %7s %10s %12s %12s %12s%n",
+                "Workload", "Weight", "Performed", "Failed", "Share", "TPS", "Mean ms", "99th ms", "Max ms"));
+        for (final Entry entry : entries) {
+            final LatencyHistogram histogram = entry.histogram;
+            final long performed = histogram.getTotalCount();
+            sb.append(String.format(Locale.ROOT, "   %-20s %5.1f%% %10d %8d %6.1f%% %10.1f %12.3f %12.3f %12.3f%n",
+                    entry.getName(),
+                    100d * entry.getWeight() / totalWeight,
+                    performed,
+                    entry.getOperationsFailed(),
+                    total > 0 ? 100d * performed / total : 0d,
+                    runTimeMillis > 1000 ? performed / (runTimeMillis / 1000d) : Double.NaN,
+                    performed > 0 ? histogram.getMean() / 1e6 : Double.NaN,
+                    histogram.getValueAtPercentile(99) / 1e6,
+                    histogram.getMax() / 1e6));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * One workload in the mix.
+     */
+    public static class Entry {
+
+        private final String name;
+        private final int weight;
+        private final String argument;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final AtomicLong failed = new AtomicLong();
+
+        /**
+         * Creates a new entry.
+         *
+         * @param name of the workload
+         * @param weight relative share of the requests
+         * @param argument optional argument to the workload or null
+         */
+        public Entry(final String name, final int weight, final String argument) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Weight must be larger than 0: " + name);
+            }
+            this.name = name;
+            this.weight = weight;
+            this.argument = argument;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public String getArgument() {
+            return argument;
+        }
+
+        public long getOperationsPerformed() {
+            return histogram.getTotalCount();
+        }
+
+        public long getOperationsFailed() {
+            return failed.get();
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        @Override
+        public String toString() {
+            return weight + ":" + name + (argument == null ? "" : ":" + argument);
+        }
+    }
+}
@@ -13,8 +13,13 @@
 package org.signserver.test.performance.cli;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.rmi.RemoteException;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.GnuParser;
 import org.apache.commons.cli.HelpFormatter;
@@ -24,9 +29,21 @@ import org.apache.log4j.Logger;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.tsp.TSPAlgorithms;
 import org.signserver.common.InvalidWorkerIdException;
+import org.signserver.test.performance.ArrivalSchedule;
+import org.signserver.test.performance.Corpus;
 import org.signserver.test.performance.FailureCallback;
+import org.signserver.test.performance.LatencyReporter;
+import org.signserver.test.performance.MixedTask;
+import org.signserver.test.performance.Task;
+import org.signserver.test.performance.TaskThread;
 import org.signserver.test.performance.WorkerThread;
+import org.signserver.test.performance.WorkloadMix;
+import org.signserver.test.performance.impl.ClientWSDocumentSigner;
+import org.signserver.test.performance.impl.DocumentInput;
+import org.signserver.test.performance.impl.DocumentSigner;
 import org.signserver.test.performance.impl.DocumentSignerThread;
+import org.signserver.test.performance.impl.RestDocumentSigner;
+import org.signserver.test.performance.impl.TimeStamp;
 import org.signserver.test.performance.impl.TimeStampThread;
 
 /**
@@ -47,17 +64,25 @@ public class Main {
     private static final String HASH_ALGORITHM = "hashalgorithm";
     private static final String PROCESS_URL = "processurl";
     private static final String WORKER_URL = "workerurl";
+    private static final String REST_URL = "resturl";
+    private static final String CLIENTWS_URL = "clientwsurl";
     private static final String WORKER_NAME_OR_ID = "worker";
     private static final String MAX_WAIT_TIME = "maxwaittime";
     private static final String WARMUP_TIME = "warmuptime";
     private static final String STAT_OUTPUT_DIR = "statoutputdir";
     private static final String INFILE = "infile";
     private static final String DATA = "data";
+    private static final String CORPUS_DIR = "corpusdir";
+    private static final String CLIENTSIDE_HASHING = "clientsidehashing";
+    private static final String MIX = "mix";
     private static final Options OPTIONS;
     private static final String USERPREFIX = "userprefix";
     private static final String USERSUFFIXMIN = "usersuffixmin";
     private static final String USERSUFFIXMAX = "usersuffixmax";
     private static final String CONTINUE_ON_FAILURE = "continueonfailure";
+    private static final String RATE = "rate";
+    private static final String REPORT_INTERVAL = "reportinterval";
+    private static final String REPORT_FILE = "reportfile";
 
     private static final String REQUEST_CERTIFICATE = "requestcertificate";
     private static final String NL = System.getProperty("line.separator");
@@ -65,6 +90,9 @@ public class Main {
 
     private static final int DEFUALT_MAX_WAIT_TIME = 100;
 
+    /** Name of the time stamp workload in a mix. */
+    private static final String MIX_TIMESTAMP = "timestamp";
+
     private static int exitCode;
     private static long startTime;
     private static long warmupTime;
@@ -76,11 +104,25 @@ public class Main {
     private static Integer usersuffixMin;
     private static Integer usersuffixMax;
 
+    private static LatencyReporter reporter;
+    private static ScheduledExecutorService reportExecutor;
+    private static File reportFile;
+    private static WorkloadMix mix;
+
     private enum TestSuites {
         TimeStamp1,
         TimeStamp2,
         DocumentSigner1,
         DocumentValidator1,
+        Mixed1,
+    }
+
+    /** Interfaces for sending documents. */
+    private enum DocumentInterface {
+        PROCESS_SERVLET,
+        WORKER_SERVLET,
+        REST,
+        CLIENTWS,
     }
 
     static {
@@ -93,6 +135,8 @@ public class Main {
         OPTIONS.addOption(REQUEST_CERTIFICATE, false, "Optional. Add the certificate in the Time Stamp response");
         OPTIONS.addOption(PROCESS_URL, true, "URL to process servlet (for the DocumentSigner/Validator1 test suites).");
         OPTIONS.addOption(WORKER_URL, true, "URL to worker servlet (for the DocumentSigner/Validator1 test suites).");
+        OPTIONS.addOption(REST_URL, true, "Base URL of the REST interface, i.e. http://localhost:8080/signserver/rest/v1 (for the DocumentSigner1 test suite).");
+        OPTIONS.addOption(CLIENTWS_URL, true, "URL of the ClientWS web service, i.e. http://localhost:8080/signserver/ClientWSService/ClientWS (for the DocumentSigner1 test suite).");
         OPTIONS.addOption(WORKER_NAME_OR_ID, true, "Worker name or ID to use (with the DocumentSigner/Validator1 test suites).");
         OPTIONS.addOption(MAX_WAIT_TIME, true, "Maximum number of milliseconds for a thread to wait until issuing the next time stamp. Default=100");
         OPTIONS.addOption(WARMUP_TIME, true,
@@ -101,9 +145,15 @@ public class Main {
                 "Optional. Directory to output statistics to. If set, each thread creates a file in this directory to output its response times to. The directory must exist.");
         OPTIONS.addOption(INFILE, true, "Input file used for DocumentSigner/Validator1 testsuites.");
         OPTIONS.addOption(DATA, true, "Input data to be used with the DocumentSigner/Validator1 testsuites using an XMLSigner.");
+        OPTIONS.addOption(CORPUS_DIR, true, "Directory with input files used for the DocumentSigner/Validator1 testsuites. The requests go through the files in order of their names and then start over.");
+        OPTIONS.addOption(CLIENTSIDE_HASHING, true, "Optional. Hash the input with this digest algorithm (i.e. SHA-256) and send the digest requesting client-side hashing (for workers configured with CLIENTSIDEHASHING or ALLOW_CLIENTSIDEHASHING_OVERRIDE).");
+        OPTIONS.addOption(MIX, true, "Workloads for the " + TestSuites.Mixed1 + " test suite as a comma separated list of WEIGHT:WORKER[:CORPUSDIR], where WORKER is a worker name or ID to send documents to or " + MIX_TIMESTAMP + " for time stamp requests to the TSA URL.");
         OPTIONS.addOption(USERPREFIX, true, "Prefix for usernames.");
         OPTIONS.addOption(USERSUFFIXMIN, true, "Lowest suffix for usernames in form of an integer value (inclusive).");
         OPTIONS.addOption(USERSUFFIXMAX, true, "Highest suffix for usernames in form of an integer value (inclusive).");
+        OPTIONS.addOption(RATE, true, "Optional. Send requests at this constant rate (requests per second) independent of the response times, instead of each thread waiting for its response and then a random time. The latencies are measured from when each request should have been sent. Enough threads are needed to reach the rate.");
+        OPTIONS.addOption(REPORT_INTERVAL, true, "Optional. Log the latency percentiles for each interval of this length (in milliseconds).");
+        OPTIONS.addOption(REPORT_FILE, true, "Optional. File to write the latency percentiles for each interval and in total to at the end. JSON if the file name ends with .json, otherwise CSV.");
         OPTIONS.addOption(CONTINUE_ON_FAILURE, false, "When this option is specified the test will continue running if a request fails. Failed requests will not be considered for the calculation of the total number of requests and response times. The total number of failed requests will presented in the statistics.");
     }
 
@@ -125,7 +175,15 @@ public class Main {
                 .append("e) ").append(COMMAND)
                 .append(" -testsuite DocumentSigner1 -threads 4 -processurl http://localhost:8080/signserver/process -worker XMLSigner -data \"<root/>\" -userprefix user -usersuffixmin 1 -usersuffixmax 50").append(NL)
                 .append("f) ").append(COMMAND)
-                .append(" -testsuite DocumentValidator1 -threads 4 -processurl http://localhost:8080/signserver/process -worker DemoXMLValidator -infile signed.xml").append(NL);
+                .append(" -testsuite DocumentValidator1 -threads 4 -processurl http://localhost:8080/signserver/process -worker DemoXMLValidator -infile signed.xml").append(NL)
+                .append("g) ").append(COMMAND)
+                .append(" -testsuite DocumentSigner1 -threads 50 -rate 200 -timelimit 60000 -reportinterval 5000 -reportfile run1.csv -processurl http://localhost:8080/signserver/process -worker XMLSigner -data \"<root/>\"").append(NL)
+                .append("h) ").append(COMMAND)
+                .append(" -testsuite DocumentSigner1 -threads 4 -resturl http://localhost:8080/signserver/rest/v1 -worker CMSSigner -corpusdir ./documents/").append(NL)
+                .append("i) ").append(COMMAND)
+                .append(" -testsuite DocumentSigner1 -threads 4 -clientwsurl http://localhost:8080/signserver/ClientWSService/ClientWS -worker PDFSigner -corpusdir ./pdfs/ -clientsidehashing SHA-256").append(NL)
+                .append("j) ").append(COMMAND)
+                .append(" -testsuite Mixed1 -threads 20 -timelimit 60000 -tsaurl http://localhost:8080/signserver/tsa?workerName=TimeStampSigner -processurl http://localhost:8080/signserver/process -mix 70:timestamp,30:PDFSigner:./pdfs/").append(NL);
 
         ByteArrayOutputStream bout = new ByteArrayOutputStream();
         final HelpFormatter formatter = new HelpFormatter();
@@ -176,35 +234,58 @@ public class Main {
                 maxWaitTime = DEFUALT_MAX_WAIT_TIME;
             }
 
-            final String url;
-            boolean useWorkerServlet = false;
-            if (commandLine.hasOption(TSA_URL)) {
-                if (!ts.name().startsWith("TimeStamp")) {
-                    throw new ParseException("Option " + TSA_URL + " can only be used with the TimeStamp test suites.");
-                }
-                url = commandLine.getOptionValue(TSA_URL);
-            } else if (commandLine.hasOption(PROCESS_URL)) {
-                if (!ts.equals(TestSuites.DocumentSigner1) && !ts.equals(TestSuites.DocumentValidator1)) {
-                    throw new ParseException("Option " + PROCESS_URL + " can only be used with the " +
-                            TestSuites.DocumentSigner1.toString() + " or " + TestSuites.DocumentValidator1.toString() + " test suites.");
-                }
-                url = commandLine.getOptionValue(PROCESS_URL);
-                useWorkerServlet = false;
-            } else if (commandLine.hasOption(WORKER_URL)) {
-                if (!ts.equals(TestSuites.DocumentSigner1)) {
-                    throw new ParseException("Option " + WORKER_URL + " can only be used with the " +
-                            TestSuites.DocumentSigner1.toString() + " or " + TestSuites.DocumentValidator1.toString() + " test suites.");
+            final String tsaUrl = commandLine.getOptionValue(TSA_URL);
+            if (tsaUrl != null && !ts.name().startsWith("TimeStamp") && !ts.equals(TestSuites.Mixed1)) {
+                throw new ParseException("Option " + TSA_URL + " can only be used with the TimeStamp or " +
+                        TestSuites.Mixed1.toString() + " test suites.");
+            }
+
+            // Interface for sending documents
+            String documentUrlOption = null;
+            for (final String option : new String[] {PROCESS_URL, WORKER_URL, REST_URL, CLIENTWS_URL}) {
+                if (commandLine.hasOption(option)) {
+                    if (documentUrlOption != null) {
+                        throw new ParseException("Option " + documentUrlOption + " can not be combined with option " + option + ".");
+                    }
+                    documentUrlOption = option;
                 }
-                url = commandLine.getOptionValue(WORKER_URL);
-                useWorkerServlet = true;
+            }
+            final String documentUrl;
+            final DocumentInterface documentInterface;
+            if (documentUrlOption == null) {
+                documentUrl = null;
+                documentInterface = null;
             } else {
-                if (ts.equals(TestSuites.TimeStamp1)) {
-                    throw new ParseException("Missing option: -" + TSA_URL);
-                } else {
-                    throw new ParseException("Missing option: -" + PROCESS_URL);
+                if (ts.name().startsWith("TimeStamp")
+                        || (ts.equals(TestSuites.DocumentValidator1) && !documentUrlOption.equals(PROCESS_URL))) {
+                    throw new ParseException("Option " + documentUrlOption + " can only be used with the " +
+                            TestSuites.DocumentSigner1.toString() + (documentUrlOption.equals(PROCESS_URL) ? ", " + TestSuites.DocumentValidator1.toString() : "") +
+                            " or " + TestSuites.Mixed1.toString() + " test suites.");
+                }
+                documentUrl = commandLine.getOptionValue(documentUrlOption);
+                switch (documentUrlOption) {
+                    case WORKER_URL:
+                        documentInterface = DocumentInterface.WORKER_SERVLET;
+                        break;
+                    case REST_URL:
+                        documentInterface = DocumentInterface.REST;
+                        break;
+                    case CLIENTWS_URL:
+                        documentInterface = DocumentInterface.CLIENTWS;
+                        break;
+                    default:
+                        documentInterface = DocumentInterface.PROCESS_SERVLET;
+                        break;
                 }
             }
 
+            if (ts.name().startsWith("TimeStamp") && tsaUrl == null) {
+                throw new ParseException("Missing option: -" + TSA_URL);
+            } else if (ts.name().startsWith("Document") && documentUrl == null) {
+                throw new ParseException("Missing option: -" + PROCESS_URL);
+            }
+            final String url = tsaUrl == null ? documentUrl : (documentUrl == null ? tsaUrl : tsaUrl + ", " + documentUrl);
+
             final String hashAlg;
             if (commandLine.hasOption(HASH_ALGORITHM)) {
                 hashAlg = commandLine.getOptionValue(HASH_ALGORITHM);
@@ -228,15 +309,78 @@ public class Main {
                 throw new ParseException("Must specify worker name or ID.");
             }
 
-            if (commandLine.hasOption(INFILE)) {
+            Corpus corpus = null;
+            if (commandLine.hasOption(CORPUS_DIR)) {
+                try {
+                    corpus = Corpus.fromDirectory(new File(commandLine.getOptionValue(CORPUS_DIR)));
+                } catch (IOException ex) {
+                    throw new ParseException("Option -" + CORPUS_DIR + ": " + ex.getMessage());
+                }
+            } else if (commandLine.hasOption(INFILE)) {
                 final String file = commandLine.getOptionValue(INFILE);
                 infile = new File(file);
+                corpus = new Corpus(Collections.singletonList(infile));
             } else if (commandLine.hasOption(DATA)) {
                 bytes = commandLine.getOptionValue(DATA).getBytes();
+                corpus = new Corpus(bytes);
             } else if (ts.equals(TestSuites.DocumentSigner1)) {
                 throw new ParseException("Must specify an input file.");
             }
 
+            // Documents are read from the corpus unless the input file can
+            // be streamed to the process or worker servlet
+            final String clientSideDigestAlgorithm = commandLine.getOptionValue(CLIENTSIDE_HASHING);
+            final DocumentInput documentInput;
+            if (corpus != null && (commandLine.hasOption(CORPUS_DIR) || clientSideDigestAlgorithm != null
+                    || documentInterface == DocumentInterface.REST || documentInterface == DocumentInterface.CLIENTWS
+                    || ts.equals(TestSuites.Mixed1))) {
+                documentInput = createDocumentInput(corpus, clientSideDigestAlgorithm);
+            } else {
+                documentInput = null;
+            }
+
+            // Workloads of the mixed test suite, with the input for each
+            // document workload
+            final List<DocumentInput> mixInputs = new ArrayList<>();
+            if (ts.equals(TestSuites.Mixed1)) {
+                if (!commandLine.hasOption(MIX)) {
+                    throw new ParseException("Missing option: -" + MIX);
+                }
+                try {
+                    mix = WorkloadMix.parse(commandLine.getOptionValue(MIX));
+                } catch (IllegalArgumentException ex) {
+                    throw new ParseException("Option -" + MIX + ": " + ex.getMessage());
+                }
+                for (final WorkloadMix.Entry entry : mix.getEntries()) {
+                    if (MIX_TIMESTAMP.equals(entry.getName())) {
+                        if (tsaUrl == null) {
+                            throw new ParseException("Missing option: -" + TSA_URL);
+                        }
+                        if (entry.getArgument() != null) {
+                            throw new ParseException("Option -" + MIX + ": No input can be specified for " + MIX_TIMESTAMP);
+                        }
+                        mixInputs.add(null);
+                    } else {
+                        if (documentUrl == null) {
+                            throw new ParseException("Missing option: -" + PROCESS_URL);
+                        }
+                        if (entry.getArgument() != null) {
+                            try {
+                                mixInputs.add(createDocumentInput(Corpus.fromDirectory(new File(entry.getArgument())), clientSideDigestAlgorithm));
+                            } catch (IOException ex) {
+                                throw new ParseException("Option -" + MIX + ": " + ex.getMessage());
+                            }
+                        } else if (documentInput != null) {
+                            mixInputs.add(documentInput);
+                        } else {
+                            throw new ParseException("Must specify an input file for " + entry.getName() + ".");
+                        }
+                    }
+                }
+            } else if (commandLine.hasOption(MIX)) {
+                throw new ParseException("Option " + MIX + " can only be used with the " + TestSuites.Mixed1.toString() + " test suite.");
+            }
+
             if (commandLine.hasOption(WARMUP_TIME)) {
                 warmupTime = Long.parseLong(commandLine.getOptionValue(WARMUP_TIME));
             } else {
@@ -282,6 +426,31 @@ public class Main {
             final boolean continueOnFailure =
                     commandLine.hasOption(CONTINUE_ON_FAILURE);
 
+            final ArrivalSchedule schedule;
+            if (commandLine.hasOption(RATE)) {
+                final double rate = Double.parseDouble(commandLine.getOptionValue(RATE));
+                if (!(rate > 0)) {
+                    throw new ParseException("Option -" + RATE + " must be larger than 0");
+                }
+                schedule = new ArrivalSchedule(rate);
+            } else {
+                schedule = null;
+            }
+
+            final long reportInterval;
+            if (commandLine.hasOption(REPORT_INTERVAL)) {
+                reportInterval = Long.parseLong(commandLine.getOptionValue(REPORT_INTERVAL));
+                if (reportInterval <= 0) {
+                    throw new ParseException("Option -" + REPORT_INTERVAL + " must be larger than 0");
+                }
+            } else {
+                reportInterval = 0;
+            }
+
+            if (commandLine.hasOption(REPORT_FILE)) {
+                reportFile = new File(commandLine.getOptionValue(REPORT_FILE));
+            }
+
             // Print info
             LOG.info(String.format(
                   "-- Configuration -----------------------------------------------------------%n"
@@ -290,11 +459,15 @@ public class Main {
                 + "   Threads:                 %10d%n"
                 + "   Warm up time:            %10d ms%n"
                 + "   Max wait time:           %10d ms%n"
+                + "   Arrival rate:            %s%n"
                 + "   Time limit:              %10d ms%n"
                 + "   URL:                     %s%n"
+                + "   Input:                   %s%n"
+                + "   Client-side hashing:     %s%n"
+                + "   Workload mix:            %s%n"
                 + "   Username(s):             %s%n"
                 + "   Output statistics:       %s%n"
-                + "-------------------------------------------------------------------------------%n", new Date(), ts.name(), numThreads, warmupTime, maxWaitTime, limitedTime, url, userNameDescription, statFolder == null ? "no" : statFolder.getAbsolutePath()));
+                + "-------------------------------------------------------------------------------%n", new Date(), ts.name(), numThreads, warmupTime, maxWaitTime, schedule == null ? "closed loop" : schedule.getRatePerSecond() + " requests/s", limitedTime, url, corpus == null ? "n/a" : corpus, clientSideDigestAlgorithm == null ? "no" : clientSideDigestAlgorithm, mix == null ? "n/a" : mix.getEntries(), userNameDescription, statFolder == null ? "no" : statFolder.getAbsolutePath()));
 
             final LinkedList<WorkerThread> threads = new LinkedList<>();
             final FailureCallback callback = new FailureCallback() {
@@ -340,20 +513,45 @@ public class Main {
                     timeStamp2(threads, numThreads, callback, url, maxWaitTime, warmupTime, limitedTime, statFolder, continueOnFailure, hashAlg, requestCertificate);
                     break;
                 case DocumentSigner1:
-                    documentSigner1(threads, numThreads, callback, url, useWorkerServlet, workerNameOrId, maxWaitTime, warmupTime, limitedTime, statFolder, userPrefix, usersuffixMin, usersuffixMax, continueOnFailure);
+                    documentSigner1(threads, numThreads, callback, url, documentInterface, documentInput, workerNameOrId, maxWaitTime, warmupTime, limitedTime, statFolder, userPrefix, usersuffixMin, usersuffixMax, continueOnFailure);
                     break;
                 case DocumentValidator1:
-                    documentValidator1(threads, numThreads, callback, url, useWorkerServlet, workerNameOrId, maxWaitTime, warmupTime, limitedTime, statFolder, userPrefix, usersuffixMin, usersuffixMax, continueOnFailure);
+                    documentValidator1(threads, numThreads, callback, url, documentInterface, documentInput, workerNameOrId, maxWaitTime, warmupTime, limitedTime, statFolder, userPrefix, usersuffixMin, usersuffixMax, continueOnFailure);
+                    break;
+                case Mixed1:
+                    mixed1(threads, numThreads, callback, tsaUrl, documentUrl, documentInterface, mixInputs, maxWaitTime, warmupTime, limitedTime, statFolder, userPrefix, usersuffixMin, usersuffixMax, continueOnFailure, hashAlg, requestCertificate);
                     break;
                 default:
                     throw new Exception("Unsupported test suite");
                 }
 
+                reporter = new LatencyReporter(threads);
+                for (WorkerThread w : threads) {
+                    w.setArrivalSchedule(schedule);
+                }
+
                 // Wait 1 second to start
                 Thread.sleep(1000);
 
                 // Start all threads
                 startTime = System.currentTimeMillis();
+                reporter.start(startTime);
+                if (mix != null) {
+                    mix.setMeasureFrom(startTime + warmupTime);
+                }
+                if (schedule != null) {
+                    schedule.start(System.nanoTime());
+                }
+                if (reportInterval > 0) {
+                    reportExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                        final Thread t = new Thread(r, "LatencyReporter");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                    reportExecutor.scheduleAtFixedRate(() -> {
+                        LOG.info("   " + reporter.sample(System.currentTimeMillis()));
+                    }, reportInterval, reportInterval, TimeUnit.MILLISECONDS);
+                }
                 for (WorkerThread w : threads) {
                     w.setUncaughtExceptionHandler(handler);
                     w.start();
@@ -454,6 +652,51 @@ public class Main {
         logOutput(totalOperationsPerformed, totalOperationsFailed,
                   totalMinResponseTime, totalAverageResponseTime,
                   totalMaxResponseTime, totalRunTime, tps);
+
+        if (mix != null) {
+            LOG.info(String.format(
+                      "%n-- Workloads -----------------------------------------------------------------%n"
+                    + "%s"
+                    + "------------------------------------------------------------------------------%n", mix.getSummary(totalRunTime)));
+        }
+
+        if (reporter != null) {
+            reportLatencies();
+        }
+    }
+
+    /**
+     * Logs the latency percentiles and writes them to the report file.
+     */
+    private static void reportLatencies() {
+        if (reportExecutor != null) {
+            reportExecutor.shutdownNow();
+        }
+        final long now = System.currentTimeMillis();
+        reporter.sample(now);
+        final LatencyReporter.Interval total = reporter.getTotal(now);
+        LOG.info(String.format(Locale.ROOT,
+                  "%n-- Latency (measured in nanoseconds) -----------------------------------------%n"
+                + "   50th percentile:         %14.3f ms%n"
+                + "   90th percentile:         %14.3f ms%n"
+                + "   99th percentile:         %14.3f ms%n"
+                + "   99.9th percentile:       %14.3f ms%n"
+                + "   Maximum:                 %14.3f ms%n"
+                + "------------------------------------------------------------------------------%n",
+                total.getP50() / 1e6, total.getP90() / 1e6, total.getP99() / 1e6, total.getP999() / 1e6, total.getMax() / 1e6));
+
+        if (reportFile != null) {
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(reportFile), StandardCharsets.UTF_8))) {
+                if (reportFile.getName().toLowerCase(Locale.ROOT).endsWith(".json")) {
+                    reporter.writeJson(out, now);
+                } else {
+                    reporter.writeCsv(out, now);
+                }
+                LOG.info("   Latency report written to " + reportFile.getAbsolutePath());
+            } catch (IOException ex) {
+                LOG.error("Latency report could not be written: " + ex.getMessage());
+            }
+        }
     }
 
     private static void logOutput(final long totalOperationsPerformed,
@@ -550,6 +793,8 @@ public class Main {
      * @param numThreads Number of threads to create.
      * @param failureCallback Callback to handle failures.
      * @param url Base process URL.
+     * @param documentInterface Interface to send the documents to.
+     * @param input Documents to send or null to stream the input file.
      * @param workerNameOrId Worker name of worker ID.
      * @param maxWaitTime Maximum waiting time between generated requests.
      * @param warmupTime Warmup time, if set to > 0, will add a warmup period where no stats are collected.
@@ -558,12 +803,12 @@ public class Main {
      * @throws Exception
      */
     private static void documentSigner1(final List<WorkerThread> threads, final int numThreads,
-            final FailureCallback failureCallback, final String url, final boolean useWorkerServlet,
-            final String workerNameOrId, int maxWaitTime, long warmupTime,
+            final FailureCallback failureCallback, final String url, final DocumentInterface documentInterface,
+            final DocumentInput input, final String workerNameOrId, int maxWaitTime, long warmupTime,
             final long limitedTime, final File statFolder,
             final String userPrefix, final Integer userSuffixMin, final Integer userSuffixMax,
             final boolean continueOnFailure) throws Exception {
-        documentSignerOrValidator1(threads, numThreads, failureCallback, url, useWorkerServlet, workerNameOrId, maxWaitTime, warmupTime, limitedTime, statFolder, userPrefix, userSuffixMin, userSuffixMax, "DocumentSigner1-", "signDocument", continueOnFailure);
+        documentSignerOrValidator1(threads, numThreads, failureCallback, url, documentInterface, input, workerNameOrId, maxWaitTime, warmupTime, limitedTime, statFolder, userPrefix, userSuffixMin, userSuffixMax, "DocumentSigner1-", "signDocument", continueOnFailure);
     }
 
     /**
@@ -573,6 +818,8 @@ public class Main {
      * @param numThreads Number of threads to create.
      * @param failureCallback Callback to handle failures.
      * @param url Base process URL.
+     * @param documentInterface Interface to send the documents to.
+     * @param input Documents to send or null to stream the input file.
      * @param workerNameOrId Worker name of worker ID.
      * @param maxWaitTime Maximum waiting time between generated requests.
      * @param warmupTime Warmup time, if set to > 0, will add a warmup period where no stats are collected.
@@ -581,17 +828,17 @@ public class Main {
      * @throws Exception
      */
     private static void documentValidator1(final List<WorkerThread> threads, final int numThreads,
-            final FailureCallback failureCallback, final String url, final boolean useWorkerServlet,
-            final String workerNameOrId, int maxWaitTime, long warmupTime,
+            final FailureCallback failureCallback, final String url, final DocumentInterface documentInterface,
+            final DocumentInput input, final String workerNameOrId, int maxWaitTime, long warmupTime,
             final long limitedTime, final File statFolder,
             final String userPrefix, final Integer userSuffixMin, final Integer userSuffixMax,
             final boolean continueOnFailure) throws Exception {
-        documentSignerOrValidator1(threads, numThreads, failureCallback, url, useWorkerServlet, workerNameOrId, maxWaitTime, warmupTime, limitedTime, statFolder, userPrefix, userSuffixMin, userSuffixMax, "DocumentValidator1-", "validateDocument", continueOnFailure);
+        documentSignerOrValidator1(threads, numThreads, failureCallback, url, documentInterface, input, workerNameOrId, maxWaitTime, warmupTime, limitedTime, statFolder, userPrefix, userSuffixMin, userSuffixMax, "DocumentValidator1-", "validateDocument", continueOnFailure);
     }
 
     private static void documentSignerOrValidator1(final List<WorkerThread> threads, final int numThreads,
-            final FailureCallback failureCallback, final String url, final boolean useWorkerServlet,
-            final String workerNameOrId, int maxWaitTime, long warmupTime,
+            final FailureCallback failureCallback, final String url, final DocumentInterface documentInterface,
+            final DocumentInput input, final String workerNameOrId, int maxWaitTime, long warmupTime,
             final long limitedTime, final File statFolder,
             final String userPrefix, final Integer userSuffixMin, final Integer userSuffixMax,
             final String workerNamePrefix, final String processType,
@@ -605,9 +852,88 @@ public class Main {
             } else {
                 statFile = new File(statFolder, name + ".csv");
             }
-            threads.add(new DocumentSignerThread(name, failureCallback, url, useWorkerServlet, bytes, infile, workerNameOrId, processType, maxWaitTime,
-                    random.nextInt(), warmupTime, limitedTime, statFile,
-                    userPrefix, userSuffixMin, userSuffixMax, continueOnFailure));
+            if (input == null) {
+                threads.add(new DocumentSignerThread(name, failureCallback, url, documentInterface == DocumentInterface.WORKER_SERVLET, bytes, infile, workerNameOrId, processType, maxWaitTime,
+                        random.nextInt(), warmupTime, limitedTime, statFile,
+                        userPrefix, userSuffixMin, userSuffixMax, continueOnFailure));
+            } else {
+                threads.add(new TaskThread(name, failureCallback,
+                        r -> createDocumentTask(documentInterface, url, input, workerNameOrId, processType, r, userPrefix, userSuffixMin, userSuffixMax),
+                        maxWaitTime, random.nextInt(), warmupTime, limitedTime, statFile, continueOnFailure));
+            }
+        }
+    }
+
+    /**
+     * Initialize the worker thread list for the mixed test suite. Each thread
+     * sends requests to all of the workloads in the mix.
+     *
+     * @param threads A list to hold the worker threads. This list is filled by the method.
+     * @param numThreads Number of threads to create.
+     * @param failureCallback Callback to handle failures.
+     * @param tsaUrl Time stamp signer URL or null if no time stamp workload.
+     * @param documentUrl URL of the interface to send documents to or null if no document workload.
+     * @param documentInterface Interface to send the documents to.
+     * @param inputs Documents to send for each workload in the mix, null for time stamp workloads.
+     * @param maxWaitTime Maximum waiting time between generated requests.
+     * @param warmupTime Warmup time, if set to > 0, will add a warmup period where no stats are collected.
+     * @param limitedTime Maximum run time, if set to -1, threads will run until interrupted.
+     * @param statFolder Output folder for statistics.
+     * @param hashAlg Hash algorithm for the time stamp requests.
+     * @param requestCertificate If it is true adds the certificate in the time stamp response.
+     * @throws Exception
+     */
+    private static void mixed1(final List<WorkerThread> threads, final int numThreads,
+            final FailureCallback failureCallback, final String tsaUrl,
+            final String documentUrl, final DocumentInterface documentInterface,
+            final List<DocumentInput> inputs, int maxWaitTime, long warmupTime,
+            final long limitedTime, final File statFolder,
+            final String userPrefix, final Integer userSuffixMin, final Integer userSuffixMax,
+            final boolean continueOnFailure, final String hashAlg, final boolean requestCertificate) throws Exception {
+        final ASN1ObjectIdentifier digestAlgorithm = getDigestAlgorithmFromString(hashAlg);
+        final int digestLength = getDigestAlgorithmLength(hashAlg);
+        final Random random = new Random();
+        for (int i = 0; i < numThreads; i++) {
+            final String name = "Mixed1-" + i;
+            final File statFile;
+            if (statFolder == null) {
+                statFile = null;
+            } else {
+                statFile = new File(statFolder, name + ".csv");
+            }
+            threads.add(new TaskThread(name, failureCallback, r -> {
+                final List<Task> tasks = new ArrayList<>();
+                for (int j = 0; j < inputs.size(); j++) {
+                    final DocumentInput input = inputs.get(j);
+                    if (input == null) {
+                        tasks.add(new TimeStamp(tsaUrl, r, new byte[digestLength], digestAlgorithm, requestCertificate));
+                    } else {
+                        tasks.add(createDocumentTask(documentInterface, documentUrl, input, mix.getEntries().get(j).getName(), "signDocument", r, userPrefix, userSuffixMin, userSuffixMax));
+                    }
+                }
+                return new MixedTask(mix, tasks, r);
+            }, maxWaitTime, random.nextInt(), warmupTime, limitedTime, statFile, continueOnFailure));
+        }
+    }
+
+    private static Task createDocumentTask(final DocumentInterface documentInterface, final String url,
+            final DocumentInput input, final String workerNameOrId, final String processType, final Random random,
+            final String userPrefix, final Integer userSuffixMin, final Integer userSuffixMax) {
+        switch (documentInterface) {
+            case REST:
+                return new RestDocumentSigner(url, input, workerNameOrId, random, userPrefix, userSuffixMin, userSuffixMax);
+            case CLIENTWS:
+                return new ClientWSDocumentSigner(url, input, workerNameOrId, random, userPrefix, userSuffixMin, userSuffixMax);
+            default:
+                return new DocumentSigner(url, documentInterface == DocumentInterface.WORKER_SERVLET, input, workerNameOrId, processType, random, userPrefix, userSuffixMin, userSuffixMax);
+        }
+    }
+
+    private static DocumentInput createDocumentInput(final Corpus corpus, final String clientSideDigestAlgorithm) throws ParseException {
+        try {
+            return new DocumentInput(corpus, clientSideDigestAlgorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new ParseException("Option -" + CLIENTSIDE_HASHING + ": " + ex.getMessage());
         }
     }
 
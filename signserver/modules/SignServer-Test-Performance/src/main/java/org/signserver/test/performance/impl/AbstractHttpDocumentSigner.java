@@ -0,0 +1,165 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.test.performance.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.bouncycastle.util.encoders.Base64;
+import org.signserver.test.performance.FailedException;
+import org.signserver.test.performance.Task;
+
+/**
+ * Base class for tasks invoking a document signer by posting the document
+ * in a request body built by the implementation.
+ *
+ * @version $Id$
+ */
+public abstract class AbstractHttpDocumentSigner implements Task {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(AbstractHttpDocumentSigner.class);
+
+    private final String workerNameOrId;
+    private final DocumentInput input;
+    private final Random random;
+
+    private final String userPrefix;
+    private final Integer userSuffixMin;
+    private final Integer userSuffixMax;
+
+    protected AbstractHttpDocumentSigner(final DocumentInput input, final String workerNameOrId, final Random random,
+            final String userPrefix, final Integer userSuffixMin, final Integer userSuffixMax) {
+        this.input = input;
+        this.workerNameOrId = workerNameOrId;
+        this.random = random;
+        this.userPrefix = userPrefix;
+        this.userSuffixMin = userSuffixMin;
+        this.userSuffixMax = userSuffixMax;
+    }
+
+    /**
+     * @return the URL to post the request to
+     * @throws IOException in case of malformed URL
+     */
+    protected abstract URL getRequestURL() throws IOException;
+
+    /**
+     * @return the content type of the request body
+     */
+    protected abstract String getContentType();
+
+    /**
+     * Creates the request body.
+     *
+     * @param data document or digest to send
+     * @param metadata request metadata to send
+     * @return the request body
+     */
+    protected abstract byte[] createRequestBody(byte[] data, Map<String, String> metadata);
+
+    /**
+     * Sets additional request properties. The default implementation does
+     * nothing.
+     *
+     * @param urlConn connection to set the properties on
+     */
+    protected void addRequestProperties(final HttpURLConnection urlConn) {
+    }
+
+    /**
+     * @return worker name or ID
+     */
+    protected String getWorkerNameOrId() {
+        return workerNameOrId;
+    }
+
+    @Override
+    public long run() throws FailedException {
+        try {
+            return documentRequest(input.next(), input.getMetadata());
+        } catch (IOException ex) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Could not create request", ex);
+            }
+            throw new FailedException("Could not create request: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Issue a request to a document signer as configured for the Task.
+     *
+     * @return Run time (in ms).
+     * @throws IOException
+     */
+    private long documentRequest(final byte[] data, final Map<String, String> metadata) throws IOException {
+        final byte[] body = createRequestBody(data, metadata);
+
+        // Take start time
+        final long startTime = System.nanoTime();
+
+        final HttpURLConnection urlConn = (HttpURLConnection) getRequestURL().openConnection();
+        urlConn.setDoOutput(true);
+        urlConn.setAllowUserInteraction(false);
+        urlConn.setRequestMethod("POST");
+        urlConn.setRequestProperty("Content-Type", getContentType());
+        addRequestProperties(urlConn);
+
+        // Send with username
+        if (userPrefix != null) {
+            final String username;
+            final String password = "";
+            if (userSuffixMin == null) {
+                username = userPrefix;
+            } else {
+                username = userPrefix + (userSuffixMin + random.nextInt(userSuffixMax - userSuffixMin + 1));
+            }
+            urlConn.setRequestProperty("Authorization", "Basic " + new String(Base64.encode((username + ":" + password).getBytes())));
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Username: " + username);
+            }
+        }
+
+        urlConn.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = urlConn.getOutputStream()) {
+            out.write(body);
+        }
+
+        final int responseCode = urlConn.getResponseCode();
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+            String message = null;
+            try (InputStream errorStream = urlConn.getErrorStream()) {
+                if (errorStream != null) {
+                    message = IOUtils.toString(errorStream, "UTF-8");
+                }
+            }
+            throw new IOException("Server returned HTTP response code: " + responseCode + (message == null ? "" : ": " + message));
+        }
+
+        // Get the response
+        try (InputStream inResp = urlConn.getInputStream()) {
+            IOUtils.skip(inResp, Long.MAX_VALUE);
+        }
+
+        // Take stop time
+        final long estimatedTime = System.nanoTime() - startTime;
+        return TimeUnit.NANOSECONDS.toMillis(estimatedTime);
+    }
+}
@@ -0,0 +1,88 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.test.performance.impl;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.bouncycastle.util.encoders.Base64;
+
+/**
+ * Invoke a document signer using the processData operation of the ClientWS
+ * web service.
+ *
+ * @version $Id$
+ */
+public class ClientWSDocumentSigner extends AbstractHttpDocumentSigner {
+
+    private static final String SOAP_ENVELOPE_START
+            = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+            + "<soap:Body><ns:processData xmlns:ns=\"http://clientws.signserver.org/\">";
+    private static final String SOAP_ENVELOPE_END
+            = "</ns:processData></soap:Body></soap:Envelope>";
+
+    private final String clientWSUrl;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param clientWSUrl URL of the ClientWS service, i.e.
+     * http://localhost:8080/signserver/ClientWSService/ClientWS
+     * @param input documents to send
+     * @param workerNameOrId worker name or ID
+     * @param random random generator
+     * @param userPrefix prefix for usernames or null
+     * @param userSuffixMin lowest suffix for usernames or null
+     * @param userSuffixMax highest suffix for usernames or null
+     */
+    public ClientWSDocumentSigner(final String clientWSUrl, final DocumentInput input,
+            final String workerNameOrId, final Random random,
+            final String userPrefix, final Integer userSuffixMin, final Integer userSuffixMax) {
+        super(input, workerNameOrId, random, userPrefix, userSuffixMin, userSuffixMax);
+        this.clientWSUrl = clientWSUrl;
+    }
+
+    @Override
+    protected URL getRequestURL() throws IOException {
+        return new URL(clientWSUrl);
+    }
+
+    @Override
+    protected String getContentType() {
+        return "text/xml; charset=UTF-8";
+    }
+
+    @Override
+    protected void addRequestProperties(final HttpURLConnection urlConn) {
+        urlConn.setRequestProperty("SOAPAction", "\"\"");
+    }
+
+    @Override
+    protected byte[] createRequestBody(final byte[] data, final Map<String, String> metadata) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(SOAP_ENVELOPE_START);
+        sb.append("<worker>").append(StringEscapeUtils.escapeXml(getWorkerNameOrId())).append("</worker>");
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            sb.append("<metadata name=\"").append(StringEscapeUtils.escapeXml(entry.getKey())).append("\">")
+                    .append(StringEscapeUtils.escapeXml(entry.getValue())).append("</metadata>");
+        }
+        sb.append("<data>").append(Base64.toBase64String(data)).append("</data>");
+        sb.append(SOAP_ENVELOPE_END);
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,104 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.test.performance.impl;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.signserver.test.performance.Corpus;
+
+/**
+ * The documents to send in the requests, taken from a corpus and optionally
+ * hashed on the client side so that only the digest is sent.
+ *
+ * @version $Id$
+ */
+public class DocumentInput {
+
+    /** Request metadata telling the worker that the data is a digest. */
+    public static final String USING_CLIENTSUPPLIED_HASH = "USING_CLIENTSUPPLIED_HASH";
+
+    /** Request metadata with the algorithm of the digest. */
+    public static final String CLIENTSIDE_HASHDIGESTALGORITHM = "CLIENTSIDE_HASHDIGESTALGORITHM";
+
+    private final Corpus corpus;
+    private final String clientSideDigestAlgorithm;
+    private final Map<String, String> metadata;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param corpus to take the documents from
+     * @param clientSideDigestAlgorithm digest algorithm to hash the documents
+     * with before sending them or null to send the documents as is
+     * @throws NoSuchAlgorithmException in case the digest algorithm is not
+     * supported
+     */
+    public DocumentInput(final Corpus corpus, final String clientSideDigestAlgorithm) throws NoSuchAlgorithmException {
+        this.corpus = corpus;
+        this.clientSideDigestAlgorithm = clientSideDigestAlgorithm;
+        if (clientSideDigestAlgorithm == null) {
+            metadata = Collections.emptyMap();
+        } else {
+            // Fail early for an unknown algorithm
+            MessageDigest.getInstance(clientSideDigestAlgorithm);
+
+            final Map<String, String> m = new LinkedHashMap<>();
+            m.put(USING_CLIENTSUPPLIED_HASH, Boolean.TRUE.toString());
+            m.put(CLIENTSIDE_HASHDIGESTALGORITHM, clientSideDigestAlgorithm);
+            metadata = Collections.unmodifiableMap(m);
+        }
+    }
+
+    /**
+     * Gives the data to send for the next document.
+     *
+     * @return the document or its digest when hashing on the client side
+     * @throws IOException in case the document could not be read
+     */
+    public byte[] next() throws IOException {
+        final byte[] document = corpus.next();
+        if (clientSideDigestAlgorithm == null) {
+            return document;
+        }
+        try {
+            return MessageDigest.getInstance(clientSideDigestAlgorithm).digest(document);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("Digest algorithm not supported: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * @return request metadata to send with the data
+     */
+    public Map<String, String> getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * @return the corpus the documents are taken from
+     */
+    public Corpus getCorpus() {
+        return corpus;
+    }
+
+    /**
+     * @return the digest algorithm or null if not hashing on the client side
+     */
+    public String getClientSideDigestAlgorithm() {
+        return clientSideDigestAlgorithm;
+    }
+}
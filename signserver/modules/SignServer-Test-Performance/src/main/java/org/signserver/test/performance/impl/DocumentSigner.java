@@ -18,6 +18,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
@@ -52,6 +54,7 @@ public class DocumentSigner implements Task {
     private final Random random;
     private final byte[] indata;
     private final File infile;
+    private final DocumentInput input;
 
     private final String userPrefix;
     private final Integer userSuffixMin;
@@ -60,10 +63,26 @@ public class DocumentSigner implements Task {
     public DocumentSigner(final String url, final boolean useWorkerServlet, 
             final byte[] indata, final File infile, final String workerNameOrId, final String processType, final Random random,
             final String userPrefix, final Integer userSuffixMin, final Integer userSuffixMax) {
+        this(url, useWorkerServlet, indata, infile, null, workerNameOrId, processType, random, userPrefix, userSuffixMin, userSuffixMax);
+    }
+
+    /**
+     * Creates a document signer sending the documents from the input.
+     */
+    public DocumentSigner(final String url, final boolean useWorkerServlet,
+            final DocumentInput input, final String workerNameOrId, final String processType, final Random random,
+            final String userPrefix, final Integer userSuffixMin, final Integer userSuffixMax) {
+        this(url, useWorkerServlet, null, null, input, workerNameOrId, processType, random, userPrefix, userSuffixMin, userSuffixMax);
+    }
+
+    private DocumentSigner(final String url, final boolean useWorkerServlet,
+            final byte[] indata, final File infile, final DocumentInput input, final String workerNameOrId, final String processType, final Random random,
+            final String userPrefix, final Integer userSuffixMin, final Integer userSuffixMax) {
         this.url = url;
         this.useWorkerServlet = useWorkerServlet;
         this.indata = indata;
         this.infile = infile;
+        this.input = input;
         this.workerNameOrId = workerNameOrId;
         this.processType = processType;
         this.random = random;
@@ -77,14 +96,20 @@ public class DocumentSigner implements Task {
         InputStream in = null;
         try {
             long size;
-            if (indata == null) {
+            Map<String, String> metadata = Collections.emptyMap();
+            if (input != null) {
+                final byte[] data = input.next();
+                in = new ByteArrayInputStream(data);
+                size = data.length;
+                metadata = input.getMetadata();
+            } else if (indata == null) {
                 in = new FileInputStream(infile);
                 size = infile.length();
             } else {
                 in = new ByteArrayInputStream(indata);
                 size = indata.length;
             }
-            return documentRequest(in, size);
+            return documentRequest(in, size, metadata);
         } catch (IOException ex) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Could not create request", ex);
@@ -101,7 +126,7 @@ public class DocumentSigner implements Task {
      * @return Run time (in ms).
      * @throws IOException
      */
-    private long documentRequest(InputStream in, long size) throws IOException {
+    private long documentRequest(InputStream in, long size, Map<String, String> metadata) throws IOException {
         URL url;
         HttpURLConnection urlConn;
 
@@ -186,6 +211,18 @@ public class DocumentSigner implements Task {
         sb.append("--" + BOUNDARY);
         sb.append(CRLF);
 
+        // Request metadata
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            sb.append("Content-Disposition: form-data; name=\"REQUEST_METADATA.").append(entry.getKey()).append("\"");
+            sb.append(CRLF);
+            sb.append(CRLF);
+            sb.append(entry.getValue());
+            sb.append(CRLF);
+
+            sb.append("--" + BOUNDARY);
+            sb.append(CRLF);
+        }
+
         sb.append("Content-Disposition: form-data; name=\"datafile\"");
         sb.append("; filename=\""); 
         // don't care about the actual file name for now...
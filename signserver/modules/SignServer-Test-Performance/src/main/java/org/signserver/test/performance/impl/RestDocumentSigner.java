@@ -0,0 +1,102 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.test.performance.impl;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import org.bouncycastle.util.encoders.Base64;
+
+/**
+ * Invoke a document signer using the REST interface.
+ *
+ * @version $Id$
+ */
+public class RestDocumentSigner extends AbstractHttpDocumentSigner {
+
+    private final String restUrl;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param restUrl base URL of the REST interface, i.e.
+     * http://localhost:8080/signserver/rest/v1
+     * @param input documents to send
+     * @param workerNameOrId worker name or ID
+     * @param random random generator
+     * @param userPrefix prefix for usernames or null
+     * @param userSuffixMin lowest suffix for usernames or null
+     * @param userSuffixMax highest suffix for usernames or null
+     */
+    public RestDocumentSigner(final String restUrl, final DocumentInput input,
+            final String workerNameOrId, final Random random,
+            final String userPrefix, final Integer userSuffixMin, final Integer userSuffixMax) {
+        super(input, workerNameOrId, random, userPrefix, userSuffixMin, userSuffixMax);
+        this.restUrl = restUrl;
+    }
+
+    @Override
+    protected URL getRequestURL() throws IOException {
+        return new URL(restUrl + "/workers/" + encodePathSegment(getWorkerNameOrId()) + "/process");
+    }
+
+    @Override
+    protected String getContentType() {
+        return "application/json";
+    }
+
+    @Override
+    protected byte[] createRequestBody(final byte[] data, final Map<String, String> metadata) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{\"data\":\"").append(Base64.toBase64String(data)).append("\",\"encoding\":\"BASE64\"");
+        if (!metadata.isEmpty()) {
+            sb.append(",\"metaData\":{");
+            boolean first = true;
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                appendJsonString(sb, entry.getKey());
+                sb.append(':');
+                appendJsonString(sb, entry.getValue());
+            }
+            sb.append('}');
+        }
+        sb.append('}');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String encodePathSegment(final String segment) throws UnsupportedEncodingException {
+        return URLEncoder.encode(segment, "UTF-8").replace("+", "%20");
+    }
+
+    private static void appendJsonString(final StringBuilder sb, final String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,79 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.test.performance;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.signserver.test.performance.impl.DocumentInput;
+
+/**
+ * Tests for the corpus of inputs of the performance tool.
+ *
+ * @version $Id$
+ */
+public class CorpusTest extends TestCase {
+
+    /** Logger for this class */
+    private static final Logger LOG = Logger.getLogger(CorpusTest.class);
+
+    /**
+     * Tests that the files of a directory are given in order and that it
+     * starts over after the last one.
+     */
+    public void test01Rotation() throws Exception {
+        LOG.info("test01Rotation");
+        final File directory = Files.createTempDirectory("corpus").toFile();
+        try {
+            for (final String name : Arrays.asList("b.xml", "a.xml", "c.xml")) {
+                FileUtils.writeStringToFile(new File(directory, name), name, StandardCharsets.UTF_8);
+            }
+            new File(directory, "subdirectory").mkdir();
+
+            final Corpus instance = Corpus.fromDirectory(directory);
+            assertEquals("size", 3, instance.size());
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 7; i++) {
+                sb.append(new String(instance.next(), StandardCharsets.UTF_8)).append(' ');
+            }
+            assertEquals("order", "a.xml b.xml c.xml a.xml b.xml c.xml a.xml ", sb.toString());
+        } finally {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+
+    /**
+     * Tests that the digest is sent with the client-side hashing metadata.
+     */
+    public void test02ClientSideHashing() throws Exception {
+        LOG.info("test02ClientSideHashing");
+        final byte[] data = "<root/>".getBytes(StandardCharsets.UTF_8);
+
+        final DocumentInput plain = new DocumentInput(new Corpus(data), null);
+        assertTrue("same data", Arrays.equals(data, plain.next()));
+        assertTrue("no metadata", plain.getMetadata().isEmpty());
+
+        final DocumentInput hashed = new DocumentInput(new Corpus(data), "SHA-256");
+        assertTrue("digest", Arrays.equals(java.security.MessageDigest.getInstance("SHA-256").digest(data), hashed.next()));
+        final Map<String, String> expected = new HashMap<>();
+        expected.put("USING_CLIENTSUPPLIED_HASH", "true");
+        expected.put("CLIENTSIDE_HASHDIGESTALGORITHM", "SHA-256");
+        assertEquals("metadata", expected, hashed.getMetadata());
+    }
+}
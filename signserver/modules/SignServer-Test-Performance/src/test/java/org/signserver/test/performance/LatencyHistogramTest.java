@@ -0,0 +1,127 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.test.performance;
+
+import java.io.StringWriter;
+import java.util.Collections;
+import junit.framework.TestCase;
+import org.apache.log4j.Logger;
+
+/**
+ * Tests for the latency histogram and reporting of the performance tool.
+ *
+ * @version $Id$
+ */
+public class LatencyHistogramTest extends TestCase {
+
+    /** Logger for this class */
+    private static final Logger LOG = Logger.getLogger(LatencyHistogramTest.class);
+
+    /**
+     * Tests that every value maps to a bucket containing it and that the
+     * buckets are contiguous.
+     */
+    public void test01Buckets() throws Exception {
+        LOG.info("test01Buckets");
+        final long[] values = {0, 1, 255, 256, 257, 511, 512, 1000, 123456789, 1L << 40, Long.MAX_VALUE};
+        for (final long value : values) {
+            final int index = LatencyHistogram.indexOf(value);
+            assertTrue("value " + value, LatencyHistogram.highestEquivalentValue(index) >= value);
+            if (index > 0) {
+                assertTrue("value " + value, LatencyHistogram.highestEquivalentValue(index - 1) < value);
+            }
+        }
+        for (int index = 1; index < 2000; index++) {
+            assertEquals("index " + index, index, LatencyHistogram.indexOf(LatencyHistogram.highestEquivalentValue(index - 1) + 1));
+        }
+    }
+
+    /**
+     * Tests the percentiles with values from 1 to 10000 microseconds.
+     */
+    public void test02Percentiles() throws Exception {
+        LOG.info("test02Percentiles");
+        final LatencyHistogram instance = new LatencyHistogram();
+        assertEquals("no samples", 0, instance.getValueAtPercentile(50));
+
+        for (long i = 1; i <= 10000; i++) {
+            instance.record(i * 1000);
+        }
+
+        assertEquals("count", 10000, instance.getTotalCount());
+        assertEquals("min", 1000, instance.getMin());
+        assertEquals("max", 10000000, instance.getMax());
+        assertEquals("mean", 5000500.0, instance.getMean(), 0.001);
+        assertWithin("p50", 5000000, instance.getValueAtPercentile(50));
+        assertWithin("p90", 9000000, instance.getValueAtPercentile(90));
+        assertWithin("p99", 9900000, instance.getValueAtPercentile(99));
+        assertWithin("p99.9", 9990000, instance.getValueAtPercentile(99.9));
+        assertEquals("p100", 10000000, instance.getValueAtPercentile(100));
+    }
+
+    /**
+     * Tests that draining moves all values to the target.
+     */
+    public void test03Drain() throws Exception {
+        LOG.info("test03Drain");
+        final LatencyHistogram instance = new LatencyHistogram();
+        final LatencyHistogram target = new LatencyHistogram();
+        instance.record(100);
+        target.record(5);
+
+        instance.drainTo(target);
+
+        assertEquals("drained", 0, instance.getTotalCount());
+        assertEquals("drained max", 0, instance.getMax());
+        assertEquals("target count", 2, target.getTotalCount());
+        assertEquals("target min", 5, target.getMin());
+        assertEquals("target max", 100, target.getMax());
+    }
+
+    /**
+     * Tests that the reporter collects the values of the threads in
+     * intervals and writes them.
+     */
+    public void test04Report() throws Exception {
+        LOG.info("test04Report");
+        final WorkerThread thread = new WorkerThread("test", null, 0, 0, 0, 0, null, false);
+        final LatencyReporter instance = new LatencyReporter(Collections.singletonList(thread));
+        instance.start(0);
+
+        thread.getHistogram().record(2000000);
+        thread.getHistogram().record(4000000);
+        final LatencyReporter.Interval first = instance.sample(1000);
+        assertEquals("first count", 2, first.getCount());
+        assertEquals("first rate", 2.0, first.getRate(), 0.001);
+        assertEquals("first max", 4000000, first.getMax());
+
+        thread.getHistogram().record(8000000);
+        assertEquals("second count", 1, instance.sample(2000).getCount());
+        assertEquals("total count", 3, instance.getTotal(2000).getCount());
+
+        final StringWriter csv = new StringWriter();
+        instance.writeCsv(csv, 2000);
+        final String[] lines = csv.toString().split("\n");
+        assertEquals("lines", 4, lines.length);
+        assertTrue("first: " + lines[1], lines[1].startsWith("1,0,1000,2,2.0,2.000,"));
+        assertTrue("total: " + lines[3], lines[3].startsWith("total,0,2000,3,1.5,2.000,"));
+
+        final StringWriter json = new StringWriter();
+        instance.writeJson(json, 2000);
+        assertTrue("json: " + json, json.toString().contains("\"total\": {\"interval\": \"total\", \"startMs\": 0, \"endMs\": 2000, \"count\": 3,"));
+    }
+
+    private static void assertWithin(final String message, final long expected, final long actual) {
+        assertTrue(message + ": " + actual, Math.abs(actual - expected) <= expected / 100);
+    }
+}
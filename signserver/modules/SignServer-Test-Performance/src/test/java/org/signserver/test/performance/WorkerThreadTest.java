@@ -82,4 +82,18 @@ public class WorkerThreadTest extends TestCase {
         assertEquals("Max", 59, thread.getMaxResponseTime());
 	}
 	
+    /**
+     * Tests that the arrival schedule gives slots at a constant rate.
+     */
+    public void test04ArrivalSchedule() throws Exception {
+        LOG.info("test04ArrivalSchedule");
+        ArrivalSchedule schedule = new ArrivalSchedule(200);
+        schedule.start(1000);
+
+        assertEquals("First slot", 1000, schedule.nextSlot());
+        assertEquals("Second slot", 1000 + 5000000, schedule.nextSlot());
+        assertEquals("Third slot", 1000 + 10000000, schedule.nextSlot());
+        assertEquals("Slots taken", 3, schedule.getSlotsTaken());
+    }
+
 }
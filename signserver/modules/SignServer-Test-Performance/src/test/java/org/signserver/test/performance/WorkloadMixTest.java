@@ -0,0 +1,104 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.test.performance;
+
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+import org.apache.log4j.Logger;
+
+/**
+ * Tests for the workload mix of the performance tool.
+ *
+ * @version $Id$
+ */
+public class WorkloadMixTest extends TestCase {
+
+    /** Logger for this class */
+    private static final Logger LOG = Logger.getLogger(WorkloadMixTest.class);
+
+    /**
+     * Tests parsing of the mix specification.
+     */
+    public void test01Parse() throws Exception {
+        LOG.info("test01Parse");
+        final WorkloadMix instance = WorkloadMix.parse("70:timestamp, 30:PDFSigner:C:\\pdfs");
+        assertEquals("entries", 2, instance.getEntries().size());
+        assertEquals("name", "timestamp", instance.getEntries().get(0).getName());
+        assertEquals("weight", 70, instance.getEntries().get(0).getWeight());
+        assertNull("argument", instance.getEntries().get(0).getArgument());
+        assertEquals("name", "PDFSigner", instance.getEntries().get(1).getName());
+        assertEquals("argument", "C:\\pdfs", instance.getEntries().get(1).getArgument());
+
+        for (final String spec : Arrays.asList("timestamp", "x:timestamp", "0:timestamp", "70:", "70:timestamp,,")) {
+            try {
+                WorkloadMix.parse(spec);
+                fail("Should have failed: " + spec);
+            } catch (IllegalArgumentException expected) { // NOPMD
+                // OK
+            }
+        }
+    }
+
+    /**
+     * Tests that the workloads are chosen according to their weights.
+     */
+    public void test02Pick() throws Exception {
+        LOG.info("test02Pick");
+        final WorkloadMix instance = WorkloadMix.parse("70:timestamp,30:PDFSigner");
+        final Random random = new Random(4711);
+        final int[] counts = new int[2];
+        for (int i = 0; i < 100000; i++) {
+            counts[instance.pick(random)]++;
+        }
+        assertTrue("timestamp share: " + counts[0], Math.abs(counts[0] - 70000) < 1000);
+        assertTrue("PDFSigner share: " + counts[1], Math.abs(counts[1] - 30000) < 1000);
+    }
+
+    /**
+     * Tests that the mixed task records the statistics of the chosen
+     * workload and tells which workload failed.
+     */
+    public void test03MixedTask() throws Exception {
+        LOG.info("test03MixedTask");
+        final WorkloadMix instance = WorkloadMix.parse("1:first,1:second");
+        final Task succeeding = () -> 1;
+        final Task failing = () -> {
+            throw new FailedException("Server returned HTTP response code: 500");
+        };
+        final MixedTask task = new MixedTask(instance, Arrays.asList(succeeding, failing), new Random(1));
+        int failures = 0;
+        for (int i = 0; i < 100; i++) {
+            try {
+                task.run();
+            } catch (FailedException ex) {
+                assertTrue("message: " + ex.getMessage(), ex.getMessage().startsWith("second: "));
+                failures++;
+            }
+        }
+        assertEquals("performed", 100 - failures, instance.getEntries().get(0).getOperationsPerformed());
+        assertEquals("failed", 0, instance.getEntries().get(0).getOperationsFailed());
+        assertEquals("performed", 0, instance.getEntries().get(1).getOperationsPerformed());
+        assertEquals("failed", failures, instance.getEntries().get(1).getOperationsFailed());
+
+        final String summary = instance.getSummary(10000);
+        LOG.info(summary);
+        assertTrue("summary: " + summary, summary.contains("first"));
+        assertTrue("summary: " + summary, summary.contains("second"));
+
+        // Nothing recorded during warm up
+        instance.setMeasureFrom(System.currentTimeMillis() + 60000);
+        task.run();
+        assertEquals("not recorded", 100 - failures, instance.getEntries().get(0).getOperationsPerformed());
+    }
+}
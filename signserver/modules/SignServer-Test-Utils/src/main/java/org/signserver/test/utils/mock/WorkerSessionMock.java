@@ -12,11 +12,14 @@
  *************************************************************************/
 package org.signserver.test.utils.mock;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.security.KeyStoreException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.util.*;
+import java.util.function.Consumer;
 import org.apache.log4j.Logger;
 import org.cesecore.audit.AuditLogEntry;
 import org.cesecore.authorization.AuthorizationDeniedException;
@@ -331,6 +334,26 @@ public class WorkerSessionMock implements WorkerSessionLocal,
         throw new UnsupportedOperationException("Not supported yet.");
     }
 
+    @Override
+    public Long getAccountBalance(String accountId) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public Map<String, Long> getAccountBalances() {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public long topUpAccountBalance(String accountId, long amount) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public long topUpAccountBalance(AdminInfo adminInfo, String accountId, long amount) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
     @Override
     public boolean removeKey(AdminInfo adminInfo, WorkerIdentifier signerId, String alias) throws CryptoTokenOfflineException, InvalidWorkerIdException, KeyStoreException, SignServerException {
         throw new UnsupportedOperationException("Not supported yet.");
@@ -450,6 +473,34 @@ public class WorkerSessionMock implements WorkerSessionLocal,
         throw new UnsupportedOperationException("Not supported yet.");
     }
 
+    @Override
+    public List<ArchiveMetadata> searchArchiveAfter(Date afterTime,
+            String afterUniqueId, int max, QueryCriteria criteria,
+            boolean descending, boolean includeData) throws AuthorizationDeniedException {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public List<ArchiveMetadata> searchArchiveAfter(AdminInfo adminInfo,
+            Date afterTime, String afterUniqueId, int max,
+            QueryCriteria criteria, boolean descending, boolean includeData)
+            throws AuthorizationDeniedException {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public long exportArchive(AdminInfo adminInfo, QueryCriteria criteria,
+            boolean descending, boolean includeData,
+            Consumer<ArchiveMetadata> consumer) throws AuthorizationDeniedException {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public boolean writeArchivedData(AdminInfo adminInfo, String uniqueId,
+            OutputStream out) throws IOException {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
     @Override
     public byte[] getKeystoreData(AdminInfo adminInfo, int signerId) {
         throw new UnsupportedOperationException("Not supported yet.");
@@ -0,0 +1,272 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.web.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+/**
+ * Processes the requests of a batch in parallel.
+ *
+ * The thread of the call always takes part in processing its batch and
+ * additional threads are borrowed from the executor. The number of
+ * additional threads processing batches for a worker at the same time is
+ * limited per worker so that large batches to one worker can not take all
+ * threads. The limit is shared by all instances, so that batches to a
+ * worker from different interfaces or bean instances count together. If no
+ * additional thread is available the batch is simply processed by the
+ * calling thread alone.
+ *
+ * With execute() the results are given in the order of the requests. If
+ * processing of a request fails no more requests are started and the failure
+ * of the first failing request, in request order, is thrown. With
+ * executeEach() all requests are processed and each result or failure is
+ * given to a listener as soon as it is available.
+ *
+ * @version $Id$
+ */
+public class BatchExecutor {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(BatchExecutor.class);
+
+    /**
+     * Worker property with the maximum number of requests in one batch.
+     */
+    public static final String BATCH_MAX_SIZE = "BATCH_MAX_SIZE";
+
+    /**
+     * Worker property with the maximum number of requests in batches
+     * processed at the same time for the worker, including the requests
+     * processed by the threads of the calls.
+     */
+    public static final String BATCH_PARALLELISM = "BATCH_PARALLELISM";
+
+    /** Default maximum batch size, no limit. */
+    public static final int DEFAULT_BATCH_MAX_SIZE = -1;
+
+    /** Default parallelism. */
+    public static final int DEFAULT_BATCH_PARALLELISM = 4;
+
+    /** Processing of one request in a batch. */
+    public interface Task<T> {
+
+        /**
+         * Processes the request.
+         *
+         * @param index of the request in the batch
+         * @return the response
+         * @throws Exception in case processing failed
+         */
+        T process(int index) throws Exception;
+    }
+
+    /** Receiver of the results of the requests in a batch. */
+    public interface Listener<T> {
+
+        /**
+         * Called once for each request when it has been processed. Calls
+         * are never made at the same time for the same batch.
+         *
+         * @param index of the request in the batch
+         * @param result the response or null if processing failed
+         * @param failure the failure or null if processing succeeded
+         * @throws Exception in case the result could not be handled, no
+         * more requests are then started
+         */
+        void completed(int index, T result, Exception failure) throws Exception;
+    }
+
+    private final Executor executor;
+    private static final Map<Integer, Permits> PERMITS = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new instance.
+     *
+     * @param executor to borrow additional threads from or null to process
+     * all batches in the calling thread
+     */
+    public BatchExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Processes all requests in a batch.
+     *
+     * @param workerId ID of the worker processing the requests
+     * @param parallelism maximum number of requests processed at the same
+     * time for the worker
+     * @param size number of requests
+     * @param task processing one request
+     * @param <T> type of response
+     * @return the responses in the same order as the requests
+     * @throws Exception the failure of the first request that failed
+     */
+    public <T> List<T> execute(final int workerId, final int parallelism,
+            final int size, final Task<T> task) throws Exception {
+        return run(workerId, parallelism, new Batch<>(size, task, null)).getResults();
+    }
+
+    /**
+     * Processes all requests in a batch, also after some of them failed,
+     * giving each result to the listener in the order they complete.
+     *
+     * @param workerId ID of the worker processing the requests
+     * @param parallelism maximum number of requests processed at the same
+     * time for the worker
+     * @param size number of requests
+     * @param task processing one request
+     * @param listener receiving the result of each request
+     * @param <T> type of response
+     * @throws Exception the failure of the listener, if any
+     */
+    public <T> void executeEach(final int workerId, final int parallelism,
+            final int size, final Task<T> task, final Listener<T> listener) throws Exception {
+        run(workerId, parallelism, new Batch<>(size, task, listener)).getResults();
+    }
+
+    private <T> Batch<T> run(final int workerId, final int parallelism,
+            final Batch<T> batch) throws InterruptedException {
+        final int size = batch.results.length;
+
+        // Borrow additional threads, at most one per remaining request
+        final Semaphore semaphore = getPermits(workerId, parallelism);
+        int helpers = 0;
+        while (executor != null && helpers < size - 1 && semaphore.tryAcquire()) {
+            helpers++;
+        }
+        final CountDownLatch helpersDone = new CountDownLatch(helpers);
+        for (int i = 0; i < helpers; i++) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        batch.run();
+                    } finally {
+                        semaphore.release();
+                        helpersDone.countDown();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("No additional thread available: " + ex.getMessage());
+                }
+                semaphore.release();
+                helpersDone.countDown();
+            }
+        }
+
+        batch.run();
+        helpersDone.await();
+        return batch;
+    }
+
+    private Semaphore getPermits(final int workerId, final int parallelism) {
+        final int additional = Math.max(0, parallelism - 1);
+        Permits result = PERMITS.get(workerId);
+        if (result == null || result.parallelism != additional) {
+            // Threads still holding permits of a replaced instance release them there
+            result = new Permits(additional);
+            PERMITS.put(workerId, result);
+        }
+        return result.semaphore;
+    }
+
+    /** Additional threads available for a worker. */
+    private static class Permits {
+        private final int parallelism;
+        private final Semaphore semaphore;
+
+        Permits(final int parallelism) {
+            this.parallelism = parallelism;
+            this.semaphore = new Semaphore(parallelism);
+        }
+    }
+
+    /** State of one batch shared by the threads processing it. */
+    private static class Batch<T> {
+        private final Task<T> task;
+        private final Listener<T> listener;
+        private final Object[] results;
+        private final Exception[] failures;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicBoolean failed = new AtomicBoolean();
+
+        Batch(final int size, final Task<T> task, final Listener<T> listener) {
+            this.task = task;
+            this.listener = listener;
+            this.results = new Object[size];
+            this.failures = new Exception[size];
+        }
+
+        void run() {
+            int index;
+            while (!failed.get() && (index = next.getAndIncrement()) < results.length) {
+                try {
+                    final T result = task.process(index);
+                    if (listener == null) {
+                        results[index] = result;
+                    } else {
+                        report(index, result, null);
+                    }
+                } catch (Exception ex) { // NOPMD: Reported by getResults or to the listener
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Request " + index + " in batch failed: " + ex.getMessage());
+                    }
+                    if (listener == null) {
+                        failures[index] = ex;
+                        failed.set(true);
+                    } else {
+                        report(index, null, ex);
+                    }
+                }
+            }
+        }
+
+        private void report(final int index, final T result, final Exception failure) {
+            synchronized (listener) {
+                if (failed.get()) {
+                    return;
+                }
+                try {
+                    listener.completed(index, result, failure);
+                } catch (Exception ex) { // NOPMD: Reported by getResults
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Result of request " + index + " in batch not handled: " + ex.getMessage());
+                    }
+                    failures[index] = ex;
+                    failed.set(true);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        List<T> getResults() throws Exception {
+            for (final Exception failure : failures) {
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+            return new ArrayList<>((List<T>) Arrays.asList(results));
+        }
+    }
+}
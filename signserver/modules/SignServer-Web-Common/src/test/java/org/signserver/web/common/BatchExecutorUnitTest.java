@@ -0,0 +1,206 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.web.common;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.signserver.common.IllegalRequestException;
+
+/**
+ * Unit tests for the BatchExecutor class.
+ *
+ * @version $Id$
+ */
+public class BatchExecutorUnitTest {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(BatchExecutorUnitTest.class);
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(16);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Tests that the responses are given in request order, that requests
+     * are processed in parallel and that the parallelism is not exceeded.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testOrderAndParallelism() throws Exception {
+        LOG.info("testOrderAndParallelism");
+        final BatchExecutor instance = new BatchExecutor(executor);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        final List<String> results = instance.execute(1, 4, 40, (int index) -> {
+            final int now = running.incrementAndGet();
+            maxRunning.accumulateAndGet(now, Math::max);
+            Thread.sleep(index % 3 == 0 ? 20 : 5);
+            running.decrementAndGet();
+            return "response " + index;
+        });
+
+        assertEquals("size", 40, results.size());
+        for (int i = 0; i < 40; i++) {
+            assertEquals("order", "response " + i, results.get(i));
+        }
+        assertTrue("parallel: " + maxRunning.get(), maxRunning.get() > 1);
+        assertTrue("parallelism: " + maxRunning.get(), maxRunning.get() <= 4);
+    }
+
+    /**
+     * Tests that concurrent batches for the same worker share the
+     * parallelism of the worker but always make progress.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testParallelismPerWorker() throws Exception {
+        LOG.info("testParallelismPerWorker");
+        final BatchExecutor instance = new BatchExecutor(executor);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final BatchExecutor.Task<Integer> task = (int index) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(5);
+            running.decrementAndGet();
+            return index;
+        };
+
+        final Thread[] callers = new Thread[3];
+        final AtomicInteger completed = new AtomicInteger();
+        for (int i = 0; i < callers.length; i++) {
+            callers[i] = new Thread(() -> {
+                try {
+                    if (instance.execute(1, 3, 20, task).size() == 20) {
+                        completed.incrementAndGet();
+                    }
+                } catch (Exception ex) {
+                    LOG.error("Batch failed", ex);
+                }
+            });
+            callers[i].start();
+        }
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        assertEquals("completed", 3, completed.get());
+        // Each caller thread plus at most 2 additional threads for the worker
+        assertTrue("parallelism: " + maxRunning.get(), maxRunning.get() <= 3 + 2);
+    }
+
+    /**
+     * Tests that the failure of the first failing request is thrown and
+     * that no more requests are started after a failure.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testFailure() throws Exception {
+        LOG.info("testFailure");
+        final BatchExecutor instance = new BatchExecutor(executor);
+        final AtomicInteger processed = new AtomicInteger();
+        try {
+            instance.execute(2, 2, 100, (int index) -> {
+                processed.incrementAndGet();
+                if (index >= 5) {
+                    throw new IllegalRequestException("Failed request " + index);
+                }
+                return index;
+            });
+            fail("Should have failed");
+        } catch (IllegalRequestException expected) {
+            assertEquals("first failure", "Failed request 5", expected.getMessage());
+        }
+        assertTrue("stopped: " + processed.get(), processed.get() < 100);
+    }
+
+    /**
+     * Tests that all requests are processed by the calling thread without
+     * an executor.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testWithoutExecutor() throws Exception {
+        LOG.info("testWithoutExecutor");
+        final BatchExecutor instance = new BatchExecutor(null);
+        final Thread caller = Thread.currentThread();
+        final List<Boolean> results = instance.execute(3, 4, 10, (int index) -> Thread.currentThread() == caller);
+        assertEquals("calling thread", Collections.nCopies(10, true), results);
+        assertTrue("empty", instance.execute(3, 4, 0, (int index) -> index).isEmpty());
+    }
+
+    /**
+     * Tests that executeEach gives every result and failure to the listener
+     * one at a time and that no more requests are started when the listener
+     * fails.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testExecuteEach() throws Exception {
+        LOG.info("testExecuteEach");
+        final BatchExecutor instance = new BatchExecutor(executor);
+        final AtomicInteger listening = new AtomicInteger();
+        final List<Integer> results = new ArrayList<>();
+        final List<Integer> failures = new ArrayList<>();
+        instance.executeEach(4, 4, 50, (int index) -> {
+            if (index % 10 == 0) {
+                throw new IllegalRequestException("Failed request " + index);
+            }
+            return index;
+        }, (int index, Integer result, Exception failure) -> {
+            assertEquals("one at a time", 1, listening.incrementAndGet());
+            if (failure == null) {
+                assertEquals("result", Integer.valueOf(index), result);
+                results.add(index);
+            } else {
+                assertNull("no result", result);
+                failures.add(index);
+            }
+            listening.decrementAndGet();
+        });
+        assertEquals("results", 45, results.size());
+        Collections.sort(failures);
+        assertEquals("failures", Arrays.asList(0, 10, 20, 30, 40), failures);
+
+        // Listener failing, for instance when the client has gone away
+        final AtomicInteger processed = new AtomicInteger();
+        try {
+            instance.executeEach(4, 2, 100, (int index) -> processed.incrementAndGet(),
+                    (int index, Integer result, Exception failure) -> {
+                throw new IOException("Connection closed");
+            });
+            fail("Should have failed");
+        } catch (IOException expected) {
+            assertEquals("listener failure", "Connection closed", expected.getMessage());
+        }
+        assertTrue("stopped: " + processed.get(), processed.get() < 100);
+    }
+}
@@ -368,6 +368,31 @@ public interface WorkerSession {
     long getKeyUsageCounterValue(final WorkerIdentifier workerId) 
             throws CryptoTokenOfflineException;
 
+    /**
+     * Returns the balance of the given account as charged by the
+     * AccountBalanceAccounter.
+     * @param accountId Id of the account
+     * @return The balance or null if there is no such account
+     */
+    Long getAccountBalance(String accountId);
+
+    /**
+     * Returns the balances of all accounts charged by the
+     * AccountBalanceAccounter.
+     * @return Map from account id to balance, ordered by account id
+     */
+    Map<String, Long> getAccountBalances();
+
+    /**
+     * Increases the balance of the given account, creating the account if it
+     * does not exist.
+     * @param accountId Id of the account
+     * @param amount Amount to add, must be positive
+     * @return The new balance
+     * @throws IllegalArgumentException if the amount is not positive
+     */
+    long topUpAccountBalance(String accountId, long amount);
+
     /**
      * Attempt to remove the specified key with the key alias.
      *
@@ -506,6 +531,28 @@ public interface WorkerSession {
     List<ArchiveMetadata> searchArchive(int startIndex,
             int max, QueryCriteria criteria, boolean includeData)
             throws AuthorizationDeniedException; 
+
+    /**
+     * Query contents of archive continuing after the given entry.
+     * Returns meta data entries of archive entries matching query criteria
+     * ordered by time and unique ID.
+     *
+     * To get the next page, give the time and unique ID of the last entry of
+     * the previous page. This is faster than using a start index for pages
+     * far into the result.
+     *
+     * @param afterTime Time of the entry to continue after or null to start from the beginning
+     * @param afterUniqueId Unique ID of the entry to continue after
+     * @param max Maximum number of results returned, 0 means all matching results
+     * @param criteria Search criteria for matching results, any ordering is ignored
+     * @param descending If true, the newest entries are returned first
+     * @param includeData If true, include actual archive data in entries
+     * @return List of metadata objects describing matching entries
+     * @throws AuthorizationDeniedException
+     */
+    List<ArchiveMetadata> searchArchiveAfter(Date afterTime, String afterUniqueId,
+            int max, QueryCriteria criteria, boolean descending, boolean includeData)
+            throws AuthorizationDeniedException;
     
     /**
      * Query contents of archive based on list of uniqueIds (primary key in DB).
@@ -13,13 +13,17 @@
 package org.signserver.ejb.interfaces;
 
 import org.signserver.common.WorkerIdentifier;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyStoreException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import javax.ejb.Local;
 import org.cesecore.audit.AuditLogEntry;
 import org.cesecore.authorization.AuthorizationDeniedException;
@@ -362,6 +366,51 @@ public interface WorkerSessionLocal extends WorkerSession {
             boolean includeData)
             throws AuthorizationDeniedException;
 
+    /**
+     * Query contents of archive continuing after the given entry.
+     *
+     * @param adminInfo Administrator information
+     * @param afterTime Time of the entry to continue after or null to start
+     * from the beginning
+     * @param afterUniqueId Unique ID of the entry to continue after
+     * @param max Maximum number of results returned, 0 means all matching
+     * results
+     * @param criteria Search criteria for matching results, any ordering is
+     * ignored
+     * @param descending If true, the newest entries are returned first
+     * @param includeData If true, archive data is included in the meta data
+     * entries
+     * @return List of metadata objects describing matching entries
+     * @throws AuthorizationDeniedException
+     * @see WorkerSession#searchArchiveAfter(java.util.Date, java.lang.String, int, org.cesecore.util.query.QueryCriteria, boolean, boolean)
+     */
+    List<ArchiveMetadata> searchArchiveAfter(AdminInfo adminInfo,
+            Date afterTime, String afterUniqueId, int max,
+            QueryCriteria criteria, boolean descending, boolean includeData)
+            throws AuthorizationDeniedException;
+
+    /**
+     * Gives all archive entries matching the criteria to the consumer, one
+     * at the time, ordered by time and unique ID. The entries are queried
+     * in batches so that all of them never have to be in memory at the same
+     * time. No transaction is kept open while the entries are consumed, each
+     * batch is read on its own.
+     *
+     * @param adminInfo Administrator information
+     * @param criteria Search criteria for matching results, any ordering is
+     * ignored
+     * @param descending If true, the newest entries are given first
+     * @param includeData If true, archive data is included in the meta data
+     * entries
+     * @param consumer To give the entries to
+     * @return Number of entries
+     * @throws AuthorizationDeniedException
+     */
+    long exportArchive(AdminInfo adminInfo, QueryCriteria criteria,
+            boolean descending, boolean includeData,
+            Consumer<ArchiveMetadata> consumer)
+            throws AuthorizationDeniedException;
+
     /**
      * Query contents of archive based on list of unique IDs (primary key in
      * DB).
@@ -378,6 +427,19 @@ public interface WorkerSessionLocal extends WorkerSession {
             final boolean includeData)
             throws AuthorizationDeniedException;
 
+    /**
+     * Writes the archived data of an archive entry to the stream, without
+     * first loading all of it into memory when the archiver supports it.
+     *
+     * @param adminInfo Administrator information
+     * @param uniqueId Unique ID of the entry (primary key in DB)
+     * @param out Stream to write the archived data to
+     * @return False if there was no such entry
+     * @throws IOException In case of error reading or writing the data
+     */
+    boolean writeArchivedData(AdminInfo adminInfo, String uniqueId,
+            OutputStream out) throws IOException;
+
     /**
      * Queries the specified worker's crypto token.
      *
@@ -411,6 +473,17 @@ public interface WorkerSessionLocal extends WorkerSession {
             UnsupportedCryptoTokenParameter,
             OperationUnsupportedException;
     
+    /**
+     * Increases the balance of the given account, creating the account if it
+     * does not exist.
+     * @param adminInfo Administrator information
+     * @param accountId Id of the account
+     * @param amount Amount to add, must be positive
+     * @return The new balance
+     * @throws IllegalArgumentException if the amount is not positive
+     */
+    long topUpAccountBalance(AdminInfo adminInfo, String accountId, long amount);
+
     /**
      * Checks if key generation is disabled in the deployment configuration.
      * @return true if key generation has been disabled globally.
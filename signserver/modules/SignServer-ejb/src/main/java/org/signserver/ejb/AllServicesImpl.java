@@ -12,7 +12,9 @@
  *************************************************************************/
 package org.signserver.ejb;
 
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.persistence.EntityManager;
+import javax.transaction.TransactionSynchronizationRegistry;
 import org.cesecore.audit.log.SecurityEventsLoggerSessionLocal;
 import org.signserver.ejb.interfaces.DispatcherProcessSessionLocal;
 import org.signserver.ejb.interfaces.InternalProcessSessionLocal;
@@ -20,6 +22,7 @@ import org.signserver.ejb.interfaces.ProcessSessionLocal;
 import org.signserver.server.ServicesImpl;
 import org.signserver.ejb.interfaces.WorkerSessionLocal;
 import org.signserver.ejb.interfaces.GlobalConfigurationSessionLocal;
+import org.signserver.server.entities.IAccountBalanceDataService;
 import org.signserver.server.entities.IKeyUsageCounterDataService;
 import org.signserver.statusrepo.StatusRepositorySessionLocal;
 
@@ -45,6 +48,9 @@ public class AllServicesImpl extends ServicesImpl {
      * @param dispatcherWorkerSession Dispatcher worker session
      * @param statusRespositorySession Status repository session
      * @param keyUsageCounterDataService Key usage counter service
+     * @param accountBalanceDataService Account balance service
+     * @param transactionSynchronizationRegistry Transaction synchronization registry
+     * @param executorService Executor for work done in parallel by the workers
      */
     public void putAll(final EntityManager em,
             final WorkerSessionLocal workerSession,
@@ -54,7 +60,10 @@ public class AllServicesImpl extends ServicesImpl {
             final InternalProcessSessionLocal internalWorkerSession,
             final DispatcherProcessSessionLocal dispatcherWorkerSession,
             final StatusRepositorySessionLocal statusRespositorySession,
-            final IKeyUsageCounterDataService keyUsageCounterDataService) {
+            final IKeyUsageCounterDataService keyUsageCounterDataService,
+            final IAccountBalanceDataService accountBalanceDataService,
+            final TransactionSynchronizationRegistry transactionSynchronizationRegistry,
+            final ManagedExecutorService executorService) {
         put(EntityManager.class, em);
         put(WorkerSessionLocal.class, workerSession);
         put(ProcessSessionLocal.class, processSession);
@@ -64,6 +73,9 @@ public class AllServicesImpl extends ServicesImpl {
         put(DispatcherProcessSessionLocal.class, dispatcherWorkerSession);
         put(StatusRepositorySessionLocal.class, statusRespositorySession);
         put(IKeyUsageCounterDataService.class, keyUsageCounterDataService);
+        put(IAccountBalanceDataService.class, accountBalanceDataService);
+        put(TransactionSynchronizationRegistry.class, transactionSynchronizationRegistry);
+        put(ManagedExecutorService.class, executorService);
         // Add additional services here
     }
 }
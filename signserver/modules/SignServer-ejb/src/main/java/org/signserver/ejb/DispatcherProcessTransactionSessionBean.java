@@ -28,6 +28,7 @@ import org.signserver.common.WorkerIdentifier;
 import org.signserver.common.data.Request;
 import org.signserver.common.data.Response;
 import org.signserver.ejb.interfaces.DispatcherProcessTransactionSessionLocal;
+import org.signserver.ejb.worker.impl.ArchiveQueueSingletonBean;
 import org.signserver.ejb.worker.impl.WorkerManagerSingletonBean;
 import org.signserver.server.entities.FileBasedKeyUsageCounterDataService;
 import org.signserver.server.entities.IKeyUsageCounterDataService;
@@ -60,6 +61,9 @@ public class DispatcherProcessTransactionSessionBean implements DispatcherProces
     @EJB
     private WorkerManagerSingletonBean workerManagerSession;
 
+    @EJB
+    private ArchiveQueueSingletonBean archiveQueueSession;
+
     EntityManager em;
 
     @PostConstruct
@@ -75,7 +79,7 @@ public class DispatcherProcessTransactionSessionBean implements DispatcherProces
             }
             keyUsageCounterDataService = new KeyUsageCounterDataService(em);
         }
-        processImpl = new WorkerProcessImpl(em, keyUsageCounterDataService, workerManagerSession, logSession);
+        processImpl = new WorkerProcessImpl(em, keyUsageCounterDataService, workerManagerSession, logSession, archiveQueueSession);
     }
 
     /**
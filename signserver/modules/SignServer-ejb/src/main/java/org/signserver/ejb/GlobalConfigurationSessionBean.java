@@ -25,11 +25,13 @@ import org.cesecore.audit.enums.EventStatus;
 import org.cesecore.audit.log.AuditRecordStorageException;
 import org.cesecore.audit.log.SecurityEventsLoggerSessionLocal;
 import org.signserver.common.*;
+import org.signserver.ejb.worker.impl.ConfigChangeSingletonBean;
 import org.signserver.ejb.worker.impl.WorkerManagerSingletonBean;
 import org.signserver.server.GlobalConfigurationCache;
 import org.signserver.server.config.entities.FileBasedGlobalConfigurationDataService;
 import org.signserver.server.config.entities.GlobalConfigurationDataBean;
 import org.signserver.server.config.entities.GlobalConfigurationDataService;
+import org.signserver.server.config.entities.IConfigChangeDataService;
 import org.signserver.server.config.entities.IGlobalConfigurationDataService;
 import org.signserver.server.log.AdminInfo;
 import org.signserver.server.log.SignServerEventTypes;
@@ -54,6 +56,9 @@ public class GlobalConfigurationSessionBean implements GlobalConfigurationSessio
     
     @EJB
     private WorkerManagerSingletonBean workerManagerSession;
+
+    @EJB
+    private ConfigChangeSingletonBean configChangeSession;
     
     @EJB
     private SecurityEventsLoggerSessionLocal logSession;
@@ -194,7 +199,8 @@ public class GlobalConfigurationSessionBean implements GlobalConfigurationSessio
         }
         retval = new GlobalConfiguration(cache.getCachedGlobalConfig(), 
                 cache.getCurrentState(), 
-                CompileTimeSettings.getInstance().getProperty(CompileTimeSettings.SIGNSERVER_VERSION));
+                CompileTimeSettings.getInstance().getProperty(CompileTimeSettings.SIGNSERVER_VERSION),
+                configChangeSession.getSummary());
 
         return retval;
     }
@@ -282,6 +288,7 @@ public class GlobalConfigurationSessionBean implements GlobalConfigurationSessio
         workerManagerSession.flush();
         cache.setCachedGlobalConfig(null);
         getGlobalConfiguration();
+        configChangeSession.recordChange(IConfigChangeDataService.GLOBAL_CONFIGURATION);
 
         // Set the state to insync.
         cache.setCurrentState(GlobalConfiguration.STATE_INSYNC);
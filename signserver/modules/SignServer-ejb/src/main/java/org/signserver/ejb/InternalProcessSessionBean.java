@@ -19,8 +19,10 @@ import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.naming.NamingException;
 import javax.persistence.EntityManager;
+import javax.transaction.TransactionSynchronizationRegistry;
 import org.apache.log4j.Logger;
 import org.cesecore.audit.log.SecurityEventsLoggerSessionLocal;
 import org.signserver.common.CryptoTokenOfflineException;
@@ -34,8 +36,12 @@ import org.signserver.common.data.Response;
 import org.signserver.ejb.interfaces.DispatcherProcessSessionLocal;
 import org.signserver.ejb.interfaces.InternalProcessSessionLocal;
 import org.signserver.ejb.interfaces.ProcessSessionLocal;
+import org.signserver.ejb.worker.impl.ArchiveQueueSingletonBean;
 import org.signserver.ejb.worker.impl.WorkerManagerSingletonBean;
+import org.signserver.server.entities.AccountBalanceDataService;
+import org.signserver.server.entities.FileBasedAccountBalanceDataService;
 import org.signserver.server.entities.FileBasedKeyUsageCounterDataService;
+import org.signserver.server.entities.IAccountBalanceDataService;
 import org.signserver.server.entities.IKeyUsageCounterDataService;
 import org.signserver.server.entities.KeyUsageCounterDataService;
 import org.signserver.server.log.AdminInfo;
@@ -61,6 +67,7 @@ public class InternalProcessSessionBean implements InternalProcessSessionLocal {
     private static final Logger LOG = Logger.getLogger(InternalProcessSessionBean.class);
 
     private IKeyUsageCounterDataService keyUsageCounterDataService;
+    private IAccountBalanceDataService accountBalanceDataService;
 
     @EJB
     private GlobalConfigurationSessionLocal globalConfigurationSession;
@@ -68,6 +75,9 @@ public class InternalProcessSessionBean implements InternalProcessSessionLocal {
     @EJB
     private WorkerManagerSingletonBean workerManagerSession;
 
+    @EJB
+    private ArchiveQueueSingletonBean archiveQueueSession;
+
     @EJB
     private SecurityEventsLoggerSessionLocal logSession;
     
@@ -80,6 +90,12 @@ public class InternalProcessSessionBean implements InternalProcessSessionLocal {
     @Resource
     private SessionContext ctx;
 
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    @Resource
+    private ManagedExecutorService executorService;
+
     private WorkerProcessImpl processImpl;
     private final AllServicesImpl servicesImpl = new AllServicesImpl();
     private InternalProcessSessionLocal session;
@@ -91,13 +107,15 @@ public class InternalProcessSessionBean implements InternalProcessSessionLocal {
                 LOG.debug("No EntityManager injected. Running without database.");
             }
             keyUsageCounterDataService = new FileBasedKeyUsageCounterDataService(FileBasedDatabaseManager.getInstance());
+            accountBalanceDataService = new FileBasedAccountBalanceDataService(FileBasedDatabaseManager.getInstance());
         } else {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("EntityManager injected. Running with database.");
             }
             keyUsageCounterDataService = new KeyUsageCounterDataService(em);
+            accountBalanceDataService = new AccountBalanceDataService(em);
         }
-        processImpl = new WorkerProcessImpl(em, keyUsageCounterDataService, workerManagerSession, logSession);
+        processImpl = new WorkerProcessImpl(em, keyUsageCounterDataService, workerManagerSession, logSession, archiveQueueSession);
         session = ctx.getBusinessObject(InternalProcessSessionLocal.class);
         
         // XXX The lookups will fail on GlassFish V2
@@ -123,7 +141,8 @@ public class InternalProcessSessionBean implements InternalProcessSessionLocal {
                     globalConfigurationSession,
                     logSession,
                     session, dispatcherSession, statusSession,
-                    keyUsageCounterDataService);
+                    keyUsageCounterDataService, accountBalanceDataService,
+                    transactionSynchronizationRegistry, executorService);
         } catch (NamingException ex) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Lookup services failed", ex);
@@ -24,8 +24,10 @@ import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.naming.NamingException;
 import javax.persistence.EntityManager;
+import javax.transaction.TransactionSynchronizationRegistry;
 import org.apache.commons.fileupload.FileUploadBase;
 import org.apache.commons.fileupload.FileUploadException;
 import org.apache.log4j.Logger;
@@ -60,8 +62,12 @@ import org.signserver.common.data.SODRequest;
 import org.signserver.common.data.SODResponse;
 import org.signserver.ejb.interfaces.DispatcherProcessSessionLocal;
 import org.signserver.ejb.interfaces.InternalProcessSessionLocal;
+import org.signserver.ejb.worker.impl.ArchiveQueueSingletonBean;
 import org.signserver.ejb.worker.impl.WorkerManagerSingletonBean;
+import org.signserver.server.entities.AccountBalanceDataService;
+import org.signserver.server.entities.FileBasedAccountBalanceDataService;
 import org.signserver.server.entities.FileBasedKeyUsageCounterDataService;
+import org.signserver.server.entities.IAccountBalanceDataService;
 import org.signserver.server.entities.IKeyUsageCounterDataService;
 import org.signserver.server.entities.KeyUsageCounterDataService;
 import org.signserver.server.log.AdminInfo;
@@ -98,12 +104,16 @@ public class ProcessSessionBean implements ProcessSessionRemote, ProcessSessionL
     private static final Logger LOG = Logger.getLogger(WorkerSessionBean.class);
     
     private IKeyUsageCounterDataService keyUsageCounterDataService;
+    private IAccountBalanceDataService accountBalanceDataService;
 
     @EJB
     private GlobalConfigurationSessionLocal globalConfigurationSession;
     
     @EJB
     private WorkerManagerSingletonBean workerManagerSession;
+
+    @EJB
+    private ArchiveQueueSingletonBean archiveQueueSession;
     
     @EJB
     private SecurityEventsLoggerSessionLocal logSession;
@@ -113,6 +123,12 @@ public class ProcessSessionBean implements ProcessSessionRemote, ProcessSessionL
     
     @Resource
     private SessionContext ctx;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    @Resource
+    private ManagedExecutorService executorService;
     
     EntityManager em;
 
@@ -130,13 +146,15 @@ public class ProcessSessionBean implements ProcessSessionRemote, ProcessSessionL
                 LOG.debug("No EntityManager injected. Running without database.");
             }
             keyUsageCounterDataService = new FileBasedKeyUsageCounterDataService(FileBasedDatabaseManager.getInstance());
+            accountBalanceDataService = new FileBasedAccountBalanceDataService(FileBasedDatabaseManager.getInstance());
         } else {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("EntityManager injected. Running with database.");
             }
             keyUsageCounterDataService = new KeyUsageCounterDataService(em);
+            accountBalanceDataService = new AccountBalanceDataService(em);
         }
-        processImpl = new WorkerProcessImpl(em, keyUsageCounterDataService, workerManagerSession, logSession);
+        processImpl = new WorkerProcessImpl(em, keyUsageCounterDataService, workerManagerSession, logSession, archiveQueueSession);
 
         session = ctx.getBusinessObject(ProcessSessionLocal.class);
         
@@ -163,7 +181,8 @@ public class ProcessSessionBean implements ProcessSessionRemote, ProcessSessionL
                     globalConfigurationSession,
                     logSession,
                     internalSession, dispatcherSession, statusSession,
-                    keyUsageCounterDataService);
+                    keyUsageCounterDataService, accountBalanceDataService,
+                    transactionSynchronizationRegistry, executorService);
         } catch (NamingException ex) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Lookup services failed", ex);
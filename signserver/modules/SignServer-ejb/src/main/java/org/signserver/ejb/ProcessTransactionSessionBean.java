@@ -28,6 +28,7 @@ import org.signserver.common.WorkerIdentifier;
 import org.signserver.common.data.Request;
 import org.signserver.common.data.Response;
 import org.signserver.ejb.interfaces.ProcessTransactionSessionLocal;
+import org.signserver.ejb.worker.impl.ArchiveQueueSingletonBean;
 import org.signserver.ejb.worker.impl.WorkerManagerSingletonBean;
 import org.signserver.server.entities.FileBasedKeyUsageCounterDataService;
 import org.signserver.server.entities.IKeyUsageCounterDataService;
@@ -59,6 +60,9 @@ public class ProcessTransactionSessionBean implements ProcessTransactionSessionL
     @EJB
     private WorkerManagerSingletonBean workerManagerSession;
 
+    @EJB
+    private ArchiveQueueSingletonBean archiveQueueSession;
+
     EntityManager em;
 
     @PostConstruct
@@ -74,7 +78,7 @@ public class ProcessTransactionSessionBean implements ProcessTransactionSessionL
             }
             keyUsageCounterDataService = new KeyUsageCounterDataService(em);
         }
-        processImpl = new WorkerProcessImpl(em, keyUsageCounterDataService, workerManagerSession, logSession);
+        processImpl = new WorkerProcessImpl(em, keyUsageCounterDataService, workerManagerSession, logSession, archiveQueueSession);
     }
 
     /**
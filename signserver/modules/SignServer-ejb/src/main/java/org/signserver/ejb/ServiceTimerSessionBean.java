@@ -18,6 +18,7 @@ import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import javax.ejb.*;
 import javax.ejb.Timer;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.naming.NamingException;
 import javax.persistence.EntityManager;
 import javax.transaction.*;
@@ -45,7 +46,10 @@ import org.signserver.ejb.interfaces.InternalProcessSessionLocal;
 import org.signserver.ejb.interfaces.ProcessSessionLocal;
 import org.signserver.ejb.interfaces.ServiceTimerSessionLocal;
 import org.signserver.ejb.interfaces.WorkerSessionLocal;
+import org.signserver.server.entities.AccountBalanceDataService;
+import org.signserver.server.entities.FileBasedAccountBalanceDataService;
 import org.signserver.server.entities.FileBasedKeyUsageCounterDataService;
+import org.signserver.server.entities.IAccountBalanceDataService;
 import org.signserver.server.entities.IKeyUsageCounterDataService;
 import org.signserver.server.entities.KeyUsageCounterDataService;
 import org.signserver.server.nodb.FileBasedDatabaseManager;
@@ -63,8 +67,15 @@ public class ServiceTimerSessionBean implements ServiceTimerSessionLocal {
     
     @Resource
     private SessionContext sessionCtx;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    @Resource
+    private ManagedExecutorService executorService;
     
     private IKeyUsageCounterDataService keyUsageCounterDataService;
+    private IAccountBalanceDataService accountBalanceDataService;
     
     @EJB
     private GlobalConfigurationSessionLocal globalConfigurationSession;
@@ -101,11 +112,13 @@ public class ServiceTimerSessionBean implements ServiceTimerSessionLocal {
                 LOG.debug("No EntityManager injected. Running without database.");
             }
             keyUsageCounterDataService = new FileBasedKeyUsageCounterDataService(FileBasedDatabaseManager.getInstance());
+            accountBalanceDataService = new FileBasedAccountBalanceDataService(FileBasedDatabaseManager.getInstance());
         } else {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("EntityManager injected. Running with database.");
             }
             keyUsageCounterDataService = new KeyUsageCounterDataService(em);
+            accountBalanceDataService = new AccountBalanceDataService(em);
         }
         
         // XXX The lookups will fail on GlassFish V2
@@ -131,7 +144,8 @@ public class ServiceTimerSessionBean implements ServiceTimerSessionLocal {
                     globalConfigurationSession,
                     logSession,
                     internalSession, ServiceLocator.getInstance().lookupLocal(DispatcherProcessSessionLocal.class), statusSession,
-                    keyUsageCounterDataService);
+                    keyUsageCounterDataService, accountBalanceDataService,
+                    transactionSynchronizationRegistry, executorService);
         } catch (NamingException ex) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Lookup services failed", ex);
@@ -15,16 +15,25 @@ package org.signserver.ejb;
 import com.keyfactor.util.crypto.algorithm.AlgorithmConfigurationCache;
 import com.keyfactor.util.crypto.provider.CryptoProviderConfigurationCache;
 import com.keyfactor.util.string.StringConfigurationCache;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
 import javax.ejb.Singleton;
 import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.cesecore.audit.enums.EventStatus;
@@ -45,6 +54,8 @@ import static org.signserver.common.util.PropertiesConstants.GLOBAL_PREFIX_DOT;
 import static org.signserver.common.util.PropertiesConstants.OLDWORKER_PREFIX;
 import static org.signserver.common.util.PropertiesConstants.WORKER_PREFIX;
 import org.signserver.ejb.worker.impl.WorkerManagerSingletonBean;
+import org.signserver.ejb.worker.impl.WorkerWarmup;
+import org.signserver.ejb.worker.impl.WorkerWithComponents;
 import org.signserver.server.cesecore.AlwaysAllowLocalAuthenticationToken;
 import org.signserver.server.log.AdminInfo;
 import org.signserver.server.log.SignServerEventTypes;
@@ -57,6 +68,7 @@ import org.signserver.statusrepo.common.StatusName;
 import org.signserver.ejb.interfaces.WorkerSessionLocal;
 import org.signserver.ejb.interfaces.GlobalConfigurationSessionLocal;
 import org.signserver.ejb.interfaces.ServiceTimerSessionLocal;
+import org.signserver.server.IProcessable;
 import org.signserver.server.IWorker;
 import org.signserver.server.config.entities.FileBasedWorkerConfigDataService;
 import org.signserver.statusrepo.StatusRepositorySessionLocal;
@@ -73,6 +85,12 @@ public class StartupSingletonBean {
     private static final long serialVersionUID = 1L;
     
     private static final String LOG_VERSION = "VERSION";
+
+    /** Values of the WORKERS_WARMUP status property. */
+    private static final String WARMUP_RUNNING = "RUNNING";
+    private static final String WARMUP_DONE = "DONE";
+
+    private static final int DEFAULT_WARMUP_THREADS = 8;
     
     /** Logger for this class. */
     private static final Logger LOG
@@ -96,6 +114,13 @@ public class StartupSingletonBean {
     @EJB
     private WorkerManagerSingletonBean workerManager;
 
+    @Resource
+    private TimerService timerService;
+
+    /** Executor for initializing the workers in parallel. */
+    @Resource
+    private ManagedExecutorService executorService;
+
     private ServiceTimerSessionLocal getTimedServiceSession(){
     	return timedServiceSession;
     }
@@ -250,7 +275,72 @@ public class StartupSingletonBean {
         } catch (NoSuchPropertyException ex) {
             throw new EJBException(ex);
         }
-        
+
+        // Initialize all workers in the background if configured
+        if (Boolean.parseBoolean(settings.getProperty(CompileTimeSettings.WORKERS_WARMUP))) {
+            try {
+                getStatusRepositorySession().update(StatusName.WORKERS_WARMUP.name(), WARMUP_RUNNING);
+            } catch (NoSuchPropertyException ex) {
+                throw new EJBException(ex);
+            }
+            timerService.createSingleActionTimer(0, new TimerConfig(null, false));
+        }
+    }
+
+    /**
+     * Initializes all workers and activates their crypto tokens, in parallel.
+     * The crypto workers are initialized first as other workers might use
+     * their tokens.
+     */
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void warmUpWorkers() {
+        final int threads = getWarmupThreads();
+        final List<Integer> cryptoWorkers = workerManager.getAllWorkerIDs(WorkerType.CRYPTO_WORKER);
+        final List<Integer> otherWorkers = new ArrayList<>(workerManager.getAllWorkerIDs());
+        otherWorkers.removeAll(cryptoWorkers);
+        LOG.info("Initializing " + (cryptoWorkers.size() + otherWorkers.size())
+                + " workers using " + threads + " threads");
+        try {
+            final WorkerWarmup.Result result = new WorkerWarmup(executorService, threads)
+                    .run(Arrays.asList(cryptoWorkers, otherWorkers), this::warmUpWorker);
+            LOG.info(result.getSummary());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            LOG.error("Interrupted while initializing workers");
+        } finally {
+            try {
+                getStatusRepositorySession().update(StatusName.WORKERS_WARMUP.name(), WARMUP_DONE);
+            } catch (NoSuchPropertyException ex) {
+                LOG.error("Unable to update status: " + ex.getMessage());
+            }
+        }
+    }
+
+    private boolean warmUpWorker(final int workerId) throws Exception {
+        final WorkerIdentifier wi = new WorkerIdentifier(workerId);
+        final WorkerWithComponents worker = workerManager.getWorkerWithComponents(wi);
+        if (worker.getPreloadedConfig().isDisabled() || !worker.getCreateErrors().isEmpty()) {
+            return false;
+        }
+        if (worker.getWorker() instanceof IProcessable) {
+            // Creates and, if configured with a PIN, activates the token
+            return workerSession.isTokenActive(wi);
+        }
+        return true;
+    }
+
+    private static int getWarmupThreads() {
+        final String value = CompileTimeSettings.getInstance().getProperty(CompileTimeSettings.WORKERS_WARMUP_THREADS);
+        int result = DEFAULT_WARMUP_THREADS;
+        if (value != null && !value.trim().isEmpty() && !value.startsWith("${")) {
+            try {
+                result = Integer.parseInt(value.trim());
+            } catch (NumberFormatException ex) {
+                LOG.error("Incorrect value for " + CompileTimeSettings.WORKERS_WARMUP_THREADS + ": " + value);
+            }
+        }
+        return result;
     }
 
     private static final String CRYPTOTOKENPROPERTY_BASE = ".CRYPTOTOKEN";
@@ -37,7 +37,9 @@ import org.signserver.common.WorkerConfig;
 import org.signserver.common.data.DocumentValidationResponse;
 import org.signserver.common.data.Request;
 import org.signserver.common.data.Response;
+import org.signserver.common.data.SODBatchResponse;
 import org.signserver.common.data.SignatureResponse;
+import org.signserver.ejb.worker.impl.ArchiveQueueSingletonBean;
 import org.signserver.ejb.worker.impl.WorkerManagerSingletonBean;
 import org.signserver.ejb.worker.impl.WorkerWithComponents;
 import org.signserver.server.AccounterException;
@@ -84,18 +86,22 @@ class WorkerProcessImpl {
 
     private final SecurityEventsLoggerSessionLocal logSession;
 
+    private final ArchiveQueueSingletonBean archiveQueueSession;
+
     /**
      * Constructs a new instance of WorkerProcessImpl.
      * @param em The EntityManager (if used)
      * @param keyUsageCounterDataService The key usage counter data service
      * @param workerManagerSession The worker manager session
      * @param logSession The log session
+     * @param archiveQueueSession The queues for asynchronous archiving
      */
-    public WorkerProcessImpl(EntityManager em, IKeyUsageCounterDataService keyUsageCounterDataService, WorkerManagerSingletonBean workerManagerSession, SecurityEventsLoggerSessionLocal logSession) {
+    public WorkerProcessImpl(EntityManager em, IKeyUsageCounterDataService keyUsageCounterDataService, WorkerManagerSingletonBean workerManagerSession, SecurityEventsLoggerSessionLocal logSession, ArchiveQueueSingletonBean archiveQueueSession) {
         this.em = em;
         this.keyUsageCounterDataService = keyUsageCounterDataService;
         this.workerManagerSession = workerManagerSession;
         this.logSession = logSession;
+        this.archiveQueueSession = archiveQueueSession;
     }
 
     
@@ -241,7 +247,8 @@ class WorkerProcessImpl {
 
             // Check key usage limit
             if (!pwc.isDisableKeyUsageCounter() || pwc.isKeyUsageLimitSpecified()) {
-                checkSignerKeyUsageCounter(signerCertificate, workerId, pwc.getKeyUsageLimit(), em, true, requestContext.getServices());
+                final long signatureCount = res instanceof SODBatchResponse ? ((SODBatchResponse) res).getResponses().size() : 1;
+                checkSignerKeyUsageCounter(signerCertificate, workerId, pwc.getKeyUsageLimit(), em, true, signatureCount, requestContext.getServices());
             }
 
             // Output successfully
@@ -318,11 +325,12 @@ class WorkerProcessImpl {
      * @param workerId
      * @param awc
      * @param em
+     * @param signatureCount number of signatures to increment the counter with
      * @throws CryptoTokenOfflineException
      */
     private void checkSignerKeyUsageCounter(final Certificate cert,
             final int workerId, final long keyUsageLimit, EntityManager em,
-            final boolean increment, final IServices services)
+            final boolean increment, final long signatureCount, final IServices services)
         throws CryptoTokenOfflineException {
 
         if (cert != null) {
@@ -337,7 +345,7 @@ class WorkerProcessImpl {
             }
 
             if (increment) {
-                if (!keyUsageCounterDataService.incrementIfWithinLimit(keyHash, keyUsageLimit)) {
+                if (!keyUsageCounterDataService.incrementIfWithinLimit(keyHash, keyUsageLimit, signatureCount)) {
                     final String message
                             = "Key usage limit exceeded or not initialized for worker "
                             + workerId;
@@ -366,14 +374,23 @@ class WorkerProcessImpl {
 }
     }
 
-    private static void handleArchiving(final Response res, final WorkerWithComponents worker, final RequestContext requestContext) throws SignServerException {
+    private void handleArchiving(final Response res, final WorkerWithComponents worker, final RequestContext requestContext) throws SignServerException {
         if (res instanceof IArchivableProcessResponse) {
             final IArchivableProcessResponse arres = (IArchivableProcessResponse) res;
             final Collection<? extends Archivable> archivables = arres.getArchivables();
             if (archivables != null) {
                 // Archive all Archivables using all ArchiverS
                 final List<Archiver> archivers = worker.getArchivers();
-                if (archivers != null) {
+                if (archivers != null && !archivers.isEmpty() && worker.getPreloadedConfig().isArchivingAsync()) {
+                    // Archived later by the queue
+                    try {
+                        archiveQueueSession.enqueue(worker, archivables, requestContext);
+                    } catch (ArchiveException ex) {
+                        LOG.error("Queuing for archiving failed", ex);
+                        throw new SignServerException(
+                                "Archiving failed. See server LOG.");
+                    }
+                } else if (archivers != null) {
                     try {
                         for (Archiver archiver : archivers) {
                             for (Archivable archivable : archivables) {
@@ -474,7 +491,7 @@ class WorkerProcessImpl {
                 }
                 if (!pwc.isDisableKeyUsageCounter() || pwc.isKeyUsageLimitSpecified()) {
                     checkSignerKeyUsageCounter(signerCertificate, workerId, pwc.getKeyUsageLimit(), em,
-                            false, requestContext.getServices());
+                            false, 0, requestContext.getServices());
                 }
             } catch (CryptoTokenOfflineException ex) {
                 final CryptoTokenOfflineException exception =
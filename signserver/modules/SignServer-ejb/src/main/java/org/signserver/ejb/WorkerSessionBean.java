@@ -13,6 +13,7 @@
 package org.signserver.ejb;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyStoreException;
@@ -22,6 +23,7 @@ import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.*;
+import java.util.function.Consumer;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
@@ -29,8 +31,12 @@ import javax.ejb.EJB;
 import javax.ejb.EJBException;
 import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.naming.NamingException;
 import javax.persistence.EntityManager;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.log4j.Logger;
 import org.cesecore.audit.AuditLogEntry;
@@ -46,8 +52,12 @@ import org.signserver.admin.common.config.RekeyUtil;
 import org.signserver.common.*;
 import org.signserver.common.KeyTestResult;
 import org.signserver.common.util.PropertiesConstants;
+import org.signserver.ejb.worker.impl.ArchiveQueue;
+import org.signserver.ejb.worker.impl.ArchiveQueueSingletonBean;
+import org.signserver.ejb.worker.impl.ConfigChangeSingletonBean;
 import org.signserver.ejb.worker.impl.WorkerManagerSingletonBean;
 import org.signserver.server.*;
+import org.signserver.server.archive.filearchiver.FileArchiver;
 import org.signserver.server.archive.olddbarchiver.entities.ArchiveDataBean;
 import org.signserver.server.archive.olddbarchiver.entities.ArchiveDataService;
 import org.signserver.server.cesecore.AlwaysAllowLocalAuthenticationToken;
@@ -63,7 +73,11 @@ import org.signserver.ejb.interfaces.DispatcherProcessSessionLocal;
 import org.signserver.ejb.interfaces.InternalProcessSessionLocal;
 import org.signserver.ejb.interfaces.ProcessSessionLocal;
 import org.signserver.ejb.worker.impl.WorkerWithComponents;
+import org.signserver.server.entities.AccountBalance;
+import org.signserver.server.entities.AccountBalanceDataService;
+import org.signserver.server.entities.FileBasedAccountBalanceDataService;
 import org.signserver.server.entities.FileBasedKeyUsageCounterDataService;
+import org.signserver.server.entities.IAccountBalanceDataService;
 import org.signserver.server.entities.IKeyUsageCounterDataService;
 import org.signserver.server.entities.KeyUsageCounter;
 import org.signserver.server.entities.KeyUsageCounterDataService;
@@ -87,6 +101,12 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
     
     /** Log4j instance for this class. */
     private static final Logger LOG = Logger.getLogger(WorkerSessionBean.class);
+
+    /** Number of archive entries to query at the time when exporting. */
+    private static final int ARCHIVE_EXPORT_BATCH_SIZE = 100;
+
+    /** Number of archive entries to query at the time when exporting with the data. */
+    private static final int ARCHIVE_EXPORT_BATCH_SIZE_WITH_DATA = 10;
    
     /** The local home interface of Worker Config entity bean. */
     private IWorkerConfigDataService workerConfigService;
@@ -95,6 +115,7 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
     private ArchiveDataService archiveDataService;
     
     private IKeyUsageCounterDataService keyUsageCounterDataService;
+    private IAccountBalanceDataService accountBalanceDataService;
 
     @EJB
     private GlobalConfigurationSessionLocal globalConfigurationSession;
@@ -104,6 +125,12 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
     
     @EJB
     private WorkerManagerSingletonBean workerManagerSession;
+
+    @EJB
+    private ArchiveQueueSingletonBean archiveQueueSession;
+
+    @EJB
+    private ConfigChangeSingletonBean configChangeSession;
     
     @EJB
     private SecurityEventsLoggerSessionLocal logSession;
@@ -113,6 +140,12 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
     
     @Resource
     private SessionContext ctx;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    @Resource
+    private ManagedExecutorService executorService;
     
     EntityManager em;
 
@@ -126,13 +159,16 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
             }
             workerConfigService = new FileBasedWorkerConfigDataService(FileBasedDatabaseManager.getInstance());
             keyUsageCounterDataService = new FileBasedKeyUsageCounterDataService(FileBasedDatabaseManager.getInstance());
+            accountBalanceDataService = new FileBasedAccountBalanceDataService(FileBasedDatabaseManager.getInstance());
         } else {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("EntityManager injected. Running with database.");
             }
             workerConfigService = new WorkerConfigDataService(em);
-            archiveDataService = new ArchiveDataService(em);
+            archiveDataService = new ArchiveDataService(em,
+                    workerId -> FileArchiver.getDirectories(getWorkerConfig(workerId)));
             keyUsageCounterDataService = new KeyUsageCounterDataService(em);
+            accountBalanceDataService = new AccountBalanceDataService(em);
         }
 
         // XXX The lookups will fail on GlassFish V2
@@ -158,7 +194,8 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
                     globalConfigurationSession,
                     logSession,
                     internalSession, dispatcherSession, statusSession,
-                    keyUsageCounterDataService);
+                    keyUsageCounterDataService, accountBalanceDataService,
+                    transactionSynchronizationRegistry, executorService);
         } catch (NamingException ex) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Lookup services failed", ex);
@@ -260,6 +297,46 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
         }
     }
 
+    @Override
+    public Long getAccountBalance(final String accountId) {
+        final AccountBalance balance = accountBalanceDataService.getBalance(accountId);
+        return balance == null ? null : balance.getBalance();
+    }
+
+    @Override
+    public Map<String, Long> getAccountBalances() {
+        final Map<String, Long> result = new LinkedHashMap<>();
+        for (AccountBalance balance : accountBalanceDataService.findAll()) {
+            result.put(balance.getAccountId(), balance.getBalance());
+        }
+        return result;
+    }
+
+    @Override
+    public long topUpAccountBalance(final String accountId, final long amount) {
+        return topUpAccountBalance(new AdminInfo("CLI user", null, null), accountId, amount);
+    }
+
+    @Override
+    public long topUpAccountBalance(final AdminInfo adminInfo, final String accountId, final long amount) {
+        final long balance = accountBalanceDataService.topUp(accountId, amount);
+
+        final HashMap<String, Object> auditMap = new HashMap<>();
+        auditMap.put(AdditionalDetailsTypes.ACCOUNT.name(), accountId);
+        auditMap.put(AdditionalDetailsTypes.AMOUNT.name(), amount);
+        auditMap.put(AdditionalDetailsTypes.BALANCE.name(), balance);
+        try {
+            final String serialNo =
+                    adminInfo.getCertSerialNumber() == null ? null : adminInfo.getCertSerialNumber().toString(16);
+            logSession.log(SignServerEventTypes.ACCOUNT_TOPUP, EventStatus.SUCCESS, SignServerModuleTypes.WORKER, SignServerServiceTypes.SIGNSERVER,
+                    adminInfo.getSubjectDN(), adminInfo.getIssuerDN(), serialNo, null, auditMap);
+        } catch (AuditRecordStorageException ex) {
+            LOG.error("Audit log failure", ex);
+            throw new EJBException("Audit log failure", ex);
+        }
+        return balance;
+    }
+
     /* (non-Javadoc)
      * @see org.signserver.ejb.interfaces.WorkerSession#getStatus(int)
      */
@@ -284,7 +361,15 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
             
             errorsAtEjbLevel.addAll(worker.getCreateErrors());
         
-            return new StaticWorkerStatus(worker.getWorker().getStatus(errorsAtEjbLevel, servicesImpl));
+            final WorkerStatusInfo status = worker.getWorker().getStatus(errorsAtEjbLevel, servicesImpl);
+
+            // Asynchronous archiving
+            final ArchiveQueue archiveQueue = archiveQueueSession.getQueue(worker.getId());
+            if (archiveQueue != null) {
+                status.getBriefEntries().add(new WorkerStatusInfo.Entry("Archive queue", archiveQueue.getSummary(System.currentTimeMillis())));
+            }
+
+            return new StaticWorkerStatus(status);
         } catch (NoSuchWorkerException ex) {
             throw new InvalidWorkerIdException(ex.getMessage());
         }
@@ -334,6 +419,7 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
             globalConfigurationSession.reload(adminInfo);
         } else {
             workerManagerSession.reloadWorker(new WorkerIdentifier(workerId));
+            configChangeSession.recordChange(workerId);
             auditLog(adminInfo, SignServerEventTypes.RELOAD_WORKER_CONFIG, EventStatus.SUCCESS, SignServerModuleTypes.WORKER_CONFIG,
                     new WorkerIdentifier(workerId), Collections.<String, Object>emptyMap());
                 
@@ -1251,7 +1337,7 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
              for (Object o : list) {
                  if (o instanceof ArchiveDataBean) {
                      final ArchiveDataBean adb = (ArchiveDataBean) o;
-                     result.add(adb.getArchiveDataVO());
+                     result.add(archiveDataService.getArchiveDataVO(adb));
                  }
              }
         }
@@ -1273,7 +1359,7 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
         } else {
             Collection<ArchiveDataBean> archives = archiveDataService.findAllByRequestIP(signerId, requestIP);
             for (ArchiveDataBean archive : archives) {
-                retval.add(archive.getArchiveDataVO());
+                retval.add(archiveDataService.getArchiveDataVO(archive));
             }
         }
 
@@ -1300,7 +1386,7 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
             Collection<ArchiveDataBean> archives = archiveDataService.
                     findAllByRequestCertificate(signerId, issuerDN, serialNumber);
             for (ArchiveDataBean archive : archives) {
-                retval.add(archive.getArchiveDataVO());
+                retval.add(archiveDataService.getArchiveDataVO(archive));
             }
         }
 
@@ -1427,6 +1513,52 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
         }
     }
 
+    @Override
+    public List<ArchiveMetadata> searchArchiveAfter(final Date afterTime,
+            final String afterUniqueId, final int max,
+            final QueryCriteria criteria, final boolean descending,
+            final boolean includeData) {
+        return searchArchiveAfter(new AdminInfo("CLI user", null, null),
+                afterTime, afterUniqueId, max, criteria, descending, includeData);
+    }
+
+    @Override
+    public List<ArchiveMetadata> searchArchiveAfter(final AdminInfo adminInfo,
+            final Date afterTime, final String afterUniqueId, final int max,
+            final QueryCriteria criteria, final boolean descending,
+            final boolean includeData) {
+        if (archiveDataService == null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Archiving to database is not supported when running without database");
+            }
+            return Collections.emptyList();
+        } else {
+            return archiveDataService.findMatchingCriteriaAfter(
+                    afterTime == null ? null : afterTime.getTime(), afterUniqueId,
+                    max, criteria, descending, includeData);
+        }
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public long exportArchive(final AdminInfo adminInfo,
+            final QueryCriteria criteria, final boolean descending,
+            final boolean includeData,
+            final Consumer<ArchiveMetadata> consumer) {
+        if (archiveDataService == null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Archiving to database is not supported when running without database");
+            }
+            return 0;
+        } else {
+            // No transaction kept open while the consumer writes the entries
+            return archiveDataService.exportMatchingCriteria(criteria,
+                    descending, includeData,
+                    includeData ? ARCHIVE_EXPORT_BATCH_SIZE_WITH_DATA : ARCHIVE_EXPORT_BATCH_SIZE,
+                    consumer);
+        }
+    }
+
     @Override
     public List<ArchiveMetadata> searchArchiveWithIds(AdminInfo adminInfo,
         List<String> uniqueIds, boolean includeData) {
@@ -1440,6 +1572,19 @@ public class WorkerSessionBean implements WorkerSessionLocal, WorkerSessionRemot
         }
     }
 
+    @Override
+    public boolean writeArchivedData(final AdminInfo adminInfo,
+            final String uniqueId, final OutputStream out) throws IOException {
+        if (archiveDataService == null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Archiving to database is not supported when running without database");
+            }
+            return false;
+        } else {
+            return archiveDataService.writeArchivedBytes(uniqueId, out);
+        }
+    }
+
     @Override
     public List<ArchiveMetadata> searchArchiveWithIds(List<String> uniqueIds,
         boolean includeData) throws AuthorizationDeniedException {
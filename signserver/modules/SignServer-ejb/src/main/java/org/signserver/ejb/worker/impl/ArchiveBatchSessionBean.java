@@ -0,0 +1,81 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb.worker.impl;
+
+import java.util.List;
+import javax.annotation.Resource;
+import javax.ejb.EJB;
+import javax.ejb.SessionContext;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import org.apache.log4j.Logger;
+import org.signserver.common.NoSuchWorkerException;
+import org.signserver.common.RequestContext;
+import org.signserver.common.WorkerIdentifier;
+import org.signserver.server.archive.ArchiveException;
+import org.signserver.server.archive.Archiver;
+
+/**
+ * Session bean archiving a batch of queued archivables in one transaction.
+ *
+ * @version $Id$
+ */
+@Stateless
+public class ArchiveBatchSessionBean {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ArchiveBatchSessionBean.class);
+
+    @Resource
+    private SessionContext sessionCtx;
+
+    @EJB
+    private WorkerManagerSingletonBean workerManagerSession;
+
+    EntityManager em;
+
+    /**
+     * Archives the items using all the archivers of the worker. If any of
+     * them fails nothing in the batch is archived.
+     *
+     * @param workerId ID of the worker the items are queued for
+     * @param batch items to archive
+     * @throws ArchiveException in case archiving failed
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void archive(final int workerId, final List<QueuedArchivable> batch) throws ArchiveException {
+        try {
+            final List<Archiver> archivers = workerManagerSession.getWorkerWithComponents(new WorkerIdentifier(workerId)).getArchivers();
+            if (archivers != null) {
+                for (final QueuedArchivable item : batch) {
+                    final RequestContext requestContext = item.createRequestContext();
+                    requestContext.put(RequestContext.EM, em);
+                    for (final Archiver archiver : archivers) {
+                        final boolean archived = archiver.archive(item, requestContext);
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Archiver " + archiver + " archived queued item " + item.getArchiveId() + ": " + archived);
+                        }
+                    }
+                }
+            }
+        } catch (NoSuchWorkerException ex) {
+            sessionCtx.setRollbackOnly();
+            throw new ArchiveException("No such worker: " + workerId, ex);
+        } catch (ArchiveException | RuntimeException ex) {
+            sessionCtx.setRollbackOnly();
+            throw ex;
+        }
+    }
+}
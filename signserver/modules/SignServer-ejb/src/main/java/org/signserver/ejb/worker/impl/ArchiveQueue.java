@@ -0,0 +1,487 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb.worker.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.log4j.Logger;
+import org.signserver.server.archive.ArchiveException;
+
+/**
+ * Queue of items waiting to be archived asynchronously for one worker.
+ *
+ * Each item is first written to a file in a subdirectory of the spool
+ * directory, named by the worker ID, and only removed from there after it
+ * has been archived, so that items queued but
+ * not yet archived are not lost in case the server is stopped or crashes.
+ * The spooled items are read back by recover() when the queue is created.
+ *
+ * The items are archived in order by a single drainer taking batches using
+ * nextBatch() and reporting back using completed() or failed(). After a
+ * failure the oldest item is retried alone, with an increasing delay, so
+ * that an item that can not be archived is found. An item that failed the
+ * maximum number of attempts is removed from the queue and its spool file
+ * is renamed with the suffix .failed, to be looked at by an administrator.
+ * Renaming it back to .spool queues it again the next time the queue is
+ * recovered.
+ *
+ * @version $Id$
+ */
+public class ArchiveQueue {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ArchiveQueue.class);
+
+    private static final String SPOOL_SUFFIX = ".spool";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String FAILED_SUFFIX = ".failed";
+
+    /** Delay before the first retry after a failure, doubled for each failure. */
+    private static final long RETRY_DELAY = 1000;
+
+    /** Maximum delay between retries. */
+    private static final long MAX_RETRY_DELAY = 60000;
+
+    /** What to do when the queue is full. */
+    public enum FullBehaviour {
+        /** Wait for space in the queue, at most the configured time. */
+        BLOCK,
+
+        /** Fail the request directly. */
+        FAIL
+    }
+
+    private final int workerId;
+    private final File spoolDirectory;
+
+    /** Subdirectory of the spool directory with the files of this worker. */
+    private final File workerDirectory;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Deque<QueuedArchivable> items = new ArrayDeque<>();
+
+    /** Number of items being spooled, which there is room reserved for. */
+    private int reserved;
+
+    /** Number of failures since the last successfully archived batch. */
+    private int consecutiveFailures;
+
+    /** Time before which no new attempt should be made. */
+    private long retryTime;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong archivedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong deadLetteredCount = new AtomicLong();
+    private volatile String lastError;
+    private volatile long lastArchivedLag;
+
+    /**
+     * Creates a new queue.
+     *
+     * @param workerId ID of the worker
+     * @param spoolDirectory directory to spool the items in, can be shared
+     * with other workers
+     */
+    public ArchiveQueue(final int workerId, final File spoolDirectory) {
+        this.workerId = workerId;
+        this.spoolDirectory = spoolDirectory;
+        this.workerDirectory = new File(spoolDirectory, String.valueOf(workerId));
+    }
+
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    public File getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    public File getWorkerDirectory() {
+        return workerDirectory;
+    }
+
+    /**
+     * Reads all items in the spool directory of the worker into the queue.
+     * Items that can not be read are renamed so that they are not read again.
+     * Items of other workers are left as they are.
+     *
+     * @return number of items recovered
+     * @throws IOException in case the spool directory could not be read
+     */
+    public int recover() throws IOException {
+        Files.createDirectories(workerDirectory.toPath());
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(workerDirectory.toPath())) {
+            for (final Path file : stream) {
+                final String name = file.getFileName().toString();
+                if (name.endsWith(SPOOL_SUFFIX)) {
+                    files.add(file);
+                } else if (name.endsWith(TEMP_SUFFIX)) {
+                    // Not completely written so the request never got a response
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        files.sort(null);
+
+        int recovered = 0;
+        lock.lock();
+        try {
+            for (final Path file : files) {
+                try (InputStream in = Files.newInputStream(file)) {
+                    final QueuedArchivable item = QueuedArchivable.readFrom(new DataInputStream(new BufferedInputStream(in)));
+                    if (item.getWorkerId() != workerId) {
+                        LOG.warn("Worker " + workerId + ": Not recovering " + file + " queued by worker " + item.getWorkerId());
+                        continue;
+                    }
+                    item.setSpoolName(file.getFileName().toString());
+                    items.addLast(item);
+                    recovered++;
+                } catch (IOException ex) {
+                    LOG.error("Unable to read spooled archivable " + file + ": " + ex.getMessage());
+                    Files.move(file, file.resolveSibling(file.getFileName() + FAILED_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (recovered > 0) {
+            LOG.info("Worker " + workerId + ": Recovered " + recovered + " items to archive from " + workerDirectory);
+        }
+        return recovered;
+    }
+
+    /**
+     * Spools and queues the items.
+     *
+     * Room for the items is reserved in the queue before they are spooled,
+     * the spooling itself is done without holding the lock of the queue so
+     * that requests and the drainer are not waiting for each other's disk
+     * writes.
+     *
+     * @param newItems to queue
+     * @param capacity maximum number of items in the queue
+     * @param fullBehaviour what to do if there is not room for the items
+     * @param timeoutMillis maximum time to wait for room if blocking
+     * @throws ArchiveException in case there was no room for the items or
+     * they could not be spooled
+     */
+    public void add(final Collection<QueuedArchivable> newItems, final int capacity,
+            final FullBehaviour fullBehaviour, final long timeoutMillis) throws ArchiveException {
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            // Always accept items when the queue is empty, even if they are more than the capacity
+            while (items.size() + reserved > 0 && items.size() + reserved + newItems.size() > capacity) {
+                if (fullBehaviour == FullBehaviour.FAIL || remaining <= 0) {
+                    rejectedCount.incrementAndGet();
+                    throw new ArchiveException("Archiving queue full for worker " + workerId + " with " + items.size() + " items");
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+            reserved += newItems.size();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            rejectedCount.incrementAndGet();
+            throw new ArchiveException("Interrupted while waiting for archiving queue", ex);
+        } finally {
+            lock.unlock();
+        }
+
+        boolean spooled = false;
+        try {
+            // Spool all before queuing any
+            for (final QueuedArchivable item : newItems) {
+                spool(item);
+            }
+            spooled = true;
+        } catch (IOException ex) {
+            for (final QueuedArchivable item : newItems) {
+                deleteSpooled(item);
+            }
+            throw new ArchiveException("Unable to spool archivable: " + ex.getMessage(), ex);
+        } finally {
+            lock.lock();
+            try {
+                reserved -= newItems.size();
+                if (spooled) {
+                    items.addAll(newItems);
+                } else {
+                    notFull.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Gives the next items to archive, without removing them from the queue.
+     *
+     * @param max maximum number of items
+     * @return the items, empty if the queue is empty
+     * @see #nextBatch(int, long)
+     */
+    public List<QueuedArchivable> nextBatch(final int max) {
+        return nextBatch(max, System.currentTimeMillis());
+    }
+
+    /**
+     * Gives the next items to archive, without removing them from the queue.
+     *
+     * After a failure no items are given until the retry delay has passed
+     * and then only the oldest item until a batch has been archived.
+     *
+     * @param max maximum number of items
+     * @param now current time in milliseconds
+     * @return the items, empty if the queue is empty or waiting for the next
+     * attempt
+     */
+    public List<QueuedArchivable> nextBatch(final int max, final long now) {
+        lock.lock();
+        try {
+            if (now < retryTime) {
+                return Collections.emptyList();
+            }
+            final int limit = consecutiveFailures > 0 ? Math.min(max, 1) : max;
+            final List<QueuedArchivable> result = new ArrayList<>(Math.min(limit, items.size()));
+            final Iterator<QueuedArchivable> it = items.iterator();
+            while (it.hasNext() && result.size() < limit) {
+                result.add(it.next());
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the items that have now been archived.
+     *
+     * @param batch as given by nextBatch()
+     */
+    public void completed(final List<QueuedArchivable> batch) {
+        final long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            for (final QueuedArchivable item : batch) {
+                remove(item);
+                deleteSpooled(item);
+                lastArchivedLag = now - item.getQueuedTime();
+            }
+            archivedCount.addAndGet(batch.size());
+            consecutiveFailures = 0;
+            retryTime = 0;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that archiving of the batch failed. The items are kept in the
+     * queue to be retried after a delay, except for an item archived alone
+     * that has now failed the maximum number of attempts. That item is
+     * removed from the queue and its spool file kept with the suffix .failed.
+     *
+     * @param batch as given by nextBatch()
+     * @param error description of the failure
+     * @param maxAttempts number of attempts to archive an item alone before
+     * giving up on it
+     * @param now current time in milliseconds
+     * @return the item given up on or null
+     */
+    public QueuedArchivable failed(final List<QueuedArchivable> batch, final String error,
+            final int maxAttempts, final long now) {
+        failedCount.incrementAndGet();
+        lastError = error;
+        lock.lock();
+        try {
+            consecutiveFailures++;
+            retryTime = now + Math.min(MAX_RETRY_DELAY, RETRY_DELAY << Math.min(consecutiveFailures - 1, 16));
+            if (batch.size() == 1) {
+                final QueuedArchivable item = batch.get(0);
+                if (item.incrementFailedAttempts() >= maxAttempts) {
+                    remove(item);
+                    deadLetter(item, error);
+                    consecutiveFailures = 0;
+                    retryTime = 0;
+                    notFull.signalAll();
+                    return item;
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(final QueuedArchivable item) {
+        if (items.peekFirst() == item) {
+            items.removeFirst();
+        } else {
+            items.remove(item);
+        }
+    }
+
+    /**
+     * @return number of items waiting to be archived
+     */
+    public int getDepth() {
+        lock.lock();
+        try {
+            return items.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param now current time in milliseconds
+     * @return time the oldest item has been waiting or 0 if the queue is empty
+     */
+    public long getLag(final long now) {
+        lock.lock();
+        try {
+            final QueuedArchivable oldest = items.peekFirst();
+            return oldest == null ? 0 : now - oldest.getQueuedTime();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return time the last archived item waited in the queue in milliseconds
+     */
+    public long getLastArchivedLag() {
+        return lastArchivedLag;
+    }
+
+    public long getArchivedCount() {
+        return archivedCount.get();
+    }
+
+    /**
+     * @return number of failed attempts to archive a batch
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return number of requests for which there was no room in the queue
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return number of items given up on after failing the maximum number
+     * of attempts
+     */
+    public long getDeadLetteredCount() {
+        return deadLetteredCount.get();
+    }
+
+    /**
+     * @return description of the last failure or null
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * @param now current time in milliseconds
+     * @return one line summary of the queue state
+     */
+    public String getSummary(final long now) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("depth=").append(getDepth())
+          .append(", lag=").append(getLag(now)).append(" ms")
+          .append(", last lag=").append(lastArchivedLag).append(" ms")
+          .append(", archived=").append(archivedCount.get())
+          .append(", failed batches=").append(failedCount.get())
+          .append(", rejected=").append(rejectedCount.get())
+          .append(", dead-lettered=").append(deadLetteredCount.get());
+        final String error = lastError;
+        if (error != null) {
+            sb.append(", last error: ").append(error);
+        }
+        return sb.toString();
+    }
+
+    private void spool(final QueuedArchivable item) throws IOException {
+        Files.createDirectories(workerDirectory.toPath());
+        final String name = String.format("%020d-%010d", item.getQueuedTime(), sequence.incrementAndGet());
+        final File temp = new File(workerDirectory, name + TEMP_SUFFIX);
+        try (FileOutputStream fout = new FileOutputStream(temp)) {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fout));
+            item.writeTo(out);
+            out.flush();
+            fout.getFD().sync();
+        }
+        Files.move(temp.toPath(), new File(workerDirectory, name + SPOOL_SUFFIX).toPath(), StandardCopyOption.ATOMIC_MOVE);
+        item.setSpoolName(name + SPOOL_SUFFIX);
+    }
+
+    private void deadLetter(final QueuedArchivable item, final String error) {
+        deadLetteredCount.incrementAndGet();
+        final String name = item.getSpoolName();
+        LOG.error("Worker " + workerId + ": Giving up archiving of " + item.getType() + " with archive ID "
+                + item.getArchiveId() + " after " + item.getFailedAttempts() + " attempts"
+                + (name == null ? "" : ", kept in " + new File(workerDirectory, name + FAILED_SUFFIX)) + ": " + error);
+        if (name != null) {
+            try {
+                Files.move(new File(workerDirectory, name).toPath(), new File(workerDirectory, name + FAILED_SUFFIX).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ex) {
+                LOG.error("Unable to rename spooled archivable " + name + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    private void deleteSpooled(final QueuedArchivable item) {
+        final String name = item.getSpoolName();
+        if (name != null) {
+            try {
+                Files.deleteIfExists(new File(workerDirectory, name).toPath());
+            } catch (IOException ex) {
+                LOG.error("Unable to remove spooled archivable " + name + ": " + ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb.worker.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import org.apache.log4j.Logger;
+import org.signserver.common.NoSuchWorkerException;
+import org.signserver.common.RequestContext;
+import org.signserver.common.WorkerIdentifier;
+import org.signserver.server.archive.Archivable;
+import org.signserver.server.archive.ArchiveException;
+
+/**
+ * Singleton keeping the queues of the workers archiving asynchronously and
+ * archiving the queued items in the background.
+ *
+ * The queues are drained by a timer, in batches archived in their own
+ * transactions. Items spooled before a restart are read back for all
+ * workers configured for asynchronous archiving the first time the timer
+ * runs.
+ *
+ * @version $Id$
+ */
+@Startup
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ArchiveQueueSingletonBean {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ArchiveQueueSingletonBean.class);
+
+    /** Time between checking the queues. */
+    private static final long DRAIN_INTERVAL = 1000;
+
+    @Resource
+    private TimerService timerService;
+
+    @EJB
+    private WorkerManagerSingletonBean workerManagerSession;
+
+    @EJB
+    private ArchiveBatchSessionBean archiveBatchSession;
+
+    private final Map<Integer, ArchiveQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile boolean recovered;
+
+    @PostConstruct
+    public void create() {
+        timerService.createIntervalTimer(DRAIN_INTERVAL, DRAIN_INTERVAL, new TimerConfig(null, false));
+    }
+
+    /**
+     * Queues the archivables from a request.
+     *
+     * @param worker to archive for
+     * @param archivables to archive
+     * @param requestContext of the request
+     * @throws ArchiveException in case the archivables could not be queued
+     */
+    public void enqueue(final WorkerWithComponents worker,
+            final Collection<? extends Archivable> archivables,
+            final RequestContext requestContext) throws ArchiveException {
+        final PreloadedWorkerConfig pwc = worker.getPreloadedConfig();
+        final long now = System.currentTimeMillis();
+        final List<QueuedArchivable> items = new ArrayList<>(archivables.size());
+        for (final Archivable archivable : archivables) {
+            items.add(QueuedArchivable.create(worker.getId(), archivable, requestContext, now));
+        }
+        getQueue(worker.getId(), pwc).add(items, pwc.getArchivingQueueSize(),
+                pwc.getArchivingQueueFull(), pwc.getArchivingQueueTimeout());
+    }
+
+    /**
+     * @param workerId ID of worker
+     * @return the queue of the worker or null if it has none
+     */
+    public ArchiveQueue getQueue(final int workerId) {
+        return queues.get(workerId);
+    }
+
+    private ArchiveQueue getQueue(final int workerId, final PreloadedWorkerConfig pwc) throws ArchiveException {
+        final File spoolDirectory = pwc.getArchivingSpoolDirectory();
+        if (spoolDirectory == null) {
+            throw new ArchiveException("No spool directory configured for worker " + workerId);
+        }
+        ArchiveQueue queue = queues.get(workerId);
+        if (queue == null || !queue.getSpoolDirectory().equals(spoolDirectory)) {
+            synchronized (queues) {
+                queue = queues.get(workerId);
+                if (queue == null || !queue.getSpoolDirectory().equals(spoolDirectory)) {
+                    if (queue != null) {
+                        LOG.warn("Worker " + workerId + ": Spool directory changed, items still in "
+                                + queue.getWorkerDirectory() + " will be archived after restart");
+                    }
+                    queue = new ArchiveQueue(workerId, spoolDirectory);
+                    try {
+                        queue.recover();
+                    } catch (IOException ex) {
+                        throw new ArchiveException("Unable to read spool directory: " + ex.getMessage(), ex);
+                    }
+                    queues.put(workerId, queue);
+                }
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Archives the queued items.
+     */
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void drain() {
+        if (!draining.compareAndSet(false, true)) {
+            return; // Previous round still running
+        }
+        try {
+            if (!recovered) {
+                recoverAll();
+                recovered = true;
+            }
+            for (final ArchiveQueue queue : queues.values()) {
+                drain(queue);
+            }
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    private void drain(final ArchiveQueue queue) {
+        final PreloadedWorkerConfig pwc;
+        try {
+            pwc = workerManagerSession.getWorkerWithComponents(new WorkerIdentifier(queue.getWorkerId()))
+                    .getPreloadedConfig();
+        } catch (NoSuchWorkerException ex) {
+            queues.remove(queue.getWorkerId(), queue);
+            LOG.warn("Worker " + queue.getWorkerId() + ": Worker removed, dropping its archiving queue with "
+                    + queue.getDepth() + " items still spooled in " + queue.getWorkerDirectory());
+            return;
+        }
+        final int batchSize = pwc.getArchivingBatchSize();
+        List<QueuedArchivable> batch = queue.nextBatch(batchSize);
+        while (!batch.isEmpty()) {
+            try {
+                archiveBatchSession.archive(queue.getWorkerId(), batch);
+                queue.completed(batch);
+            } catch (ArchiveException | RuntimeException ex) {
+                LOG.error("Worker " + queue.getWorkerId() + ": Archiving of " + batch.size() + " queued items failed, will retry", ex);
+                if (queue.failed(batch, ex.getMessage(), pwc.getArchivingMaxAttempts(), System.currentTimeMillis()) == null) {
+                    break;
+                }
+                // Gave up on the item, continue with the next
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Worker " + queue.getWorkerId() + ": Archived " + batch.size() + " queued items, "
+                        + queue.getSummary(System.currentTimeMillis()));
+            }
+            batch = queue.nextBatch(batchSize);
+        }
+    }
+
+    private void recoverAll() {
+        for (final Integer workerId : workerManagerSession.getAllWorkerIDs()) {
+            try {
+                final PreloadedWorkerConfig pwc = workerManagerSession.getWorkerWithComponents(new WorkerIdentifier(workerId)).getPreloadedConfig();
+                if (pwc.isArchivingAsync() && pwc.getArchivingSpoolDirectory() != null) {
+                    getQueue(workerId, pwc);
+                }
+            } catch (NoSuchWorkerException | ArchiveException ex) {
+                LOG.error("Worker " + workerId + ": Unable to recover spooled archivables: " + ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb.worker.impl;
+
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import org.signserver.server.config.entities.ConfigChangeDataService;
+
+/**
+ * Session bean creating the row holding the latest configuration version in
+ * a transaction of its own, so that a failure because an other node created
+ * it at the same time does not affect the caller.
+ *
+ * @version $Id$
+ */
+@Stateless
+public class ConfigChangeSessionBean {
+
+    EntityManager em;
+
+    /**
+     * Creates the row holding the latest configuration version unless it
+     * already exists.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void createLatestVersion() {
+        new ConfigChangeDataService(em).createLatestVersion();
+    }
+}
@@ -0,0 +1,203 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb.worker.impl;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.EJBException;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.persistence.EntityManager;
+import org.apache.log4j.Logger;
+import org.signserver.common.CompileTimeSettings;
+import org.signserver.common.WorkerIdentifier;
+import org.signserver.common.WorkerType;
+import org.signserver.ejb.interfaces.ServiceTimerSessionLocal;
+import org.signserver.server.GlobalConfigurationCache;
+import org.signserver.server.config.entities.ConfigChangeDataService;
+import org.signserver.server.config.entities.FileBasedConfigChangeDataService;
+import org.signserver.server.config.entities.IConfigChangeDataService;
+import org.signserver.server.nodb.FileBasedDatabaseManager;
+
+/**
+ * Singleton propagating configuration reloads between the nodes sharing
+ * the same database.
+ *
+ * Each reload of a worker or of the global configuration is recorded with
+ * a new version number. A timer checks the latest version, which is a
+ * single row or file, and only when it has changed looks up and reloads
+ * the workers changed since the last check. Reloading the global
+ * configuration reloads all workers.
+ *
+ * @version $Id$
+ */
+@Startup
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ConfigChangeSingletonBean {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ConfigChangeSingletonBean.class);
+
+    /** Default number of seconds between checks. */
+    private static final long DEFAULT_POLL_INTERVAL = 5;
+
+    @Resource
+    private TimerService timerService;
+
+    @EJB
+    private WorkerManagerSingletonBean workerManagerSession;
+
+    @EJB
+    private ServiceTimerSessionLocal serviceTimerSession;
+
+    @EJB
+    private ConfigChangeSessionBean configChangeSession;
+
+    EntityManager em;
+
+    private IConfigChangeDataService configChangeDataService;
+    private final ConfigChangeTracker tracker = new ConfigChangeTracker();
+    private final AtomicBoolean polling = new AtomicBoolean();
+
+    @PostConstruct
+    public void create() {
+        if (em == null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("No EntityManager injected. Running without database.");
+            }
+            configChangeDataService = new FileBasedConfigChangeDataService(FileBasedDatabaseManager.getInstance());
+        } else {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("EntityManager injected. Running with database.");
+            }
+            configChangeDataService = new ConfigChangeDataService(em);
+            try {
+                configChangeSession.createLatestVersion();
+            } catch (EJBException ex) {
+                // Most likely created by an other node starting at the same time
+                LOG.info("Configuration version not created: " + ex.getMessage());
+            }
+        }
+
+        // Workers are loaded after this so earlier changes are already included
+        try {
+            tracker.start(configChangeDataService.getVersion());
+        } catch (RuntimeException ex) {
+            LOG.error("Unable to read configuration version: " + ex.getMessage());
+        }
+
+        final long interval = getPollInterval();
+        if (interval > 0) {
+            timerService.createIntervalTimer(interval, interval, new TimerConfig(null, false));
+        } else {
+            LOG.info("Checking for configuration changes made on other nodes is disabled");
+        }
+    }
+
+    private static long getPollInterval() {
+        final String value = CompileTimeSettings.getInstance().getProperty(CompileTimeSettings.CONFIGCHANGE_POLLINTERVAL);
+        long result = DEFAULT_POLL_INTERVAL;
+        if (value != null && !value.trim().isEmpty() && !value.startsWith("${")) {
+            try {
+                result = Long.parseLong(value.trim());
+            } catch (NumberFormatException ex) {
+                LOG.error("Incorrect value for " + CompileTimeSettings.CONFIGCHANGE_POLLINTERVAL + ": " + value);
+            }
+        }
+        return result * 1000;
+    }
+
+    /**
+     * Records that the worker or the global configuration has been reloaded
+     * on this node so that the other nodes can do the same.
+     *
+     * @param workerId Id of worker or IConfigChangeDataService.GLOBAL_CONFIGURATION
+     */
+    public void recordChange(final int workerId) {
+        final long version = configChangeDataService.recordChange(workerId);
+        tracker.recorded(version);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Recorded configuration change " + version + " for worker " + workerId);
+        }
+    }
+
+    /**
+     * @return Summary of the changes applied
+     */
+    public String getSummary() {
+        return tracker.getSummary(System.currentTimeMillis());
+    }
+
+    /**
+     * Checks for changes made on other nodes and reloads the affected
+     * workers.
+     */
+    @Timeout
+    public void poll() {
+        if (!polling.compareAndSet(false, true)) {
+            return; // Previous check still running
+        }
+        try {
+            final long version = configChangeDataService.getVersion();
+            if (version > tracker.getSeenVersion()) {
+                final Map<Integer, Long> changes = configChangeDataService.findChangesAfter(tracker.getSeenVersion());
+                final Set<Integer> workerIds = tracker.update(changes, version);
+                if (!workerIds.isEmpty()) {
+                    apply(workerIds);
+                }
+            }
+        } catch (RuntimeException ex) {
+            LOG.error("Checking for configuration changes failed: " + ex.getMessage(), ex);
+        } finally {
+            polling.set(false);
+        }
+    }
+
+    private void apply(final Set<Integer> workerIds) {
+        final long start = System.nanoTime();
+        final int reloaded;
+        if (workerIds.contains(IConfigChangeDataService.GLOBAL_CONFIGURATION)) {
+            GlobalConfigurationCache.getInstance().setCachedGlobalConfig(null);
+            workerManagerSession.flush();
+            serviceTimerSession.unload(0);
+            serviceTimerSession.load(0);
+            reloaded = workerManagerSession.getAllWorkerIDs().size();
+        } else {
+            final Set<Integer> services = new HashSet<>(workerManagerSession.getAllWorkerIDs(WorkerType.TIMED_SERVICE));
+            for (final Integer workerId : workerIds) {
+                workerManagerSession.reloadWorker(new WorkerIdentifier(workerId));
+                if (services.contains(workerId)) {
+                    serviceTimerSession.unload(workerId);
+                    serviceTimerSession.load(workerId);
+                }
+            }
+            reloaded = workerIds.size();
+        }
+        final long duration = System.nanoTime() - start;
+        tracker.applied(reloaded, duration, System.currentTimeMillis());
+        LOG.info("Applied configuration changes from other nodes for "
+                + (workerIds.contains(IConfigChangeDataService.GLOBAL_CONFIGURATION) ? "global configuration" : "workers " + workerIds)
+                + ": " + tracker.getSummary(System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,147 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb.worker.impl;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of which configuration changes have been applied on this node.
+ *
+ * Changes recorded by this node are applied directly and are remembered so
+ * that they are not applied again when they are found by the next check.
+ *
+ * @version $Id$
+ */
+public class ConfigChangeTracker {
+
+    private volatile long seenVersion;
+    private final Set<Long> ownVersions = new ConcurrentSkipListSet<>();
+
+    private long appliedCount;
+    private long reloadedCount;
+    private long lastDuration;
+    private long maxDuration;
+    private long totalDuration;
+    private long lastApplied;
+
+    /**
+     * @return The version of the latest change seen by this node
+     */
+    public long getSeenVersion() {
+        return seenVersion;
+    }
+
+    /**
+     * Sets the version to start from.
+     *
+     * @param version Version of the latest change when this node started
+     */
+    public synchronized void start(final long version) {
+        seenVersion = version;
+        ownVersions.clear();
+    }
+
+    /**
+     * Records that a change has been made and applied by this node.
+     *
+     * @param version Version of the change
+     */
+    public void recorded(final long version) {
+        ownVersions.add(version);
+    }
+
+    /**
+     * Gives the workers to reload for the changes found and marks all of
+     * them as seen.
+     *
+     * @param changes Map from worker ID to version of the last change
+     * @param latestVersion The latest version
+     * @return The IDs of the workers, or GLOBAL_CONFIGURATION, to reload
+     */
+    public synchronized Set<Integer> update(final Map<Integer, Long> changes, final long latestVersion) {
+        final long previous = seenVersion;
+        long latest = Math.max(previous, latestVersion);
+        final Set<Integer> result = new TreeSet<>();
+        for (final Map.Entry<Integer, Long> change : changes.entrySet()) {
+            final long version = change.getValue();
+            if (version > previous && !ownVersions.contains(version)) {
+                result.add(change.getKey());
+            }
+            latest = Math.max(latest, version);
+        }
+        seenVersion = latest;
+        ownVersions.removeIf(version -> version <= seenVersion);
+        return result;
+    }
+
+    /**
+     * Records that changes have been applied.
+     *
+     * @param workers Number of workers reloaded
+     * @param durationNanos Time it took
+     * @param now Current time in milliseconds
+     */
+    public synchronized void applied(final int workers, final long durationNanos, final long now) {
+        final long duration = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        appliedCount++;
+        reloadedCount += workers;
+        lastDuration = duration;
+        maxDuration = Math.max(maxDuration, duration);
+        totalDuration += duration;
+        lastApplied = now;
+    }
+
+    public synchronized long getAppliedCount() {
+        return appliedCount;
+    }
+
+    public synchronized long getReloadedCount() {
+        return reloadedCount;
+    }
+
+    /**
+     * @return Time in milliseconds the last reload took
+     */
+    public synchronized long getLastDuration() {
+        return lastDuration;
+    }
+
+    /**
+     * @return Time in milliseconds the slowest reload took
+     */
+    public synchronized long getMaxDuration() {
+        return maxDuration;
+    }
+
+    /**
+     * @param now Current time in milliseconds
+     * @return One line summary of the state
+     */
+    public synchronized String getSummary(final long now) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("version=").append(seenVersion)
+          .append(", applied=").append(appliedCount)
+          .append(", workers reloaded=").append(reloadedCount);
+        if (appliedCount > 0) {
+            sb.append(", last reload=").append(lastDuration).append(" ms")
+              .append(" (").append((now - lastApplied) / 1000).append(" s ago)")
+              .append(", max reload=").append(maxDuration).append(" ms")
+              .append(", average reload=").append(totalDuration / appliedCount).append(" ms");
+        }
+        return sb.toString();
+    }
+}
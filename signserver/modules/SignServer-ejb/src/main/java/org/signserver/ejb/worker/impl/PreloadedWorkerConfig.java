@@ -12,7 +12,10 @@
  *************************************************************************/
 package org.signserver.ejb.worker.impl;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
 import org.signserver.common.SignServerConstants;
 import static org.signserver.common.SignServerConstants.DISABLED;
@@ -27,6 +30,11 @@ import static org.signserver.common.util.PropertiesConstants.NAME;
  * @version $Id$
  */
 public class PreloadedWorkerConfig {
+
+    private static final int DEFAULT_ARCHIVING_QUEUE_SIZE = 1000;
+    private static final int DEFAULT_ARCHIVING_BATCH_SIZE = 100;
+    private static final int DEFAULT_ARCHIVING_QUEUE_TIMEOUT = 10;
+    private static final int DEFAULT_ARCHIVING_MAX_ATTEMPTS = 10;
     
     private final String name;
     private final boolean disabled;
@@ -39,6 +47,14 @@ public class PreloadedWorkerConfig {
     private final boolean checkPrivateKeyValidity;
     private final int minRemainingCertValidity;
 
+    private final boolean archivingAsync;
+    private final File archivingSpoolDirectory;
+    private final int archivingQueueSize;
+    private final ArchiveQueue.FullBehaviour archivingQueueFull;
+    private final long archivingQueueTimeout;
+    private final int archivingBatchSize;
+    private final int archivingMaxAttempts;
+
     /**
      * Parse and construct the worker configuration.
      *
@@ -76,6 +92,47 @@ public class PreloadedWorkerConfig {
             minRemainingCertValidityValue = 0;
         }
         this.minRemainingCertValidity = minRemainingCertValidityValue;
+
+        // Asynchronous archiving
+        this.archivingAsync = config.getProperty(SignServerConstants.ARCHIVING_ASYNC, "FALSE").equalsIgnoreCase("TRUE");
+        final String spoolDirectory = config.getProperty(SignServerConstants.ARCHIVING_SPOOL_DIRECTORY);
+        if (spoolDirectory == null || spoolDirectory.trim().isEmpty()) {
+            if (archivingAsync) {
+                fatalErrors.add("Configuration error: " + SignServerConstants.ARCHIVING_ASYNC + "=TRUE but " + SignServerConstants.ARCHIVING_SPOOL_DIRECTORY + " is not configured.");
+            }
+            this.archivingSpoolDirectory = null;
+        } else {
+            this.archivingSpoolDirectory = new File(spoolDirectory.trim());
+        }
+        this.archivingQueueSize = parsePositiveInt(config, SignServerConstants.ARCHIVING_QUEUE_SIZE, DEFAULT_ARCHIVING_QUEUE_SIZE, fatalErrors);
+        this.archivingBatchSize = parsePositiveInt(config, SignServerConstants.ARCHIVING_BATCH_SIZE, DEFAULT_ARCHIVING_BATCH_SIZE, fatalErrors);
+        this.archivingMaxAttempts = parsePositiveInt(config, SignServerConstants.ARCHIVING_MAX_ATTEMPTS, DEFAULT_ARCHIVING_MAX_ATTEMPTS, fatalErrors);
+        this.archivingQueueTimeout = 1000L * parsePositiveInt(config, SignServerConstants.ARCHIVING_QUEUE_TIMEOUT, DEFAULT_ARCHIVING_QUEUE_TIMEOUT, fatalErrors);
+        ArchiveQueue.FullBehaviour queueFull;
+        try {
+            queueFull = ArchiveQueue.FullBehaviour.valueOf(config.getProperty(SignServerConstants.ARCHIVING_QUEUE_FULL, ArchiveQueue.FullBehaviour.BLOCK.name()).trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException ex) {
+            fatalErrors.add("Configuration error: Illegal value for " + SignServerConstants.ARCHIVING_QUEUE_FULL + ". Possible values are: " + Arrays.toString(ArchiveQueue.FullBehaviour.values()));
+            queueFull = ArchiveQueue.FullBehaviour.BLOCK;
+        }
+        this.archivingQueueFull = queueFull;
+    }
+
+    private static int parsePositiveInt(final WorkerConfig config, final String property, final int defaultValue, final List<String> fatalErrors) {
+        final String value = config.getProperty(property);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            final int result = Integer.parseInt(value.trim());
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException ignored) { // NOPMD
+            // Handled below
+        }
+        fatalErrors.add("Configuration error: Illegal value for " + property + ". Must be a positive integer.");
+        return defaultValue;
     }
 
     public String getName() {
@@ -109,5 +166,39 @@ public class PreloadedWorkerConfig {
     public int getMinRemainingCertValidity() {
         return minRemainingCertValidity;
     }
-    
+
+    public boolean isArchivingAsync() {
+        return archivingAsync;
+    }
+
+    public File getArchivingSpoolDirectory() {
+        return archivingSpoolDirectory;
+    }
+
+    public int getArchivingQueueSize() {
+        return archivingQueueSize;
+    }
+
+    public ArchiveQueue.FullBehaviour getArchivingQueueFull() {
+        return archivingQueueFull;
+    }
+
+    /**
+     * @return maximum time in milliseconds to wait for space in the queue
+     */
+    public long getArchivingQueueTimeout() {
+        return archivingQueueTimeout;
+    }
+
+    public int getArchivingBatchSize() {
+        return archivingBatchSize;
+    }
+
+    /**
+     * @return number of attempts to archive a queued item before giving up on it
+     */
+    public int getArchivingMaxAttempts() {
+        return archivingMaxAttempts;
+    }
+
 }
@@ -0,0 +1,242 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb.worker.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import org.signserver.common.RequestContext;
+import org.signserver.server.archive.Archivable;
+
+/**
+ * Archivable waiting to be archived asynchronously together with the
+ * information from the request context that the archivers use.
+ *
+ * Can be written to and read from a spool file using a simple binary format
+ * instead of Java serialization.
+ *
+ * @version $Id$
+ */
+public class QueuedArchivable implements Archivable {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final int workerId;
+    private final String type;
+    private final String contentType;
+    private final byte[] content;
+    private final String archiveId;
+    private final X509Certificate clientCertificate;
+    private final String remoteIp;
+    private final String xForwardedFor;
+    private final long queuedTime;
+
+    private String spoolName;
+    private int failedAttempts;
+
+    public QueuedArchivable(final int workerId, final String type,
+            final String contentType, final byte[] content,
+            final String archiveId, final X509Certificate clientCertificate,
+            final String remoteIp, final String xForwardedFor,
+            final long queuedTime) {
+        this.workerId = workerId;
+        this.type = type;
+        this.contentType = contentType;
+        this.content = content;
+        this.archiveId = archiveId;
+        this.clientCertificate = clientCertificate;
+        this.remoteIp = remoteIp;
+        this.xForwardedFor = xForwardedFor;
+        this.queuedTime = queuedTime;
+    }
+
+    /**
+     * Creates an instance from the archivable and the request context.
+     *
+     * @param workerId ID of the worker
+     * @param archivable to archive
+     * @param requestContext of the request
+     * @param queuedTime current time
+     * @return the new instance
+     */
+    public static QueuedArchivable create(final int workerId,
+            final Archivable archivable, final RequestContext requestContext,
+            final long queuedTime) {
+        return new QueuedArchivable(workerId, archivable.getType(),
+                archivable.getContentType(), archivable.getContentEncoded(),
+                archivable.getArchiveId(),
+                (X509Certificate) requestContext.get(RequestContext.CLIENT_CERTIFICATE),
+                (String) requestContext.get(RequestContext.REMOTE_IP),
+                (String) requestContext.get(RequestContext.X_FORWARDED_FOR),
+                queuedTime);
+    }
+
+    /**
+     * Creates a new request context with the same information as the one
+     * of the original request.
+     *
+     * @return the request context to use when archiving
+     */
+    public RequestContext createRequestContext() {
+        final RequestContext result = new RequestContext(clientCertificate, remoteIp);
+        result.put(RequestContext.WORKER_ID, workerId);
+        if (xForwardedFor != null) {
+            result.put(RequestContext.X_FORWARDED_FOR, xForwardedFor);
+        }
+        return result;
+    }
+
+    @Override
+    public String getType() {
+        return type;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public byte[] getContentEncoded() {
+        return content;
+    }
+
+    @Override
+    public String getArchiveId() {
+        return archiveId;
+    }
+
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * @return time in milliseconds when the item was queued
+     */
+    public long getQueuedTime() {
+        return queuedTime;
+    }
+
+    /**
+     * @return name of the spool file or null if not spooled
+     */
+    public String getSpoolName() {
+        return spoolName;
+    }
+
+    void setSpoolName(final String spoolName) {
+        this.spoolName = spoolName;
+    }
+
+    /**
+     * @return number of times archiving of this item alone has failed
+     */
+    int getFailedAttempts() {
+        return failedAttempts;
+    }
+
+    int incrementFailedAttempts() {
+        return ++failedAttempts;
+    }
+
+    /**
+     * Writes this item.
+     *
+     * @param out to write to
+     * @throws IOException in case of write failure
+     */
+    public void writeTo(final DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(workerId);
+        out.writeLong(queuedTime);
+        writeString(out, type);
+        writeString(out, contentType);
+        writeString(out, archiveId);
+        writeString(out, remoteIp);
+        writeString(out, xForwardedFor);
+        try {
+            writeBytes(out, clientCertificate == null ? null : clientCertificate.getEncoded());
+        } catch (CertificateEncodingException ex) {
+            throw new IOException("Unable to encode client certificate", ex);
+        }
+        writeBytes(out, content);
+    }
+
+    /**
+     * Reads an item.
+     *
+     * @param in to read from
+     * @return the item
+     * @throws IOException in case of read failure or unsupported format
+     */
+    public static QueuedArchivable readFrom(final DataInputStream in) throws IOException {
+        final int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported format version: " + version);
+        }
+        final int workerId = in.readInt();
+        final long queuedTime = in.readLong();
+        final String type = readString(in);
+        final String contentType = readString(in);
+        final String archiveId = readString(in);
+        final String remoteIp = readString(in);
+        final String xForwardedFor = readString(in);
+        final byte[] certBytes = readBytes(in);
+        final byte[] content = readBytes(in);
+
+        X509Certificate certificate = null;
+        if (certBytes != null) {
+            try {
+                certificate = (X509Certificate) CertificateFactory.getInstance("X.509")
+                        .generateCertificate(new ByteArrayInputStream(certBytes));
+            } catch (CertificateException ex) {
+                throw new IOException("Unable to decode client certificate", ex);
+            }
+        }
+        return new QueuedArchivable(workerId, type, contentType, content,
+                archiveId, certificate, remoteIp, xForwardedFor, queuedTime);
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeBytes(final DataOutputStream out, final byte[] value) throws IOException {
+        out.writeInt(value == null ? -1 : value.length);
+        if (value != null) {
+            out.write(value);
+        }
+    }
+
+    private static byte[] readBytes(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] result = new byte[length];
+        in.readFully(result);
+        return result;
+    }
+}
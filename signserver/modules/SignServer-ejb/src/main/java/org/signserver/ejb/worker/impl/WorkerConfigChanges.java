@@ -0,0 +1,312 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb.worker.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import org.signserver.common.SignServerConstants;
+import org.signserver.common.WorkerConfig;
+import org.signserver.common.util.PropertiesConstants;
+import org.signserver.server.BaseProcessable;
+import org.signserver.server.ClientCertAuthorizer;
+import org.signserver.server.IAccounter;
+import org.signserver.server.IAuthorizer;
+import org.signserver.server.NoAccounter;
+import org.signserver.server.NoAuthorizer;
+import org.signserver.server.RenewalUtils;
+import org.signserver.server.archive.Archiver;
+import org.signserver.server.archive.base64dbarchiver.Base64DatabaseArchiver;
+import org.signserver.server.archive.filearchiver.FileArchiver;
+import org.signserver.server.archive.olddbarchiver.OldDatabaseArchiver;
+import org.signserver.server.cryptotokens.CryptoTokenHelper;
+import org.signserver.server.log.AllFieldsWorkerLogger;
+import org.signserver.server.log.FileWorkerLogger;
+import org.signserver.server.log.IWorkerLogger;
+import org.signserver.server.log.NullWorkerLogger;
+import org.signserver.server.log.PatternWorkerLogger;
+import org.signserver.server.log.SecurityEventsWorkerLogger;
+
+/**
+ * Differences between the configuration of a loaded worker and the newly
+ * loaded configuration, used when reloading a worker to decide which of the
+ * already initialized components can be kept.
+ *
+ * Only components implemented by SignServer itself are considered, as for
+ * those the properties they read are known. Components from other
+ * implementations are always created again.
+ *
+ * The crypto token is only kept if all changed properties are known to not
+ * be read by it. A property not known here, for instance one only read by
+ * the worker implementation, is treated as read by the crypto token.
+ *
+ * @version $Id$
+ */
+public class WorkerConfigChanges {
+
+    /** Pseudo property name used for changes in the authorized clients. */
+    public static final String AUTHORIZED_CLIENTS = "(AUTHORIZED_CLIENTS)";
+
+    /** Pseudo property name used for changes in the keystore data. */
+    public static final String KEYSTORE_DATA = "(KEYSTORE_DATA)";
+
+    private static final String BUILTIN_CRYPTOTOKEN_PACKAGE = "org.signserver.server.cryptotokens.";
+
+    /** Components known to only read the properties checked for them. */
+    private static final Set<Class<?>> KEPT_COMPONENTS = new HashSet<>(Arrays.asList(
+            AllFieldsWorkerLogger.class,
+            PatternWorkerLogger.class,
+            SecurityEventsWorkerLogger.class,
+            FileWorkerLogger.class,
+            NullWorkerLogger.class,
+            NoAuthorizer.class,
+            ClientCertAuthorizer.class,
+            NoAccounter.class,
+            OldDatabaseArchiver.class,
+            Base64DatabaseArchiver.class,
+            FileArchiver.class));
+
+    /** Properties that if changed requires the worker to be loaded from scratch. */
+    private static final Set<String> FULL_RELOAD_PROPERTIES = new HashSet<>(Arrays.asList(
+            WorkerConfig.IMPLEMENTATION_CLASS,
+            PropertiesConstants.NAME,
+            WorkerConfig.TYPE));
+
+    /** Properties read by the crypto tokens. */
+    private static final Set<String> CRYPTOTOKEN_PROPERTIES = new HashSet<>(Arrays.asList(
+            WorkerConfig.CRYPTOTOKEN_IMPLEMENTATION_CLASS,
+            CryptoTokenHelper.PROPERTY_CRYPTOTOKEN,
+            CryptoTokenHelper.PROPERTY_NEXTCERTSIGNKEY,
+            CryptoTokenHelper.PROPERTY_ATTRIBUTESFILE,
+            CryptoTokenHelper.PROPERTY_ATTRIBUTES,
+            CryptoTokenHelper.PROPERTY_PIN,
+            CryptoTokenHelper.PROPERTY_DEFAULTKEY,
+            CryptoTokenHelper.PROPERTY_AUTHCODE,
+            CryptoTokenHelper.PROPERTY_KEYGENERATIONLIMIT,
+            CryptoTokenHelper.PROPERTY_TOKEN_ENTRY_CACHE_TIME,
+            CryptoTokenHelper.PROPERTY_GENERATE_CERTIFICATE_OBJECT,
+            CryptoTokenHelper.PROPERTY_ALLOWED_MECHANISMS,
+            CryptoTokenHelper.PROPERTY_WRAPPING_CIPHER_ALGORITHM,
+            CryptoTokenHelper.PROPERTY_USE_CACHE,
+            RenewalUtils.PROPERTY_SIGNATUREALGORITHM,
+            SignServerConstants.DISABLED,
+            BaseProcessable.PROPERTY_CACHE_PRIVATEKEY,
+            KEYSTORE_DATA));
+
+    /** Prefixes of properties read by the crypto tokens. */
+    private static final String[] CRYPTOTOKEN_PREFIXES = {
+        "SLOT", "SHAREDLIBRARY", "KEYSTORE", "SELFSIGNED_", "KEY_VAULT_"
+    };
+
+    /** Prefix of the properties read by the worker loggers. */
+    private static final String WORKERLOGGER_PREFIX = "LOG";
+
+    /** Prefix of the properties read by the archivers. */
+    private static final String ARCHIVER_PREFIX = "ARCHIV";
+
+    /** Prefix of the properties read by the accounters. */
+    private static final String ACCOUNTER_PREFIX = "ACCOUNTER";
+
+    /** Properties known to not be read by the crypto tokens. */
+    private static final Set<String> NON_CRYPTOTOKEN_PROPERTIES = new HashSet<>(Arrays.asList(
+            WorkerFactory.WORKERLOGGER,
+            WorkerFactory.ACCOUNTER,
+            WorkerConfig.PROPERTY_AUTHTYPE,
+            WorkerConfig.NO_REQUEST_ARCHIVING,
+            WorkerConfig.PROPERTY_INCLUDE_CERTIFICATE_LEVELS,
+            WorkerConfig.PROPERTY_ALIASSELECTOR,
+            PropertiesConstants.SIGNERCERT,
+            PropertiesConstants.SIGNERCERTCHAIN,
+            SignServerConstants.ARCHIVE,
+            SignServerConstants.CHECKCERTVALIDITY,
+            SignServerConstants.CHECKCERTPRIVATEKEYVALIDITY,
+            SignServerConstants.MINREMAININGCERTVALIDITY,
+            SignServerConstants.KEYUSAGELIMIT,
+            SignServerConstants.DISABLEKEYUSAGECOUNTER,
+            AUTHORIZED_CLIENTS));
+
+    /** Prefixes of properties known to not be read by the crypto tokens. */
+    private static final String[] NON_CRYPTOTOKEN_PREFIXES = {
+        WORKERLOGGER_PREFIX, ARCHIVER_PREFIX, ACCOUNTER_PREFIX
+    };
+
+    private final Set<String> changed;
+
+    private WorkerConfigChanges(final Set<String> changed) {
+        this.changed = changed;
+    }
+
+    /**
+     * Computes the changes between two configurations.
+     *
+     * @param oldConfig configuration of the loaded worker
+     * @param newConfig configuration to load
+     * @return the changes
+     */
+    public static WorkerConfigChanges compute(final WorkerConfig oldConfig, final WorkerConfig newConfig) {
+        final Set<String> changed = new HashSet<>();
+        addChangedProperties(changed, oldConfig.getProperties(), newConfig.getProperties());
+        addChangedProperties(changed, newConfig.getProperties(), oldConfig.getProperties());
+
+        if (!oldConfig.getAuthorizedClients().equals(newConfig.getAuthorizedClients())
+                || !oldConfig.getAuthorizedClientsGen2().equals(newConfig.getAuthorizedClientsGen2())) {
+            changed.add(AUTHORIZED_CLIENTS);
+        }
+        if (!Arrays.equals(oldConfig.getKeystoreData(), newConfig.getKeystoreData())) {
+            changed.add(KEYSTORE_DATA);
+        }
+        return new WorkerConfigChanges(changed);
+    }
+
+    private static void addChangedProperties(final Set<String> changed, final Properties props, final Properties otherProps) {
+        for (final String key : props.stringPropertyNames()) {
+            if (!Objects.equals(props.getProperty(key), otherProps.getProperty(key))) {
+                changed.add(key.toUpperCase(Locale.ENGLISH));
+            }
+        }
+    }
+
+    /**
+     * @return names of the changed properties, in upper case
+     */
+    public Set<String> getChanged() {
+        return Collections.unmodifiableSet(changed);
+    }
+
+    /**
+     * Tells if the worker should be loaded from scratch. This is the case
+     * when the worker is reloaded without any changes, as a reload is then
+     * explicitly requested, for instance after a keystore file has been
+     * replaced, or when the implementation of the worker has changed.
+     *
+     * @return true if nothing loaded for the worker should be kept
+     */
+    public boolean isFullReload() {
+        if (changed.isEmpty()) {
+            return true;
+        }
+        for (final String property : changed) {
+            if (FULL_RELOAD_PROPERTIES.contains(property)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells if the crypto token, and the private keys cached for it, can be
+     * kept. Workers using the crypto token of an other worker always get it
+     * from that worker again.
+     *
+     * @param oldConfig configuration of the loaded worker
+     * @return true if all changed properties are known to not be read by the
+     * crypto token
+     */
+    public boolean isCryptoTokenKept(final WorkerConfig oldConfig) {
+        if (isFullReload() || oldConfig.getProperty(CryptoTokenHelper.PROPERTY_CRYPTOTOKEN) != null
+                || oldConfig.getCryptoTokenImplementationClass() == null
+                || !oldConfig.getCryptoTokenImplementationClass().startsWith(BUILTIN_CRYPTOTOKEN_PACKAGE)) {
+            return false;
+        }
+        for (final String property : changed) {
+            if (isCryptoTokenProperty(property)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param property name in upper case
+     * @return false only if the property is known to not be read by the
+     * crypto tokens
+     */
+    private static boolean isCryptoTokenProperty(final String property) {
+        if (CRYPTOTOKEN_PROPERTIES.contains(property) || startsWithAny(property, CRYPTOTOKEN_PREFIXES)) {
+            return true;
+        }
+        return !NON_CRYPTOTOKEN_PROPERTIES.contains(property) && !startsWithAny(property, NON_CRYPTOTOKEN_PREFIXES);
+    }
+
+    private static boolean startsWithAny(final String property, final String[] prefixes) {
+        for (final String prefix : prefixes) {
+            if (property.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param workerLogger the loaded worker logger
+     * @return true if the worker logger can be kept
+     */
+    public boolean isWorkerLoggerKept(final IWorkerLogger workerLogger) {
+        return isKept(workerLogger) && !changedWithPrefix(WORKERLOGGER_PREFIX)
+                && !changed.contains(WorkerFactory.WORKERLOGGER);
+    }
+
+    /**
+     * @param authorizer the loaded authorizer
+     * @param oldAuthType authentication type of the loaded worker
+     * @param newAuthType authentication type of the new worker
+     * @return true if the authorizer can be kept
+     */
+    public boolean isAuthorizerKept(final IAuthorizer authorizer, final String oldAuthType, final String newAuthType) {
+        return isKept(authorizer) && Objects.equals(oldAuthType, newAuthType)
+                && !changed.contains(AUTHORIZED_CLIENTS);
+    }
+
+    /**
+     * @param accounter the loaded accounter
+     * @return true if the accounter can be kept
+     */
+    public boolean isAccounterKept(final IAccounter accounter) {
+        return isKept(accounter) && !changed.contains(WorkerFactory.ACCOUNTER);
+    }
+
+    /**
+     * @param archivers the loaded archivers
+     * @return true if the archivers can be kept
+     */
+    public boolean isArchiversKept(final List<Archiver> archivers) {
+        if (archivers == null || changedWithPrefix(ARCHIVER_PREFIX)
+                || changed.contains(WorkerConfig.NO_REQUEST_ARCHIVING)) {
+            return false;
+        }
+        for (final Archiver archiver : archivers) {
+            if (!isKept(archiver)) {
+                return false;
+            }
+        }
+        return !isFullReload();
+    }
+
+    private boolean isKept(final Object component) {
+        return component != null && !isFullReload() && KEPT_COMPONENTS.contains(component.getClass());
+    }
+
+    private boolean changedWithPrefix(final String prefix) {
+        for (final String property : changed) {
+            if (property.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -40,14 +40,17 @@ public class WorkerFactory {
     /** Logger for this class. */
     public static final Logger LOG = Logger.getLogger(WorkerFactory.class);
 
-    private static final String WORKERLOGGER = "WORKERLOGGER";
-    private static final String ACCOUNTER = "ACCOUNTER";
+    static final String WORKERLOGGER = "WORKERLOGGER";
+    static final String ACCOUNTER = "ACCOUNTER";
 
     private final IWorkerConfigDataService workerConfigHome;
     private final SignServerContext workerContext;
 
     private final WorkerStore cache = new WorkerStore();
 
+    /** Components of reloaded workers that can be kept, until taken over. */
+    private final Map<Integer, ReloadedComponents> reloadedComponents = new HashMap<>();
+
     protected WorkerFactory(IWorkerConfigDataService workerConfigHome, SignServerContext workerContext) {
         this.workerConfigHome = workerConfigHome;
         this.workerContext = workerContext;
@@ -168,40 +171,64 @@ public class WorkerFactory {
         @SuppressWarnings("deprecation")
         final EntityManager em = context.getEntityManager();
 
+        // Components from before a reload that can be kept
+        final ReloadedComponents reloaded = reloadedComponents.remove(workerId);
+        final WorkerWithComponents previous = reloaded == null || reloaded.worker != worker ? null : reloaded.previous;
+        final WorkerConfigChanges changes = previous == null ? null : reloaded.changes;
+
         // Worker Logger
         IWorkerLogger workerLogger = null;
-        try {
-            workerLogger = getWorkerLogger(workerId, config, em);
-        } catch (SignServerException ex) {
-            createErrors.add(ex.getLocalizedMessage());
+        if (changes != null && changes.isWorkerLoggerKept(previous.getWorkerLogger())) {
+            workerLogger = previous.getWorkerLogger();
+        } else {
+            try {
+                workerLogger = getWorkerLogger(workerId, config, em);
+            } catch (SignServerException ex) {
+                createErrors.add(ex.getLocalizedMessage());
+            }
         }
 
         // Authorizer
         IAuthorizer authorizer = null;
         if (worker instanceof IProcessable) {
-            try {
-                final String authType = ((IProcessable) worker).getAuthenticationType();
-                authorizer = getAuthenticator(workerId, authType, config, em);
+            final String authType = ((IProcessable) worker).getAuthenticationType();
+            if (changes != null && previous.getWorker() instanceof IProcessable
+                    && changes.isAuthorizerKept(previous.getAuthorizer(),
+                            ((IProcessable) previous.getWorker()).getAuthenticationType(), authType)) {
+                authorizer = previous.getAuthorizer();
                 createErrors.addAll(authorizer.getFatalErrors());
-            } catch (SignServerException ex) {
-                createErrors.add(ex.getLocalizedMessage());
+            } else {
+                try {
+                    authorizer = getAuthenticator(workerId, authType, config, em);
+                    createErrors.addAll(authorizer.getFatalErrors());
+                } catch (SignServerException ex) {
+                    createErrors.add(ex.getLocalizedMessage());
+                }
             }
         }
 
         // Accounter
         IAccounter accounter = null;
-        try {
-            accounter = getAccounter(workerId, config, em);
-        } catch (SignServerException ex) {
-            createErrors.add(ex.getLocalizedMessage());
+        if (changes != null && changes.isAccounterKept(previous.getAccounter())) {
+            accounter = previous.getAccounter();
+        } else {
+            try {
+                accounter = getAccounter(workerId, config, em);
+            } catch (SignServerException ex) {
+                createErrors.add(ex.getLocalizedMessage());
+            }
         }
 
         // Archivers
         List<Archiver> archivers = null;
-        try {
-            archivers = getArchivers(workerId, config, context);
-        } catch (SignServerException ex) {
-            createErrors.add(ex.getLocalizedMessage());
+        if (changes != null && changes.isArchiversKept(previous.getArchivers())) {
+            archivers = previous.getArchivers();
+        } else {
+            try {
+                archivers = getArchivers(workerId, config, context);
+            } catch (SignServerException ex) {
+                createErrors.add(ex.getLocalizedMessage());
+            }
         }
 
         // Worker with components
@@ -291,17 +318,29 @@ public class WorkerFactory {
             LOG.trace(">flush()");
         }
         cache.clearAll();
+        reloadedComponents.clear();
     }
 
     /**
      * Method used to force a reload of worker.
+     *
+     * The worker is always instantiated and initialized again but if only
+     * some properties changed, the components not affected by those are kept
+     * as well as the crypto token, so that an activated token and cached
+     * private keys are not lost. Without any changes everything is loaded
+     * again.
+     *
      * @param wi of worker
      */
     public synchronized void reloadWorker(WorkerIdentifier wi) {
         if (LOG.isTraceEnabled()) {
             LOG.trace(">reloadWorker(" + wi + ")");
         }
+        WorkerWithComponents previous = null;
+        IWorker previousWorker = null;
         if (wi.hasName() || (wi.hasId() && wi.getId() != null)) {
+            previous = cache.getWorkerWithComponents(wi);
+            previousWorker = previous == null ? cache.getWorkerOnly(wi) : previous.getWorker();
             cache.clear(wi);
             if (LOG.isTraceEnabled()) {
                 LOG.trace("reloadWorker(" + wi + "): removed instance");
@@ -309,7 +348,30 @@ public class WorkerFactory {
         }
 
         try {
-            loadWorker(wi);
+            final IWorker worker = loadWorker(wi);
+            final int workerId = wi.hasId() ? wi.getId() : workerConfigHome.findId(wi.getName());
+            reloadedComponents.remove(workerId);
+
+            if (previousWorker != null && previousWorker.getConfig() != null
+                    && worker.getConfig() != null) {
+                final WorkerConfigChanges changes = WorkerConfigChanges.compute(previousWorker.getConfig(), worker.getConfig());
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Worker " + workerId + " reloaded with changes in: " + changes.getChanged());
+                }
+                if (!changes.isFullReload()) {
+                    if (changes.isCryptoTokenKept(previousWorker.getConfig())
+                            && previousWorker.getClass() == worker.getClass()
+                            && worker instanceof BaseProcessable) {
+                        ((BaseProcessable) worker).takeOverCryptoToken((BaseProcessable) previousWorker);
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Worker " + workerId + " keeps its crypto token");
+                        }
+                    }
+                    if (previous != null) {
+                        reloadedComponents.put(workerId, new ReloadedComponents(worker, previous, changes));
+                    }
+                }
+            }
         } catch (NoSuchWorkerException ex) {
             LOG.error("Error reloading worker : " + ex.getMessage());
         }
@@ -470,4 +532,19 @@ public class WorkerFactory {
         return archivers;
     }
 
+    /**
+     * Components of a worker before it was reloaded, kept until the
+     * components of the reloaded worker are loaded.
+     */
+    private static class ReloadedComponents {
+        private final IWorker worker;
+        private final WorkerWithComponents previous;
+        private final WorkerConfigChanges changes;
+
+        ReloadedComponents(final IWorker worker, final WorkerWithComponents previous, final WorkerConfigChanges changes) {
+            this.worker = worker;
+            this.previous = previous;
+            this.changes = changes;
+        }
+    }
 }
@@ -0,0 +1,259 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb.worker.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+
+/**
+ * Initializes workers in parallel using a bounded number of threads so that
+ * the first requests after a restart do not have to wait for the workers to
+ * be loaded and their crypto tokens to be activated one at a time.
+ *
+ * The calling thread always takes part and additional threads are borrowed
+ * from the executor, which in the application server is the managed executor
+ * service of the container. If no additional thread is available the
+ * workers are simply initialized by fewer threads.
+ *
+ * The workers are given in phases where all workers in one phase are
+ * initialized before the next phase is started. This is used to first
+ * initialize the crypto workers, as workers using the crypto token of an
+ * other worker would otherwise wait for it while holding the lock of the
+ * worker factory.
+ *
+ * @version $Id$
+ */
+public class WorkerWarmup {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(WorkerWarmup.class);
+
+    /** Initialization of one worker. */
+    public interface Task {
+
+        /**
+         * Initializes the worker.
+         *
+         * @param workerId ID of worker
+         * @return true if the worker is ready to process requests, i.e. it
+         * is enabled and its crypto token, if any, is active
+         * @throws Exception in case the worker could not be initialized
+         */
+        boolean warmUp(int workerId) throws Exception;
+    }
+
+    private final Executor executor;
+    private final int threads;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param executor to borrow additional threads from or null to
+     * initialize all workers in the calling thread
+     * @param threads maximum number of workers to initialize in parallel,
+     * including the calling thread
+     */
+    public WorkerWarmup(final Executor executor, final int threads) {
+        this.executor = executor;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Initializes the workers, one phase at a time.
+     *
+     * @param phases lists of worker IDs
+     * @param task initializing a worker
+     * @return result with the time for each worker
+     * @throws InterruptedException in case the thread was interrupted while
+     * waiting for the workers
+     */
+    public Result run(final List<List<Integer>> phases, final Task task) throws InterruptedException {
+        final long start = System.nanoTime();
+        final List<WorkerResult> results = Collections.synchronizedList(new ArrayList<>());
+        for (final List<Integer> phase : phases) {
+            final Queue<Integer> remaining = new ConcurrentLinkedQueue<>(phase);
+            final Runnable runner = () -> {
+                Integer workerId;
+                while ((workerId = remaining.poll()) != null) {
+                    results.add(warmUp(workerId, task));
+                }
+            };
+
+            // Borrow additional threads, at most one per remaining worker
+            final int helpers = executor == null ? 0 : Math.min(threads, phase.size()) - 1;
+            final CountDownLatch helpersDone = new CountDownLatch(Math.max(0, helpers));
+            for (int i = 0; i < helpers; i++) {
+                try {
+                    executor.execute(() -> {
+                        try {
+                            runner.run();
+                        } finally {
+                            helpersDone.countDown();
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("No additional thread available: " + ex.getMessage());
+                    }
+                    helpersDone.countDown();
+                }
+            }
+
+            runner.run();
+            helpersDone.await();
+        }
+        return new Result(new ArrayList<>(results), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private static WorkerResult warmUp(final int workerId, final Task task) {
+        final long start = System.nanoTime();
+        boolean ready = false;
+        String error = null;
+        try {
+            ready = task.warmUp(workerId);
+        } catch (Exception ex) { // NOPMD: Any failure is reported for the worker
+            error = ex.getMessage() == null ? ex.getClass().getName() : ex.getMessage();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Initialization of worker " + workerId + " failed", ex);
+            }
+        }
+        final WorkerResult result = new WorkerResult(workerId,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), ready, error);
+        LOG.info(result);
+        return result;
+    }
+
+    /**
+     * Outcome of initializing one worker.
+     */
+    public static class WorkerResult {
+        private final int workerId;
+        private final long millis;
+        private final boolean ready;
+        private final String error;
+
+        public WorkerResult(final int workerId, final long millis, final boolean ready, final String error) {
+            this.workerId = workerId;
+            this.millis = millis;
+            this.ready = ready;
+            this.error = error;
+        }
+
+        public int getWorkerId() {
+            return workerId;
+        }
+
+        /**
+         * @return time it took to initialize the worker in milliseconds
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        public boolean isReady() {
+            return ready;
+        }
+
+        /**
+         * @return error message or null if the worker was initialized
+         */
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append("Worker ").append(workerId).append(" initialized in ").append(millis).append(" ms");
+            if (error != null) {
+                sb.append(", failed: ").append(error);
+            } else if (!ready) {
+                sb.append(", not ready");
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Outcome of initializing all workers.
+     */
+    public static class Result {
+        private final List<WorkerResult> workers;
+        private final long millis;
+
+        public Result(final List<WorkerResult> workers, final long millis) {
+            this.workers = Collections.unmodifiableList(workers);
+            this.millis = millis;
+        }
+
+        public List<WorkerResult> getWorkers() {
+            return workers;
+        }
+
+        /**
+         * @return total time in milliseconds
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * @return number of workers ready to process requests
+         */
+        public int getReadyCount() {
+            int result = 0;
+            for (final WorkerResult worker : workers) {
+                if (worker.isReady()) {
+                    result++;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return the worker that took the longest time or null if none
+         */
+        public WorkerResult getSlowest() {
+            WorkerResult result = null;
+            for (final WorkerResult worker : workers) {
+                if (result == null || worker.getMillis() > result.getMillis()) {
+                    result = worker;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return one line summary of the result
+         */
+        public String getSummary() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append("Initialized ").append(workers.size()).append(" workers in ")
+              .append(millis).append(" ms, ").append(getReadyCount()).append(" ready");
+            final WorkerResult slowest = getSlowest();
+            if (slowest != null) {
+                sb.append(", slowest: worker ").append(slowest.getWorkerId())
+                  .append(" in ").append(slowest.getMillis()).append(" ms");
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.archive.filearchiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import javax.persistence.EntityManager;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.signserver.common.ArchiveDataVO;
+import org.signserver.common.RequestContext;
+import org.signserver.common.SignServerConstants;
+import org.signserver.common.WorkerConfig;
+import org.signserver.common.util.XForwardedForUtils;
+import org.signserver.server.SignServerContext;
+import org.signserver.server.archive.Archivable;
+import org.signserver.server.archive.ArchiveException;
+import org.signserver.server.archive.Archiver;
+import org.signserver.server.archive.ArchiverInitException;
+import org.signserver.server.archive.BaseArchiver;
+import org.signserver.server.archive.olddbarchiver.ArchiveOfTypes;
+import org.signserver.server.archive.olddbarchiver.entities.ArchiveDataService;
+import org.signserver.server.log.IWorkerLogger;
+import org.signserver.server.log.LogMap;
+import org.signserver.server.log.Loggable;
+
+/**
+ * Archiver storing the archived bytes compressed in files in a directory
+ * and only the metadata in the database table ArchiveData.
+ *
+ * The files are named by the hash of their content (see ArchiveFileStore)
+ * and the ArchiveData row contains the directory and the location of the
+ * file, relative to the directory, instead of the data itself. The directory
+ * can be on a shared or mounted file system so that all nodes can read the
+ * archived data. The data is read from the directory it was stored in, which
+ * keeps working if the configuration is changed or the worker is removed. If
+ * the directory is moved, the data is instead found in the directories now
+ * configured for the worker.
+ *
+ * @version $Id$
+ */
+public class FileArchiver extends BaseArchiver implements Archiver {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(FileArchiver.class);
+
+    private static final String PROPERTY_DIRECTORY = "DIRECTORY";
+    private static final String PROPERTY_ARCHIVE_OF_TYPE = "ARCHIVE_OF_TYPE";
+    private static final String PROPERTY_USE_FORWARDED_ADDRESS = "USE_FORWARDED_ADDRESS";
+    private static final String PROPERTY_MAX_FORWARDED_ADDRESSES = "MAX_FORWARDED_ADDRESSES";
+    private static final String PROPERTY_INCLUDE_DIRECT_ADDRESS = "INCLUDE_DIRECT_ADDRESS";
+    private static final int DEFAULT_MAX_FORWARDED_ADDRESSES = 1;
+
+    private ArchiveFileStore store;
+    private ArchiveOfTypes archiveOfTypes;
+
+    private boolean useXForwardedFor = false;
+    private int maxForwardedAddresses;
+    private boolean includeDirectAddress;
+
+    @Override
+    public void init(int listIndex, WorkerConfig config, SignServerContext context) throws ArchiverInitException {
+        if (!context.isDatabaseConfigured()) {
+            addFatalError("FileArchiver requires a database connection");
+        }
+
+        // Directory to store the files in
+        final String propertyDirectory = "ARCHIVER" + listIndex + "." + PROPERTY_DIRECTORY;
+        final String directory = config.getProperty(propertyDirectory);
+        if (directory == null || directory.trim().isEmpty()) {
+            addFatalError("Missing worker property " + propertyDirectory);
+        } else {
+            final File dir = new File(directory.trim());
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                addFatalError("Not a directory: " + propertyDirectory);
+            } else if (!dir.canWrite()) {
+                addFatalError("Directory not writable: " + propertyDirectory);
+            }
+            store = new ArchiveFileStore(dir);
+        }
+
+        // Configuration of what to archive
+        final String propertyArchiveOfType = "ARCHIVER" + listIndex + "." + PROPERTY_ARCHIVE_OF_TYPE;
+        try {
+            archiveOfTypes = ArchiveOfTypes.valueOf(config.getProperty(propertyArchiveOfType, ArchiveOfTypes.RESPONSE.name()));
+        } catch (IllegalArgumentException ex) {
+            final String error =
+                    "Illegal value for worker property " + propertyArchiveOfType;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(error + ": " + ex.getMessage());
+            }
+            addFatalError(error);
+        }
+
+        final boolean noRequestArchiving = Boolean.valueOf(config.getProperty(WorkerConfig.NO_REQUEST_ARCHIVING));
+        if (noRequestArchiving &&
+            (archiveOfTypes == ArchiveOfTypes.REQUEST || archiveOfTypes == ArchiveOfTypes.REQUEST_AND_RESPONSE)) {
+            addFatalError("Can not specifiy " + PROPERTY_ARCHIVE_OF_TYPE + " " + archiveOfTypes.name() + " when " +
+                          WorkerConfig.NO_REQUEST_ARCHIVING + " is set to true");
+        }
+
+        // configuration for using the X-FORWARDED-FOR header to determine source IP
+        final String propertyXForwardedFor = "ARCHIVER" + listIndex + "." + PROPERTY_USE_FORWARDED_ADDRESS;
+        final String propertyMaxForwardedAddresses =
+                "ARCHIVER" + listIndex + "." + PROPERTY_MAX_FORWARDED_ADDRESSES;
+        final String propertyIncludeDirect = "ARCHIVER" + listIndex + "." + PROPERTY_INCLUDE_DIRECT_ADDRESS;
+        useXForwardedFor = Boolean.valueOf(config.getProperty(propertyXForwardedFor));
+        maxForwardedAddresses =
+                Integer.valueOf(config.getProperty(propertyMaxForwardedAddresses,
+                        String.valueOf(DEFAULT_MAX_FORWARDED_ADDRESSES)));
+        includeDirectAddress = Boolean.valueOf(config.getProperty(propertyIncludeDirect));
+    }
+
+    /**
+     * Gives the directories configured for the FileArchivers of a worker.
+     *
+     * @param config of the worker
+     * @return the directories, in the order of the archivers
+     */
+    public static List<File> getDirectories(final WorkerConfig config) {
+        final List<File> result = new LinkedList<>();
+        final String list = config.getProperty(SignServerConstants.ARCHIVERS);
+        if (list != null) {
+            int index = 0;
+            for (String className : list.split(",")) {
+                className = className.trim();
+                if (!className.isEmpty()) {
+                    if (FileArchiver.class.getName().equals(className)) {
+                        final String directory = config.getProperty("ARCHIVER" + index + "." + PROPERTY_DIRECTORY);
+                        if (directory != null) {
+                            result.add(new File(directory.trim()));
+                        }
+                    }
+                    index++;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean archive(Archivable archivable, RequestContext requestContext)
+            throws ArchiveException {
+        final boolean archived;
+
+        // Get the type of this request
+        int archiveType = -1;
+        if (Archivable.TYPE_RESPONSE.equals(archivable.getType())) {
+            archiveType = ArchiveDataVO.TYPE_RESPONSE;
+        } else if (Archivable.TYPE_REQUEST.equals(archivable.getType())) {
+            archiveType = ArchiveDataVO.TYPE_REQUEST;
+        }
+
+        // Only archive if the type of this request is the type configured for this Archiver
+        if ((archiveOfTypes == ArchiveOfTypes.REQUEST && archiveType == ArchiveDataVO.TYPE_REQUEST)
+                || (archiveOfTypes == ArchiveOfTypes.RESPONSE && archiveType == ArchiveDataVO.TYPE_RESPONSE)
+                || (archiveOfTypes == ArchiveOfTypes.REQUEST_AND_RESPONSE && (archiveType == ArchiveDataVO.TYPE_RESPONSE || archiveType == ArchiveDataVO.TYPE_REQUEST))) {
+            final EntityManager em = requestContext.getEntityManager();
+            if (em == null || store == null) {
+                throw new ArchiveException("Could not archive as archiver was not successfully initialized");
+            }
+            final ArchiveDataService dataService = new ArchiveDataService(em);
+            final Integer workerId = (Integer) requestContext.get(RequestContext.WORKER_ID);
+            final X509Certificate certificate = (X509Certificate) requestContext.get(RequestContext.CLIENT_CERTIFICATE);
+            String remoteIp = (String) requestContext.get(RequestContext.REMOTE_IP);
+
+            if (useXForwardedFor) {
+                final List<String> ips = new LinkedList<>();
+                final String[] forwardedIps =
+                        XForwardedForUtils.getXForwardedForIPs(requestContext, maxForwardedAddresses);
+
+                if (includeDirectAddress) {
+                    ips.add(remoteIp);
+                }
+
+                if (forwardedIps != null) {
+                    ips.addAll(Arrays.asList(forwardedIps));
+                }
+
+                Collections.reverse(ips);
+
+                if (!ips.isEmpty()) {
+                    remoteIp = StringUtils.join(ips, ", ");
+                }
+            }
+
+            // Write the file before the row so that a row never refers to a missing file
+            final String location;
+            try {
+                location = store.store(archivable.getContentEncoded());
+            } catch (IOException ex) {
+                throw new ArchiveException("Could not write archive file: " + ex.getMessage(), ex);
+            }
+
+            final String uniqueId = dataService.createWithFile(archiveType,
+                            workerId,
+                            archivable.getArchiveId(),
+                            certificate,
+                            remoteIp,
+                            store.getDirectory(),
+                            location);
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Archived with uniqueId: " + uniqueId + " to " + location);
+            }
+
+            final LogMap logMap = LogMap.getInstance(requestContext);
+            final Object loggable = logMap.get(IWorkerLogger.LOG_ARCHIVE_IDS);
+
+            logMap.put(IWorkerLogger.LOG_ARCHIVE_IDS, new Loggable() {
+                @Override
+                public String toString() {
+                    final String ids;
+
+                    if (loggable == null) {
+                        ids = uniqueId;
+                    } else {
+                        ids = loggable.toString() + ", " + uniqueId;
+                    }
+                    return ids;
+                }
+            });
+
+            archived = true;
+        } else {
+            archived = false;
+        }
+        return archived;
+    }
+}
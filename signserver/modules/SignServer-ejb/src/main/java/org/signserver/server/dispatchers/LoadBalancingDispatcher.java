@@ -0,0 +1,394 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.dispatchers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.EntityManager;
+import org.apache.log4j.Logger;
+import org.signserver.common.CryptoTokenOfflineException;
+import org.signserver.common.IllegalRequestException;
+import org.signserver.common.RequestContext;
+import org.signserver.common.SignServerException;
+import org.signserver.common.WorkerConfig;
+import org.signserver.common.WorkerIdentifier;
+import org.signserver.common.WorkerStatusInfo;
+import org.signserver.common.data.Request;
+import org.signserver.common.data.Response;
+import org.signserver.ejb.interfaces.DispatcherProcessSessionLocal;
+import org.signserver.server.IServices;
+import org.signserver.server.WorkerContext;
+import org.signserver.server.log.AdminInfo;
+
+/**
+ * Dispatching requests distributed over a number of workers.
+ *
+ * A worker failing with a CryptoTokenOfflineException is considered offline
+ * and is not dispatched to again until the back-off time has passed, unless
+ * all other workers are also offline. The number of requests and their
+ * processing time for each worker are included in the worker status.
+ *
+ * Properties:<br/>
+ * WORKERS = Comma separated list of worker names<br/>
+ * STRATEGY = ROUND_ROBIN (default) or LEAST_OUTSTANDING<br/>
+ * WEIGHTS = Optional comma separated list of weights (1-100) for the workers
+ * in the same order as WORKERS. Default: 1 for all workers<br/>
+ * OFFLINE_BACKOFF = Number of seconds to not dispatch to a worker after it
+ * was found to be offline. Default: 30
+ *
+ * @version $Id$
+ */
+public class LoadBalancingDispatcher extends BaseDispatcher {
+
+    /** Log4j instance for this class. */
+    private static final Logger LOG = Logger.getLogger(
+            LoadBalancingDispatcher.class);
+
+    /** Property WORKERS. */
+    private static final String PROPERTY_WORKERS = "WORKERS";
+
+    /** Property STRATEGY. */
+    private static final String PROPERTY_STRATEGY = "STRATEGY";
+
+    /** Property WEIGHTS. */
+    private static final String PROPERTY_WEIGHTS = "WEIGHTS";
+
+    /** Property OFFLINE_BACKOFF. */
+    private static final String PROPERTY_OFFLINE_BACKOFF = "OFFLINE_BACKOFF";
+
+    private static final long DEFAULT_OFFLINE_BACKOFF = 30;
+    private static final int MAX_WEIGHT = 100;
+
+    /** Strategies for selecting the worker to dispatch to. */
+    public enum Strategy {
+        /** In turn, in proportion to the weights. */
+        ROUND_ROBIN,
+
+        /** The worker with the fewest requests in progress relative to its weight. */
+        LEAST_OUTSTANDING
+    }
+
+    /** Configuration errors. */
+    private LinkedList<String> configErrors;
+
+    private Strategy strategy;
+    private long offlineBackoffMillis;
+
+    /** Workers to dispatch to. */
+    private List<Target> targets = Collections.emptyList();
+
+    /** Targets in the round robin order, each repeated by its weight. */
+    private Target[] schedule = new Target[0];
+
+    private final AtomicLong counter = new AtomicLong();
+
+    @Override
+    public void init(final int workerId, final WorkerConfig config,
+            final WorkerContext workerContext, final EntityManager workerEM) {
+        super.init(workerId, config, workerContext, workerEM);
+        configErrors = new LinkedList<>();
+
+        final String name = config.getProperty("NAME");
+
+        // Required property WORKERS
+        final List<String> workerNames = new ArrayList<>();
+        final String workersValue = config.getProperty(PROPERTY_WORKERS);
+        if (workersValue == null) {
+            configErrors.add("Property " + PROPERTY_WORKERS + " missing!");
+        } else {
+            for (String workerName : workersValue.split(",")) {
+                workerName = workerName.trim();
+                if (workerName.isEmpty()) {
+                    continue;
+                }
+                if (workerName.equals(name)) {
+                    configErrors.add("Dispatcher configured to dispatch to itself");
+                } else {
+                    workerNames.add(workerName);
+                }
+            }
+            if (workerNames.isEmpty() && configErrors.isEmpty()) {
+                configErrors.add("Property " + PROPERTY_WORKERS + " does not contain any workers");
+            }
+        }
+
+        // Optional property STRATEGY
+        final String strategyValue = config.getProperty(PROPERTY_STRATEGY, Strategy.ROUND_ROBIN.name());
+        try {
+            strategy = Strategy.valueOf(strategyValue.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException ex) {
+            configErrors.add("Incorrect value for property " + PROPERTY_STRATEGY + ": " + strategyValue);
+        }
+
+        // Optional property WEIGHTS
+        final int[] weights = new int[workerNames.size()];
+        final String weightsValue = config.getProperty(PROPERTY_WEIGHTS);
+        if (weightsValue == null) {
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = 1;
+            }
+        } else {
+            final String[] parts = weightsValue.split(",");
+            if (parts.length != weights.length) {
+                configErrors.add("Property " + PROPERTY_WEIGHTS + " should contain one weight for each worker");
+            } else {
+                for (int i = 0; i < parts.length; i++) {
+                    try {
+                        weights[i] = Integer.parseInt(parts[i].trim());
+                        if (weights[i] < 1 || weights[i] > MAX_WEIGHT) {
+                            configErrors.add("Weights in property " + PROPERTY_WEIGHTS + " should be between 1 and " + MAX_WEIGHT);
+                            break;
+                        }
+                    } catch (NumberFormatException ex) {
+                        configErrors.add("Incorrect value for property " + PROPERTY_WEIGHTS + ": " + weightsValue);
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Optional property OFFLINE_BACKOFF
+        final String backoffValue = config.getProperty(PROPERTY_OFFLINE_BACKOFF, String.valueOf(DEFAULT_OFFLINE_BACKOFF));
+        try {
+            final long backoff = Long.parseLong(backoffValue.trim());
+            if (backoff < 0) {
+                configErrors.add("Property " + PROPERTY_OFFLINE_BACKOFF + " should not be negative");
+            }
+            offlineBackoffMillis = TimeUnit.SECONDS.toMillis(backoff);
+        } catch (NumberFormatException ex) {
+            configErrors.add("Incorrect value for property " + PROPERTY_OFFLINE_BACKOFF + ": " + backoffValue);
+        }
+
+        if (configErrors.isEmpty()) {
+            final List<Target> newTargets = new ArrayList<>(workerNames.size());
+            for (int i = 0; i < workerNames.size(); i++) {
+                newTargets.add(new Target(i, workerNames.get(i), weights[i]));
+            }
+            targets = newTargets;
+            schedule = createSchedule(newTargets);
+        } else {
+            targets = Collections.emptyList();
+            schedule = new Target[0];
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Dispatching to " + targets + " using " + strategy);
+        }
+    }
+
+    /**
+     * Creates the round robin schedule with each target occurring as many
+     * times as its weight and spread out over the schedule.
+     */
+    private static Target[] createSchedule(final List<Target> targets) {
+        int total = 0;
+        for (final Target target : targets) {
+            total += target.weight;
+        }
+        final Target[] result = new Target[total];
+        final int[] current = new int[targets.size()];
+        for (int n = 0; n < total; n++) {
+            // Smooth weighted round robin
+            int best = 0;
+            for (int i = 0; i < current.length; i++) {
+                current[i] += targets.get(i).weight;
+                if (current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            result[n] = targets.get(best);
+        }
+        return result;
+    }
+
+    protected DispatcherProcessSessionLocal getWorkerSession(final RequestContext requestContext) {
+        return requestContext.getServices().get(DispatcherProcessSessionLocal.class);
+    }
+
+    @Override
+    public Response processData(final Request signRequest,
+            final RequestContext requestContext) throws IllegalRequestException,
+            CryptoTokenOfflineException, SignServerException {
+        if (!configErrors.isEmpty()) {
+            throw new SignServerException("Worker is misconfigured");
+        }
+
+        final RequestContext nextContext = requestContext.copyWithNewLogMap();
+
+        // Mark request comming from a dispatcher so the DispatchedAuthorizer can be used
+        nextContext.put(RequestContext.DISPATCHER_AUTHORIZED_CLIENT, true);
+
+        final DispatcherProcessSessionLocal session = getWorkerSession(requestContext);
+
+        for (final Target target : selectTargets(System.currentTimeMillis())) {
+            target.outstanding.incrementAndGet();
+            final long startTime = System.nanoTime();
+            try {
+                final Response response = session.process(new AdminInfo("Client user", null, null),
+                        new WorkerIdentifier(target.name), signRequest, nextContext);
+                target.offlineUntil = 0;
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Dispatched to worker: " + target.name);
+                }
+                return response;
+            } catch (CryptoTokenOfflineException ex) {
+                target.failures.incrementAndGet();
+                target.offlineUntil = System.currentTimeMillis() + offlineBackoffMillis;
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Skipping offline worker: " + target.name + " ("
+                            + ex.getMessage() + ")");
+                }
+            } finally {
+                target.outstanding.decrementAndGet();
+                target.record(System.nanoTime() - startTime);
+            }
+        }
+        throw new CryptoTokenOfflineException("No active worker found");
+    }
+
+    /**
+     * Gives the targets in the order they should be tried for a request.
+     * The target selected by the strategy comes first followed by the other
+     * targets not considered offline and then the ones considered offline.
+     *
+     * @param now current time
+     * @return targets to try in order
+     */
+    List<Target> selectTargets(final long now) {
+        final List<Target> currentTargets = targets;
+        final int size = currentTargets.size();
+        final List<Target> result = new ArrayList<>(size);
+        if (size == 0) {
+            return result;
+        }
+        final long turn = counter.getAndIncrement();
+
+        Target first = null;
+        if (strategy == Strategy.LEAST_OUTSTANDING) {
+            // Rotate the starting point so that ties are spread out
+            final int start = (int) (turn % size);
+            for (int i = 0; i < size; i++) {
+                final Target candidate = currentTargets.get((start + i) % size);
+                if (candidate.isAvailable(now) && (first == null
+                        || candidate.outstanding.get() * first.weight < first.outstanding.get() * candidate.weight)) {
+                    first = candidate;
+                }
+            }
+        } else {
+            final Target[] currentSchedule = schedule;
+            for (int i = 0; i < currentSchedule.length; i++) {
+                final Target candidate = currentSchedule[(int) ((turn + i) % currentSchedule.length)];
+                if (candidate.isAvailable(now)) {
+                    first = candidate;
+                    break;
+                }
+            }
+        }
+
+        final int start = first == null ? 0 : first.index;
+        final List<Target> offline = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            final Target target = currentTargets.get((start + i) % size);
+            if (target.isAvailable(now)) {
+                result.add(target);
+            } else {
+                offline.add(target);
+            }
+        }
+        // The offline ones as a last resort as they could be back by now
+        result.addAll(offline);
+        return result;
+    }
+
+    @Override
+    public WorkerStatusInfo getStatus(final List<String> additionalFatalErrors, final IServices services) {
+        final WorkerStatusInfo status = super.getStatus(additionalFatalErrors, services);
+        final long now = System.currentTimeMillis();
+        final StringBuilder value = new StringBuilder();
+        for (final Target target : targets) {
+            final long requests = target.requests.get();
+            value.append(target.name)
+                    .append(": requests=").append(requests)
+                    .append(", offline responses=").append(target.failures.get())
+                    .append(", in progress=").append(target.outstanding.get())
+                    .append(", average time=").append(requests == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(target.totalTime.get() / requests)).append(" ms")
+                    .append(", max time=").append(TimeUnit.NANOSECONDS.toMillis(target.maxTime.get())).append(" ms");
+            if (!target.isAvailable(now)) {
+                value.append(", considered offline until ").append(new Date(target.offlineUntil));
+            }
+            value.append("\n");
+        }
+        status.getBriefEntries().add(new WorkerStatusInfo.Entry("Dispatch strategy", String.valueOf(strategy)));
+        status.getCompleteEntries().add(new WorkerStatusInfo.Entry("Dispatch targets", value.toString()));
+        return status;
+    }
+
+    @Override
+    protected List<String> getFatalErrors(IServices services) {
+        final LinkedList<String> errors = new LinkedList<>(super.getFatalErrors(services));
+        errors.addAll(configErrors);
+        return errors;
+    }
+
+    /**
+     * Worker to dispatch to and its statistics.
+     */
+    static class Target {
+        private final int index;
+        private final String name;
+        private final int weight;
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong totalTime = new AtomicLong();
+        private final AtomicLong maxTime = new AtomicLong();
+        private volatile long offlineUntil;
+
+        Target(final int index, final String name, final int weight) {
+            this.index = index;
+            this.name = name;
+            this.weight = weight;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getRequests() {
+            return requests.get();
+        }
+
+        boolean isAvailable(final long now) {
+            return offlineUntil <= now;
+        }
+
+        private void record(final long time) {
+            requests.incrementAndGet();
+            totalTime.addAndGet(time);
+            maxTime.accumulateAndGet(time, Math::max);
+        }
+
+        @Override
+        public String toString() {
+            return name + "(" + weight + ")";
+        }
+    }
+}
@@ -12,7 +12,6 @@
  *************************************************************************/
 package org.signserver.server.log;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
 import org.apache.log4j.Level;
@@ -28,12 +27,9 @@ import org.signserver.server.SignServerContext;
  */
 public class PatternWorkerLogger extends BaseWorkerLogger implements IWorkerLogger {
 
-    private Pattern pattern;
-    private String orderString;
+    private PatternLogTemplate template;
     private static final Logger ACCOUNTLOG =
             Logger.getLogger(IWorkerLogger.class);
-    private String logDateFormat;
-    private String timeZone;
     private Level logLevel;
 
     private static final String DEFAULT_LOGPATTERN =
@@ -60,27 +56,20 @@ public class PatternWorkerLogger extends BaseWorkerLogger implements IWorkerLogg
 
     @Override
     public void init(final int workerId, final WorkerConfig config, final SignServerContext context) {
-        this.pattern = Pattern.compile(config.getProperty("LOGPATTERN",
-                DEFAULT_LOGPATTERN));
-        this.orderString = config.getProperty("LOGORDER", DEFAULT_LOGORDER);
-        this.logDateFormat = config.getProperty("LOGDATEFORMAT", DEFAULT_LOGDATEFORMAT);
-        this.timeZone = config.getProperty("LOGTIMEZONE", DEFAULT_LOGTIMEZONE);
+        this.template = new PatternLogTemplate(
+                Pattern.compile(config.getProperty("LOGPATTERN", DEFAULT_LOGPATTERN)),
+                config.getProperty("LOGORDER", DEFAULT_LOGORDER),
+                config.getProperty("LOGDATEFORMAT", DEFAULT_LOGDATEFORMAT),
+                config.getProperty("LOGTIMEZONE", DEFAULT_LOGTIMEZONE));
         this.logLevel = Level.toLevel(config.getProperty("LOGLEVEL_DEFAULT",
         		DEFAULT_LOGLEVEL), Level.INFO);
     }
 
     @Override
     public void log(final AdminInfo adminInfo, final Map<String, Object> fields, final RequestContext context) throws WorkerLoggerException {
-        final EjbcaPatternLogger pl = new EjbcaPatternLogger(this.pattern.matcher(
-                this.orderString), this.orderString, ACCOUNTLOG,
-                this.logDateFormat, this.timeZone, this.logLevel);
-        final Map<String, String> map = new HashMap<String, String>();
-        for (final Map.Entry<String, Object> entrySet : fields.entrySet()) {
-            map.put(entrySet.getKey(), String.valueOf(entrySet.getValue()));
+        if (ACCOUNTLOG.isEnabledFor(logLevel)) {
+            ACCOUNTLOG.log(logLevel, template.render(fields));
         }
-        pl.putAll(map);
-        pl.writeln();
-        pl.flush();
     }
     
 }
@@ -0,0 +1,297 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb.worker.impl;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.signserver.common.RequestContext;
+import org.signserver.server.archive.ArchiveException;
+import org.signserver.test.utils.builders.CertBuilder;
+
+/**
+ * Unit tests for the ArchiveQueue class.
+ *
+ * @version $Id$
+ */
+public class ArchiveQueueUnitTest {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ArchiveQueueUnitTest.class);
+
+    private static final int WORKER_ID = 4711;
+
+    private File spoolDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        spoolDirectory = File.createTempFile("archivespool", null);
+        spoolDirectory.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteQuietly(spoolDirectory);
+    }
+
+    private static QueuedArchivable createItem(final String archiveId, final X509Certificate cert) {
+        return new QueuedArchivable(WORKER_ID, "RESPONSE", "application/octet-stream",
+                ("content of " + archiveId).getBytes(StandardCharsets.UTF_8),
+                archiveId, cert, "10.0.0.1", "192.168.1.1, 10.0.0.2",
+                System.currentTimeMillis());
+    }
+
+    private static List<QueuedArchivable> items(final String... archiveIds) {
+        final QueuedArchivable[] result = new QueuedArchivable[archiveIds.length];
+        for (int i = 0; i < archiveIds.length; i++) {
+            result[i] = createItem(archiveIds[i], null);
+        }
+        return Arrays.asList(result);
+    }
+
+    private File workerDirectory() {
+        return new File(spoolDirectory, String.valueOf(WORKER_ID));
+    }
+
+    private int spooledFiles() {
+        return workerDirectory().list((dir, name) -> name.endsWith(".spool")).length;
+    }
+
+    /**
+     * Tests that queued items are spooled, given in order and removed from
+     * the spool when completed.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testQueueAndComplete() throws Exception {
+        LOG.info("testQueueAndComplete");
+        final ArchiveQueue instance = new ArchiveQueue(WORKER_ID, spoolDirectory);
+        instance.add(items("1", "2", "3"), 10, ArchiveQueue.FullBehaviour.FAIL, 0);
+
+        assertEquals("depth", 3, instance.getDepth());
+        assertEquals("spooled", 3, spooledFiles());
+
+        final List<QueuedArchivable> batch = instance.nextBatch(2);
+        assertEquals("batch size", 2, batch.size());
+        assertEquals("first", "1", batch.get(0).getArchiveId());
+        assertEquals("second", "2", batch.get(1).getArchiveId());
+        assertEquals("not removed before completed", 3, instance.getDepth());
+
+        final long now = System.currentTimeMillis();
+        assertNull("not given up", instance.failed(batch, "Database down", 10, now));
+        assertTrue("waiting for retry", instance.nextBatch(2, now + 500).isEmpty());
+        final List<QueuedArchivable> retry = instance.nextBatch(2, now + 1000);
+        assertEquals("first item alone", batch.subList(0, 1), retry);
+
+        instance.completed(retry);
+        final List<QueuedArchivable> next = instance.nextBatch(2);
+        assertEquals("full batch after success", 2, next.size());
+        assertEquals("second", "2", next.get(0).getArchiveId());
+        instance.completed(next.subList(0, 1));
+        assertEquals("depth after", 1, instance.getDepth());
+        assertEquals("spooled after", 1, spooledFiles());
+        assertEquals("archived", 2, instance.getArchivedCount());
+        assertEquals("failed", 1, instance.getFailedCount());
+        assertEquals("next", "3", instance.nextBatch(2).get(0).getArchiveId());
+        assertTrue("summary: " + instance.getSummary(System.currentTimeMillis()),
+                instance.getSummary(System.currentTimeMillis()).contains("depth=1"));
+    }
+
+    /**
+     * Tests that spooled items are recovered by a new queue with all the
+     * information needed for archiving.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testRecover() throws Exception {
+        LOG.info("testRecover");
+        final X509Certificate cert = new JcaX509CertificateConverter().getCertificate(new CertBuilder()
+                .setSerialNumber(new BigInteger("1234abcd", 16))
+                .setIssuer("CN=Test Issuer")
+                .setSubject("CN=Client 1")
+                .build());
+        final ArchiveQueue instance = new ArchiveQueue(WORKER_ID, spoolDirectory);
+        final QueuedArchivable item = createItem("first", cert);
+        instance.add(Collections.singletonList(item), 10, ArchiveQueue.FullBehaviour.FAIL, 0);
+        instance.add(items("second"), 10, ArchiveQueue.FullBehaviour.FAIL, 0);
+
+        // Simulate crash while writing
+        FileUtils.writeStringToFile(new File(workerDirectory(), "99999999999999999999-0000000001.tmp"), "partial", StandardCharsets.UTF_8);
+
+        final ArchiveQueue recovered = new ArchiveQueue(WORKER_ID, spoolDirectory);
+        assertEquals("recovered", 2, recovered.recover());
+
+        final List<QueuedArchivable> batch = recovered.nextBatch(10);
+        final QueuedArchivable first = batch.get(0);
+        assertEquals("archive id", "first", first.getArchiveId());
+        assertEquals("second archive id", "second", batch.get(1).getArchiveId());
+        assertEquals("type", item.getType(), first.getType());
+        assertEquals("content type", item.getContentType(), first.getContentType());
+        assertArrayEquals("content", item.getContentEncoded(), first.getContentEncoded());
+        assertEquals("queued time", item.getQueuedTime(), first.getQueuedTime());
+
+        final RequestContext context = first.createRequestContext();
+        assertEquals("cert", cert, context.get(RequestContext.CLIENT_CERTIFICATE));
+        assertEquals("remote ip", "10.0.0.1", context.get(RequestContext.REMOTE_IP));
+        assertEquals("forwarded", "192.168.1.1, 10.0.0.2", context.get(RequestContext.X_FORWARDED_FOR));
+        assertEquals("worker id", WORKER_ID, context.get(RequestContext.WORKER_ID));
+        assertNull("no cert", batch.get(1).createRequestContext().get(RequestContext.CLIENT_CERTIFICATE));
+
+        // Completing removes the recovered spool files
+        recovered.completed(batch);
+        assertEquals("spooled", 0, spooledFiles());
+        assertFalse("temporary file removed", new File(workerDirectory(), "99999999999999999999-0000000001.tmp").exists());
+    }
+
+    /**
+     * Tests that workers sharing the spool directory only recover their own
+     * items.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testRecoverSharedSpoolDirectory() throws Exception {
+        LOG.info("testRecoverSharedSpoolDirectory");
+        new ArchiveQueue(WORKER_ID, spoolDirectory).add(items("mine"), 10, ArchiveQueue.FullBehaviour.FAIL, 0);
+        final ArchiveQueue other = new ArchiveQueue(WORKER_ID + 1, spoolDirectory);
+        other.add(Collections.singletonList(new QueuedArchivable(WORKER_ID + 1, "RESPONSE", "application/octet-stream",
+                "other".getBytes(StandardCharsets.UTF_8), "other", null, null, null, System.currentTimeMillis())),
+                10, ArchiveQueue.FullBehaviour.FAIL, 0);
+
+        // An item of the other worker in the directory of this worker
+        final File misplaced = new File(workerDirectory(), "00000000000000000000-0000000000.spool");
+        FileUtils.copyFile(other.getWorkerDirectory().listFiles()[0], misplaced);
+
+        final ArchiveQueue recovered = new ArchiveQueue(WORKER_ID, spoolDirectory);
+        assertEquals("recovered", 1, recovered.recover());
+        assertEquals("own item", "mine", recovered.nextBatch(10).get(0).getArchiveId());
+        assertTrue("item of other worker left", misplaced.exists());
+
+        final ArchiveQueue otherRecovered = new ArchiveQueue(WORKER_ID + 1, spoolDirectory);
+        assertEquals("other recovered", 1, otherRecovered.recover());
+        assertEquals("other item", "other", otherRecovered.nextBatch(10).get(0).getArchiveId());
+    }
+
+    /**
+     * Tests that items are rejected directly when the queue is full and
+     * configured to fail.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testFullFail() throws Exception {
+        LOG.info("testFullFail");
+        final ArchiveQueue instance = new ArchiveQueue(WORKER_ID, spoolDirectory);
+        instance.add(items("1", "2"), 3, ArchiveQueue.FullBehaviour.FAIL, 1000);
+        try {
+            instance.add(items("3", "4"), 3, ArchiveQueue.FullBehaviour.FAIL, 1000);
+            fail("Should have failed");
+        } catch (ArchiveException expected) { // NOPMD
+            // OK
+        }
+        assertEquals("depth", 2, instance.getDepth());
+        assertEquals("spooled", 2, spooledFiles());
+        assertEquals("rejected", 1, instance.getRejectedCount());
+
+        // Room for one more
+        instance.add(items("3"), 3, ArchiveQueue.FullBehaviour.FAIL, 1000);
+        assertEquals("depth after", 3, instance.getDepth());
+    }
+
+    /**
+     * Tests that adding blocks until there is room in the queue and fails
+     * after the timeout.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testFullBlock() throws Exception {
+        LOG.info("testFullBlock");
+        final ArchiveQueue instance = new ArchiveQueue(WORKER_ID, spoolDirectory);
+        instance.add(items("1"), 1, ArchiveQueue.FullBehaviour.BLOCK, 0);
+
+        // Times out
+        final long start = System.currentTimeMillis();
+        try {
+            instance.add(items("2"), 1, ArchiveQueue.FullBehaviour.BLOCK, 200);
+            fail("Should have timed out");
+        } catch (ArchiveException expected) { // NOPMD
+            // OK
+        }
+        assertTrue("waited", System.currentTimeMillis() - start >= 150);
+
+        // Room is made while waiting
+        final Thread drainer = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            instance.completed(instance.nextBatch(1));
+        });
+        drainer.start();
+        instance.add(items("3"), 1, ArchiveQueue.FullBehaviour.BLOCK, 10000);
+        drainer.join();
+        assertEquals("next", "3", instance.nextBatch(1).get(0).getArchiveId());
+    }
+
+    /**
+     * Tests that an item failing the maximum number of attempts is removed
+     * from the queue and kept as a failed file, so that the items after it
+     * are archived.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testGiveUpAfterMaxAttempts() throws Exception {
+        LOG.info("testGiveUpAfterMaxAttempts");
+        final ArchiveQueue instance = new ArchiveQueue(WORKER_ID, spoolDirectory);
+        instance.add(items("bad", "good1", "good2"), 10, ArchiveQueue.FullBehaviour.FAIL, 0);
+
+        long now = System.currentTimeMillis();
+        assertNull("batch failure", instance.failed(instance.nextBatch(10, now), "Bad item", 3, now));
+        QueuedArchivable givenUp = null;
+        for (int attempt = 1; attempt <= 3; attempt++) {
+            now += 60000;
+            final List<QueuedArchivable> batch = instance.nextBatch(10, now);
+            assertEquals("retried alone", 1, batch.size());
+            assertEquals("bad item", "bad", batch.get(0).getArchiveId());
+            givenUp = instance.failed(batch, "Bad item", 3, now);
+            assertEquals("given up at last attempt", attempt == 3, givenUp != null);
+        }
+        assertEquals("given up", "bad", givenUp.getArchiveId());
+        assertEquals("dead-lettered", 1, instance.getDeadLetteredCount());
+        assertEquals("depth", 2, instance.getDepth());
+        assertEquals("spooled", 2, spooledFiles());
+        assertEquals("failed file", 1, workerDirectory().list((dir, name) -> name.endsWith(".spool.failed")).length);
+
+        // The next items are archived directly, in one batch
+        final List<QueuedArchivable> batch = instance.nextBatch(10, now);
+        assertEquals("next items", 2, batch.size());
+        assertEquals("next", "good1", batch.get(0).getArchiveId());
+        instance.completed(batch);
+
+        // The failed file is not recovered
+        assertEquals("recovered", 0, new ArchiveQueue(WORKER_ID, spoolDirectory).recover());
+    }
+}
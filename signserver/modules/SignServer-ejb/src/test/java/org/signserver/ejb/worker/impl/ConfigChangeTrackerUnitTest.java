@@ -0,0 +1,105 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb.worker.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ConfigChangeTracker class.
+ *
+ * @version $Id$
+ */
+public class ConfigChangeTrackerUnitTest {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ConfigChangeTrackerUnitTest.class);
+
+    private static Map<Integer, Long> changes(final long... workerAndVersion) {
+        final Map<Integer, Long> result = new HashMap<>();
+        for (int i = 0; i < workerAndVersion.length; i += 2) {
+            result.put((int) workerAndVersion[i], workerAndVersion[i + 1]);
+        }
+        return result;
+    }
+
+    /**
+     * Tests that only workers changed after the last seen version are
+     * reloaded.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testUpdate() throws Exception {
+        LOG.info("testUpdate");
+        final ConfigChangeTracker instance = new ConfigChangeTracker();
+        instance.start(10);
+
+        assertEquals("changed workers", new HashSet<>(Arrays.asList(1, 3)),
+                instance.update(changes(1, 11, 2, 10, 3, 12), 12));
+        assertEquals("seen", 12, instance.getSeenVersion());
+
+        assertEquals("nothing new", Collections.emptySet(), instance.update(changes(1, 11, 3, 12), 12));
+
+        // Changes committed after the latest version was read
+        assertEquals("changed after", Collections.singleton(2), instance.update(changes(2, 14), 13));
+        assertEquals("seen after", 14, instance.getSeenVersion());
+    }
+
+    /**
+     * Tests that changes made by this node are not applied again.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testOwnChangesSkipped() throws Exception {
+        LOG.info("testOwnChangesSkipped");
+        final ConfigChangeTracker instance = new ConfigChangeTracker();
+        instance.start(0);
+        instance.recorded(1);
+        instance.recorded(3);
+
+        assertEquals("only other nodes' change", Collections.singleton(2),
+                instance.update(changes(1, 1, 2, 2, 0, 3), 3));
+
+        // Same worker changed again by another node
+        assertEquals("changed again", Collections.singleton(1), instance.update(changes(1, 4), 4));
+    }
+
+    /**
+     * Tests the reload metrics.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testApplied() throws Exception {
+        LOG.info("testApplied");
+        final ConfigChangeTracker instance = new ConfigChangeTracker();
+        assertFalse("no reloads", instance.getSummary(0).contains("last reload"));
+
+        instance.applied(2, TimeUnit.MILLISECONDS.toNanos(30), 1000);
+        instance.applied(1, TimeUnit.MILLISECONDS.toNanos(10), 2000);
+
+        assertEquals("applied", 2, instance.getAppliedCount());
+        assertEquals("reloaded", 3, instance.getReloadedCount());
+        assertEquals("last", 10, instance.getLastDuration());
+        assertEquals("max", 30, instance.getMaxDuration());
+        final String summary = instance.getSummary(5000);
+        assertTrue("summary: " + summary, summary.contains("average reload=20 ms"));
+        assertTrue("summary: " + summary, summary.contains("(3 s ago)"));
+    }
+}
@@ -0,0 +1,174 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb.worker.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.signserver.common.CertificateMatchingRule;
+import org.signserver.common.MatchIssuerWithType;
+import org.signserver.common.MatchSubjectWithType;
+import org.signserver.common.WorkerConfig;
+import org.signserver.server.ClientCertAuthorizer;
+import org.signserver.server.IProcessable;
+import org.signserver.server.NoAccounter;
+import org.signserver.server.archive.Archiver;
+import org.signserver.server.archive.olddbarchiver.OldDatabaseArchiver;
+import org.signserver.server.log.AllFieldsWorkerLogger;
+
+/**
+ * Unit tests for the WorkerConfigChanges class.
+ *
+ * @version $Id$
+ */
+public class WorkerConfigChangesUnitTest {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(WorkerConfigChangesUnitTest.class);
+
+    private static WorkerConfig createConfig() {
+        final WorkerConfig result = new WorkerConfig();
+        result.setProperty("NAME", "Signer1");
+        result.setProperty("TYPE", "PROCESSABLE");
+        result.setProperty("IMPLEMENTATION_CLASS", "org.signserver.module.xmlsigner.XMLSigner");
+        result.setProperty("CRYPTOTOKEN_IMPLEMENTATION_CLASS", "org.signserver.server.cryptotokens.PKCS11CryptoToken");
+        result.setProperty("SHAREDLIBRARYNAME", "SoftHSM");
+        result.setProperty("SLOTLABELTYPE", "SLOT_NUMBER");
+        result.setProperty("SLOTLABELVALUE", "1");
+        result.setProperty("PIN", "foo123");
+        result.setProperty("DEFAULTKEY", "signer00001");
+        result.setProperty("ARCHIVERS", "org.signserver.server.archive.olddbarchiver.OldDatabaseArchiver");
+        return result;
+    }
+
+    /**
+     * Tests that a reload without changes or with a new implementation is a
+     * full reload.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testFullReload() throws Exception {
+        LOG.info("testFullReload");
+        WorkerConfigChanges instance = WorkerConfigChanges.compute(createConfig(), createConfig());
+        assertTrue("no changes", instance.getChanged().isEmpty());
+        assertTrue("full reload", instance.isFullReload());
+        assertFalse("token", instance.isCryptoTokenKept(createConfig()));
+        assertFalse("logger", instance.isWorkerLoggerKept(new AllFieldsWorkerLogger()));
+
+        final WorkerConfig newConfig = createConfig();
+        newConfig.setProperty("IMPLEMENTATION_CLASS", "org.signserver.module.pdfsigner.PDFSigner");
+        instance = WorkerConfigChanges.compute(createConfig(), newConfig);
+        assertEquals("changes", new HashSet<>(Arrays.asList("IMPLEMENTATION_CLASS")), instance.getChanged());
+        assertTrue("full reload", instance.isFullReload());
+        assertFalse("archivers", instance.isArchiversKept(archivers()));
+    }
+
+    /**
+     * Tests that everything is kept when only a property known to not be
+     * read by any of the components changed.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testOtherPropertyChanged() throws Exception {
+        LOG.info("testOtherPropertyChanged");
+        final WorkerConfig newConfig = createConfig();
+        newConfig.setProperty("INCLUDE_CERTIFICATE_LEVELS", "2");
+        final WorkerConfigChanges instance = WorkerConfigChanges.compute(createConfig(), newConfig);
+
+        assertFalse("full reload", instance.isFullReload());
+        assertTrue("token", instance.isCryptoTokenKept(createConfig()));
+        assertTrue("logger", instance.isWorkerLoggerKept(new AllFieldsWorkerLogger()));
+        assertTrue("authorizer", instance.isAuthorizerKept(new ClientCertAuthorizer(), IProcessable.AUTHTYPE_CLIENTCERT, IProcessable.AUTHTYPE_CLIENTCERT));
+        assertTrue("accounter", instance.isAccounterKept(new NoAccounter()));
+        assertTrue("archivers", instance.isArchiversKept(archivers()));
+        assertFalse("custom logger", instance.isWorkerLoggerKept(new CustomWorkerLogger()));
+        assertFalse("other crypto worker", instance.isCryptoTokenKept(configWith("CRYPTOTOKEN", "CryptoWorker1")));
+    }
+
+    /**
+     * Tests that only the components reading the changed properties are
+     * created again.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testComponentPropertiesChanged() throws Exception {
+        LOG.info("testComponentPropertiesChanged");
+        WorkerConfigChanges instance = WorkerConfigChanges.compute(createConfig(), configWith("PIN", "bar123"));
+        assertFalse("token", instance.isCryptoTokenKept(createConfig()));
+        assertTrue("logger", instance.isWorkerLoggerKept(new AllFieldsWorkerLogger()));
+
+        instance = WorkerConfigChanges.compute(createConfig(), configWith("SLOTLABELVALUE", "2"));
+        assertFalse("token slot", instance.isCryptoTokenKept(createConfig()));
+
+        instance = WorkerConfigChanges.compute(createConfig(), configWith("LOGLEVEL_DEFAULT", "DEBUG"));
+        assertTrue("token", instance.isCryptoTokenKept(createConfig()));
+        assertFalse("logger", instance.isWorkerLoggerKept(new AllFieldsWorkerLogger()));
+        assertTrue("archivers", instance.isArchiversKept(archivers()));
+
+        instance = WorkerConfigChanges.compute(createConfig(), configWith("ARCHIVER0.ARCHIVE_OF_TYPE", "REQUEST"));
+        assertFalse("archivers", instance.isArchiversKept(archivers()));
+        assertTrue("accounter", instance.isAccounterKept(new NoAccounter()));
+
+        instance = WorkerConfigChanges.compute(createConfig(), configWith("AUTHTYPE", "NOAUTH"));
+        assertFalse("authorizer", instance.isAuthorizerKept(new ClientCertAuthorizer(), IProcessable.AUTHTYPE_CLIENTCERT, IProcessable.AUTHTYPE_NOAUTH));
+
+        final WorkerConfig newConfig = createConfig();
+        newConfig.addAuthorizedClientGen2(new CertificateMatchingRule(MatchSubjectWithType.CERTIFICATE_SERIALNO, MatchIssuerWithType.ISSUER_DN_BCSTYLE, "1234", "CN=Issuer", "Client"));
+        instance = WorkerConfigChanges.compute(createConfig(), newConfig);
+        assertEquals("changes", new HashSet<>(Arrays.asList(WorkerConfigChanges.AUTHORIZED_CLIENTS)), instance.getChanged());
+        assertFalse("authorizer", instance.isAuthorizerKept(new ClientCertAuthorizer(), IProcessable.AUTHTYPE_CLIENTCERT, IProcessable.AUTHTYPE_CLIENTCERT));
+        assertTrue("token", instance.isCryptoTokenKept(createConfig()));
+    }
+
+    /**
+     * Tests that the crypto token is created again when a property it reads
+     * outside of its own properties, or a property not known to not be read
+     * by it, changed.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testTokenPropertiesChanged() throws Exception {
+        LOG.info("testTokenPropertiesChanged");
+        WorkerConfigChanges instance = WorkerConfigChanges.compute(createConfig(), configWith("SIGNATUREALGORITHM", "SHA512withRSA"));
+        assertFalse("token", instance.isCryptoTokenKept(createConfig()));
+        assertTrue("logger", instance.isWorkerLoggerKept(new AllFieldsWorkerLogger()));
+        assertTrue("archivers", instance.isArchiversKept(archivers()));
+
+        instance = WorkerConfigChanges.compute(createConfig(), configWith("DISABLED", "TRUE"));
+        assertFalse("token disabled", instance.isCryptoTokenKept(createConfig()));
+
+        instance = WorkerConfigChanges.compute(createConfig(), configWith("DIGESTALGORITHM", "SHA-512"));
+        assertFalse("token unknown property", instance.isCryptoTokenKept(createConfig()));
+        assertTrue("logger", instance.isWorkerLoggerKept(new AllFieldsWorkerLogger()));
+        assertTrue("accounter", instance.isAccounterKept(new NoAccounter()));
+        assertTrue("archivers", instance.isArchiversKept(archivers()));
+    }
+
+    private static List<Archiver> archivers() {
+        return Collections.singletonList(new OldDatabaseArchiver());
+    }
+
+    private static WorkerConfig configWith(final String property, final String value) {
+        final WorkerConfig result = createConfig();
+        result.setProperty(property, value);
+        return result;
+    }
+
+    /** Worker logger not implemented by SignServer. */
+    private static class CustomWorkerLogger extends AllFieldsWorkerLogger {
+    }
+}
@@ -0,0 +1,140 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.ejb.worker.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the WorkerWarmup class.
+ *
+ * @version $Id$
+ */
+public class WorkerWarmupUnitTest {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(WorkerWarmupUnitTest.class);
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(16);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Tests that the workers are initialized in parallel and that failures
+     * are reported for the worker.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testParallel() throws Exception {
+        LOG.info("testParallel");
+        // All three must be running at the same time for any to complete
+        final CountDownLatch latch = new CountDownLatch(3);
+        final WorkerWarmup instance = new WorkerWarmup(executor, 3);
+        final WorkerWarmup.Result result = instance.run(Collections.singletonList(Arrays.asList(1, 2, 3)), (int workerId) -> {
+            latch.countDown();
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Not in parallel");
+            }
+            if (workerId == 2) {
+                throw new IllegalStateException("Token offline");
+            }
+            return workerId == 1;
+        });
+
+        assertEquals("workers", 3, result.getWorkers().size());
+        assertEquals("ready", 1, result.getReadyCount());
+        for (final WorkerWarmup.WorkerResult worker : result.getWorkers()) {
+            switch (worker.getWorkerId()) {
+                case 1:
+                    assertTrue("ready", worker.isReady());
+                    assertNull("error", worker.getError());
+                    break;
+                case 2:
+                    assertFalse("ready", worker.isReady());
+                    assertEquals("error", "Token offline", worker.getError());
+                    break;
+                default:
+                    assertFalse("ready", worker.isReady());
+                    assertNull("error", worker.getError());
+            }
+        }
+        assertTrue("summary: " + result.getSummary(), result.getSummary().startsWith("Initialized 3 workers"));
+    }
+
+    /**
+     * Tests that the number of threads is bounded and that a phase is
+     * completed before the next one is started.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testBoundedAndPhases() throws Exception {
+        LOG.info("testBoundedAndPhases");
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final Set<Integer> done = ConcurrentHashMap.newKeySet();
+        final Set<Integer> firstPhase = new HashSet<>(Arrays.asList(1, 2, 3, 4));
+        final WorkerWarmup instance = new WorkerWarmup(executor, 2);
+
+        final WorkerWarmup.Result result = instance.run(Arrays.asList(Arrays.asList(1, 2, 3, 4), Arrays.asList(5, 6, 7)), (int workerId) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                if (!firstPhase.contains(workerId) && !done.containsAll(firstPhase)) {
+                    throw new IllegalStateException("Started before the first phase completed");
+                }
+                Thread.sleep(20);
+                done.add(workerId);
+                return true;
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+
+        assertEquals("ready", 7, result.getReadyCount());
+        assertTrue("max running: " + maxRunning.get(), maxRunning.get() <= 2);
+    }
+
+    /**
+     * Tests that all workers are initialized by the calling thread without
+     * an executor.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testWithoutExecutor() throws Exception {
+        LOG.info("testWithoutExecutor");
+        final Thread caller = Thread.currentThread();
+        final WorkerWarmup.Result result = new WorkerWarmup(null, 4).run(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3)),
+                (int workerId) -> Thread.currentThread() == caller);
+        assertEquals("calling thread", 3, result.getReadyCount());
+    }
+}
@@ -12,22 +12,29 @@
  *************************************************************************/
 package org.signserver.server;
 
+import java.math.BigInteger;
 import java.security.Security;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.List;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.cesecore.util.CertTools;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import org.junit.Before;
 import org.junit.Test;
 import org.signserver.common.AuthorizedClient;
+import org.signserver.common.CertificateMatchingRule;
 import org.signserver.common.IllegalRequestException;
+import org.signserver.common.MatchIssuerWithType;
+import org.signserver.common.MatchSubjectWithType;
 import org.signserver.common.RequestContext;
 import org.signserver.common.WorkerConfig;
 import org.signserver.common.data.Request;
+import org.signserver.test.utils.builders.CertBuilder;
 
 
 /**
@@ -308,4 +315,70 @@ public class ClientCertAuthorizerUnitTest {
         // Check that the DN in the error message is represented as expected.
         assertTrue("message: " + message, message.contains(TEST_ISSUER2));
     }
+
+    /**
+     * Tests that with many rules for different issuers, the rule for the
+     * issuer of the client certificate matching on a subject RDN is found.
+     * @throws Exception
+     */
+    @Test
+    public void testAcceptedWithManyRules() throws Exception {
+        final WorkerConfig config = new WorkerConfig();
+        for (int i = 0; i < 1000; i++) {
+            config.addAuthorizedClientGen2(new CertificateMatchingRule(MatchSubjectWithType.SUBJECT_RDN_CN, MatchIssuerWithType.ISSUER_DN_BCSTYLE, "Client " + i, "CN=Issuer " + i + ",C=SE", null));
+        }
+        config.addAuthorizedClientGen2(new CertificateMatchingRule(MatchSubjectWithType.CERTIFICATE_SERIALNO, MatchIssuerWithType.ISSUER_DN_BCSTYLE, OTHER_SERIALNUMBER, TEST_ISSUER, null));
+        config.addAuthorizedClientGen2(new CertificateMatchingRule(MatchSubjectWithType.SUBJECT_RDN_O, MatchIssuerWithType.ISSUER_DN_BCSTYLE, "TestOrganization", TEST_ISSUER, null));
+        final ClientCertAuthorizer instance = new ClientCertAuthorizer();
+        instance.init(DUMMY_WORKER_ID, config, null);
+
+        assertAuthorized(instance, createCert(TEST_SERIALNUMBER, TEST_ISSUER, "CN=Client 1,O=TestOrganization,C=SE"), true);
+        assertAuthorized(instance, createCert(TEST_SERIALNUMBER, "CN=Issuer 1,C=SE", "CN=Client 1,O=Other,C=SE"), true);
+        assertAuthorized(instance, createCert(TEST_SERIALNUMBER, "CN=Issuer 2,C=SE", "CN=Client 1,O=TestOrganization,C=SE"), false);
+        assertAuthorized(instance, createCert(TEST_SERIALNUMBER2, TEST_ISSUER, "CN=Client 1,O=Other,C=SE"), false);
+    }
+
+    /**
+     * Tests that remembered authorization decisions are not used after the
+     * authorizer has been initialized with a new configuration.
+     * @throws Exception
+     */
+    @Test
+    public void testDecisionNotRememberedAfterReload() throws Exception {
+        final X509Certificate cert = ClientCertAuthorizerTestHelper.createCert(TEST_SERIALNUMBER, TEST_ISSUER);
+        final ClientCertAuthorizer instance = new ClientCertAuthorizer();
+        final WorkerConfig config = new WorkerConfig();
+        config.addAuthorizedClient(new AuthorizedClient(OTHER_SERIALNUMBER, OTHER_ISSUER));
+        instance.init(DUMMY_WORKER_ID, config, null);
+        assertAuthorized(instance, cert, false);
+        assertAuthorized(instance, cert, false);
+
+        config.addAuthorizedClient(new AuthorizedClient(TEST_SERIALNUMBER, TEST_ISSUER));
+        instance.init(DUMMY_WORKER_ID, config, null);
+        assertAuthorized(instance, cert, true);
+        assertAuthorized(instance, cert, true);
+
+        config.removeAuthorizedClient(new AuthorizedClient(TEST_SERIALNUMBER, TEST_ISSUER));
+        instance.init(DUMMY_WORKER_ID, config, null);
+        assertAuthorized(instance, cert, false);
+    }
+
+    private static X509Certificate createCert(final String serialNo, final String issuerDN, final String subjectDN) throws Exception {
+        return new JcaX509CertificateConverter().getCertificate(new CertBuilder()
+                .setSerialNumber(new BigInteger(serialNo, 16))
+                .setIssuer(issuerDN)
+                .setSubject(subjectDN)
+                .build());
+    }
+
+    private static void assertAuthorized(final ClientCertAuthorizer instance, final X509Certificate cert, final boolean expected) throws Exception {
+        final RequestContext context = new RequestContext();
+        context.put(RequestContext.CLIENT_CERTIFICATE, cert);
+        try {
+            instance.isAuthorized(null, context);
+            assertTrue("Should not be authorized: " + cert.getSubjectX500Principal(), expected);
+        } catch (IllegalRequestException e) {
+            assertFalse("Should be authorized: " + e.getMessage(), expected);
+        }
+    }
 }
@@ -0,0 +1,204 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.archive.filearchiver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.signserver.common.ArchiveDataVO;
+import org.signserver.server.archive.olddbarchiver.entities.ArchiveDataBean;
+
+/**
+ * Unit tests for the ArchiveFileStore class.
+ *
+ * @version $Id$
+ */
+public class ArchiveFileStoreUnitTest {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ArchiveFileStoreUnitTest.class);
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("archivestore", null);
+        directory.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    private static byte[] createData(final int length) {
+        final StringBuilder sb = new StringBuilder();
+        while (sb.length() < length) {
+            sb.append("Archived response ").append(sb.length()).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Tests that the content is stored compressed under a path given by its
+     * hash and that it can be read back.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testStoreAndRead() throws Exception {
+        LOG.info("testStoreAndRead");
+        final ArchiveFileStore instance = new ArchiveFileStore(directory);
+        final byte[] content = createData(100000);
+
+        final String location = instance.store(content);
+        assertFalse("relative location: " + location, new File(location).isAbsolute());
+        final File file = new File(directory, location);
+        assertTrue("file exists", file.isFile());
+        assertTrue("compressed: " + file.length(), file.length() < content.length / 2);
+        assertEquals("sub directories", directory.getAbsoluteFile(), file.getParentFile().getParentFile().getParentFile().getAbsoluteFile());
+        assertTrue("named by hash: " + file.getName(), file.getName().matches("[0-9a-f]{64}\\.gz"));
+        assertTrue("prefix of hash", file.getName().startsWith(file.getParentFile().getParentFile().getName() + file.getParentFile().getName()));
+
+        assertArrayEquals("read", content, ArchiveFileStore.read(location, Collections.singletonList(directory)));
+        try (InputStream in = ArchiveFileStore.open(location, Collections.singletonList(directory))) {
+            assertArrayEquals("stream", content, IOUtils.toByteArray(in));
+        }
+    }
+
+    /**
+     * Tests that the same content is only stored once and that different
+     * content gives different files.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testSameContentStoredOnce() throws Exception {
+        LOG.info("testSameContentStoredOnce");
+        final ArchiveFileStore instance = new ArchiveFileStore(directory);
+        final byte[] content1 = createData(1000);
+        final byte[] content2 = createData(2000);
+
+        final String location1 = instance.store(content1);
+        final String location2 = instance.store(content1.clone());
+        final String location3 = instance.store(content2);
+
+        assertEquals("same location", location1, location2);
+        assertNotEquals("other location", location1, location3);
+
+        final Collection<File> files = FileUtils.listFiles(directory, null, true);
+        assertEquals("files, no temporary files left: " + files, 2, files.size());
+    }
+
+    private static ArchiveDataBean createBean(final File directory, final String location) {
+        final ArchiveDataBean bean = new ArchiveDataBean();
+        bean.setType(ArchiveDataVO.TYPE_RESPONSE);
+        bean.setArchiveid("00112233");
+        bean.setArchiveData(location);
+        bean.setArchiveDirectory(directory.getAbsolutePath());
+        bean.setDataEncoding(ArchiveDataBean.DATA_ENCODING_FILE);
+        return bean;
+    }
+
+    /**
+     * Tests that an ArchiveData row referring to a file gives the content
+     * of the file from the directory stored in the row, without any
+     * configured directories.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testArchiveDataBeanWithFile() throws Exception {
+        LOG.info("testArchiveDataBeanWithFile");
+        final ArchiveFileStore instance = new ArchiveFileStore(directory);
+        final byte[] content = createData(5000);
+
+        final ArchiveDataBean bean = createBean(directory, instance.store(content));
+
+        final List<File> directories = Collections.emptyList();
+        assertArrayEquals("archived bytes", content, bean.getArchiveDataVO(directories).getArchivedBytes());
+        assertArrayEquals("archived bytes without directories", content, bean.getArchiveDataVO().getArchivedBytes());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = bean.getArchivedBytesAsStream(directories)) {
+            IOUtils.copy(in, out);
+        }
+        assertArrayEquals("streamed bytes", content, out.toByteArray());
+    }
+
+    /**
+     * Tests that an ArchiveData row referring to a file in a directory that
+     * has been moved gives the content from the configured directories.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testArchiveDataBeanWithMovedDirectory() throws Exception {
+        LOG.info("testArchiveDataBeanWithMovedDirectory");
+        final byte[] content = createData(4000);
+        final ArchiveDataBean bean = createBean(directory, new ArchiveFileStore(directory).store(content));
+
+        final File moved = new File(directory.getPath() + "-moved");
+        try {
+            FileUtils.moveDirectory(directory, moved);
+            assertArrayEquals("archived bytes", content,
+                    bean.getArchiveDataVO(Collections.singletonList(moved)).getArchivedBytes());
+        } finally {
+            FileUtils.deleteQuietly(moved);
+        }
+    }
+
+    /**
+     * Tests that the content is found after the directory was moved, by
+     * trying the directories in turn, and that absolute locations are not
+     * accepted.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testMovedDirectory() throws Exception {
+        LOG.info("testMovedDirectory");
+        final byte[] content = createData(3000);
+        final String location = new ArchiveFileStore(directory).store(content);
+
+        final File moved = new File(directory.getPath() + "-moved");
+        try {
+            FileUtils.moveDirectory(directory, moved);
+            final File other = new File(directory.getPath() + "-other");
+            assertArrayEquals("read from moved directory", content,
+                    ArchiveFileStore.read(location, Arrays.asList(other, moved)));
+            try {
+                ArchiveFileStore.read(location, Collections.singletonList(other));
+                fail("Should not be found");
+            } catch (NoSuchFileException expected) { // NOPMD
+                // OK
+            }
+            try {
+                ArchiveFileStore.read(new File(moved, location).getAbsolutePath(), Collections.singletonList(moved));
+                fail("Absolute location should not be accepted");
+            } catch (NoSuchFileException expected) { // NOPMD
+                // OK
+            }
+        } finally {
+            FileUtils.deleteQuietly(moved);
+        }
+    }
+}
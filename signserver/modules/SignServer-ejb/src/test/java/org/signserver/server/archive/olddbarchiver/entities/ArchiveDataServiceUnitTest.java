@@ -0,0 +1,225 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.archive.olddbarchiver.entities;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import org.apache.log4j.Logger;
+import org.bouncycastle.util.encoders.Base64;
+import org.cesecore.util.query.QueryCriteria;
+import org.cesecore.util.query.clauses.Order;
+import org.cesecore.util.query.elems.RelationalOperator;
+import org.cesecore.util.query.elems.Term;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.signserver.common.ArchiveDataVO;
+import org.signserver.common.ArchiveMetadata;
+
+/**
+ * Unit tests for the keyset paging and the export in ArchiveDataService,
+ * using an entity manager evaluating the seek conditions and the ordering
+ * on entries in memory.
+ *
+ * @version $Id$
+ */
+public class ArchiveDataServiceUnitTest {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ArchiveDataServiceUnitTest.class);
+
+    /** Entries where several have the same time, also at page boundaries. */
+    private static final List<ArchiveDataBean> ENTRIES = Arrays.asList(
+            createEntry(1000, "a"),
+            createEntry(2000, "b"),
+            createEntry(2000, "c"),
+            createEntry(2000, "d"),
+            createEntry(3000, "e"),
+            createEntry(4000, "f"),
+            createEntry(4000, "g"));
+
+    private final List<String> queries = new ArrayList<>();
+    private final List<Map<String, Object>> parameterValues = new ArrayList<>();
+    private int clears;
+
+    private static ArchiveDataBean createEntry(final long time, final String uniqueId) {
+        final ArchiveDataBean bean = new ArchiveDataBean();
+        bean.setUniqueId(uniqueId);
+        bean.setType(ArchiveDataVO.TYPE_RESPONSE);
+        bean.setSignerid(4711);
+        bean.setArchiveid("archive-" + uniqueId);
+        bean.setTime(time);
+        bean.setArchiveData(new String(Base64.encode(("data of " + uniqueId).getBytes(StandardCharsets.UTF_8)), StandardCharsets.US_ASCII));
+        bean.setDataEncoding(ArchiveDataBean.DATA_ENCODING_BASE64);
+        return bean;
+    }
+
+    private static int compare(final ArchiveDataBean entry, final long time, final String uniqueId) {
+        final int result = Long.compare(entry.getTime(), time);
+        return result != 0 || uniqueId == null ? result : entry.getUniqueId().compareTo(uniqueId);
+    }
+
+    /**
+     * @return entity manager answering the queries of findMatchingCriteriaAfter
+     */
+    private EntityManager createEntityManager() {
+        return (EntityManager) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {EntityManager.class}, (emProxy, emMethod, emArgs) -> {
+            switch (emMethod.getName()) {
+                case "createQuery":
+                    return createQuery((String) emArgs[0]);
+                case "clear":
+                    clears++;
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(emMethod.getName());
+            }
+        });
+    }
+
+    private Query createQuery(final String jpql) {
+        queries.add(jpql);
+        final Map<String, Object> parameters = new HashMap<>();
+        parameterValues.add(parameters);
+        final int[] maxResults = {Integer.MAX_VALUE};
+        return (Query) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Query.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "setParameter":
+                    parameters.put((String) args[0], args[1]);
+                    return proxy;
+                case "setMaxResults":
+                    maxResults[0] = (Integer) args[0];
+                    return proxy;
+                case "getResultList":
+                    final boolean descending = jpql.matches(".*ORDER BY a\\.time DESC, *a\\.uniqueId DESC");
+                    assertTrue("ordered by time and unique ID: " + jpql, descending || jpql.matches(".*ORDER BY a\\.time ASC, *a\\.uniqueId ASC"));
+                    // The seek position is the only time and unique ID given
+                    final Long seekTime = (Long) parameters.values().stream().filter(Long.class::isInstance).findFirst().orElse(null);
+                    final String seekUniqueId = (String) parameters.values().stream().filter(String.class::isInstance).findFirst().orElse(null);
+                    Comparator<ArchiveDataBean> order = Comparator.comparing(ArchiveDataBean::getTime).thenComparing(ArchiveDataBean::getUniqueId);
+                    if (descending) {
+                        order = order.reversed();
+                    }
+                    return ENTRIES.stream()
+                            .filter(e -> seekTime == null || (descending ? compare(e, seekTime, seekUniqueId) < 0 : compare(e, seekTime, seekUniqueId) > 0))
+                            .sorted(order)
+                            .limit(maxResults[0])
+                            .map(e -> jpql.startsWith("SELECT a FROM") ? e : new Object[] {e.getType(), e.getSignerid(), e.getUniqueId(), e.getArchiveid(), e.getTime(), e.getRequestIssuerDN(), e.getRequestCertSerialnumber(), e.getRequestIP()})
+                            .collect(Collectors.toList());
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private static List<String> uniqueIds(final List<ArchiveMetadata> entries) {
+        return entries.stream().map(ArchiveMetadata::getUniqueId).collect(Collectors.toList());
+    }
+
+    /**
+     * Tests that paging from the last entry of each page gives every entry
+     * exactly once, also when entries with the same time are split over
+     * pages, in both directions.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testFindMatchingCriteriaAfter() throws Exception {
+        LOG.info("testFindMatchingCriteriaAfter");
+        final ArchiveDataService instance = new ArchiveDataService(createEntityManager());
+
+        for (final boolean descending : new boolean[] {true, false}) {
+            final List<String> result = new ArrayList<>();
+            List<ArchiveMetadata> page = instance.findMatchingCriteriaAfter(null, null, 2, QueryCriteria.create(), descending, false);
+            while (!page.isEmpty()) {
+                result.addAll(uniqueIds(page));
+                final ArchiveMetadata last = page.get(page.size() - 1);
+                page = instance.findMatchingCriteriaAfter(last.getTime().getTime(), last.getUniqueId(), 2, QueryCriteria.create(), descending, false);
+            }
+            final List<String> expected = new ArrayList<>(Arrays.asList("a", "b", "c", "d", "e", "f", "g"));
+            if (descending) {
+                Collections.reverse(expected);
+            }
+            assertEquals("all entries once, descending=" + descending, expected, result);
+        }
+
+        // Continuing after all entries with a time
+        assertEquals("after time", Arrays.asList("a"),
+                uniqueIds(instance.findMatchingCriteriaAfter(2000L, null, 0, QueryCriteria.create(), true, false)));
+    }
+
+    /**
+     * Tests that the conditions of the criteria are combined with the seek
+     * condition, each grouped so that the OR of the seek condition does not
+     * apply to the criteria, and that the ordering of the criteria is not
+     * used.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testFindMatchingCriteriaAfterWithCriteria() throws Exception {
+        LOG.info("testFindMatchingCriteriaAfterWithCriteria");
+        final ArchiveDataService instance = new ArchiveDataService(createEntityManager());
+        final QueryCriteria criteria = QueryCriteria.create()
+                .add(new Term(RelationalOperator.EQ, ArchiveMetadata.SIGNER_ID, 4711))
+                .add(new Order(ArchiveMetadata.TIME, Order.Value.ASC));
+
+        instance.findMatchingCriteriaAfter(2000L, "c", 2, criteria, true, false);
+
+        final String jpql = queries.get(queries.size() - 1);
+        assertTrue("criteria and grouped seek condition: " + jpql, jpql.matches(".* WHERE \\(a\\.signerid = :\\w+\\) AND "
+                + "\\(a\\.time < :\\w+ OR \\(a\\.time = :\\w+ AND a\\.uniqueId < :\\w+\\)\\) ORDER BY a\\.time DESC, a\\.uniqueId DESC"));
+        assertEquals("parameters", new HashSet<>(Arrays.asList(4711, 2000L, "c")),
+                new HashSet<>(parameterValues.get(parameterValues.size() - 1).values()));
+    }
+
+    /**
+     * Tests that the export gives all entries in batches and that the
+     * entities are detached after each batch when the data is included.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testExportMatchingCriteria() throws Exception {
+        LOG.info("testExportMatchingCriteria");
+        final ArchiveDataService instance = new ArchiveDataService(createEntityManager());
+
+        final List<ArchiveMetadata> exported = new ArrayList<>();
+        assertEquals("count", 7, instance.exportMatchingCriteria(QueryCriteria.create(), true, false, 3, exported::add));
+        assertEquals("entries", Arrays.asList("g", "f", "e", "d", "c", "b", "a"), uniqueIds(exported));
+        assertEquals("queries", 3, queries.size());
+        assertNull("no data", exported.get(0).getArchiveData());
+        assertEquals("not cleared", 0, clears);
+
+        exported.clear();
+        queries.clear();
+        assertEquals("count with data", 7, instance.exportMatchingCriteria(QueryCriteria.create(), false, true, 7, exported::add));
+        assertEquals("entries with data", Arrays.asList("a", "b", "c", "d", "e", "f", "g"), uniqueIds(exported));
+        assertArrayEquals("data", "data of c".getBytes(StandardCharsets.UTF_8), exported.get(2).getArchiveData());
+        assertEquals("full batch so one more query", 2, queries.size());
+        assertEquals("cleared after each batch", 2, clears);
+
+        try {
+            instance.exportMatchingCriteria(QueryCriteria.create(), true, false, 0, exported::add);
+            fail("Should not accept batch size 0");
+        } catch (IllegalArgumentException expected) { // NOPMD
+            // OK
+        }
+    }
+}
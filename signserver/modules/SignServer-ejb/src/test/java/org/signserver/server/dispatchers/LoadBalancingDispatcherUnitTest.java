@@ -0,0 +1,222 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.dispatchers;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.log4j.Logger;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.signserver.common.CryptoTokenOfflineException;
+import org.signserver.common.RequestContext;
+import org.signserver.common.WorkerConfig;
+import org.signserver.common.WorkerType;
+import org.signserver.ejb.interfaces.DispatcherProcessSessionLocal;
+import org.signserver.server.IServices;
+import org.signserver.server.SignServerContext;
+import org.signserver.server.WorkerContext;
+
+/**
+ * Unit tests for the LoadBalancingDispatcher class.
+ *
+ * @version $Id$
+ */
+public class LoadBalancingDispatcherUnitTest {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(LoadBalancingDispatcherUnitTest.class);
+
+    private static WorkerConfig createConfig(final String workers) {
+        final WorkerConfig config = new WorkerConfig();
+        config.setProperty(WorkerConfig.TYPE, WorkerType.PROCESSABLE.name());
+        config.setProperty("NAME", "Dispatcher1");
+        if (workers != null) {
+            config.setProperty("WORKERS", workers);
+        }
+        return config;
+    }
+
+    private static MockedLoadBalancingDispatcher createInstance(final WorkerConfig config) {
+        final MockedLoadBalancingDispatcher instance = new MockedLoadBalancingDispatcher();
+        final WorkerContext context = new SignServerContext(null, null);
+        instance.init(1, config, context, null);
+        return instance;
+    }
+
+    /**
+     * Tests that configuration errors are reported.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testConfigErrors() throws Exception {
+        LOG.info("testConfigErrors");
+        final IServices services = null;
+
+        MockedLoadBalancingDispatcher instance = createInstance(createConfig(null));
+        assertTrue("errs: " + instance.getFatalErrors(services), instance.getFatalErrors(services).toString().contains("WORKERS"));
+
+        instance = createInstance(createConfig("Worker1, Dispatcher1"));
+        assertTrue("errs: " + instance.getFatalErrors(services), instance.getFatalErrors(services).toString().contains("itself"));
+
+        WorkerConfig config = createConfig("Worker1, Worker2");
+        config.setProperty("STRATEGY", "RANDOM");
+        instance = createInstance(config);
+        assertTrue("errs: " + instance.getFatalErrors(services), instance.getFatalErrors(services).toString().contains("STRATEGY"));
+
+        config = createConfig("Worker1, Worker2");
+        config.setProperty("WEIGHTS", "1");
+        instance = createInstance(config);
+        assertTrue("errs: " + instance.getFatalErrors(services), instance.getFatalErrors(services).toString().contains("WEIGHTS"));
+
+        config = createConfig("Worker1, Worker2");
+        config.setProperty("WEIGHTS", "1, 0");
+        instance = createInstance(config);
+        assertTrue("errs: " + instance.getFatalErrors(services), instance.getFatalErrors(services).toString().contains("WEIGHTS"));
+
+        config = createConfig("Worker1, Worker2");
+        config.setProperty("OFFLINE_BACKOFF", "abc");
+        instance = createInstance(config);
+        assertTrue("errs: " + instance.getFatalErrors(services), instance.getFatalErrors(services).toString().contains("OFFLINE_BACKOFF"));
+
+        config = createConfig("Worker1, Worker2");
+        config.setProperty("STRATEGY", "least_outstanding");
+        config.setProperty("WEIGHTS", "2, 1");
+        config.setProperty("OFFLINE_BACKOFF", "10");
+        instance = createInstance(config);
+        assertTrue("errs: " + instance.getFatalErrors(services), instance.getFatalErrors(services).isEmpty());
+    }
+
+    /**
+     * Tests that the requests are distributed in proportion to the weights.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testRoundRobinWeighted() throws Exception {
+        LOG.info("testRoundRobinWeighted");
+        final WorkerConfig config = createConfig("Worker1, Worker2, Worker3");
+        config.setProperty("WEIGHTS", "2, 1, 1");
+        final MockedLoadBalancingDispatcher instance = createInstance(config);
+
+        for (int i = 0; i < 40; i++) {
+            instance.processData(null, new RequestContext());
+        }
+        assertEquals("Worker1", 20, count(instance.dispatched, "Worker1"));
+        assertEquals("Worker2", 10, count(instance.dispatched, "Worker2"));
+        assertEquals("Worker3", 10, count(instance.dispatched, "Worker3"));
+
+        // Not the same worker many times in a row
+        for (int i = 2; i < instance.dispatched.size(); i++) {
+            assertFalse("three in a row at " + i, instance.dispatched.get(i).equals(instance.dispatched.get(i - 1))
+                    && instance.dispatched.get(i).equals(instance.dispatched.get(i - 2)));
+        }
+    }
+
+    /**
+     * Tests that an offline worker is not tried again during the back-off
+     * time while the other workers are available.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testOfflineWorkerBackoff() throws Exception {
+        LOG.info("testOfflineWorkerBackoff");
+        final MockedLoadBalancingDispatcher instance = createInstance(createConfig("Worker1, Worker2, Worker3"));
+        instance.offline.add("Worker2");
+
+        for (int i = 0; i < 30; i++) {
+            instance.processData(null, new RequestContext());
+        }
+        assertEquals("Worker2 tried once", 1, count(instance.dispatched, "Worker2"));
+        assertEquals("Worker1 and Worker3", 30, count(instance.dispatched, "Worker1") + count(instance.dispatched, "Worker3"));
+
+        final List<LoadBalancingDispatcher.Target> targets = instance.selectTargets(System.currentTimeMillis());
+        assertEquals("offline worker last", "Worker2", targets.get(2).getName());
+    }
+
+    /**
+     * Tests that all workers are tried when all are offline and that they
+     * are tried again as a last resort.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testAllOffline() throws Exception {
+        LOG.info("testAllOffline");
+        final MockedLoadBalancingDispatcher instance = createInstance(createConfig("Worker1, Worker2"));
+        instance.offline.add("Worker1");
+        instance.offline.add("Worker2");
+
+        try {
+            instance.processData(null, new RequestContext());
+            fail("Should have failed");
+        } catch (CryptoTokenOfflineException expected) { // NOPMD
+            // OK
+        }
+        assertEquals("tried all", 2, instance.dispatched.size());
+
+        // Worker back online
+        instance.offline.remove("Worker2");
+        instance.dispatched.clear();
+        instance.processData(null, new RequestContext());
+        assertEquals("last worker tried", "Worker2", instance.dispatched.get(instance.dispatched.size() - 1));
+    }
+
+    /**
+     * Tests that the least outstanding strategy spreads requests when no
+     * requests are in progress.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testLeastOutstanding() throws Exception {
+        LOG.info("testLeastOutstanding");
+        final WorkerConfig config = createConfig("Worker1, Worker2");
+        config.setProperty("STRATEGY", "LEAST_OUTSTANDING");
+        final MockedLoadBalancingDispatcher instance = createInstance(config);
+
+        for (int i = 0; i < 10; i++) {
+            instance.processData(null, new RequestContext());
+        }
+        assertEquals("Worker1", 5, count(instance.dispatched, "Worker1"));
+        assertEquals("Worker2", 5, count(instance.dispatched, "Worker2"));
+        assertTrue("status: " + instance.getStatus(new ArrayList<>(), null).getCompleteEntries(),
+                instance.getStatus(new ArrayList<>(), null).getCompleteEntries().toString().contains("Worker1: requests=5"));
+    }
+
+    private static int count(final List<String> list, final String value) {
+        int result = 0;
+        for (final String item : list) {
+            if (item.equals(value)) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /** Mocked LoadBalancingDispatcher recording the dispatched requests. */
+    private static class MockedLoadBalancingDispatcher extends LoadBalancingDispatcher {
+        private final List<String> dispatched = new ArrayList<>();
+        private final Set<String> offline = new HashSet<>();
+
+        @Override
+        protected DispatcherProcessSessionLocal getWorkerSession(RequestContext context) {
+            return (info, wi, request, requestContext) -> {
+                dispatched.add(wi.getName());
+                if (offline.contains(wi.getName())) {
+                    throw new CryptoTokenOfflineException("Offline");
+                }
+                return null;
+            };
+        }
+    }
+
+}
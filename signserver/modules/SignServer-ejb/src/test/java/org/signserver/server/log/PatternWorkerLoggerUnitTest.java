@@ -0,0 +1,80 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.server.log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.signserver.common.RequestContext;
+import org.signserver.common.WorkerConfig;
+
+/**
+ * Unit tests for the PatternWorkerLogger class.
+ *
+ * @version $Id$
+ */
+public class PatternWorkerLoggerUnitTest {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(PatternWorkerLoggerUnitTest.class);
+
+    /**
+     * Tests that a value referenced by the log order is rendered once when
+     * the line is logged and not at all when the log level is not enabled.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testRenderedOnlyWhenEnabled() throws Exception {
+        LOG.info("testRenderedOnlyWhenEnabled");
+        final Logger accountLog = Logger.getLogger(IWorkerLogger.class);
+        final Level oldLevel = accountLog.getLevel();
+        try {
+            final WorkerConfig config = new WorkerConfig();
+            config.setProperty("LOGORDER", "CERT: ${CERT}");
+            config.setProperty("LOGLEVEL_DEFAULT", "DEBUG");
+            final PatternWorkerLogger instance = new PatternWorkerLogger();
+            instance.init(1, config, null);
+            final CountingLoggable cert = new CountingLoggable("cert");
+            final LogMap fields = new LogMap();
+            fields.put("CERT", cert);
+
+            accountLog.setLevel(Level.INFO);
+            instance.log(new AdminInfo("Client user", null, null), fields, new RequestContext());
+            assertEquals("not enabled", 0, cert.count.get());
+
+            accountLog.setLevel(Level.DEBUG);
+            instance.log(new AdminInfo("Client user", null, null), fields, new RequestContext());
+            assertEquals("enabled", 1, cert.count.get());
+        } finally {
+            accountLog.setLevel(oldLevel);
+        }
+    }
+
+    /** Loggable counting the number of times it is rendered. */
+    private static class CountingLoggable implements Loggable {
+        private final String value;
+        private final AtomicInteger count = new AtomicInteger();
+
+        CountingLoggable(final String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            count.incrementAndGet();
+            return value;
+        }
+    }
+}
@@ -18,11 +18,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Iterator;
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.Properties;
 
 import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
 import javax.naming.NamingException;
 import javax.persistence.EntityManager;
 import javax.servlet.ServletConfig;
@@ -30,13 +31,13 @@ import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
-import org.signserver.common.InvalidWorkerIdException;
 import org.signserver.common.ServiceLocator;
-import org.signserver.common.WorkerIdentifier;
-import org.signserver.common.WorkerStatus;
-import org.signserver.common.WorkerType;
 import org.signserver.ejb.interfaces.WorkerSessionLocal;
 import org.signserver.healthcheck.HealthCheckUtils;
+import org.signserver.statusrepo.StatusRepositorySessionLocal;
+import org.signserver.statusrepo.common.NoSuchPropertyException;
+import org.signserver.statusrepo.common.StatusEntry;
+import org.signserver.statusrepo.common.StatusName;
 import org.signserver.server.nodb.FileBasedDatabaseManager;
 import org.signserver.web.pub.cluster.IHealthCheck;
 
@@ -48,6 +49,13 @@ import org.signserver.web.pub.cluster.IHealthCheck;
  * Not about to run out if memory (configurable through web.xml with param "MinimumFreeMemory")
  * Database connection can be established.
  * All SignerTokens are active if not set as offline.
+ * All workers have been initialized, if configured to do so after startup.
+ * 
+ * The status of the workers can be checked in the background (configurable
+ * through web.xml with param "StatusCheckInterval") in which case the last
+ * result is used. As the health check is not authenticated, a request can not
+ * force a fresh check, so the crypto tokens are not tested more often than
+ * the interval.
  * 
  * If a maintenance file has been configured during build, it can be used to enable maintenance mode.
  * When enabled, none of the above system checks are performed, instead a down-for-maintenance message is returned.
@@ -62,12 +70,14 @@ public class SignServerHealthCheck implements IHealthCheck {
             SignServerHealthCheck.class);
     
     private WorkerSessionLocal signserversession;
+    private StatusRepositorySessionLocal statusRepository;
     
     private int minfreememory;
     private String checkDBString;
     private String maintenanceFile;
     private String maintenancePropertyName;
     private EntityManager em;
+    private WorkerStatusMonitor statusMonitor;
 
     private WorkerSessionLocal getWorkerSession() {
         if (signserversession == null) {
@@ -80,13 +90,36 @@ public class SignServerHealthCheck implements IHealthCheck {
         return signserversession;
     }
 
+    private StatusRepositorySessionLocal getStatusRepository() {
+        if (statusRepository == null) {
+            try {
+                statusRepository = ServiceLocator.getInstance().lookupLocal(StatusRepositorySessionLocal.class);
+            } catch (NamingException e) {
+                LOG.error(e);
+            }
+        }
+        return statusRepository;
+    }
+
     @Override
-    public void init(final ServletConfig config, final EntityManager em) {
+    public void init(final ServletConfig config, final EntityManager em, final ScheduledExecutorService executor) {
         minfreememory = Integer.parseInt(config.getInitParameter("MinimumFreeMemory")) * 1024 * 1024;
         checkDBString = config.getInitParameter("checkDBString");
         maintenanceFile = config.getInitParameter("MaintenanceFile");
         maintenancePropertyName = config.getInitParameter("MaintenancePropertyName");
         this.em = em;
+        final long statusCheckInterval = getLongParameter(config, "StatusCheckInterval", 0);
+        final long statusCheckTimeout = getLongParameter(config, "StatusCheckTimeout", 10);
+        final int statusCheckThreads = (int) getLongParameter(config, "StatusCheckThreads", 4);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Worker status check interval: " + statusCheckInterval
+                    + " s, timeout: " + statusCheckTimeout
+                    + " s, threads: " + statusCheckThreads);
+        }
+        statusMonitor = new WorkerStatusMonitor(this::getWorkerSession, executor,
+                statusCheckInterval * 1000, statusCheckTimeout * 1000,
+                Math.max(1, statusCheckThreads));
+        statusMonitor.start();
         if (LOG.isDebugEnabled()) {
             final StringBuilder buff = new StringBuilder();
             buff.append("Health check configured with:\n")
@@ -99,6 +132,26 @@ public class SignServerHealthCheck implements IHealthCheck {
         initMaintenanceFile();
     }
 
+    @Override
+    public void destroy() {
+        if (statusMonitor != null) {
+            statusMonitor.stop();
+        }
+    }
+
+    private static long getLongParameter(final ServletConfig config, final String name, final long defaultValue) {
+        final String value = config.getInitParameter(name);
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            LOG.error("Incorrect value for " + name + ": " + value + ", using default " + defaultValue);
+            return defaultValue;
+        }
+    }
+
     @Override
     public String checkHealth(HttpServletRequest request) {
         final LinkedList<String> errors = new LinkedList<>();
@@ -121,6 +174,7 @@ public class SignServerHealthCheck implements IHealthCheck {
             
             if (errors.size() == 0) {
                 errors.addAll(HealthCheckUtils.checkMemory(minfreememory));
+                errors.addAll(checkWarmup());
                 errors.addAll(checkSigners());
             }
         }
@@ -144,33 +198,30 @@ public class SignServerHealthCheck implements IHealthCheck {
         return result;
     }
 
-    private List<String> checkSigners() {
+    private List<String> checkWarmup() {
         final LinkedList<String> result = new LinkedList<>();
-        Iterator<Integer> iter = getWorkerSession().getWorkers(WorkerType.PROCESSABLE).iterator();
-        while (iter.hasNext()) {
-            int processableId = ((Integer) iter.next());
-
-            try {
-                WorkerStatus workerStatus = getWorkerSession().getStatus(new WorkerIdentifier(processableId));
-                if (workerStatus.isDisabled()) {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Not checking worker " + processableId + " as it is disabled");
-                    }
-                } else {
-                    final List<String> fatalErrors = workerStatus.getFatalErrors();
-                    if (!fatalErrors.isEmpty()) {
-                        for (String error : fatalErrors) {
-                            result.add("Worker " + workerStatus.getWorkerId() + ": " + error);
-                        }
-                    }
-                }
-
-            } catch (InvalidWorkerIdException e) {
-                LOG.error(e.getMessage(), e);
+        final StatusRepositorySessionLocal repository = getStatusRepository();
+        if (repository == null) {
+            return result;
+        }
+        try {
+            final StatusEntry entry = repository.getValidEntry(StatusName.WORKERS_WARMUP.name());
+            if (entry != null && "RUNNING".equals(entry.getValue())) {
+                result.add("Workers are still being initialized");
             }
+        } catch (NoSuchPropertyException ex) {
+            LOG.error("Unable to check worker initialization: " + ex.getMessage());
         }
         return result;
     }
+
+    private List<String> checkSigners() {
+        final WorkerStatusMonitor.Result result = statusMonitor.getResult();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Using worker status from " + new Date(result.getTimestamp()));
+        }
+        return result.getErrors();
+    }
     
 	private List<String> checkMaintenance() {
         final LinkedList<String> result = new LinkedList<>();
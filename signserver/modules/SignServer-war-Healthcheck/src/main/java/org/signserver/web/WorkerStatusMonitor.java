@@ -0,0 +1,382 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.web;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import org.apache.log4j.Logger;
+import org.signserver.common.InvalidWorkerIdException;
+import org.signserver.common.WorkerIdentifier;
+import org.signserver.common.WorkerStatus;
+import org.signserver.common.WorkerType;
+import org.signserver.ejb.interfaces.WorkerSessionLocal;
+
+/**
+ * Monitor checking the status of all processable workers and keeping the
+ * last result.
+ *
+ * Querying the status of a worker can involve a test signing using the
+ * crypto token, i.e. with an HSM. The workers are checked in parallel with a
+ * timeout for each worker and if an interval is configured they are checked
+ * in the background so that health checks can be answered from the last
+ * result instead of probing all tokens for every request.
+ *
+ * The checks and the background checking run on the given executor, which in
+ * the application server is the managed scheduled executor service of the
+ * container. At most the configured number of workers are checked at the same
+ * time. A worker for which the status check did not complete is not checked
+ * again until the previous check has finished, so that a hanging token does
+ * not use up all threads.
+ *
+ * While a check of all workers is in progress, other callers are given the
+ * last result instead of waiting for the check to complete.
+ *
+ * @version $Id$
+ */
+public class WorkerStatusMonitor {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(WorkerStatusMonitor.class);
+
+    private final Supplier<WorkerSessionLocal> workerSession;
+    private final ScheduledExecutorService executor;
+    private final long intervalMillis;
+    private final long timeoutMillis;
+    private final int threads;
+
+    private ScheduledFuture<?> backgroundCheck;
+
+    /** Held while checking all workers. */
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    /** Checks that have not yet finished, by worker ID, guarded by the refresh lock. */
+    private final Map<Integer, Check> pendingChecks = new HashMap<>();
+
+    /** Checks waiting for a thread. */
+    private final Queue<Check> queuedChecks = new ConcurrentLinkedQueue<>();
+
+    /** Number of threads running checks. */
+    private final AtomicInteger runners = new AtomicInteger();
+
+    private volatile Result lastResult;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param workerSession giving the session to query the workers and their status from
+     * @param executor to run the checks on
+     * @param intervalMillis between background checks or 0 to only check
+     * when requested
+     * @param timeoutMillis maximum time to wait for the status of a worker
+     * @param threads number of workers to check in parallel
+     */
+    public WorkerStatusMonitor(final Supplier<WorkerSessionLocal> workerSession,
+            final ScheduledExecutorService executor,
+            final long intervalMillis, final long timeoutMillis,
+            final int threads) {
+        this.workerSession = workerSession;
+        this.executor = executor;
+        this.intervalMillis = intervalMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Starts checking the workers in the background if an interval was
+     * configured.
+     */
+    public synchronized void start() {
+        if (intervalMillis > 0 && backgroundCheck == null) {
+            backgroundCheck = executor.scheduleWithFixedDelay(() -> {
+                try {
+                    refresh();
+                } catch (RuntimeException ex) {
+                    // Keep the scheduled task running
+                    LOG.error("Worker status check failed", ex);
+                }
+            }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the background checks and forgets the checks not yet started.
+     * The executor itself is not shut down as it is owned by the container.
+     */
+    public synchronized void stop() {
+        if (backgroundCheck != null) {
+            backgroundCheck.cancel(true);
+            backgroundCheck = null;
+        }
+        Check check;
+        while ((check = queuedChecks.poll()) != null) {
+            check.future.cancel(false);
+        }
+    }
+
+    /**
+     * @return true if the workers are checked in the background
+     */
+    public boolean isBackgroundCheckEnabled() {
+        return intervalMillis > 0;
+    }
+
+    /**
+     * Gives the last result or checks the workers now if background checks
+     * are not enabled or no check has completed yet.
+     *
+     * If the last result is older than expected, i.e. the background check
+     * is not keeping up, an error is included in the result.
+     *
+     * @return the status check result
+     */
+    public Result getResult() {
+        final Result result = lastResult;
+        if (result == null || intervalMillis <= 0) {
+            return refresh();
+        }
+        final long age = System.currentTimeMillis() - result.getTimestamp();
+        if (age > 2 * intervalMillis + timeoutMillis) {
+            final List<String> errors = new LinkedList<>(result.getErrors());
+            errors.add("Worker status not checked for " + age + " ms");
+            return new Result(result.getTimestamp(), errors);
+        }
+        return result;
+    }
+
+    /**
+     * Checks the status of all processable workers now and stores the
+     * result. If a check is already in progress the last result is given
+     * instead, or if there is none yet, the result of the check in progress.
+     *
+     * @return the new result
+     */
+    public Result refresh() {
+        if (refreshLock.tryLock()) {
+            try {
+                return checkAll();
+            } finally {
+                refreshLock.unlock();
+            }
+        }
+        final Result result = lastResult;
+        if (result != null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Worker status check in progress, using the last result");
+            }
+            return result;
+        }
+
+        // Wait for the first check to complete
+        refreshLock.lock();
+        try {
+            return lastResult == null ? checkAll() : lastResult;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private Result checkAll() {
+        final long startTime = System.currentTimeMillis();
+        final List<Integer> workerIds = workerSession.get().getWorkers(WorkerType.PROCESSABLE);
+
+        // Start checking all workers not already being checked
+        final Map<Integer, Check> checks = new LinkedHashMap<>();
+        for (final Integer workerId : workerIds) {
+            Check check = pendingChecks.get(workerId);
+            if (check == null) {
+                check = new Check(workerId);
+                pendingChecks.put(workerId, check);
+                queuedChecks.add(check);
+            }
+            checks.put(workerId, check);
+        }
+        startRunners();
+
+        final LinkedList<String> errors = new LinkedList<>();
+        final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        final long roundStart = System.nanoTime();
+        for (final Check check : checks.values()) {
+            try {
+                errors.addAll(waitFor(check, roundStart, timeoutNanos));
+                pendingChecks.remove(check.workerId);
+            } catch (TimeoutException ex) {
+                LOG.warn("Status check of worker " + check.workerId + " did not complete within " + timeoutMillis + " ms");
+                errors.add("Worker " + check.workerId + ": Status check timed out");
+            } catch (ExecutionException ex) {
+                pendingChecks.remove(check.workerId);
+                LOG.error("Status check of worker " + check.workerId + " failed", ex.getCause());
+                errors.add("Worker " + check.workerId + ": Status check failed: " + ex.getCause().getMessage());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                errors.add("Worker " + check.workerId + ": Status check interrupted");
+                break;
+            }
+        }
+
+        // Forget about workers that no longer exist
+        pendingChecks.keySet().retainAll(workerIds);
+
+        final Result result = new Result(System.currentTimeMillis(), errors);
+        lastResult = result;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Checked status of " + workerIds.size() + " workers in "
+                    + (result.getTimestamp() - startTime) + " ms");
+        }
+        return result;
+    }
+
+    /**
+     * Waits for the check to complete. The timeout applies from when the
+     * check started executing but a check still waiting for a free thread
+     * when the timeout has passed since the start of this round is also
+     * considered as timed out.
+     */
+    private List<String> waitFor(final Check check, final long roundStart,
+            final long timeoutNanos) throws InterruptedException,
+            ExecutionException, TimeoutException {
+        long waitUntil = roundStart + timeoutNanos;
+        while (true) {
+            try {
+                return check.future.get(Math.max(0, waitUntil - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException ex) {
+                final long started = check.startTime;
+                if (started == 0 || started + timeoutNanos <= waitUntil) {
+                    throw ex;
+                }
+                // Started later than the round, give it its full timeout
+                waitUntil = started + timeoutNanos;
+            }
+        }
+    }
+
+    /**
+     * Starts threads running the queued checks, up to the maximum number.
+     */
+    private void startRunners() {
+        while (!queuedChecks.isEmpty()) {
+            final int running = runners.get();
+            if (running >= threads) {
+                return;
+            }
+            if (runners.compareAndSet(running, running + 1)) {
+                try {
+                    executor.execute(this::runChecks);
+                } catch (RejectedExecutionException ex) {
+                    runners.decrementAndGet();
+                    LOG.warn("No thread available for checking worker status: " + ex.getMessage());
+                    return;
+                }
+            }
+        }
+    }
+
+    private void runChecks() {
+        try {
+            Check check;
+            while ((check = queuedChecks.poll()) != null) {
+                check.run();
+            }
+        } finally {
+            runners.decrementAndGet();
+        }
+        // Checks queued after the queue was found empty
+        startRunners();
+    }
+
+    private List<String> checkWorker(final int workerId) {
+        final LinkedList<String> result = new LinkedList<>();
+        try {
+            final WorkerStatus workerStatus = workerSession.get().getStatus(new WorkerIdentifier(workerId));
+            if (workerStatus.isDisabled()) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Not checking worker " + workerId + " as it is disabled");
+                }
+            } else {
+                for (String error : workerStatus.getFatalErrors()) {
+                    result.add("Worker " + workerStatus.getWorkerId() + ": " + error);
+                }
+            }
+        } catch (InvalidWorkerIdException e) {
+            LOG.error(e.getMessage(), e);
+        }
+        return result;
+    }
+
+    /**
+     * Status check of one worker.
+     */
+    private class Check {
+        private final int workerId;
+        private final CompletableFuture<List<String>> future = new CompletableFuture<>();
+        private volatile long startTime;
+
+        Check(final int workerId) {
+            this.workerId = workerId;
+        }
+
+        void run() {
+            if (future.isDone()) {
+                return;
+            }
+            startTime = System.nanoTime();
+            try {
+                future.complete(checkWorker(workerId));
+            } catch (RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /**
+     * Result of checking the workers.
+     */
+    public static class Result {
+        private final long timestamp;
+        private final List<String> errors;
+
+        public Result(final long timestamp, final List<String> errors) {
+            this.timestamp = timestamp;
+            this.errors = Collections.unmodifiableList(errors);
+        }
+
+        /**
+         * @return time when the check completed in milliseconds since epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return the errors for all workers, empty if all are OK
+         */
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+}
@@ -17,6 +17,8 @@ package org.signserver.web.pub;
 
 import java.io.IOException;
 import java.util.Arrays;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
 import javax.persistence.EntityManager;
 
 import javax.servlet.ServletConfig;
@@ -64,6 +66,10 @@ public class HealthCheckServlet extends HttpServlet {
     
     /** EntityManager is conditionally injected from web.xml. */
     private EntityManager em;
+
+    /** Executor for checking the status of the workers in the background. */
+    @Resource
+    private ManagedScheduledExecutorService executorService;
     
     /**
      * Servlet init
@@ -91,7 +97,7 @@ public class HealthCheckServlet extends HttpServlet {
             }
             
             healthcheck = (IHealthCheck) HealthCheckServlet.class.getClassLoader().loadClass(config.getInitParameter("HealthCheckClassPath")).newInstance();
-            healthcheck.init(config, em);
+            healthcheck.init(config, em, executorService);
             
             healthresponse = (IHealthResponse) HealthCheckServlet.class.getClassLoader().loadClass(config.getInitParameter("HealthResponseClassPath")).newInstance();
             healthresponse.init(config);
@@ -101,6 +107,17 @@ public class HealthCheckServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Servlet destroy
+     */
+    @Override
+    public void destroy() {
+        if (healthcheck != null) {
+            healthcheck.destroy();
+        }
+        super.destroy();
+    }
+
     /**
      * Handles HTTP POST
      *
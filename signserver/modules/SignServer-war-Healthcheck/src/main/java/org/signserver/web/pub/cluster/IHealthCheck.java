@@ -13,6 +13,7 @@
 
 package org.signserver.web.pub.cluster;
 
+import java.util.concurrent.ScheduledExecutorService;
 import javax.persistence.EntityManager;
 import javax.servlet.ServletConfig;
 import javax.servlet.http.HttpServletRequest;
@@ -33,8 +34,9 @@ public interface IHealthCheck {
      *
      * @param config Servlet configuration
      * @param em Entity managaer
+     * @param executor Executor of the container for any background work
      */
-    void init(ServletConfig config, EntityManager em);
+    void init(ServletConfig config, EntityManager em, ScheduledExecutorService executor);
 
     /**
      * Method used to check the health of a specific application.
@@ -45,4 +47,11 @@ public interface IHealthCheck {
      */
     public String checkHealth(HttpServletRequest request);
 
+    /**
+     * Method used to release any resources held by the health checker when
+     * the servlet is taken out of service.
+     */
+    default void destroy() {
+    }
+
 }
@@ -0,0 +1,235 @@
+/*************************************************************************
+ *                                                                       *
+ *  SignServer: The OpenSource Automated Signing Server                  *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.signserver.web;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.signserver.common.StaticWorkerStatus;
+import org.signserver.common.WorkerConfig;
+import org.signserver.common.WorkerIdentifier;
+import org.signserver.common.WorkerStatus;
+import org.signserver.common.WorkerStatusInfo;
+import org.signserver.ejb.interfaces.WorkerSessionLocal;
+
+/**
+ * Unit tests for the WorkerStatusMonitor class.
+ *
+ * @version $Id$
+ */
+public class WorkerStatusMonitorUnitTest {
+
+    /** Logger for this class. */
+    private static final Logger LOG = Logger.getLogger(WorkerStatusMonitorUnitTest.class);
+
+    private ScheduledExecutorService executor;
+
+    /** Fatal errors of each worker. */
+    private final Map<Integer, List<String>> workerErrors = new ConcurrentHashMap<>();
+
+    /** Workers whose status check waits for the latch. */
+    private final Map<Integer, CountDownLatch> blocked = new ConcurrentHashMap<>();
+
+    private final AtomicInteger statusCalls = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        executor = Executors.newScheduledThreadPool(16);
+    }
+
+    @After
+    public void tearDown() {
+        for (final CountDownLatch latch : blocked.values()) {
+            latch.countDown();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return worker session answering with the configured workers and errors
+     */
+    private WorkerSessionLocal createWorkerSession() {
+        return (WorkerSessionLocal) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {WorkerSessionLocal.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getWorkers":
+                    return new ArrayList<>(workerErrors.keySet());
+                case "getStatus":
+                    return getStatus(((WorkerIdentifier) args[0]).getId());
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private WorkerStatus getStatus(final int workerId) throws InterruptedException {
+        statusCalls.incrementAndGet();
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            final CountDownLatch latch = blocked.get(workerId);
+            if (latch != null) {
+                latch.await();
+            } else {
+                Thread.sleep(10);
+            }
+            final WorkerConfig config = new WorkerConfig();
+            if (workerId == 3) {
+                config.setProperty("DISABLED", "TRUE");
+            }
+            return new StaticWorkerStatus(new WorkerStatusInfo(workerId, "Worker" + workerId, "Processable", WorkerStatus.STATUS_ACTIVE,
+                    Collections.emptyList(), workerErrors.get(workerId), Collections.emptyList(), config));
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    private WorkerStatusMonitor createMonitor(final long intervalMillis, final long timeoutMillis, final int threads) {
+        final WorkerSessionLocal session = createWorkerSession();
+        return new WorkerStatusMonitor(() -> session, executor, intervalMillis, timeoutMillis, threads);
+    }
+
+    /**
+     * Tests that the errors of all enabled workers are reported.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testErrors() throws Exception {
+        LOG.info("testErrors");
+        workerErrors.put(1, Collections.emptyList());
+        workerErrors.put(2, Arrays.asList("Token offline"));
+        workerErrors.put(3, Arrays.asList("Disabled so not reported"));
+        final WorkerStatusMonitor instance = createMonitor(0, 10000, 4);
+
+        assertEquals("errors", Arrays.asList("Worker 2: Token offline"), instance.getResult().getErrors());
+
+        workerErrors.put(2, Collections.emptyList());
+        assertEquals("no errors", Collections.emptyList(), instance.getResult().getErrors());
+    }
+
+    /**
+     * Tests that no more workers than configured are checked at the same
+     * time.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testBoundedThreads() throws Exception {
+        LOG.info("testBoundedThreads");
+        for (int workerId = 10; workerId < 20; workerId++) {
+            workerErrors.put(workerId, Collections.emptyList());
+        }
+        final WorkerStatusMonitor instance = createMonitor(0, 10000, 2);
+
+        assertEquals("errors", Collections.emptyList(), instance.refresh().getErrors());
+        assertEquals("all checked", 10, statusCalls.get());
+        assertTrue("max running: " + maxRunning.get(), maxRunning.get() <= 2);
+    }
+
+    /**
+     * Tests that a worker whose check does not complete is reported as timed
+     * out and not checked again until the check completed.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testTimeout() throws Exception {
+        LOG.info("testTimeout");
+        workerErrors.put(1, Collections.emptyList());
+        final CountDownLatch latch = new CountDownLatch(1);
+        blocked.put(1, latch);
+        final WorkerStatusMonitor instance = createMonitor(0, 200, 4);
+
+        assertEquals("timed out", Arrays.asList("Worker 1: Status check timed out"), instance.refresh().getErrors());
+        assertEquals("still timed out", Arrays.asList("Worker 1: Status check timed out"), instance.refresh().getErrors());
+        assertEquals("checked once", 1, statusCalls.get());
+
+        latch.countDown();
+        assertEquals("completed", Collections.emptyList(), instance.refresh().getErrors());
+        blocked.remove(1);
+        assertEquals("completed", Collections.emptyList(), instance.refresh().getErrors());
+        assertEquals("checked again", 2, statusCalls.get());
+    }
+
+    /**
+     * Tests that the last result is given without waiting while a check is
+     * in progress.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testLastResultWhileChecking() throws Exception {
+        LOG.info("testLastResultWhileChecking");
+        workerErrors.put(1, Arrays.asList("Token offline"));
+        final WorkerStatusMonitor instance = createMonitor(0, 10000, 4);
+        final WorkerStatusMonitor.Result first = instance.refresh();
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        blocked.put(1, latch);
+        final Future<WorkerStatusMonitor.Result> checking = executor.submit(instance::refresh);
+        while (running.get() == 0) {
+            Thread.sleep(10);
+        }
+
+        final long start = System.nanoTime();
+        assertSame("last result", first, instance.getResult());
+        assertSame("last result on refresh", first, instance.refresh());
+        assertTrue("not waiting", System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+        workerErrors.put(1, Collections.emptyList());
+        latch.countDown();
+        assertEquals("new result", Collections.emptyList(), checking.get(10, TimeUnit.SECONDS).getErrors());
+    }
+
+    /**
+     * Tests that the workers are checked in the background when an interval
+     * is configured and that the checks stop when the monitor is stopped.
+     * @throws Exception in case of error
+     */
+    @Test
+    public void testBackgroundCheck() throws Exception {
+        LOG.info("testBackgroundCheck");
+        workerErrors.put(1, Collections.emptyList());
+        final WorkerStatusMonitor instance = createMonitor(50, 10000, 4);
+        assertTrue("enabled", instance.isBackgroundCheckEnabled());
+        instance.start();
+        try {
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (statusCalls.get() < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue("checked repeatedly: " + statusCalls.get(), statusCalls.get() >= 3);
+            final int calls = statusCalls.get();
+            assertEquals("last result", Collections.emptyList(), instance.getResult().getErrors());
+            assertTrue("no check for the request", statusCalls.get() - calls <= 1);
+        } finally {
+            instance.stop();
+        }
+        Thread.sleep(100);
+        final int calls = statusCalls.get();
+        Thread.sleep(200);
+        assertEquals("stopped", calls, statusCalls.get());
+    }
+}